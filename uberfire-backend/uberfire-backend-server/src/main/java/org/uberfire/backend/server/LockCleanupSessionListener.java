@@ -47,6 +47,12 @@ public class LockCleanupSessionListener implements HttpSessionListener {
 
     @Override
     public void sessionDestroyed( HttpSessionEvent se ) {
+        final VFSLockRegistry registry = VFSLockRegistry.getInstance();
+        if ( registry != null ) {
+            releaseLocks( registry, se );
+            return;
+        }
+
         final ConfigIOServiceProducer ioServiceProducer = ConfigIOServiceProducer.getInstance();
         final IOService ioService = ioServiceProducer.configIOService();
         final FileSystem fileSystem = ioServiceProducer.configFileSystem();
@@ -83,4 +89,23 @@ public class LockCleanupSessionListener implements HttpSessionListener {
             }
         }
     }
-}
\ No newline at end of file
+
+    private void releaseLocks( final VFSLockRegistry registry,
+                               final HttpSessionEvent se ) {
+        @SuppressWarnings("unchecked")
+        final Set<LockInfo> locks = (Set<LockInfo>) se.getSession()
+                                                      .getAttribute( VFSLockServiceImpl.LOCK_SESSION_ATTRIBUTE_NAME );
+
+        if ( locks != null ) {
+            for ( LockInfo lock : locks ) {
+                try {
+                    // Lock could have change ownership due to a forced lock release
+                    registry.unlock( lock.getFile(), lock.lockedBy(), false );
+                } catch ( Throwable t ) {
+                    logger.warn( "Problem when releasing lock on session end: " + lock,
+                                 t );
+                }
+            }
+        }
+    }
+}
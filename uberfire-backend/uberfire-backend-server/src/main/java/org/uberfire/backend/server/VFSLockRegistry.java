@@ -0,0 +1,515 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.backend.server;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.backend.server.util.Paths;
+import org.uberfire.backend.vfs.Path;
+import org.uberfire.backend.vfs.PathFactory;
+import org.uberfire.backend.vfs.impl.LockInfo;
+import org.uberfire.commons.cluster.ClusterService;
+import org.uberfire.commons.data.Pair;
+import org.uberfire.commons.message.MessageHandler;
+import org.uberfire.commons.message.MessageHandlerResolver;
+import org.uberfire.commons.message.MessageType;
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.file.DirectoryStream.Filter;
+import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.Files;
+import org.uberfire.java.nio.file.NoSuchFileException;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * In-memory table of the file locks, backed by the lock files of the system file system.
+ * <p>
+ * On a single node the table is the source of truth: held locks are only read the first time they are looked
+ * up, and lock changes are written back asynchronously, coalescing all the changes made within the flush delay
+ * into a single batch (i.e. a single commit). Lock directories are indexed by path prefix, so listing the locks
+ * of a directory doesn't touch the file system once it was loaded. Only held locks stay in memory: released ones
+ * are dropped once their change is persisted, and files that were never locked are not kept at all.
+ * <p>
+ * In a cluster, the lock files are the source of truth: lock changes are made under a cluster wide lock, which
+ * re-reads the lock from the file system and persists the change before being released. The change is then
+ * broadcast to the other nodes, which only update their tables to answer lookups.
+ */
+public class VFSLockRegistry {
+
+    public static final String FLUSH_DELAY_PROPERTY = "org.uberfire.lock.flush.delay";
+    public static final String SERVICE_ID = "vfs-locks";
+
+    private static final Logger logger = LoggerFactory.getLogger( VFSLockRegistry.class );
+    private static final LockEntry UNLOCKED = new LockEntry( null );
+    private static final int CLUSTER_TIMEOUT = 10000;
+
+    private static volatile VFSLockRegistry instance;
+
+    public enum LockMessageType implements MessageType {
+        LOCK, UNLOCK
+    }
+
+    private final IOService ioService;
+    private final FileSystem fileSystem;
+    private final long flushDelay;
+
+    // Keyed by the lock uri without its scheme, so that lock files found walking the file system match
+    private final ConcurrentSkipListMap<String, LockEntry> locks = new ConcurrentSkipListMap<String, LockEntry>();
+    private final Set<String> loadedDirs = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<String, PendingWrite>();
+    private final Object flushLock = new Object();
+    private boolean flushScheduled = false;
+    private final ScheduledExecutorService executor;
+
+    private volatile ClusterService clusterService;
+
+    public VFSLockRegistry( final IOService ioService,
+                            final FileSystem fileSystem ) {
+        this( ioService, fileSystem, Long.getLong( FLUSH_DELAY_PROPERTY, 200L ) );
+    }
+
+    /**
+     * @param flushDelay how long, in milliseconds, lock changes are held in memory before being persisted.
+     */
+    public VFSLockRegistry( final IOService ioService,
+                            final FileSystem fileSystem,
+                            final long flushDelay ) {
+        this.ioService = checkNotNull( "ioService", ioService );
+        this.fileSystem = fileSystem;
+        this.flushDelay = flushDelay;
+        this.executor = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+            @Override
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread( r, "uberfire-lock-writer" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    /**
+     * Returns the registry of the running lock service, if any.
+     */
+    public static VFSLockRegistry getInstance() {
+        return instance;
+    }
+
+    static void setInstance( final VFSLockRegistry registry ) {
+        instance = registry;
+    }
+
+    /**
+     * Propagates lock changes to, and receives them from, the other cluster members.
+     */
+    public void setClusterService( final ClusterService clusterService ) {
+        this.clusterService = clusterService;
+    }
+
+    public MessageHandlerResolver getMessageHandlerResolver() {
+        final MessageHandler handler = new MessageHandler() {
+            @Override
+            public Pair<MessageType, Map<String, String>> handleMessage( final MessageType type,
+                                                                         final Map<String, String> content ) {
+                final String key = content.get( "key" );
+                if ( key != null ) {
+                    if ( LockMessageType.LOCK.toString().equals( type.toString() ) ) {
+                        locks.put( key, new LockEntry( content.get( "lockedBy" ) ) );
+                    } else if ( LockMessageType.UNLOCK.toString().equals( type.toString() ) ) {
+                        // already persisted by the sender
+                        locks.remove( key );
+                    }
+                }
+                return null;
+            }
+        };
+        return new MessageHandlerResolver() {
+            @Override
+            public String getServiceId() {
+                return SERVICE_ID;
+            }
+
+            @Override
+            public MessageHandler resolveHandler( final String serviceId,
+                                                  final MessageType type ) {
+                return SERVICE_ID.equals( serviceId ) ? handler : null;
+            }
+        };
+    }
+
+    public LockInfo getLockInfo( final Path path ) {
+        final Path vfsLock = PathFactory.newLock( path );
+        return getEntry( vfsLock ).toLockInfo( path, vfsLock );
+    }
+
+    /**
+     * Locks the given file for the user unless it is locked by someone else. Returns the lock state after
+     * the call, so the lock was acquired if it's locked by the given user.
+     */
+    public LockInfo lock( final Path path,
+                          final String userId ) {
+        final Path vfsLock = PathFactory.newLock( path );
+        final String key = key( vfsLock );
+        final ClusterService cluster = clusterService;
+        if ( cluster != null ) {
+            cluster.lock( SERVICE_ID );
+        }
+        try {
+            synchronized ( this ) {
+                final LockEntry current = cluster != null ? reload( key, vfsLock ) : getEntry( vfsLock );
+                if ( current.isLocked() && !current.lockedBy.equals( userId ) ) {
+                    return current.toLockInfo( path, vfsLock );
+                }
+                if ( !current.isLocked() ) {
+                    locks.put( key, new LockEntry( userId ) );
+                    scheduleWrite( key, vfsLock, userId );
+                }
+            }
+            if ( cluster != null ) {
+                flush();
+            }
+            broadcast( cluster, LockMessageType.LOCK, key, userId );
+            return new LockInfo( true, userId, path, vfsLock );
+        } finally {
+            if ( cluster != null ) {
+                cluster.unlock( SERVICE_ID );
+            }
+        }
+    }
+
+    /**
+     * Releases the lock of the given file if it's held by the user, or whoever holds it if forced. Returns
+     * the lock state before the call.
+     */
+    public LockInfo unlock( final Path path,
+                            final String userId,
+                            final boolean force ) {
+        final Path vfsLock = PathFactory.newLock( path );
+        final String key = key( vfsLock );
+        final ClusterService cluster = clusterService;
+        if ( cluster != null ) {
+            cluster.lock( SERVICE_ID );
+        }
+        try {
+            final LockEntry current;
+            synchronized ( this ) {
+                current = cluster != null ? reload( key, vfsLock ) : getEntry( vfsLock );
+                if ( !current.isLocked() || !( force || current.lockedBy.equals( userId ) ) ) {
+                    return current.toLockInfo( path, vfsLock );
+                }
+                // kept until the change is persisted, so the lock file isn't read back meanwhile
+                locks.put( key, UNLOCKED );
+                scheduleWrite( key, vfsLock, null );
+            }
+            if ( cluster != null ) {
+                flush();
+            }
+            broadcast( cluster, LockMessageType.UNLOCK, key, null );
+            return current.toLockInfo( path, vfsLock );
+        } finally {
+            if ( cluster != null ) {
+                cluster.unlock( SERVICE_ID );
+            }
+        }
+    }
+
+    /**
+     * Returns the locks held on files within the given directory, at any depth.
+     */
+    public List<LockInfo> getLockInfos( final Path directory ) {
+        final Path lockDir = PathFactory.newLockPath( directory );
+        final String prefix = key( lockDir ).endsWith( "/" ) ? key( lockDir ) : key( lockDir ) + "/";
+        loadDirectory( lockDir, prefix );
+
+        final List<LockInfo> result = new ArrayList<LockInfo>();
+        for ( final Map.Entry<String, LockEntry> entry : locks.subMap( prefix, prefix + Character.MAX_VALUE ).entrySet() ) {
+            if ( entry.getValue().isLocked() ) {
+                final Path vfsLock = lockPath( lockDir, entry.getKey() );
+                result.add( entry.getValue().toLockInfo( PathFactory.fromLock( vfsLock ), vfsLock ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Persists all pending lock changes in a single batch.
+     */
+    public void flush() {
+        synchronized ( flushLock ) {
+            final List<PendingWrite> writes;
+            synchronized ( pending ) {
+                writes = new ArrayList<PendingWrite>( pending.values() );
+                pending.clear();
+                flushScheduled = false;
+            }
+            if ( writes.isEmpty() ) {
+                return;
+            }
+
+            try {
+                ioService.startBatch( fileSystem );
+                for ( final PendingWrite write : writes ) {
+                    try {
+                        if ( write.lockedBy != null ) {
+                            ioService.write( Paths.convert( write.lock ), write.lockedBy );
+                        } else {
+                            ioService.deleteIfExists( Paths.convert( write.lock ) );
+                        }
+                    } catch ( final Exception e ) {
+                        logger.warn( "Could not persist lock change of " + write.lock.toURI(), e );
+                    }
+                }
+            } finally {
+                ioService.endBatch();
+                dropReleased( writes );
+            }
+        }
+    }
+
+    /**
+     * Drops the released locks whose change was persisted and not superseded since.
+     */
+    private void dropReleased( final List<PendingWrite> writes ) {
+        synchronized ( pending ) {
+            for ( final PendingWrite write : writes ) {
+                if ( write.lockedBy == null && !pending.containsKey( write.key ) ) {
+                    locks.remove( write.key, UNLOCKED );
+                }
+            }
+        }
+    }
+
+    public int getPendingWrites() {
+        synchronized ( pending ) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Persists pending changes and stops the writer.
+     */
+    public void dispose() {
+        executor.shutdown();
+        flush();
+        if ( instance == this ) {
+            instance = null;
+        }
+    }
+
+    private LockEntry getEntry( final Path vfsLock ) {
+        final String key = key( vfsLock );
+        LockEntry entry = locks.get( key );
+        if ( entry == null ) {
+            if ( isLoaded( key ) ) {
+                // every held lock of a loaded directory is in the table
+                return UNLOCKED;
+            }
+            entry = readEntry( Paths.convert( vfsLock ) );
+            if ( entry.isLocked() ) {
+                final LockEntry existing = locks.putIfAbsent( key, entry );
+                if ( existing != null ) {
+                    entry = existing;
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Reads the lock from the file system again, unless a local change of it is still to be persisted.
+     */
+    private LockEntry reload( final String key,
+                              final Path vfsLock ) {
+        synchronized ( pending ) {
+            if ( pending.containsKey( key ) ) {
+                return getEntry( vfsLock );
+            }
+        }
+        final LockEntry entry = readEntry( Paths.convert( vfsLock ) );
+        if ( entry.isLocked() ) {
+            locks.put( key, entry );
+        } else {
+            locks.remove( key );
+        }
+        return entry;
+    }
+
+    private boolean isLoaded( final String key ) {
+        for ( final String loaded : loadedDirs ) {
+            if ( key.startsWith( loaded ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private LockEntry readEntry( final org.uberfire.java.nio.file.Path realLock ) {
+        if ( ioService.exists( realLock ) ) {
+            try {
+                return new LockEntry( ioService.readAllString( realLock ) );
+            } catch ( NoSuchFileException nsfe ) {
+                // Deleted between both calls, so it's no longer locked
+            }
+        }
+        return UNLOCKED;
+    }
+
+    private void loadDirectory( final Path lockDir,
+                                final String prefix ) {
+        if ( isLoaded( prefix ) ) {
+            return;
+        }
+
+        final List<Path> lockFiles = new ArrayList<Path>();
+        final org.uberfire.java.nio.file.Path dir = ioService.get( URI.create( lockDir.toURI() ) );
+        if ( dir != null ) {
+            retrieveLocks( dir, lockFiles );
+        }
+        for ( final Path lockFile : lockFiles ) {
+            // Entries already in memory might not have been persisted yet, so they win
+            if ( !locks.containsKey( key( lockFile ) ) ) {
+                getEntry( lockFile );
+            }
+        }
+        loadedDirs.add( prefix );
+    }
+
+    private void retrieveLocks( final org.uberfire.java.nio.file.Path path,
+                                final List<Path> accu ) {
+        if ( !Files.exists( path ) ) {
+            return;
+        }
+
+        final Filter<org.uberfire.java.nio.file.Path> filter = new Filter<org.uberfire.java.nio.file.Path>() {
+            @Override
+            public boolean accept( final org.uberfire.java.nio.file.Path entry ) throws org.uberfire.java.nio.IOException {
+                if ( Paths.convert( entry ).toURI().endsWith( PathFactory.LOCK_FILE_EXTENSION ) ) {
+                    accu.add( Paths.convert( entry ) );
+                } else if ( Files.isDirectory( entry ) ) {
+                    retrieveLocks( ioService.get( entry.toUri() ), accu );
+                }
+                return true;
+            }
+        };
+
+        final Iterator<org.uberfire.java.nio.file.Path> it = ioService.newDirectoryStream( path, filter ).iterator();
+        while ( it.hasNext() ) {
+            it.next();
+        }
+    }
+
+    private void scheduleWrite( final String key,
+                                final Path vfsLock,
+                                final String lockedBy ) {
+        synchronized ( pending ) {
+            // Only the last change of a lock matters
+            pending.remove( key );
+            pending.put( key, new PendingWrite( key, vfsLock, lockedBy ) );
+            if ( !flushScheduled ) {
+                flushScheduled = true;
+                executor.schedule( new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, flushDelay, TimeUnit.MILLISECONDS );
+            }
+        }
+    }
+
+    private void broadcast( final ClusterService cluster,
+                            final LockMessageType type,
+                            final String key,
+                            final String lockedBy ) {
+        if ( cluster == null ) {
+            return;
+        }
+        final Map<String, String> content = new HashMap<String, String>();
+        content.put( "key", key );
+        if ( lockedBy != null ) {
+            content.put( "lockedBy", lockedBy );
+        }
+        try {
+            cluster.broadcastAndWait( SERVICE_ID, type, content, CLUSTER_TIMEOUT );
+        } catch ( final Exception e ) {
+            logger.warn( "Could not propagate lock change of " + key + " to the cluster", e );
+        }
+    }
+
+    private static String key( final Path path ) {
+        final String uri = path.toURI();
+        final int schemeEnd = uri.indexOf( "://" );
+        return schemeEnd < 0 ? uri : uri.substring( schemeEnd + 3 );
+    }
+
+    private static Path lockPath( final Path lockDir,
+                                  final String key ) {
+        final String dirUri = lockDir.toURI();
+        final int schemeEnd = dirUri.indexOf( "://" );
+        final String uri = ( schemeEnd < 0 ? "" : dirUri.substring( 0, schemeEnd + 3 ) ) + key;
+        return PathFactory.newPath( uri.substring( uri.lastIndexOf( '/' ) + 1 ), uri );
+    }
+
+    private static class LockEntry {
+
+        private final String lockedBy;
+
+        LockEntry( final String lockedBy ) {
+            this.lockedBy = lockedBy;
+        }
+
+        boolean isLocked() {
+            return lockedBy != null;
+        }
+
+        LockInfo toLockInfo( final Path path,
+                             final Path vfsLock ) {
+            return new LockInfo( isLocked(), lockedBy, path, vfsLock );
+        }
+    }
+
+    private static class PendingWrite {
+
+        private final String key;
+        private final Path lock;
+        private final String lockedBy;
+
+        PendingWrite( final String key,
+                      final Path lock,
+                      final String lockedBy ) {
+            this.key = key;
+            this.lock = lock;
+            this.lockedBy = lockedBy;
+        }
+    }
+}
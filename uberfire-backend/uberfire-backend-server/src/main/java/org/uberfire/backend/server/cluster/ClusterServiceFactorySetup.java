@@ -17,6 +17,7 @@
 package org.uberfire.backend.server.cluster;
 
 import org.uberfire.commons.cluster.ClusterServiceFactory;
+import org.uberfire.io.impl.cluster.helix.ClusterServiceHelix;
 
 public final class ClusterServiceFactorySetup {
 
@@ -26,11 +27,12 @@ public final class ClusterServiceFactorySetup {
         final String localId = System.getProperty( "org.uberfire.cluster.local.id", null );
         final String resourceName = System.getProperty( "org.uberfire.cluster.vfs.lock", null );
         final boolean autostart = Boolean.parseBoolean( System.getProperty( "org.uberfire.cluster.autostart", "true" ) );
+        final int partitions = Integer.getInteger( "org.uberfire.cluster.vfs.lock.partitions", ClusterServiceHelix.DEFAULT_PARTITIONS );
 
         if ( clusterName == null || zkAddress == null || localId == null || resourceName == null ) {
             return null;
         }
 
-        return new ClusterServiceFactorySimpleImpl( clusterName, zkAddress, localId, resourceName, autostart );
+        return new ClusterServiceFactorySimpleImpl( clusterName, zkAddress, localId, resourceName, partitions, autostart );
     }
 }
@@ -31,6 +31,7 @@ public class ClusterServiceFactorySimpleImpl implements ClusterServiceFactory {
     private final String zkAddress;
     private final String localId;
     private final String resourceName;
+    private final int partitions;
     private final boolean autostart;
 
     public ClusterServiceFactorySimpleImpl( final String clusterName,
@@ -38,17 +39,27 @@ public class ClusterServiceFactorySimpleImpl implements ClusterServiceFactory {
                                             final String localId,
                                             final String resourceName,
                                             final boolean autostart ) {
+        this( clusterName, zkAddress, localId, resourceName, ClusterServiceHelix.DEFAULT_PARTITIONS, autostart );
+    }
+
+    public ClusterServiceFactorySimpleImpl( final String clusterName,
+                                            final String zkAddress,
+                                            final String localId,
+                                            final String resourceName,
+                                            final int partitions,
+                                            final boolean autostart ) {
         this.clusterName = clusterName;
         this.zkAddress = zkAddress;
         this.localId = localId;
         this.resourceName = resourceName;
+        this.partitions = partitions;
         this.autostart = autostart;
     }
 
     @Override
     public synchronized ClusterService build( final MessageHandlerResolver resolver ) {
         if ( clusterService == null ) {
-            clusterService = new ClusterServiceHelix( clusterName, zkAddress, localId, resourceName, resolver );
+            clusterService = new ClusterServiceHelix( clusterName, zkAddress, localId, resourceName, partitions, resolver );
         } else {
             clusterService.addMessageHandlerResolver( resolver );
         }
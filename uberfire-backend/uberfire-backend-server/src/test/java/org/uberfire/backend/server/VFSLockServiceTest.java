@@ -24,6 +24,9 @@ import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -48,6 +51,7 @@ import org.uberfire.backend.vfs.Path;
 import org.uberfire.backend.vfs.PathFactory;
 import org.uberfire.backend.vfs.impl.LockInfo;
 import org.uberfire.backend.vfs.impl.LockResult;
+import org.uberfire.commons.cluster.ClusterService;
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.NoSuchFileException;
@@ -130,21 +134,33 @@ public class VFSLockServiceTest {
     }
     
     @Test
-    // Unfortunately, batching is required for ensuring writes are properly 
-    // replicated in the cluster. This needs to addressed in a future version 
-    // of UF: https://issues.jboss.org/browse/UF-242
-    public void acquireLockUsesBatch() {
+    // Batching is required for ensuring writes are properly replicated in the cluster
+    public void acquireLockIsPersistedInBatch() {
         when( ioService.exists( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( false );
 
         lockService.acquireLock( path );
+        lockService.getRegistry().flush();
 
         final InOrder inOrder = inOrder( ioService );
-        inOrder.verify( ioService ).startBatch( fileSystem );
         inOrder.verify( ioService ).exists( any( org.uberfire.java.nio.file.Path.class ) );
-        inOrder.verify( ioService ).write( any( org.uberfire.java.nio.file.Path.class ), any( String.class ) );
+        inOrder.verify( ioService ).startBatch( fileSystem );
+        inOrder.verify( ioService ).write( any( org.uberfire.java.nio.file.Path.class ), eq( "testUser" ) );
         inOrder.verify( ioService ).endBatch();
     }
-    
+
+    @Test
+    public void lockIsReadOnlyOnce() {
+        when( ioService.exists( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( true );
+        when( ioService.readAllString( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( "some-other-user" );
+
+        lockService.retrieveLockInfo( path );
+        lockService.retrieveLockInfo( path );
+        assertFalse( lockService.acquireLock( path ).isSuccess() );
+
+        verify( ioService, times( 1 ) ).exists( any( org.uberfire.java.nio.file.Path.class ) );
+        verify( ioService, times( 1 ) ).readAllString( any( org.uberfire.java.nio.file.Path.class ) );
+    }
+
     @Test
     public void releaseLockSucceedsIfLockOwned() {
         when(ioService.exists( any(org.uberfire.java.nio.file.Path.class) )).thenReturn( true );
@@ -206,25 +222,86 @@ public class VFSLockServiceTest {
     }
     
     @Test
-    // Unfortunately, batching is required for ensuring writes are properly 
-    // replicated in the cluster. This needs to addressed in a future version 
-    // of UF: https://issues.jboss.org/browse/UF-242
-    public void releaseLockUsesBatch() {
+    // Batching is required for ensuring writes are properly replicated in the cluster
+    public void releaseLockIsPersistedInBatch() {
         lockService.acquireLock( path );
-        
-        when(ioService.exists( any(org.uberfire.java.nio.file.Path.class) )).thenReturn( true );
-        when(ioService.readAllString( any(org.uberfire.java.nio.file.Path.class) )).thenReturn( "testUser" );
-        
+        lockService.getRegistry().flush();
+
         lockService.releaseLock( path );
-        
-        final InOrder inOrder = inOrder(ioService);
-        inOrder.verify(ioService).startBatch( fileSystem );
-        inOrder.verify(ioService).exists( any(org.uberfire.java.nio.file.Path.class) );
-        inOrder.verify(ioService).readAllString( any(org.uberfire.java.nio.file.Path.class) );
-        inOrder.verify(ioService).delete( any(org.uberfire.java.nio.file.Path.class) );
-        inOrder.verify(ioService).endBatch( );
+        lockService.getRegistry().flush();
+
+        final InOrder inOrder = inOrder( ioService );
+        inOrder.verify( ioService ).startBatch( fileSystem );
+        inOrder.verify( ioService ).write( any( org.uberfire.java.nio.file.Path.class ), eq( "testUser" ) );
+        inOrder.verify( ioService ).endBatch();
+        inOrder.verify( ioService ).startBatch( fileSystem );
+        inOrder.verify( ioService ).deleteIfExists( any( org.uberfire.java.nio.file.Path.class ) );
+        inOrder.verify( ioService ).endBatch();
     }
-    
+
+    @Test
+    public void lockChangesAreCoalesced() {
+        final VFSLockRegistry registry = new VFSLockRegistry( ioService, fileSystem, 60000 );
+        registry.lock( path, "testUser" );
+        registry.unlock( path, "testUser", false );
+        registry.lock( path, "testUser" );
+        assertEquals( 1, registry.getPendingWrites() );
+
+        registry.flush();
+        verify( ioService, times( 1 ) ).startBatch( fileSystem );
+        verify( ioService, times( 1 ) ).write( any( org.uberfire.java.nio.file.Path.class ), eq( "testUser" ) );
+        verify( ioService, never() ).deleteIfExists( any( org.uberfire.java.nio.file.Path.class ) );
+        registry.dispose();
+    }
+
+    @Test
+    public void unlockedFilesAreNotKept() {
+        when( ioService.exists( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( false );
+
+        lockService.retrieveLockInfo( path );
+        lockService.retrieveLockInfo( path );
+
+        verify( ioService, times( 2 ) ).exists( any( org.uberfire.java.nio.file.Path.class ) );
+    }
+
+    @Test
+    public void releasedLocksAreDroppedOnceFlushed() {
+        final VFSLockRegistry registry = new VFSLockRegistry( ioService, fileSystem, 60000 );
+        registry.lock( path, "testUser" );
+        registry.unlock( path, "testUser", false );
+        // not read back while the release is pending
+        assertFalse( registry.getLockInfo( path ).isLocked() );
+        verify( ioService, times( 1 ) ).exists( any( org.uberfire.java.nio.file.Path.class ) );
+
+        registry.flush();
+        assertFalse( registry.getLockInfo( path ).isLocked() );
+        verify( ioService, times( 2 ) ).exists( any( org.uberfire.java.nio.file.Path.class ) );
+        registry.dispose();
+    }
+
+    @Test
+    public void clusteredLocksAreReadAgainAndPersistedUnderTheClusterLock() {
+        final ClusterService clusterService = mock( ClusterService.class );
+        final VFSLockRegistry registry = new VFSLockRegistry( ioService, fileSystem, 60000 );
+        registry.setClusterService( clusterService );
+
+        when( ioService.exists( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( false );
+        assertTrue( registry.lock( path, "testUser" ).isLocked() );
+        assertEquals( 0, registry.getPendingWrites() );
+
+        final InOrder inOrder = inOrder( clusterService, ioService );
+        inOrder.verify( clusterService ).lock( VFSLockRegistry.SERVICE_ID );
+        inOrder.verify( ioService ).write( any( org.uberfire.java.nio.file.Path.class ), eq( "testUser" ) );
+        inOrder.verify( clusterService ).unlock( VFSLockRegistry.SERVICE_ID );
+
+        // released and taken by another node since
+        when( ioService.exists( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( true );
+        when( ioService.readAllString( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( "some-other-user" );
+        final LockInfo info = registry.lock( path, "testUser" );
+        assertEquals( "some-other-user", info.lockedBy() );
+        registry.dispose();
+    }
+
     @Test
     public void retrieveLockInfoForLockedFile() {
         when( ioService.exists( any( org.uberfire.java.nio.file.Path.class ) ) ).thenReturn( true );
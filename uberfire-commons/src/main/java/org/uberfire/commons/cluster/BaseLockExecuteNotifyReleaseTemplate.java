@@ -29,7 +29,9 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
     public V execute( final ClusterService clusterService,
                       final RunnableFuture<V> task ) {
         try {
-            clusterService.lock();
+            lock( clusterService );
+
+            beforeExecute();
 
             task.run();
 
@@ -43,11 +45,42 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
         } catch ( final Exception e ) {
             throwException( e );
         } finally {
-            clusterService.unlock();
+            unlock( clusterService );
         }
         return null;
     }
 
+    /**
+     * Resources to lock instead of the whole cluster; null means a cluster wide lock.
+     */
+    public String[] getLockedResources() {
+        return null;
+    }
+
+    /**
+     * Called once the lock is held, right before the task runs.
+     */
+    protected void beforeExecute() {
+    }
+
+    private void lock( final ClusterService clusterService ) {
+        final String[] resources = getLockedResources();
+        if ( resources == null ) {
+            clusterService.lock();
+        } else {
+            clusterService.lock( resources );
+        }
+    }
+
+    private void unlock( final ClusterService clusterService ) {
+        final String[] resources = getLockedResources();
+        if ( resources == null ) {
+            clusterService.unlock();
+        } else {
+            clusterService.unlock( resources );
+        }
+    }
+
     private void throwException( final Throwable e ) {
         if ( e instanceof RuntimeException ) {
             throw (RuntimeException) e;
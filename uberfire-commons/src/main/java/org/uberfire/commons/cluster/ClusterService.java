@@ -30,4 +30,12 @@ public interface ClusterService extends MessageService,
     void onStart( Runnable runnable );
 
     int getHoldCount();
+
+    /**
+     * Cluster wide lock scoped to the given resources (e.g. file system ids); locks on unrelated resources
+     * don't block each other. Implementations acquire the underlying locks in a fixed order.
+     */
+    void lock( final String... resourceIds );
+
+    void unlock( final String... resourceIds );
 }
@@ -28,6 +28,7 @@ import java.util.Set;
 
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.*;
 import org.uberfire.java.nio.file.InterruptedException;
@@ -76,6 +77,13 @@ public class MockIOService
 
     }
 
+    @Override
+    public void commit( FileSystem fs,
+                        ChangeSet changes,
+                        Option... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+
+    }
+
     @Override
     public FileAttribute<?>[] convert(Map<String, ?> stringMap) {
         return new FileAttribute<?>[0];
@@ -16,6 +16,8 @@
 
 package org.uberfire.ext.metadata.engine;
 
+import java.util.Map;
+
 import org.uberfire.commons.lifecycle.PriorityDisposable;
 import org.uberfire.ext.metadata.model.KCluster;
 import org.uberfire.ext.metadata.model.KObject;
@@ -44,5 +46,17 @@ public interface MetaIndexEngine extends PriorityDisposable {
 
     void commit( final KCluster cluster );
 
+    /**
+     * Returns the checkpoint stored with the last commit of the cluster index, e.g. the commit ids of the branches
+     * its content was built from, or null if there is none.
+     */
+    Map<String, String> getCheckpoint( final KCluster cluster );
+
+    /**
+     * Stores the checkpoint and commits the cluster index, so both can't get out of sync.
+     */
+    void setCheckpoint( final KCluster cluster,
+                        final Map<String, String> checkpoint );
+
     void beforeDispose( final Runnable callback );
 }
@@ -32,10 +32,28 @@ public interface IOSearchService {
                                final Filter filter,
                                final Path... roots );
 
+    SearchPage<Path> searchByAttrs( final Map<String, ?> attrs,
+                                    final Filter filter,
+                                    final SearchPageRequest page,
+                                    final Path... roots );
+
+    SearchPage<Path> fullTextSearch( final String term,
+                                     final Filter filter,
+                                     final SearchPageRequest page,
+                                     final Path... roots );
+
+    int searchByAttrsHits( final Map<String, ?> attrs,
+                           final Path... roots );
+
+    int fullTextSearchHits( final String term,
+                            final Path... roots );
+
     int searchByAttrsHits( final Map<String, ?> attrs,
+                           final Filter filter,
                            final Path... roots );
 
     int fullTextSearchHits( final String term,
+                            final Filter filter,
                             final Path... roots );
 
     interface Filter {
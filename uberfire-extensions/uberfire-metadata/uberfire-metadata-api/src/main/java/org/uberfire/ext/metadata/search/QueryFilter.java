@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.search;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.uberfire.ext.metadata.model.KObject;
+import org.uberfire.ext.metadata.model.KProperty;
+
+import static java.util.Arrays.*;
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Declarative {@link IOSearchService.Filter}: search backends able to do so evaluate it as part of the query, so
+ * rejected objects are neither loaded nor counted as hits. Criteria of different kinds must all match; for a given
+ * kind, any of its values may match.
+ * <p>
+ * {@link #accept(KObject)} evaluates the same criteria on a loaded object, for backends that can't.
+ */
+public class QueryFilter implements IOSearchService.Filter {
+
+    private final Set<String> types = new LinkedHashSet<String>();
+    private final Set<String> keyPrefixes = new LinkedHashSet<String>();
+    private final Set<String> segmentIds = new LinkedHashSet<String>();
+    private final Map<String, Range> ranges = new LinkedHashMap<String, Range>();
+
+    public QueryFilter types( final String... types ) {
+        this.types.addAll( asList( checkNotNull( "types", types ) ) );
+        return this;
+    }
+
+    public QueryFilter keyPrefixes( final String... keyPrefixes ) {
+        this.keyPrefixes.addAll( asList( checkNotNull( "keyPrefixes", keyPrefixes ) ) );
+        return this;
+    }
+
+    public QueryFilter segments( final String... segmentIds ) {
+        this.segmentIds.addAll( asList( checkNotNull( "segmentIds", segmentIds ) ) );
+        return this;
+    }
+
+    /**
+     * Restricts a numeric, date or time attribute to the given inclusive range; a null bound leaves that side open.
+     * Search backends may reject attributes that aren't searchable, or aren't numeric.
+     */
+    public QueryFilter range( final String attribute,
+                              final Long from,
+                              final Long to ) {
+        ranges.put( checkNotNull( "attribute", attribute ), new Range( from, to ) );
+        return this;
+    }
+
+    public QueryFilter range( final String attribute,
+                              final DateRange range ) {
+        checkNotNull( "range", range );
+        return range( attribute,
+                      range.after() == null ? null : range.after().getTime(),
+                      range.before() == null ? null : range.before().getTime() );
+    }
+
+    public Set<String> getTypes() {
+        return Collections.unmodifiableSet( types );
+    }
+
+    public Set<String> getKeyPrefixes() {
+        return Collections.unmodifiableSet( keyPrefixes );
+    }
+
+    public Set<String> getSegmentIds() {
+        return Collections.unmodifiableSet( segmentIds );
+    }
+
+    public Map<String, Range> getRanges() {
+        return Collections.unmodifiableMap( ranges );
+    }
+
+    @Override
+    public boolean accept( final KObject kObject ) {
+        if ( !types.isEmpty() && !types.contains( kObject.getType().getName() ) ) {
+            return false;
+        }
+        if ( !segmentIds.isEmpty() && !segmentIds.contains( kObject.getSegmentId() ) ) {
+            return false;
+        }
+        if ( !keyPrefixes.isEmpty() && !startsWithAny( kObject.getKey() ) ) {
+            return false;
+        }
+        for ( final Map.Entry<String, Range> entry : ranges.entrySet() ) {
+            if ( !entry.getValue().contains( valueOf( kObject, entry.getKey() ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWithAny( final String key ) {
+        for ( final String keyPrefix : keyPrefixes ) {
+            if ( key.startsWith( keyPrefix ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Number valueOf( final KObject kObject,
+                            final String attribute ) {
+        for ( final KProperty<?> property : kObject.getProperties() ) {
+            if ( property.getName().equals( attribute ) ) {
+                final Object value = property.getValue();
+                if ( value instanceof Number ) {
+                    return (Number) value;
+                }
+                if ( value instanceof Date ) {
+                    return ( (Date) value ).getTime();
+                }
+                if ( value != null ) {
+                    try {
+                        return Long.valueOf( value.toString() );
+                    } catch ( final NumberFormatException ignored ) {
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof QueryFilter ) ) {
+            return false;
+        }
+        final QueryFilter that = (QueryFilter) o;
+        return types.equals( that.types ) &&
+                keyPrefixes.equals( that.keyPrefixes ) &&
+                segmentIds.equals( that.segmentIds ) &&
+                ranges.equals( that.ranges );
+    }
+
+    @Override
+    public int hashCode() {
+        int result = types.hashCode();
+        result = 31 * result + keyPrefixes.hashCode();
+        result = 31 * result + segmentIds.hashCode();
+        result = 31 * result + ranges.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryFilter{" +
+                "types=" + types +
+                ", keyPrefixes=" + keyPrefixes +
+                ", segmentIds=" + segmentIds +
+                ", ranges=" + ranges +
+                '}';
+    }
+
+    public static class Range {
+
+        private final Long from;
+        private final Long to;
+
+        Range( final Long from,
+               final Long to ) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public Long getFrom() {
+            return from;
+        }
+
+        public Long getTo() {
+            return to;
+        }
+
+        /**
+         * Floating point values are compared as such, as search backends do on fields indexed from them.
+         */
+        boolean contains( final Number value ) {
+            if ( value == null ) {
+                return false;
+            }
+            if ( value instanceof Double || value instanceof Float ) {
+                final double doubleValue = value.doubleValue();
+                return ( from == null || doubleValue >= from ) && ( to == null || doubleValue <= to );
+            }
+            final long longValue = value.longValue();
+            return ( from == null || longValue >= from ) && ( to == null || longValue <= to );
+        }
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof Range ) ) {
+                return false;
+            }
+            final Range range = (Range) o;
+            return ( from == null ? range.from == null : from.equals( range.from ) ) &&
+                    ( to == null ? range.to == null : to.equals( range.to ) );
+        }
+
+        @Override
+        public int hashCode() {
+            int result = from != null ? from.hashCode() : 0;
+            result = 31 * result + ( to != null ? to.hashCode() : 0 );
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + from + ".." + to + "]";
+        }
+    }
+}
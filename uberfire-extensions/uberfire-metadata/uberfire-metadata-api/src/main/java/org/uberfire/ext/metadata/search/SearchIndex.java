@@ -34,10 +34,40 @@ public interface SearchIndex {
                                   final IOSearchService.Filter filter,
                                   final ClusterSegment... clusterSegments );
 
+    /**
+     * Single pass paged search; the returned objects only carry their key, id, type, cluster and segment, not
+     * their properties.
+     */
+    SearchPage<KObject> searchByAttrs( final Map<String, ?> attrs,
+                                       final IOSearchService.Filter filter,
+                                       final SearchPageRequest page,
+                                       final ClusterSegment... clusterSegments );
+
+    /**
+     * Single pass paged search; the returned objects only carry their key, id, type, cluster and segment, not
+     * their properties.
+     */
+    SearchPage<KObject> fullTextSearch( final String term,
+                                        final IOSearchService.Filter filter,
+                                        final SearchPageRequest page,
+                                        final ClusterSegment... clusterSegments );
+
+    int searchByAttrsHits( final Map<String, ?> attrs,
+                           final ClusterSegment... clusterSegments );
+
+    int fullTextSearchHits( final String term,
+                            final ClusterSegment... clusterSegments );
+
+    /**
+     * Number of hits accepted by the filter; cheap for a {@link QueryFilter}, other filters require the matches to
+     * be loaded.
+     */
     int searchByAttrsHits( final Map<String, ?> attrs,
+                           final IOSearchService.Filter filter,
                            final ClusterSegment... clusterSegments );
 
     int fullTextSearchHits( final String term,
+                            final IOSearchService.Filter filter,
                             final ClusterSegment... clusterSegments );
 
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.search;
+
+import java.util.List;
+
+/**
+ * A page of search results.
+ */
+public class SearchPage<T> {
+
+    private final List<T> results;
+    private final int offset;
+    private final int totalHits;
+    private final boolean lastPage;
+
+    public SearchPage( final List<T> results,
+                       final int offset,
+                       final int totalHits,
+                       final boolean lastPage ) {
+        this.results = results;
+        this.offset = offset;
+        this.totalHits = totalHits;
+        this.lastPage = lastPage;
+    }
+
+    public List<T> getResults() {
+        return results;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Number of indexed objects matching the query and the {@link QueryFilter}, if any; other filters are not
+     * taken into account.
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    public boolean isLastPage() {
+        return lastPage;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.search;
+
+import static org.uberfire.commons.validation.PortablePreconditions.*;
+
+/**
+ * Range of results requested from a paged search, and the order they're sorted in.
+ */
+public class SearchPageRequest {
+
+    public enum Sort {
+        /**
+         * Best matches first.
+         */
+        RELEVANCE,
+        /**
+         * By key, i.e. by path.
+         */
+        KEY
+    }
+
+    private final int offset;
+    private final int limit;
+    private final Sort sort;
+    private final boolean reverse;
+
+    public SearchPageRequest( final int offset,
+                              final int limit ) {
+        this( offset, limit, Sort.RELEVANCE, false );
+    }
+
+    public SearchPageRequest( final int offset,
+                              final int limit,
+                              final Sort sort,
+                              final boolean reverse ) {
+        checkCondition( "offset should not be negative", offset >= 0 );
+        checkCondition( "limit should be greater than zero", limit > 0 );
+        this.offset = offset;
+        this.limit = limit;
+        this.sort = checkNotNull( "sort", sort );
+        this.reverse = reverse;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isReverse() {
+        return reverse;
+    }
+
+    /**
+     * Request for the page following this one.
+     */
+    public SearchPageRequest next() {
+        return new SearchPageRequest( offset + limit, limit, sort, reverse );
+    }
+}
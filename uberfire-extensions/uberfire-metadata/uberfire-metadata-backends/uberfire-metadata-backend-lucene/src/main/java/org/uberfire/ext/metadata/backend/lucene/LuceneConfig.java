@@ -16,10 +16,13 @@
 
 package org.uberfire.ext.metadata.backend.lucene;
 
+import java.util.Map;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.ext.metadata.MetadataConfig;
 import org.uberfire.ext.metadata.backend.lucene.fields.FieldFactory;
+import org.uberfire.ext.metadata.backend.lucene.index.IndexFootprint;
 import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndexEngine;
 import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndexFactory;
 import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndexManager;
@@ -27,6 +30,7 @@ import org.uberfire.ext.metadata.backend.lucene.search.LuceneSearchIndex;
 import org.uberfire.ext.metadata.engine.IndexManager;
 import org.uberfire.ext.metadata.engine.MetaIndexEngine;
 import org.uberfire.ext.metadata.engine.MetaModelStore;
+import org.uberfire.ext.metadata.model.KCluster;
 import org.uberfire.ext.metadata.search.SearchIndex;
 
 public class LuceneConfig implements MetadataConfig {
@@ -47,6 +51,7 @@ public class LuceneConfig implements MetadataConfig {
         this.indexManager = new LuceneIndexManager( indexFactory );
         this.analyzer = analyzer;
         this.searchIndex = new LuceneSearchIndex( this.indexManager,
+                                                  this.metaModelStore,
                                                   this.analyzer );
         this.indexEngine = new LuceneIndexEngine( this.fieldFactory,
                                                   this.metaModelStore,
@@ -69,6 +74,10 @@ public class LuceneConfig implements MetadataConfig {
         return indexManager;
     }
 
+    public Map<KCluster, IndexFootprint> getIndexFootprints() {
+        return indexManager.getFootprints();
+    }
+
     @Override
     public MetaModelStore getMetaModelStore() {
         return metaModelStore;
@@ -29,6 +29,8 @@ import org.uberfire.ext.metadata.backend.lucene.fields.SimpleFieldFactory;
 import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndex;
 import org.uberfire.ext.metadata.backend.lucene.index.directory.DirectoryFactory;
 import org.uberfire.ext.metadata.backend.lucene.index.directory.DirectoryType;
+import org.uberfire.ext.metadata.backend.lucene.index.directory.IndexWriterPool;
+import org.uberfire.ext.metadata.backend.lucene.metamodel.ClusteredMetaModelStore;
 import org.uberfire.ext.metadata.backend.lucene.metamodel.InMemoryMetaModelStore;
 import org.uberfire.ext.metadata.backend.lucene.metamodel.NullMetaModelStore;
 import org.uberfire.ext.metadata.engine.MetaModelStore;
@@ -40,6 +42,7 @@ public final class LuceneConfigBuilder {
     private MetaModelStore metaModelStore;
     private FieldFactory fieldFactory;
     private DirectoryType type;
+    private IndexWriterPool writerPool;
     private Analyzer analyzer;
     private Map<String, Analyzer> analyzers;
 
@@ -51,6 +54,15 @@ public final class LuceneConfigBuilder {
         return this;
     }
 
+    /**
+     * Keeps the metamodel of each cluster in a file inside its index directory, so it is available right after a
+     * restart. This is the default, unless indexes are kept in memory.
+     */
+    public LuceneConfigBuilder withPersistentMetaModelStore() {
+        this.metaModelStore = new ClusteredMetaModelStore( DirectoryFactory.defaultHostingDir() );
+        return this;
+    }
+
     public LuceneConfigBuilder withoutMemoryMetaModel() {
         this.metaModelStore = new NullMetaModelStore();
         return this;
@@ -90,16 +102,34 @@ public final class LuceneConfigBuilder {
         return this;
     }
 
+    /**
+     * Memory maps the index files, off the Java heap, and bounds the writers kept open across all clusters through
+     * a single pool, sized by system properties.
+     */
+    public LuceneConfigBuilder useSharedMMapDirectory() {
+        return useSharedMMapDirectory( new IndexWriterPool() );
+    }
+
+    public LuceneConfigBuilder useSharedMMapDirectory( final IndexWriterPool writerPool ) {
+        this.type = DirectoryType.MMAP;
+        this.writerPool = writerPool;
+        return this;
+    }
+
     public LuceneConfig build() {
+        if ( type == null ) {
+            withDefaultDirectory();
+        }
         if ( metaModelStore == null ) {
-            withoutMemoryMetaModel();
+            if ( type == DirectoryType.INMEMORY ) {
+                withInMemoryMetaModelStore();
+            } else {
+                withPersistentMetaModelStore();
+            }
         }
         if ( fieldFactory == null ) {
             withDefaultFieldFactory();
         }
-        if ( type == null ) {
-            withDefaultDirectory();
-        }
         if ( analyzers == null ) {
             withDefaultAnalyzers();
         }
@@ -110,7 +140,8 @@ public final class LuceneConfigBuilder {
         return new LuceneConfig( metaModelStore,
                                  fieldFactory,
                                  new DirectoryFactory( type,
-                                                       analyzer ),
+                                                       analyzer,
+                                                       writerPool ),
                                  analyzer );
     }
 
@@ -18,6 +18,7 @@ package org.uberfire.ext.metadata.backend.lucene.index;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexWriter;
@@ -43,6 +44,19 @@ public abstract class BaseLuceneIndex implements LuceneIndex {
         }
     }
 
+    @Override
+    public void indexDocuments( final Map<String, Document> docs ) {
+        if ( docs.isEmpty() ) {
+            return;
+        }
+        try {
+            deleteIfExists( docs.keySet().toArray( new String[ docs.size() ] ) );
+            writer().addDocuments( docs.values() );
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
     @Override
     public boolean deleteIfExists( final String... docIds ) {
         boolean deletedSomething = false;
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.ext.metadata.model.KCluster;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Group commit policy for cluster indexes. Searches run on near-real-time readers, so changes are visible right away;
+ * the durable (fsync'ed) commit only happens once a cluster has collected maxPendingChanges changes or its oldest
+ * uncommitted change is older than maxDelay, the latter checked by a background committer thread.
+ * <p>
+ * Indexes are flagged as uncommitted before their first pending change, so an index left behind by a crash is
+ * caught up from its checkpoint, or rebuilt from the file system if it has none, on the next start instead of
+ * silently missing the uncommitted window.
+ */
+public class IndexCommitter {
+
+    public static final String MAX_PENDING_CHANGES_PROPERTY = "org.uberfire.metadata.index.commit.changes";
+    public static final String MAX_DELAY_PROPERTY = "org.uberfire.metadata.index.commit.delay";
+
+    private static final Logger LOG = LoggerFactory.getLogger( IndexCommitter.class );
+
+    private final int maxPendingChanges;
+    private final long maxDelay;
+    private final Map<KCluster, PendingChanges> pending = new ConcurrentHashMap<KCluster, PendingChanges>();
+    private final ScheduledExecutorService executor;
+
+    public IndexCommitter() {
+        this( Integer.getInteger( MAX_PENDING_CHANGES_PROPERTY, 1000 ),
+              Long.getLong( MAX_DELAY_PROPERTY, 1000L ) );
+    }
+
+    /**
+     * @param maxPendingChanges changes after which a cluster is committed right away.
+     * @param maxDelay milliseconds after which pending changes are committed; zero or less commits every change.
+     */
+    public IndexCommitter( final int maxPendingChanges,
+                           final long maxDelay ) {
+        checkCondition( "maxPendingChanges should be greater than zero", maxPendingChanges > 0 );
+        this.maxPendingChanges = maxPendingChanges;
+        this.maxDelay = maxDelay;
+        if ( maxDelay > 0 ) {
+            this.executor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( final Runnable r ) {
+                    final Thread thread = new Thread( r, "uberfire-index-committer" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+            final long period = Math.max( 10, maxDelay / 2 );
+            this.executor.scheduleWithFixedDelay( new Runnable() {
+                @Override
+                public void run() {
+                    commitExpired();
+                }
+            }, period, period, TimeUnit.MILLISECONDS );
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Records a change on the index, committing it if the policy says so.
+     */
+    public void changed( final LuceneIndex index ) {
+        if ( maxDelay <= 0 ) {
+            index.commit();
+            return;
+        }
+
+        final PendingChanges changes = getPendingChanges( index );
+        final boolean commitNow;
+        synchronized ( changes ) {
+            if ( changes.count == 0 ) {
+                index.markUncommitted();
+                changes.since = System.currentTimeMillis();
+            }
+            changes.count++;
+            commitNow = changes.count >= maxPendingChanges;
+        }
+        if ( commitNow ) {
+            commit( changes );
+        }
+    }
+
+    /**
+     * Commits the index now, along with any change pending on it.
+     */
+    public void commit( final LuceneIndex index ) {
+        final PendingChanges changes = pending.get( index.getCluster() );
+        if ( changes == null ) {
+            index.commit();
+        } else {
+            synchronized ( changes ) {
+                index.commit();
+                changes.count = 0;
+            }
+        }
+    }
+
+    public int getPendingChanges( final KCluster cluster ) {
+        final PendingChanges changes = pending.get( cluster );
+        if ( changes == null ) {
+            return 0;
+        }
+        synchronized ( changes ) {
+            return changes.count;
+        }
+    }
+
+    /**
+     * Forgets the pending changes of a cluster, e.g. because its index got deleted.
+     */
+    public void remove( final KCluster cluster ) {
+        pending.remove( cluster );
+    }
+
+    /**
+     * Commits everything pending.
+     */
+    public void flush() {
+        for ( final PendingChanges changes : pending.values() ) {
+            commit( changes );
+        }
+    }
+
+    public void dispose() {
+        if ( executor != null ) {
+            executor.shutdownNow();
+        }
+        flush();
+    }
+
+    void commitExpired() {
+        final long now = System.currentTimeMillis();
+        for ( final PendingChanges changes : pending.values() ) {
+            final boolean expired;
+            synchronized ( changes ) {
+                expired = changes.count > 0 && now - changes.since >= maxDelay;
+            }
+            if ( expired ) {
+                try {
+                    commit( changes );
+                } catch ( final Exception ex ) {
+                    LOG.error( "Background commit of index '" + changes.index.getCluster().getClusterId() + "' failed.", ex );
+                }
+            }
+        }
+    }
+
+    private void commit( final PendingChanges changes ) {
+        synchronized ( changes ) {
+            if ( changes.count > 0 ) {
+                changes.index.commit();
+                changes.count = 0;
+            }
+        }
+    }
+
+    private PendingChanges getPendingChanges( final LuceneIndex index ) {
+        PendingChanges changes = pending.get( index.getCluster() );
+        if ( changes == null || changes.index != index ) {
+            synchronized ( pending ) {
+                changes = pending.get( index.getCluster() );
+                if ( changes == null || changes.index != index ) {
+                    changes = new PendingChanges( index );
+                    pending.put( index.getCluster(), changes );
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static class PendingChanges {
+
+        private final LuceneIndex index;
+        private int count = 0;
+        private long since;
+
+        PendingChanges( final LuceneIndex index ) {
+            this.index = index;
+        }
+    }
+}
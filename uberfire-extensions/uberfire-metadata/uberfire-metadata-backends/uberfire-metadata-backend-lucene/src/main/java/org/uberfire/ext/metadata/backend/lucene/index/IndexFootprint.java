@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.index;
+
+/**
+ * Memory footprint of a cluster index at a point in time; sizes are in bytes.
+ */
+public class IndexFootprint {
+
+    private final String clusterId;
+    private final boolean writerOpen;
+    private final long writerBufferSize;
+    private final long indexSize;
+    private final boolean onHeap;
+    private final long lastAccess;
+
+    public IndexFootprint( final String clusterId,
+                           final boolean writerOpen,
+                           final long writerBufferSize,
+                           final long indexSize,
+                           final boolean onHeap,
+                           final long lastAccess ) {
+        this.clusterId = clusterId;
+        this.writerOpen = writerOpen;
+        this.writerBufferSize = writerBufferSize;
+        this.indexSize = indexSize;
+        this.onHeap = onHeap;
+        this.lastAccess = lastAccess;
+    }
+
+    public String getClusterId() {
+        return clusterId;
+    }
+
+    public boolean isWriterOpen() {
+        return writerOpen;
+    }
+
+    /**
+     * Heap used by the writer for documents not flushed yet, zero when the writer is closed.
+     */
+    public long getWriterBufferSize() {
+        return writerBufferSize;
+    }
+
+    /**
+     * Size of the index files.
+     */
+    public long getIndexSize() {
+        return indexSize;
+    }
+
+    /**
+     * True if the index files are kept on the Java heap, false if they live on disk and are read through the OS
+     * page cache or memory mapped.
+     */
+    public boolean isOnHeap() {
+        return onHeap;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexFootprint{" +
+                "clusterId='" + clusterId + '\'' +
+                ", writerOpen=" + writerOpen +
+                ", writerBufferSize=" + writerBufferSize +
+                ", indexSize=" + indexSize +
+                ", onHeap=" + onHeap +
+                ", lastAccess=" + lastAccess +
+                '}';
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.uberfire.ext.metadata.backend.lucene.index;
 
+import java.util.Map;
+
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
@@ -28,9 +30,24 @@ public interface LuceneIndex extends Index {
 
     public static final String CUSTOM_FIELD_FILENAME = "filename";
 
+    /**
+     * Doc values of the object keys, used to sort search results by key.
+     */
+    public static final String SORT_KEY_FIELD = "key.sort";
+
+    /**
+     * Untokenized object keys, used to filter search results by key prefix.
+     */
+    public static final String KEY_TERM_FIELD = "key.term";
+
     void indexDocument( final String id,
                         final Document doc );
 
+    /**
+     * Replaces the documents with the given ids, if any, by the new ones, looking all of them up at once.
+     */
+    void indexDocuments( final Map<String, Document> docs );
+
     boolean deleteIfExists( final String... ids );
 
     void rename( final String sourceId,
@@ -44,4 +61,21 @@ public interface LuceneIndex extends Index {
 
     void nrtRelease( final IndexSearcher searcher );
 
+    /**
+     * Flags the index as having changes not yet committed, until the next {@link #commit()}.
+     */
+    void markUncommitted();
+
+    /**
+     * Returns the checkpoint the index got committed with, empty if none.
+     */
+    Map<String, String> getCheckpoint();
+
+    /**
+     * Sets the checkpoint to be stored by the next {@link #commit()}.
+     */
+    void setCheckpoint( final Map<String, String> checkpoint );
+
+    IndexFootprint getFootprint();
+
 }
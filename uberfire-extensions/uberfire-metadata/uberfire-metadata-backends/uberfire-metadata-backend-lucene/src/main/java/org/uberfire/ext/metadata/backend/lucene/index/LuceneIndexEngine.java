@@ -18,22 +18,26 @@ package org.uberfire.ext.metadata.backend.lucene.index;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.util.BytesRef;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.ext.metadata.backend.lucene.fields.FieldFactory;
+import org.uberfire.ext.metadata.backend.lucene.metamodel.ClusteredMetaModelStore;
 import org.uberfire.ext.metadata.engine.Index;
 import org.uberfire.ext.metadata.engine.MetaIndexEngine;
 import org.uberfire.ext.metadata.engine.MetaModelStore;
@@ -54,13 +58,22 @@ public class LuceneIndexEngine implements MetaIndexEngine {
     private final LuceneIndexManager indexManager;
     private final Map<KCluster, AtomicInteger> batchMode = new ConcurrentHashMap<KCluster, AtomicInteger>();
     private final Collection<Runnable> beforeDispose = new ArrayList<Runnable>();
+    private final IndexCommitter committer;
 
     public LuceneIndexEngine( final FieldFactory fieldFactory,
                               final MetaModelStore metaModelStore,
                               final LuceneIndexManager indexManager ) {
+        this( fieldFactory, metaModelStore, indexManager, new IndexCommitter() );
+    }
+
+    public LuceneIndexEngine( final FieldFactory fieldFactory,
+                              final MetaModelStore metaModelStore,
+                              final LuceneIndexManager indexManager,
+                              final IndexCommitter committer ) {
         this.fieldFactory = checkNotNull( "fieldFactory", fieldFactory );
         this.metaModelStore = checkNotNull( "metaModelStore", metaModelStore );
         this.indexManager = checkNotNull( "indexManager", indexManager );
+        this.committer = checkNotNull( "committer", committer );
         PriorityDisposableRegistry.register( this );
     }
 
@@ -92,7 +105,7 @@ public class LuceneIndexEngine implements MetaIndexEngine {
         index.indexDocument( object.getId(),
                              newDocument( object ) );
 
-        commitIfNotBatchMode( index.getCluster() );
+        commitIfNotBatchMode( index );
     }
 
     private Document newDocument( final KObject object ) {
@@ -107,6 +120,11 @@ public class LuceneIndexEngine implements MetaIndexEngine {
         doc.add( new TextField( "key",
                                 object.getKey(),
                                 Field.Store.YES ) );
+        doc.add( new SortedDocValuesField( LuceneIndex.SORT_KEY_FIELD,
+                                           new BytesRef( object.getKey() ) ) );
+        doc.add( new StringField( LuceneIndex.KEY_TERM_FIELD,
+                                  object.getKey(),
+                                  Field.Store.NO ) );
         doc.add( new StringField( "cluster.id",
                                   object.getClusterId(),
                                   Field.Store.YES ) );
@@ -138,8 +156,24 @@ public class LuceneIndexEngine implements MetaIndexEngine {
 
     @Override
     public void index( final KObject... objects ) {
+        final Map<LuceneIndex, Map<String, Document>> execution = new LinkedHashMap<LuceneIndex, Map<String, Document>>();
         for ( final KObject object : objects ) {
-            index( object );
+            updateMetaModel( object );
+
+            final LuceneIndex index = indexManager.indexOf( object );
+            Map<String, Document> docs = execution.get( index );
+            if ( docs == null ) {
+                docs = new LinkedHashMap<String, Document>();
+                execution.put( index, docs );
+            }
+            //last one wins, as if indexed one by one
+            docs.remove( object.getId() );
+            docs.put( object.getId(), newDocument( object ) );
+        }
+
+        for ( final Map.Entry<LuceneIndex, Map<String, Document>> entry : execution.entrySet() ) {
+            entry.getKey().indexDocuments( entry.getValue() );
+            commitIfNotBatchMode( entry.getKey() );
         }
     }
 
@@ -156,11 +190,16 @@ public class LuceneIndexEngine implements MetaIndexEngine {
         index.rename( from.getId(),
                       newDocument( to ) );
 
-        commitIfNotBatchMode( index.getCluster() );
+        commitIfNotBatchMode( index );
     }
 
     @Override
     public void delete( KCluster cluster ) {
+        committer.remove( cluster );
+        if ( metaModelStore instanceof ClusteredMetaModelStore ) {
+            // before the index directory holding it goes away
+            ( (ClusteredMetaModelStore) metaModelStore ).remove( cluster.getClusterId() );
+        }
         indexManager.delete( cluster );
     }
 
@@ -168,7 +207,7 @@ public class LuceneIndexEngine implements MetaIndexEngine {
     public void delete( final KObjectKey objectKey ) {
         final LuceneIndex index = indexManager.indexOf( objectKey );
         index.deleteIfExists( objectKey.getId() );
-        commitIfNotBatchMode( index.getCluster() );
+        commitIfNotBatchMode( index );
     }
 
     @Override
@@ -189,6 +228,7 @@ public class LuceneIndexEngine implements MetaIndexEngine {
 
         for ( final Map.Entry<LuceneIndex, List<String>> entry : execution.entrySet() ) {
             entry.getKey().deleteIfExists( entry.getValue().toArray( new String[ entry.getValue().size() ] ) );
+            commitIfNotBatchMode( entry.getKey() );
         }
     }
 
@@ -202,18 +242,51 @@ public class LuceneIndexEngine implements MetaIndexEngine {
         if ( batchStack != null ) {
             int value = batchStack.decrementAndGet();
             if ( value <= 0 ) {
-                index.commit();
+                commit( index );
                 batchMode.remove( cluster );
             }
+        } else {
+            commit( index );
+        }
+    }
+
+    @Override
+    public Map<String, String> getCheckpoint( final KCluster cluster ) {
+        final Index index = indexManager.get( cluster );
+        if ( !( index instanceof LuceneIndex ) ) {
+            return null;
+        }
+        final Map<String, String> checkpoint = ( (LuceneIndex) index ).getCheckpoint();
+        return checkpoint.isEmpty() ? null : checkpoint;
+    }
+
+    @Override
+    public void setCheckpoint( final KCluster cluster,
+                               final Map<String, String> checkpoint ) {
+        checkNotNull( "checkpoint", checkpoint );
+        final Index index = indexManager.get( cluster );
+        if ( index instanceof LuceneIndex ) {
+            ( (LuceneIndex) index ).setCheckpoint( checkpoint );
+            commit( index );
+        }
+    }
+
+    private void commit( final Index index ) {
+        if ( index instanceof LuceneIndex ) {
+            committer.commit( (LuceneIndex) index );
         } else {
             index.commit();
         }
     }
 
-    private synchronized void commitIfNotBatchMode( final KCluster cluster ) {
-        final AtomicInteger batchStack = batchMode.get( cluster );
+    /**
+     * Outside batches changes are handed to the committer, which groups them into fewer durable commits;
+     * searches see them right away through near-real-time readers.
+     */
+    private void commitIfNotBatchMode( final LuceneIndex index ) {
+        final AtomicInteger batchStack = batchMode.get( index.getCluster() );
         if ( batchStack == null || batchStack.get() <= 0 ) {
-            commit( cluster );
+            committer.changed( index );
         }
     }
 
@@ -224,6 +297,7 @@ public class LuceneIndexEngine implements MetaIndexEngine {
                 activeDispose.run();
             }
         }
+        committer.dispose();
     }
 
     @Override
@@ -237,23 +311,39 @@ public class LuceneIndexEngine implements MetaIndexEngine {
     }
 
     private void updateMetaModel( final KObject object ) {
-        final MetaObject metaObject = metaModelStore.getMetaObject( object.getType().getName() );
+        final MetaModelStore store = metaModelStoreOf( object );
+        final MetaObject metaObject = store.getMetaObject( object.getType().getName() );
         if ( metaObject == null ) {
-            metaModelStore.add( newMetaObect( object ) );
+            store.add( newMetaObect( object ) );
         } else {
+            boolean changed = false;
             for ( final KProperty property : object.getProperties() ) {
                 final MetaProperty metaProperty = metaObject.getProperty( property.getName() );
                 if ( metaProperty == null ) {
                     metaObject.addProperty( newMetaProperty( property ) );
+                    changed = true;
                 } else {
-                    metaProperty.addType( property.getValue().getClass() );
-                    if ( property.isSearchable() ) {
+                    if ( !metaProperty.getTypes().contains( property.getValue().getClass() ) ) {
+                        metaProperty.addType( property.getValue().getClass() );
+                        changed = true;
+                    }
+                    if ( property.isSearchable() && !metaProperty.isSearchable() ) {
                         metaProperty.setAsSearchable();
+                        changed = true;
                     }
                 }
             }
-            metaModelStore.update( metaObject );
+            if ( changed ) {
+                store.update( metaObject );
+            }
+        }
+    }
+
+    private MetaModelStore metaModelStoreOf( final KObject object ) {
+        if ( metaModelStore instanceof ClusteredMetaModelStore ) {
+            return ( (ClusteredMetaModelStore) metaModelStore ).forCluster( object.getClusterId() );
         }
+        return metaModelStore;
     }
 
     private MetaObject newMetaObect( final KObject object ) {
@@ -297,10 +387,12 @@ public class LuceneIndexEngine implements MetaIndexEngine {
     private MetaProperty newMetaProperty( final KProperty<?> property ) {
         return new MetaProperty() {
 
-            private boolean isSearchable = property.isSearchable();
-            private Set<Class<?>> types = new CopyOnWriteArraySet<Class<?>>() {{
-                add( property.getValue().getClass() );
-            }};
+            private volatile boolean isSearchable = property.isSearchable();
+            private final Set<Class<?>> types = Collections.newSetFromMap( new ConcurrentHashMap<Class<?>, Boolean>() );
+
+            {
+                types.add( property.getValue().getClass() );
+            }
 
             @Override
             public String getName() {
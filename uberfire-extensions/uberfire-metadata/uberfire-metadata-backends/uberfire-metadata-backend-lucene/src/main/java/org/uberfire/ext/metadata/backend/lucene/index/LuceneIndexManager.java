@@ -19,7 +19,9 @@ package org.uberfire.ext.metadata.backend.lucene.index;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -92,6 +94,10 @@ public class LuceneIndexManager implements IndexManager {
         return indexes.get( cluster );
     }
 
+    /**
+     * Returns a searcher over the indexes of the given clusters, or of all of them if none is given; it has to be
+     * handed back through {@link #release(IndexSearcher)}. A single cluster is searched through its shared searcher.
+     */
     public IndexSearcher getIndexSearcher( final ClusterSegment... clusterSegments ) {
         final Set<KCluster> clusters;
         if ( clusterSegments == null || clusterSegments.length == 0 ) {
@@ -103,22 +109,48 @@ public class LuceneIndexManager implements IndexManager {
             }
         }
 
-        final Collection<IndexReader> readers = new ArrayList<IndexReader>( clusters.size() );
+        final Map<LuceneIndex, IndexSearcher> searchers = new LinkedHashMap<LuceneIndex, IndexSearcher>( clusters.size() );
         for ( final KCluster cluster : clusters ) {
             final LuceneIndex index = indexes.get( cluster );
-            readers.add( index.nrtReader() );
+            if ( index != null ) {
+                searchers.put( index, index.nrtSearcher() );
+            }
+        }
+
+        if ( searchers.size() == 1 ) {
+            return searchers.values().iterator().next();
         }
 
         try {
-            return new SearcherFactory().newSearcher( new MultiReader( readers.toArray( new IndexReader[ readers.size() ] ) ), null );
+            final Collection<IndexReader> readers = new ArrayList<IndexReader>( searchers.size() );
+            for ( final IndexSearcher searcher : searchers.values() ) {
+                readers.add( searcher.getIndexReader() );
+            }
+            // the multi reader holds its own references to the sub readers, released when it gets closed
+            return new SearcherFactory().newSearcher( new MultiReader( readers.toArray( new IndexReader[ readers.size() ] ), false ), null );
         } catch ( IOException e ) {
             throw new RuntimeException( e );
+        } finally {
+            for ( final Map.Entry<LuceneIndex, IndexSearcher> entry : searchers.entrySet() ) {
+                entry.getKey().nrtRelease( entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * Returns the memory footprint of every cluster index.
+     */
+    public Map<KCluster, IndexFootprint> getFootprints() {
+        final Map<KCluster, IndexFootprint> result = new HashMap<KCluster, IndexFootprint>();
+        for ( final Map.Entry<KCluster, LuceneIndex> entry : indexes.entrySet() ) {
+            result.put( entry.getKey(), entry.getValue().getFootprint() );
         }
+        return result;
     }
 
     public void release( final IndexSearcher index ) {
         try {
-            index.getIndexReader().close();
+            index.getIndexReader().decRef();
         } catch ( IOException e ) {
             throw new RuntimeException( e );
         }
@@ -41,22 +41,44 @@ public class DirectoryFactory implements LuceneIndexFactory {
     private final Map<KCluster, LuceneIndex> clusters = new ConcurrentHashMap<KCluster, LuceneIndex>();
     private final DirectoryType type;
     private final Analyzer analyzer;
+    private final IndexWriterPool writerPool;
 
     public DirectoryFactory( final DirectoryType type,
                              final Analyzer analyzer ) {
+        this( type, analyzer, null );
+    }
+
+    /**
+     * @param writerPool if not null, writers are opened on demand and kept open within the bounds of the pool.
+     */
+    public DirectoryFactory( final DirectoryType type,
+                             final Analyzer analyzer,
+                             final IndexWriterPool writerPool ) {
         this.analyzer = analyzer;
         this.type = type;
+        this.writerPool = writerPool;
         final File[] files = defaultHostingDir().listFiles();
         if ( files != null && files.length > 0 ) {
             for ( final File file : files ) {
                 if ( file.isDirectory() ) {
                     final KCluster cluster = new KClusterImpl( file.getName() );
-                    clusters.put( cluster, type.newIndex( cluster, newConfig( analyzer ) ) );
+                    clusters.put( cluster, newIndex( cluster ) );
                 }
             }
         }
     }
 
+    private LuceneIndex newIndex( final KCluster cluster ) {
+        if ( writerPool == null ) {
+            return type.newIndex( cluster, newConfig( analyzer ) );
+        }
+        return new DirectoryLuceneIndex( cluster, type.newDirectory( cluster ), this, writerPool );
+    }
+
+    IndexWriterConfig newConfig() {
+        return newConfig( analyzer );
+    }
+
     private IndexWriterConfig newConfig( final Analyzer analyzer ) {
         final IndexWriterConfig config = new IndexWriterConfig( analyzer );
         final Codec codec = new Lucene53Codec() {
@@ -78,7 +100,7 @@ public class DirectoryFactory implements LuceneIndexFactory {
     public LuceneIndex newCluster( final KCluster kcluster ) {
         checkCondition( "Cluster already exists", !clusters.containsKey( checkNotNull( "kcluster", kcluster ) ) );
 
-        final LuceneIndex newIndex = type.newIndex( kcluster, newConfig( analyzer ) );
+        final LuceneIndex newIndex = newIndex( kcluster );
         clusters.put( kcluster, newIndex );
 
         return newIndex;
@@ -94,6 +116,10 @@ public class DirectoryFactory implements LuceneIndexFactory {
         return Collections.unmodifiableMap( clusters );
     }
 
+    public IndexWriterPool getWriterPool() {
+        return writerPool;
+    }
+
     @Override
     public synchronized void dispose() {
         for ( final LuceneIndex luceneIndex : clusters.values() ) {
@@ -17,15 +17,26 @@
 package org.uberfire.ext.metadata.backend.lucene.index.directory;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.RAMDirectory;
 import org.uberfire.ext.metadata.backend.lucene.index.BaseLuceneIndex;
+import org.uberfire.ext.metadata.backend.lucene.index.IndexFootprint;
 import org.uberfire.ext.metadata.model.KCluster;
 
 import static org.uberfire.commons.validation.Preconditions.*;
@@ -35,11 +46,28 @@ import static org.uberfire.commons.validation.Preconditions.*;
  */
 public class DirectoryLuceneIndex extends BaseLuceneIndex {
 
+    static final String UNCOMMITTED_MARKER = "uncommitted.lock";
+
+    /**
+     * Commit data entry holding the version of the documents layout; indexes of another version are rebuilt.
+     * Version 2 added the untokenized key field key prefix filters rely on.
+     */
+    static final String FORMAT_KEY = "index.format";
+    static final String FORMAT = "2";
+
     private final KCluster cluster;
-    private final IndexWriter writer;
     private final Directory directory;
+    private final DirectoryFactory factory;
+    private final IndexWriterPool pool;
+    private final ReentrantReadWriteLock writerLock = new ReentrantReadWriteLock();
+    private volatile IndexWriter writer;
+    private volatile SearcherManager searcherManager;
+    private SearcherManager committedSearcherManager;
+    private volatile boolean wipeOnOpen = false;
+    private volatile long lastAccess = System.currentTimeMillis();
     private AtomicBoolean freshIndex;
     private AtomicBoolean isDisposed = new AtomicBoolean( false );
+    private final AtomicBoolean uncommitted = new AtomicBoolean( false );
 
     public DirectoryLuceneIndex( final KCluster cluster,
                                  final Directory directory,
@@ -47,16 +75,199 @@ public class DirectoryLuceneIndex extends BaseLuceneIndex {
         try {
             this.cluster = checkNotNull( "cluster", cluster );
             this.directory = checkNotNull( "directory", directory );
-            this.writer = new IndexWriter( directory.getDirectory(), config );
+            this.factory = null;
+            this.pool = null;
+            this.freshIndex = new AtomicBoolean( directory.freshIndex() );
+            checkUncommitted();
+            checkFormat();
+            open( config );
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+    }
+
+    /**
+     * The writer is only opened on first use, and may be closed by the pool whenever it isn't in use.
+     */
+    DirectoryLuceneIndex( final KCluster cluster,
+                          final Directory directory,
+                          final DirectoryFactory factory,
+                          final IndexWriterPool pool ) {
+        try {
+            this.cluster = checkNotNull( "cluster", cluster );
+            this.directory = checkNotNull( "directory", directory );
+            this.factory = checkNotNull( "factory", factory );
+            this.pool = checkNotNull( "pool", pool );
             this.freshIndex = new AtomicBoolean( directory.freshIndex() );
+            checkUncommitted();
+            checkFormat();
         } catch ( final Exception ex ) {
             throw new RuntimeException( ex );
         }
     }
 
+    private void checkUncommitted() throws IOException {
+        if ( Arrays.asList( directory.getDirectory().listAll() ).contains( UNCOMMITTED_MARKER ) ) {
+            // changes were lost since the last commit: the marker stays until the next commit
+            uncommitted.set( true );
+            if ( withoutFormat( readCommittedCheckpoint() ).isEmpty() ) {
+                // nothing to catch up from, start over
+                wipeOnOpen = true;
+                freshIndex.set( true );
+            }
+        }
+    }
+
+    private void checkFormat() throws IOException {
+        if ( DirectoryReader.indexExists( directory.getDirectory() ) && !FORMAT.equals( readCommittedCheckpoint().get( FORMAT_KEY ) ) ) {
+            // documents lack fields searches rely on, start over
+            wipeOnOpen = true;
+            freshIndex.set( true );
+        }
+    }
+
+    private Map<String, String> withoutFormat( final Map<String, String> commitData ) {
+        final Map<String, String> checkpoint = new HashMap<String, String>( commitData );
+        checkpoint.remove( FORMAT_KEY );
+        return checkpoint;
+    }
+
+    private Map<String, String> readCommittedCheckpoint() throws IOException {
+        if ( !DirectoryReader.indexExists( directory.getDirectory() ) ) {
+            return Collections.emptyMap();
+        }
+        return SegmentInfos.readLatestCommit( directory.getDirectory() ).getUserData();
+    }
+
+    private void open( final IndexWriterConfig config ) throws IOException {
+        final IndexWriter newWriter = new IndexWriter( directory.getDirectory(), config );
+        if ( wipeOnOpen ) {
+            newWriter.deleteAll();
+            newWriter.setCommitData( Collections.singletonMap( FORMAT_KEY, FORMAT ) );
+            wipeOnOpen = false;
+        } else if ( !FORMAT.equals( newWriter.getCommitData().get( FORMAT_KEY ) ) ) {
+            // a new index
+            final Map<String, String> commitData = new HashMap<String, String>( newWriter.getCommitData() );
+            commitData.put( FORMAT_KEY, FORMAT );
+            newWriter.setCommitData( commitData );
+        }
+        searcherManager = new SearcherManager( newWriter, true, null );
+        writer = newWriter;
+        closeCommittedSearcherManager();
+    }
+
+    /**
+     * Read-locks the writer, reopening it if needed; it can't be evicted until the lock is released.
+     */
+    private Lock lockWriter() {
+        final Lock lock = writerLock.readLock();
+        while ( true ) {
+            lock.lock();
+            if ( writer != null || isDisposed.get() ) {
+                lastAccess = System.currentTimeMillis();
+                if ( pool != null ) {
+                    pool.touched( this );
+                }
+                return lock;
+            }
+            lock.unlock();
+            reopen();
+        }
+    }
+
+    /**
+     * The pool learns about the new writer before the write lock is released, so it can't be told about its eviction
+     * first; other writers are only evicted afterwards.
+     */
+    private void reopen() {
+        writerLock.writeLock().lock();
+        try {
+            if ( writer != null || isDisposed.get() ) {
+                return;
+            }
+            open( pool.configure( factory.newConfig() ) );
+            pool.opened( this );
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+        pool.evictExceeding( this );
+    }
+
+    /**
+     * Commits and closes the writer, unless it's in use. Searchers already acquired remain valid.
+     */
+    boolean evict() {
+        if ( !writerLock.writeLock().tryLock() ) {
+            return false;
+        }
+        try {
+            if ( writer == null || isDisposed.get() ) {
+                return false;
+            }
+            closeWriter();
+            if ( uncommitted.compareAndSet( true, false ) ) {
+                directory.getDirectory().deleteFile( UNCOMMITTED_MARKER );
+            }
+            return true;
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        } finally {
+            writerLock.writeLock().unlock();
+        }
+    }
+
     @Override
     public IndexWriter writer() {
-        return writer;
+        final Lock lock = lockWriter();
+        try {
+            return writer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void indexDocument( final String id,
+                               final Document doc ) {
+        final Lock lock = lockWriter();
+        try {
+            super.indexDocument( id, doc );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void indexDocuments( final Map<String, Document> docs ) {
+        final Lock lock = lockWriter();
+        try {
+            super.indexDocuments( docs );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteIfExists( final String... docIds ) {
+        final Lock lock = lockWriter();
+        try {
+            return super.deleteIfExists( docIds );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void rename( final String sourceId,
+                        final Document doc ) {
+        final Lock lock = lockWriter();
+        try {
+            super.rename( sourceId, doc );
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -66,56 +277,111 @@ public class DirectoryLuceneIndex extends BaseLuceneIndex {
 
     @Override
     public IndexReader nrtReader() {
+        final IndexSearcher searcher = nrtSearcher();
         try {
-            return DirectoryReader.open( writer, true );
-        } catch ( IOException e ) {
-            throw new RuntimeException( e );
+            final IndexReader reader = searcher.getIndexReader();
+            reader.incRef();
+            return reader;
+        } finally {
+            nrtRelease( searcher );
         }
     }
 
     @Override
     public void nrtRelease( final IndexReader reader ) {
         try {
-            reader.close();
+            reader.decRef();
         } catch ( IOException e ) {
             throw new RuntimeException( e );
         }
     }
 
+    /**
+     * Searchers are shared, and only reopened when the index changed since the last one was acquired. Searching an
+     * index whose writer got evicted doesn't reopen the writer, its last commit is searched instead.
+     */
     @Override
     public IndexSearcher nrtSearcher() {
+        writerLock.readLock().lock();
         try {
-            return new SearcherFactory().newSearcher( nrtReader(), null );
+            if ( writer == null && !isDisposed.get() && !wipeOnOpen && DirectoryReader.indexExists( directory.getDirectory() ) ) {
+                lastAccess = System.currentTimeMillis();
+                final SearcherManager manager = committedSearcherManager();
+                manager.maybeRefreshBlocking();
+                return manager.acquire();
+            }
         } catch ( IOException e ) {
             throw new RuntimeException( e );
+        } finally {
+            writerLock.readLock().unlock();
         }
-    }
 
-    @Override
-    public void nrtRelease( final IndexSearcher searcher ) {
+        final Lock lock = lockWriter();
         try {
-            searcher.getIndexReader().close();
+            searcherManager.maybeRefreshBlocking();
+            return searcherManager.acquire();
         } catch ( IOException e ) {
             throw new RuntimeException( e );
+        } finally {
+            lock.unlock();
         }
     }
 
+    private synchronized SearcherManager committedSearcherManager() throws IOException {
+        if ( committedSearcherManager == null ) {
+            committedSearcherManager = new SearcherManager( directory.getDirectory(), null );
+        }
+        return committedSearcherManager;
+    }
+
+    private synchronized void closeCommittedSearcherManager() throws IOException {
+        if ( committedSearcherManager != null ) {
+            committedSearcherManager.close();
+            committedSearcherManager = null;
+        }
+    }
+
+    /**
+     * Releases the reader directly, the searcher may outlive the manager it came from if the writer got evicted.
+     */
+    @Override
+    public void nrtRelease( final IndexSearcher searcher ) {
+        nrtRelease( searcher.getIndexReader() );
+    }
+
     @Override
     public void dispose() {
-        if ( isDisposed.get() ) {
-            return;
+        writerLock.writeLock().lock();
+        try {
+            if ( isDisposed.get() ) {
+                return;
+            }
+            if ( writer != null ) {
+                closeWriter();
+            }
+            closeCommittedSearcherManager();
+            directory.close();
+            isDisposed.set( true );
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        } finally {
+            writerLock.writeLock().unlock();
         }
-        closeWriter();
-        directory.close();
-        isDisposed.set( true );
     }
 
     private void closeWriter() {
         try {
+            searcherManager.close();
             writer.commit();
             writer.close();
         } catch ( IOException e ) {
             throw new RuntimeException( e );
+        } finally {
+            writer = null;
+            searcherManager = null;
+            if ( pool != null ) {
+                pool.closed( this );
+            }
         }
     }
 
@@ -124,20 +390,112 @@ public class DirectoryLuceneIndex extends BaseLuceneIndex {
         return freshIndex.get();
     }
 
+    /**
+     * An evicted writer was committed when closed, so there's nothing left to commit.
+     */
     @Override
     public void commit() {
+        writerLock.readLock().lock();
         try {
-            writer.commit();
+            if ( writer != null ) {
+                writer.commit();
+            }
             freshIndex.set( false );
+            if ( uncommitted.compareAndSet( true, false ) ) {
+                directory.getDirectory().deleteFile( UNCOMMITTED_MARKER );
+            }
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void markUncommitted() {
+        if ( uncommitted.compareAndSet( false, true ) ) {
+            try {
+                directory.getDirectory().createOutput( UNCOMMITTED_MARKER, IOContext.DEFAULT ).close();
+            } catch ( IOException e ) {
+                uncommitted.set( false );
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
+    @Override
+    public Map<String, String> getCheckpoint() {
+        writerLock.readLock().lock();
+        try {
+            final Map<String, String> commitData = writer != null ? writer.getCommitData() : readCommittedCheckpoint();
+            if ( commitData == null ) {
+                return Collections.emptyMap();
+            }
+            return Collections.unmodifiableMap( withoutFormat( commitData ) );
         } catch ( IOException e ) {
             throw new RuntimeException( e );
+        } finally {
+            writerLock.readLock().unlock();
         }
     }
 
+    @Override
+    public void setCheckpoint( final Map<String, String> checkpoint ) {
+        checkNotNull( "checkpoint", checkpoint );
+        final Lock lock = lockWriter();
+        try {
+            final Map<String, String> commitData = new HashMap<String, String>( checkpoint );
+            commitData.put( FORMAT_KEY, FORMAT );
+            writer.setCommitData( commitData );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public IndexFootprint getFootprint() {
+        final IndexWriter current = writer;
+        long writerBufferSize = 0;
+        if ( current != null ) {
+            try {
+                writerBufferSize = current.ramBytesUsed();
+            } catch ( final RuntimeException ignored ) {
+                // evicted meanwhile
+            }
+        }
+        long indexSize = 0;
+        try {
+            for ( final String file : directory.getDirectory().listAll() ) {
+                try {
+                    indexSize += directory.getDirectory().fileLength( file );
+                } catch ( final IOException ignored ) {
+                    // deleted meanwhile by a merge
+                }
+            }
+        } catch ( final Exception ignored ) {
+        }
+        return new IndexFootprint( cluster.getClusterId(),
+                                   current != null,
+                                   writerBufferSize,
+                                   indexSize,
+                                   directory.getDirectory() instanceof RAMDirectory,
+                                   lastAccess );
+    }
+
     @Override
     public void delete() {
-        closeWriter();
-        directory.delete();
-        isDisposed.set( true );
+        writerLock.writeLock().lock();
+        try {
+            if ( writer != null ) {
+                closeWriter();
+            }
+            closeCommittedSearcherManager();
+            directory.delete();
+            isDisposed.set( true );
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        } finally {
+            writerLock.writeLock().unlock();
+        }
     }
 }
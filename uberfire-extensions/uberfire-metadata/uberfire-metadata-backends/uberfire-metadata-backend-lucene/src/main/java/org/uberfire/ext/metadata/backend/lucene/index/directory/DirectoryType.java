@@ -30,19 +30,16 @@ import org.uberfire.ext.metadata.model.KCluster;
 public enum DirectoryType {
     INMEMORY {
         @Override
-        public LuceneIndex newIndex( final KCluster cluster,
-                                     final IndexWriterConfig config ) {
-            final Directory directory = new Directory( new RAMDirectory(), new DeleteCommand() {
+        public Directory newDirectory( final KCluster cluster ) {
+            return new Directory( new RAMDirectory(), new DeleteCommand() {
                 @Override
                 public void execute( org.apache.lucene.store.Directory directory ) {
                 }
             }, true );
-            return new DirectoryLuceneIndex( cluster, directory, config );
         }
     }, NIO {
         @Override
-        public LuceneIndex newIndex( final KCluster cluster,
-                                     final IndexWriterConfig config ) {
+        public Directory newDirectory( final KCluster cluster ) {
 
             final File clusterDir = clusterDir( cluster.getClusterId() );
             final NIOFSDirectory luceneDir;
@@ -52,20 +49,17 @@ public enum DirectoryType {
                 throw new org.uberfire.java.nio.IOException( e );
             }
 
-            final Directory directory = new Directory( luceneDir, new DeleteCommand() {
+            return new Directory( luceneDir, new DeleteCommand() {
                 @Override
                 public void execute( org.apache.lucene.store.Directory directory ) {
                     ( (NIOFSDirectory) directory ).close();
                     FileDeleteStrategy.FORCE.deleteQuietly( clusterDir );
                 }
             }, freshIndex( clusterDir ) );
-
-            return new DirectoryLuceneIndex( cluster, directory, config );
         }
     }, MMAP {
         @Override
-        public LuceneIndex newIndex( final KCluster cluster,
-                                     final IndexWriterConfig config ) {
+        public Directory newDirectory( final KCluster cluster ) {
             final File clusterDir = clusterDir( cluster.getClusterId() );
             final MMapDirectory luceneDir;
             try {
@@ -73,20 +67,22 @@ public enum DirectoryType {
             } catch ( IOException e ) {
                 throw new org.uberfire.java.nio.IOException( e );
             }
-            final Directory directory = new Directory( luceneDir, new DeleteCommand() {
+            return new Directory( luceneDir, new DeleteCommand() {
                 @Override
                 public void execute( org.apache.lucene.store.Directory directory ) {
                     ( (MMapDirectory) directory ).close();
                     FileDeleteStrategy.FORCE.deleteQuietly( clusterDir );
                 }
             }, freshIndex( clusterDir ) );
-
-            return new DirectoryLuceneIndex( cluster, directory, config );
         }
     };
 
-    public abstract LuceneIndex newIndex( final KCluster cluster,
-                                          final IndexWriterConfig config );
+    public abstract Directory newDirectory( final KCluster cluster );
+
+    public LuceneIndex newIndex( final KCluster cluster,
+                                 final IndexWriterConfig config ) {
+        return new DirectoryLuceneIndex( cluster, newDirectory( cluster ), config );
+    }
 
     private static File clusterDir( final String clusterId ) {
         return new File( DirectoryFactory.defaultHostingDir(), clusterId );
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.index.directory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexWriterConfig;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Bounds the writers kept open across all cluster indexes. Writers share a single RAM budget, split evenly among
+ * the ones allowed to be open at once; when one more gets opened the least recently used writer that isn't in use is
+ * committed and closed, to be reopened on demand.
+ */
+public class IndexWriterPool {
+
+    public static final String MAX_OPEN_WRITERS_PROPERTY = "org.uberfire.metadata.index.writers.max";
+    public static final String RAM_BUDGET_PROPERTY = "org.uberfire.metadata.index.writers.ram";
+
+    private final int maxOpenWriters;
+    private final double ramBudgetMB;
+
+    // access ordered, eldest first
+    private final LinkedHashMap<DirectoryLuceneIndex, Boolean> openWriters = new LinkedHashMap<DirectoryLuceneIndex, Boolean>( 16, 0.75f, true );
+
+    private final AtomicLong opened = new AtomicLong( 0 );
+    private final AtomicLong evicted = new AtomicLong( 0 );
+
+    public IndexWriterPool() {
+        this( Integer.getInteger( MAX_OPEN_WRITERS_PROPERTY, 32 ),
+              Integer.getInteger( RAM_BUDGET_PROPERTY, 256 ) );
+    }
+
+    /**
+     * @param maxOpenWriters writers kept open at once.
+     * @param ramBudgetMB megabytes of buffered documents shared by all the open writers.
+     */
+    public IndexWriterPool( final int maxOpenWriters,
+                            final double ramBudgetMB ) {
+        checkCondition( "maxOpenWriters should be greater than zero", maxOpenWriters > 0 );
+        checkCondition( "ramBudgetMB should be greater than zero", ramBudgetMB > 0 );
+        this.maxOpenWriters = maxOpenWriters;
+        this.ramBudgetMB = ramBudgetMB;
+    }
+
+    IndexWriterConfig configure( final IndexWriterConfig config ) {
+        config.setRAMBufferSizeMB( ramBudgetMB / maxOpenWriters );
+        return config;
+    }
+
+    void touched( final DirectoryLuceneIndex index ) {
+        synchronized ( openWriters ) {
+            openWriters.get( index );
+        }
+    }
+
+    /**
+     * To be called while the index still holds its write lock, so a concurrent eviction can't be reported first.
+     */
+    void opened( final DirectoryLuceneIndex index ) {
+        opened.incrementAndGet();
+        synchronized ( openWriters ) {
+            openWriters.put( index, Boolean.TRUE );
+        }
+    }
+
+    /**
+     * Evicts other writers until the pool is back within bounds; to be called once the index released its write
+     * lock, as evicting commits and closes writers.
+     */
+    void evictExceeding( final DirectoryLuceneIndex index ) {
+        final List<DirectoryLuceneIndex> candidates = new ArrayList<DirectoryLuceneIndex>();
+        synchronized ( openWriters ) {
+            if ( openWriters.size() <= maxOpenWriters ) {
+                return;
+            }
+            for ( final DirectoryLuceneIndex candidate : openWriters.keySet() ) {
+                if ( candidate != index ) {
+                    candidates.add( candidate );
+                }
+            }
+        }
+
+        // evicting locks the index, so it happens outside of the pool lock
+        for ( final DirectoryLuceneIndex candidate : candidates ) {
+            synchronized ( openWriters ) {
+                if ( openWriters.size() <= maxOpenWriters ) {
+                    return;
+                }
+            }
+            if ( candidate.evict() ) {
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    void closed( final DirectoryLuceneIndex index ) {
+        synchronized ( openWriters ) {
+            openWriters.remove( index );
+        }
+    }
+
+    public int getMaxOpenWriters() {
+        return maxOpenWriters;
+    }
+
+    public double getRamBudgetMB() {
+        return ramBudgetMB;
+    }
+
+    public int getOpenWriters() {
+        synchronized ( openWriters ) {
+            return openWriters.size();
+        }
+    }
+
+    /**
+     * Number of writers opened so far, reopens included.
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.metamodel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.uberfire.ext.metadata.engine.MetaModelStore;
+import org.uberfire.ext.metadata.model.schema.MetaObject;
+import org.uberfire.ext.metadata.model.schema.MetaProperty;
+import org.uberfire.ext.metadata.model.schema.MetaType;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * {@link MetaModelStore} keeping the metamodel of each cluster in a {@link PersistentMetaModelStore} file inside the
+ * cluster's index directory, so it is loaded along with the index and goes away when the index is deleted.
+ * <p>
+ * Objects are added and updated through the store of their cluster, see {@link #forCluster(String)}; lookups on this
+ * store merge the metamodels of every cluster. Cluster stores share a single thread for their background writes.
+ */
+public class ClusteredMetaModelStore implements MetaModelStore {
+
+    private final File hostingDir;
+    private final ConcurrentHashMap<String, PersistentMetaModelStore> clusters = new ConcurrentHashMap<String, PersistentMetaModelStore>();
+    private final ScheduledExecutorService executor = PersistentMetaModelStore.newFlushExecutor();
+
+    public ClusteredMetaModelStore( final File hostingDir ) {
+        this.hostingDir = checkNotNull( "hostingDir", hostingDir );
+        final File[] clusterDirs = hostingDir.listFiles();
+        if ( clusterDirs != null ) {
+            for ( final File clusterDir : clusterDirs ) {
+                if ( new File( clusterDir, PersistentMetaModelStore.FILE_NAME ).isFile() ) {
+                    forCluster( clusterDir.getName() );
+                }
+            }
+        }
+    }
+
+    public MetaModelStore forCluster( final String clusterId ) {
+        checkNotNull( "clusterId", clusterId );
+        PersistentMetaModelStore store = clusters.get( clusterId );
+        if ( store == null ) {
+            final PersistentMetaModelStore newStore = new PersistentMetaModelStore( new File( new File( hostingDir, clusterId ),
+                                                                                              PersistentMetaModelStore.FILE_NAME ),
+                                                                                    executor );
+            store = clusters.putIfAbsent( clusterId, newStore );
+            if ( store == null ) {
+                store = newStore;
+            } else {
+                newStore.discard();
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Forgets the metamodel of a cluster, without writing it; to be called before its index directory is deleted.
+     */
+    public void remove( final String clusterId ) {
+        final PersistentMetaModelStore store = clusters.remove( checkNotNull( "clusterId", clusterId ) );
+        if ( store != null ) {
+            store.discard();
+        }
+    }
+
+    @Override
+    public void add( final MetaObject metaObject ) {
+        throw new UnsupportedOperationException( "Metamodel is kept per cluster, use forCluster()." );
+    }
+
+    @Override
+    public void update( final MetaObject metaObject ) {
+        throw new UnsupportedOperationException( "Metamodel is kept per cluster, use forCluster()." );
+    }
+
+    /**
+     * The object of the only cluster holding the type, or else a read only merge of the objects of every cluster.
+     */
+    @Override
+    public MetaObject getMetaObject( final String type ) {
+        final List<MetaObject> found = new ArrayList<MetaObject>();
+        for ( final PersistentMetaModelStore store : clusters.values() ) {
+            final MetaObject metaObject = store.getMetaObject( type );
+            if ( metaObject != null ) {
+                found.add( metaObject );
+            }
+        }
+        if ( found.isEmpty() ) {
+            return null;
+        }
+        if ( found.size() == 1 ) {
+            return found.get( 0 );
+        }
+        return merge( found );
+    }
+
+    @Override
+    public void dispose() {
+        executor.shutdownNow();
+        for ( final PersistentMetaModelStore store : clusters.values() ) {
+            store.dispose();
+        }
+    }
+
+    private MetaObject merge( final List<MetaObject> metaObjects ) {
+        final MetaType type = metaObjects.get( 0 ).getType();
+        final Map<String, MergedMetaProperty> properties = new LinkedHashMap<String, MergedMetaProperty>();
+        for ( final MetaObject metaObject : metaObjects ) {
+            for ( final MetaProperty property : metaObject.getProperties() ) {
+                MergedMetaProperty merged = properties.get( property.getName() );
+                if ( merged == null ) {
+                    merged = new MergedMetaProperty( property.getName() );
+                    properties.put( property.getName(), merged );
+                }
+                merged.types.addAll( property.getTypes() );
+                merged.searchable |= property.isSearchable();
+            }
+        }
+        return new MetaObject() {
+            @Override
+            public MetaType getType() {
+                return type;
+            }
+
+            @Override
+            public Collection<MetaProperty> getProperties() {
+                return Collections.<MetaProperty>unmodifiableCollection( properties.values() );
+            }
+
+            @Override
+            public MetaProperty getProperty( final String name ) {
+                return properties.get( name );
+            }
+
+            @Override
+            public void addProperty( final MetaProperty metaProperty ) {
+                throw new UnsupportedOperationException( "Merged metamodel is read only." );
+            }
+        };
+    }
+
+    private static class MergedMetaProperty implements MetaProperty {
+
+        private final String name;
+        private final Set<Class<?>> types = new HashSet<Class<?>>();
+        private boolean searchable;
+
+        MergedMetaProperty( final String name ) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Set<Class<?>> getTypes() {
+            return Collections.unmodifiableSet( types );
+        }
+
+        @Override
+        public boolean isSearchable() {
+            return searchable;
+        }
+
+        @Override
+        public void setAsSearchable() {
+            throw new UnsupportedOperationException( "Merged metamodel is read only." );
+        }
+
+        @Override
+        public void addType( final Class<?> aClass ) {
+            throw new UnsupportedOperationException( "Merged metamodel is read only." );
+        }
+    }
+}
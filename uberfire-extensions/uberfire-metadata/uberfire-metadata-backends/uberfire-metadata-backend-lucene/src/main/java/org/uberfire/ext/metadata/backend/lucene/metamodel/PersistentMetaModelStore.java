@@ -0,0 +1,368 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.metamodel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.ext.metadata.engine.MetaModelStore;
+import org.uberfire.ext.metadata.model.schema.MetaObject;
+import org.uberfire.ext.metadata.model.schema.MetaProperty;
+import org.uberfire.ext.metadata.model.schema.MetaType;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * {@link MetaModelStore} kept in a file, so the metamodel survives restarts without reindexing.
+ * <p>
+ * Objects and properties are backed by concurrent maps and sets and updated in place. Changes only flag the store
+ * as dirty; a background thread writes the whole model, at most once per flush delay, to a temporary file that
+ * then replaces the previous one. Updates that change nothing don't trigger a write.
+ */
+public class PersistentMetaModelStore implements MetaModelStore {
+
+    public static final String FILE_NAME = ".metamodel";
+
+    private static final Logger LOG = LoggerFactory.getLogger( PersistentMetaModelStore.class );
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final String HEADER = "# uberfire metamodel v1";
+    private static final long FLUSH_DELAY = 1000;
+
+    private final File file;
+    private final ConcurrentHashMap<String, StoredMetaObject> metaModel = new ConcurrentHashMap<String, StoredMetaObject>();
+    private final AtomicBoolean dirty = new AtomicBoolean( false );
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private volatile boolean discarded = false;
+
+    public PersistentMetaModelStore( final File file ) {
+        this( file, newFlushExecutor(), true );
+    }
+
+    /**
+     * @param executor runs the background writes; left running on dispose, it's up to the caller to shut it down.
+     */
+    public PersistentMetaModelStore( final File file,
+                                     final ScheduledExecutorService executor ) {
+        this( file, executor, false );
+    }
+
+    private PersistentMetaModelStore( final File file,
+                                      final ScheduledExecutorService executor,
+                                      final boolean ownsExecutor ) {
+        this.file = checkNotNull( "file", file );
+        this.executor = checkNotNull( "executor", executor );
+        this.ownsExecutor = ownsExecutor;
+        load();
+    }
+
+    static ScheduledExecutorService newFlushExecutor() {
+        return Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread( r, "uberfire-metamodel-store" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    @Override
+    public void add( final MetaObject metaObject ) {
+        final StoredMetaObject stored = new StoredMetaObject( metaObject.getType().getName() );
+        for ( final MetaProperty property : metaObject.getProperties() ) {
+            stored.addProperty( property );
+        }
+        metaModel.put( stored.getType().getName(), stored );
+        changed();
+    }
+
+    @Override
+    public void update( final MetaObject metaObject ) {
+        if ( metaModel.get( metaObject.getType().getName() ) != metaObject ) {
+            add( metaObject );
+        } else {
+            changed();
+        }
+    }
+
+    @Override
+    public MetaObject getMetaObject( final String type ) {
+        return metaModel.get( type );
+    }
+
+    /**
+     * Writes pending changes right away.
+     */
+    public synchronized void flush() {
+        if ( discarded ) {
+            return;
+        }
+        if ( dirty.compareAndSet( true, false ) ) {
+            try {
+                write();
+            } catch ( final Exception ex ) {
+                dirty.set( true );
+                LOG.error( "Can't write the metamodel to '" + file + "'.", ex );
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if ( ownsExecutor ) {
+            executor.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Drops pending changes and stops writing, for a store whose file is about to be deleted.
+     */
+    public synchronized void discard() {
+        discarded = true;
+        if ( ownsExecutor ) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void changed() {
+        if ( dirty.compareAndSet( false, true ) ) {
+            try {
+                executor.schedule( new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                }, FLUSH_DELAY, TimeUnit.MILLISECONDS );
+            } catch ( final Exception ex ) {
+                // store already disposed
+                flush();
+            }
+        }
+    }
+
+    private void load() {
+        if ( !file.exists() ) {
+            return;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), UTF_8 ) );
+            try {
+                StoredMetaObject current = null;
+                String line;
+                while ( ( line = reader.readLine() ) != null ) {
+                    if ( line.startsWith( "T\t" ) ) {
+                        current = new StoredMetaObject( line.substring( 2 ) );
+                        metaModel.put( current.getType().getName(), current );
+                    } else if ( line.startsWith( "P\t" ) && current != null ) {
+                        final String[] parts = line.split( "\t", -1 );
+                        final StoredMetaProperty property = new StoredMetaProperty( parts[ 1 ], "1".equals( parts[ 2 ] ) );
+                        for ( final String className : parts[ 3 ].split( "," ) ) {
+                            final Class<?> type = loadClass( className );
+                            if ( type != null ) {
+                                property.addType( type );
+                            }
+                        }
+                        current.properties.put( property.getName(), property );
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            // nothing to write back
+            dirty.set( false );
+        } catch ( final Exception ex ) {
+            metaModel.clear();
+            LOG.error( "Can't read the metamodel from '" + file + "', starting from an empty one.", ex );
+        }
+    }
+
+    private void write() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if ( !parent.exists() && !parent.mkdirs() ) {
+            throw new IOException( "Can't create directory '" + parent + "'." );
+        }
+        final File temp = new File( parent, file.getName() + ".tmp" );
+        final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( temp ), UTF_8 ) );
+        try {
+            writer.write( HEADER );
+            writer.write( '\n' );
+            for ( final StoredMetaObject metaObject : metaModel.values() ) {
+                writer.write( "T\t" + metaObject.getType().getName() + '\n' );
+                for ( final MetaProperty property : metaObject.getProperties() ) {
+                    final StringBuilder types = new StringBuilder();
+                    for ( final Class<?> type : property.getTypes() ) {
+                        if ( types.length() > 0 ) {
+                            types.append( ',' );
+                        }
+                        types.append( type.getName() );
+                    }
+                    writer.write( "P\t" + property.getName() + '\t' + ( property.isSearchable() ? "1" : "0" ) + '\t' + types + '\n' );
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        try {
+            java.nio.file.Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        } catch ( final AtomicMoveNotSupportedException ex ) {
+            java.nio.file.Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    private Class<?> loadClass( final String className ) {
+        if ( className.isEmpty() ) {
+            return null;
+        }
+        try {
+            return Class.forName( className, false, PersistentMetaModelStore.class.getClassLoader() );
+        } catch ( final ClassNotFoundException ex ) {
+            final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+            if ( contextClassLoader != null ) {
+                try {
+                    return Class.forName( className, false, contextClassLoader );
+                } catch ( final ClassNotFoundException ignored ) {
+                }
+            }
+            LOG.debug( "Metamodel type '" + className + "' not found, skipped." );
+            return null;
+        }
+    }
+
+    private class StoredMetaObject implements MetaObject {
+
+        private final MetaType type;
+        private final Map<String, MetaProperty> properties = new ConcurrentHashMap<String, MetaProperty>();
+
+        StoredMetaObject( final String typeName ) {
+            this.type = new MetaType() {
+                @Override
+                public String getName() {
+                    return typeName;
+                }
+            };
+        }
+
+        @Override
+        public MetaType getType() {
+            return type;
+        }
+
+        @Override
+        public Collection<MetaProperty> getProperties() {
+            return properties.values();
+        }
+
+        @Override
+        public MetaProperty getProperty( final String name ) {
+            return properties.get( name );
+        }
+
+        @Override
+        public void addProperty( final MetaProperty metaProperty ) {
+            final StoredMetaProperty property = new StoredMetaProperty( metaProperty.getName(), metaProperty.isSearchable() );
+            for ( final Class<?> aClass : metaProperty.getTypes() ) {
+                property.addType( aClass );
+            }
+            if ( properties.putIfAbsent( property.getName(), property ) == null ) {
+                changed();
+            }
+        }
+    }
+
+    private class StoredMetaProperty implements MetaProperty {
+
+        private final String name;
+        private final Set<Class<?>> types = Collections.newSetFromMap( new ConcurrentHashMap<Class<?>, Boolean>() );
+        private volatile boolean searchable;
+
+        StoredMetaProperty( final String name,
+                            final boolean searchable ) {
+            this.name = name;
+            this.searchable = searchable;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Set<Class<?>> getTypes() {
+            return Collections.unmodifiableSet( types );
+        }
+
+        @Override
+        public boolean isSearchable() {
+            return searchable;
+        }
+
+        @Override
+        public void setAsSearchable() {
+            if ( !searchable ) {
+                searchable = true;
+                changed();
+            }
+        }
+
+        @Override
+        public void addType( final Class<?> aClass ) {
+            if ( types.add( aClass ) ) {
+                changed();
+            }
+        }
+
+        @Override
+        public boolean equals( final Object obj ) {
+            if ( obj == null ) {
+                return false;
+            }
+            if ( !( obj instanceof MetaProperty ) ) {
+                return false;
+            }
+            return ( (MetaProperty) obj ).getName().equals( getName() );
+        }
+
+        @Override
+        public int hashCode() {
+            return getName().hashCode();
+        }
+    }
+}
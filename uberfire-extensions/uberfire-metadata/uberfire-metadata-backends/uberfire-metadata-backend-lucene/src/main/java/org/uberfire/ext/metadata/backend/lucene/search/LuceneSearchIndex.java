@@ -16,31 +16,58 @@
 
 package org.uberfire.ext.metadata.backend.lucene.search;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PrefixQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.WildcardQuery;
-import org.apache.lucene.util.Version;
+import org.apache.lucene.util.BytesRef;
+import org.uberfire.ext.metadata.backend.lucene.fields.SimpleFieldFactory;
+import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndex;
 import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndexManager;
+import org.uberfire.ext.metadata.engine.MetaModelStore;
 import org.uberfire.ext.metadata.model.KObject;
+import org.uberfire.ext.metadata.model.schema.MetaObject;
+import org.uberfire.ext.metadata.model.schema.MetaProperty;
 import org.uberfire.ext.metadata.search.ClusterSegment;
 import org.uberfire.ext.metadata.search.DateRange;
 import org.uberfire.ext.metadata.search.IOSearchService;
+import org.uberfire.ext.metadata.search.QueryFilter;
 import org.uberfire.ext.metadata.search.SearchIndex;
+import org.uberfire.ext.metadata.search.SearchPage;
+import org.uberfire.ext.metadata.search.SearchPageRequest;
+import org.uberfire.java.nio.file.attribute.FileTime;
 
+import static java.util.Arrays.*;
 import static java.util.Collections.*;
 import static org.apache.lucene.search.BooleanClause.Occur.*;
 import static org.apache.lucene.search.NumericRangeQuery.*;
@@ -53,13 +80,29 @@ import static org.uberfire.ext.metadata.engine.MetaIndexEngine.*;
  */
 public class LuceneSearchIndex implements SearchIndex {
 
+    private static final int FIRST_PASS_HITS = 100;
+    private static final Set<String> IDENTITY_FIELDS = new HashSet<String>( asList( "id", "type", "key", "cluster.id", "segment.id" ) );
+
+    private static final int FILTER_CACHE_SIZE = 100;
+    private static final IOSearchService.Filter NO_OP_FILTER = new IOSearchService.NoOpFilter();
+
     private final LuceneIndexManager indexManager;
+    private final MetaModelStore metaModelStore;
+    private final Map<List<Object>, Query> filterCache = Collections.synchronizedMap( new LinkedHashMap<List<Object>, Query>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<List<Object>, Query> eldest ) {
+            return size() > FILTER_CACHE_SIZE;
+        }
+    } );
     private final QueryParser queryParser;
 
     public LuceneSearchIndex( final LuceneIndexManager indexManager,
+                              final MetaModelStore metaModelStore,
                               final Analyzer analyzer ) {
         this.indexManager = checkNotNull( "lucene",
                                           indexManager );
+        this.metaModelStore = checkNotNull( "metaModelStore",
+                                            metaModelStore );
         this.queryParser = new QueryParser( FULL_TEXT_FIELD, analyzer );
         this.queryParser.setAllowLeadingWildcard( true );
     }
@@ -74,12 +117,10 @@ public class LuceneSearchIndex implements SearchIndex {
         if ( attrs == null || attrs.size() == 0 ) {
             return emptyList();
         }
-        final int totalNumHitsEstimate = searchByAttrsHits( attrs,
-                                                            clusterSegments );
         return search( buildQuery( attrs,
                                    clusterSegments ),
-                       totalNumHitsEstimate,
                        filter,
+                       null,
                        clusterSegments );
     }
 
@@ -90,12 +131,45 @@ public class LuceneSearchIndex implements SearchIndex {
         if ( clusterSegments == null || clusterSegments.length == 0 ) {
             return emptyList();
         }
-        final int totalNumHitsEstimate = fullTextSearchHits( term,
-                                                             clusterSegments );
         return search( buildQuery( term,
                                    clusterSegments ),
-                       totalNumHitsEstimate,
                        filter,
+                       null,
+                       clusterSegments );
+    }
+
+    @Override
+    public SearchPage<KObject> searchByAttrs( final Map<String, ?> attrs,
+                                              final IOSearchService.Filter filter,
+                                              final SearchPageRequest page,
+                                              final ClusterSegment... clusterSegments ) {
+        checkNotNull( "page", page );
+        if ( clusterSegments == null || clusterSegments.length == 0 ) {
+            return emptyPage( page );
+        }
+        if ( attrs == null || attrs.size() == 0 ) {
+            return emptyPage( page );
+        }
+        return search( buildQuery( attrs,
+                                   clusterSegments ),
+                       filter,
+                       page,
+                       clusterSegments );
+    }
+
+    @Override
+    public SearchPage<KObject> fullTextSearch( final String term,
+                                               final IOSearchService.Filter filter,
+                                               final SearchPageRequest page,
+                                               final ClusterSegment... clusterSegments ) {
+        checkNotNull( "page", page );
+        if ( clusterSegments == null || clusterSegments.length == 0 ) {
+            return emptyPage( page );
+        }
+        return search( buildQuery( term,
+                                   clusterSegments ),
+                       filter,
+                       page,
                        clusterSegments );
     }
 
@@ -110,6 +184,7 @@ public class LuceneSearchIndex implements SearchIndex {
         }
         return searchHits( buildQuery( attrs,
                                        clusterSegments ),
+                           null,
                            clusterSegments );
     }
 
@@ -121,16 +196,56 @@ public class LuceneSearchIndex implements SearchIndex {
         }
         return searchHits( buildQuery( term,
                                        clusterSegments ),
+                           null,
+                           clusterSegments );
+    }
+
+    @Override
+    public int searchByAttrsHits( final Map<String, ?> attrs,
+                                  final IOSearchService.Filter filter,
+                                  final ClusterSegment... clusterSegments ) {
+        if ( clusterSegments == null || clusterSegments.length == 0 ) {
+            return 0;
+        }
+        if ( attrs == null || attrs.size() == 0 ) {
+            return 0;
+        }
+        return searchHits( buildQuery( attrs,
+                                       clusterSegments ),
+                           filter,
+                           clusterSegments );
+    }
+
+    @Override
+    public int fullTextSearchHits( final String term,
+                                   final IOSearchService.Filter filter,
+                                   final ClusterSegment... clusterSegments ) {
+        if ( clusterSegments == null || clusterSegments.length == 0 ) {
+            return 0;
+        }
+        return searchHits( buildQuery( term,
+                                       clusterSegments ),
+                           filter,
                            clusterSegments );
     }
 
     private int searchHits( final Query query,
+                            final IOSearchService.Filter filter,
                             final ClusterSegment... clusterSegments ) {
+        if ( postFilter( filter ) != NO_OP_FILTER ) {
+            // predicate filters may look at any property, whole documents are loaded for them
+            return search( query,
+                           filter,
+                           null,
+                           clusterSegments ).size();
+        }
         final IndexSearcher index = indexManager.getIndexSearcher( clusterSegments );
         try {
             final TotalHitCountCollector collector = new TotalHitCountCollector();
-            index.search( query, collector );
+            index.search( applyFilter( query, filter, index ), collector );
             return collector.getTotalHits();
+        } catch ( final IllegalArgumentException ex ) {
+            throw ex;
         } catch ( final Exception ex ) {
             throw new RuntimeException( "Error during Query!", ex );
         } finally {
@@ -138,23 +253,30 @@ public class LuceneSearchIndex implements SearchIndex {
         }
     }
 
+    /**
+     * Loads every match; a second pass is only needed when there are more than {@link #FIRST_PASS_HITS} of them.
+     */
     private List<KObject> search( final Query query,
-                                  final int totalNumHitsEstimate,
                                   final IOSearchService.Filter filter,
+                                  final Set<String> fieldsToLoad,
                                   final ClusterSegment... clusterSegments ) {
-        final TopScoreDocCollector collector = TopScoreDocCollector.create( totalNumHitsEstimate );
+        final IOSearchService.Filter postFilter = postFilter( filter );
         final IndexSearcher index = indexManager.getIndexSearcher( clusterSegments );
         final List<KObject> result = new ArrayList<KObject>();
         try {
-            index.search( query,
-                          collector );
-            final ScoreDoc[] hits = collector.topDocs( 0 ).scoreDocs;
-            for ( int i = 0; i < hits.length; i++ ) {
-                final KObject kObject = toKObject( index.doc( hits[ i ].doc ) );
-                if ( filter.accept( kObject ) ) {
+            final Query filteredQuery = applyFilter( query, filter, index );
+            TopDocs topDocs = index.search( filteredQuery, FIRST_PASS_HITS );
+            if ( topDocs.totalHits > topDocs.scoreDocs.length ) {
+                topDocs = index.search( filteredQuery, topDocs.totalHits );
+            }
+            for ( final ScoreDoc hit : topDocs.scoreDocs ) {
+                final KObject kObject = toKObject( fieldsToLoad == null ? index.doc( hit.doc ) : index.doc( hit.doc, fieldsToLoad ) );
+                if ( postFilter.accept( kObject ) ) {
                     result.add( kObject );
                 }
             }
+        } catch ( final IllegalArgumentException ex ) {
+            throw ex;
         } catch ( final Exception ex ) {
             throw new RuntimeException( "Error during Query!", ex );
         } finally {
@@ -164,6 +286,250 @@ public class LuceneSearchIndex implements SearchIndex {
         return result;
     }
 
+    /**
+     * Collects the hits of the requested page in one pass, only loading the identity fields of the documents unless
+     * a predicate filter needs the whole of them; further hits are only fetched, page by page, when a predicate
+     * filter rejects some of them.
+     */
+    private SearchPage<KObject> search( final Query query,
+                                        final IOSearchService.Filter filter,
+                                        final SearchPageRequest page,
+                                        final ClusterSegment... clusterSegments ) {
+        final IOSearchService.Filter postFilter = postFilter( filter );
+        final Set<String> fieldsToLoad = postFilter == NO_OP_FILTER ? IDENTITY_FIELDS : null;
+        final IndexSearcher index = indexManager.getIndexSearcher( clusterSegments );
+        final List<KObject> result = new ArrayList<KObject>( page.getLimit() );
+        try {
+            final Query filteredQuery = applyFilter( query, filter, index );
+            final Sort sort = toSort( page );
+            final int wanted = page.getOffset() + page.getLimit();
+            int accepted = 0;
+            int totalHits = 0;
+            ScoreDoc after = null;
+            boolean exhausted = false;
+
+            while ( accepted < wanted + 1 ) {
+                final int batch = after == null ? wanted + 1 : Math.max( page.getLimit(), wanted + 1 - accepted );
+                final TopDocs topDocs = index.searchAfter( after, filteredQuery, batch, sort, false, false );
+                totalHits = topDocs.totalHits;
+                for ( final ScoreDoc hit : topDocs.scoreDocs ) {
+                    final KObject kObject = toKObject( fieldsToLoad == null ? index.doc( hit.doc ) : index.doc( hit.doc, fieldsToLoad ) );
+                    if ( postFilter.accept( kObject ) ) {
+                        if ( accepted >= page.getOffset() && accepted < wanted ) {
+                            result.add( kObject );
+                        }
+                        accepted++;
+                        if ( accepted > wanted ) {
+                            break;
+                        }
+                    }
+                    after = hit;
+                }
+                if ( topDocs.scoreDocs.length < batch ) {
+                    exhausted = true;
+                    break;
+                }
+            }
+
+            return new SearchPage<KObject>( result,
+                                            page.getOffset(),
+                                            totalHits,
+                                            exhausted && accepted <= wanted );
+        } catch ( final IllegalArgumentException ex ) {
+            throw ex;
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( "Error during Query!", ex );
+        } finally {
+            indexManager.release( index );
+        }
+    }
+
+    /**
+     * Adds the {@link QueryFilter} criteria, if any, to the query as a non scoring clause.
+     */
+    private Query applyFilter( final Query query,
+                               final IOSearchService.Filter filter,
+                               final IndexSearcher index ) throws IOException {
+        if ( !( filter instanceof QueryFilter ) ) {
+            return query;
+        }
+        final BooleanQuery filteredQuery = new BooleanQuery();
+        filteredQuery.add( query,
+                           MUST );
+        filteredQuery.add( toQuery( (QueryFilter) filter, index ),
+                           FILTER );
+        return filteredQuery;
+    }
+
+    /**
+     * Filter left to apply on loaded objects, once the {@link QueryFilter} criteria are part of the query.
+     */
+    private IOSearchService.Filter postFilter( final IOSearchService.Filter filter ) {
+        if ( filter == null || filter instanceof QueryFilter || filter instanceof IOSearchService.NoOpFilter ) {
+            return NO_OP_FILTER;
+        }
+        return filter;
+    }
+
+    /**
+     * Compiled filters are cached, and cache their matches per index segment: segments left unchanged by an index
+     * refresh keep their cached matches, the new ones are computed on their first use.
+     */
+    private Query toQuery( final QueryFilter filter,
+                           final IndexSearcher index ) throws IOException {
+        final Map<String, RangeEncoding> encodings = rangeEncodings( filter, index );
+        final List<Object> key = Arrays.<Object>asList( new HashSet<String>( filter.getTypes() ),
+                                                        new HashSet<String>( filter.getKeyPrefixes() ),
+                                                        new HashSet<String>( filter.getSegmentIds() ),
+                                                        new HashMap<String, QueryFilter.Range>( filter.getRanges() ),
+                                                        encodings );
+        Query query = filterCache.get( key );
+        if ( query == null ) {
+            query = new CachingWrapperQuery( compile( filter, encodings ),
+                                             QueryCachingPolicy.ALWAYS_CACHE );
+            filterCache.put( key, query );
+        }
+        return query;
+    }
+
+    private Query compile( final QueryFilter filter,
+                           final Map<String, RangeEncoding> encodings ) {
+        final BooleanQuery query = new BooleanQuery();
+        if ( !filter.getTypes().isEmpty() ) {
+            query.add( anyTerm( "type", filter.getTypes() ), MUST );
+        }
+        if ( !filter.getSegmentIds().isEmpty() ) {
+            query.add( anyTerm( "segment.id", filter.getSegmentIds() ), MUST );
+        }
+        if ( !filter.getKeyPrefixes().isEmpty() ) {
+            final BooleanQuery keyPrefixes = new BooleanQuery();
+            for ( final String keyPrefix : filter.getKeyPrefixes() ) {
+                keyPrefixes.add( new PrefixQuery( new Term( LuceneIndex.KEY_TERM_FIELD, keyPrefix ) ), SHOULD );
+            }
+            query.add( keyPrefixes, MUST );
+        }
+        for ( final Map.Entry<String, QueryFilter.Range> entry : filter.getRanges().entrySet() ) {
+            query.add( rangeQuery( entry.getKey(), entry.getValue(), encodings.get( entry.getKey() ) ), MUST );
+        }
+        if ( query.clauses().isEmpty() ) {
+            return new MatchAllDocsQuery();
+        }
+        return query;
+    }
+
+    /**
+     * Numeric fields only match range queries of their own encoding, so each range attribute is resolved, from the
+     * meta model of the filtered types (or of every indexed type), to the encoding {@link SimpleFieldFactory} used
+     * for it. Attributes the meta model knows nothing about are taken as longs.
+     */
+    private Map<String, RangeEncoding> rangeEncodings( final QueryFilter filter,
+                                                       final IndexSearcher index ) throws IOException {
+        if ( filter.getRanges().isEmpty() ) {
+            return emptyMap();
+        }
+        final Set<String> typeNames = filter.getTypes().isEmpty() ? indexedTypes( index ) : filter.getTypes();
+        final Map<String, RangeEncoding> encodings = new HashMap<String, RangeEncoding>();
+        for ( final String attribute : filter.getRanges().keySet() ) {
+            encodings.put( attribute, rangeEncoding( attribute, typeNames ) );
+        }
+        return encodings;
+    }
+
+    private RangeEncoding rangeEncoding( final String attribute,
+                                         final Set<String> typeNames ) {
+        final Set<RangeEncoding> found = new HashSet<RangeEncoding>();
+        for ( final String typeName : typeNames ) {
+            final MetaObject metaObject = metaModelStore.getMetaObject( typeName );
+            final MetaProperty metaProperty = metaObject == null ? null : metaObject.getProperty( attribute );
+            if ( metaProperty == null || metaProperty.getTypes().isEmpty() ) {
+                continue;
+            }
+            if ( !metaProperty.isSearchable() ) {
+                throw new IllegalArgumentException( "Attribute '" + attribute + "' isn't searchable, it can't be filtered by range." );
+            }
+            for ( final Class<?> type : metaProperty.getTypes() ) {
+                final RangeEncoding encoding = RangeEncoding.of( type );
+                if ( encoding == null ) {
+                    throw new IllegalArgumentException( "Attribute '" + attribute + "' of type " + type.getName() + " can't be filtered by range." );
+                }
+                found.add( encoding );
+            }
+        }
+        if ( found.size() > 1 ) {
+            throw new IllegalArgumentException( "Attribute '" + attribute + "' is indexed with several numeric types " + found + ", it can't be filtered by range." );
+        }
+        return found.isEmpty() ? RangeEncoding.LONG : found.iterator().next();
+    }
+
+    private Set<String> indexedTypes( final IndexSearcher index ) throws IOException {
+        final Set<String> typeNames = new HashSet<String>();
+        for ( final LeafReaderContext leaf : index.getIndexReader().leaves() ) {
+            final Terms terms = leaf.reader().terms( "type" );
+            if ( terms == null ) {
+                continue;
+            }
+            final TermsEnum termsEnum = terms.iterator();
+            BytesRef typeName;
+            while ( ( typeName = termsEnum.next() ) != null ) {
+                typeNames.add( typeName.utf8ToString() );
+            }
+        }
+        return typeNames;
+    }
+
+    private Query rangeQuery( final String attribute,
+                              final QueryFilter.Range range,
+                              final RangeEncoding encoding ) {
+        final Long from = range.getFrom();
+        final Long to = range.getTo();
+        switch ( encoding ) {
+            case INT:
+                if ( ( from != null && from > Integer.MAX_VALUE ) || ( to != null && to < Integer.MIN_VALUE ) ) {
+                    // no int value within bounds, an empty boolean query matches nothing
+                    return new BooleanQuery();
+                }
+                return newIntRange( attribute,
+                                    from == null ? null : (int) Math.max( from, Integer.MIN_VALUE ),
+                                    to == null ? null : (int) Math.min( to, Integer.MAX_VALUE ),
+                                    true,
+                                    true );
+            case DOUBLE:
+                return newDoubleRange( attribute,
+                                       from == null ? null : from.doubleValue(),
+                                       to == null ? null : to.doubleValue(),
+                                       true,
+                                       true );
+            case FLOAT:
+                return newFloatRange( attribute,
+                                      from == null ? null : from.floatValue(),
+                                      to == null ? null : to.floatValue(),
+                                      true,
+                                      true );
+            default:
+                return newLongRange( attribute, from, to, true, true );
+        }
+    }
+
+    private Query anyTerm( final String field,
+                           final Set<String> values ) {
+        final BooleanQuery query = new BooleanQuery();
+        for ( final String value : values ) {
+            query.add( new TermQuery( new Term( field, value ) ), SHOULD );
+        }
+        return query;
+    }
+
+    private Sort toSort( final SearchPageRequest page ) {
+        if ( page.getSort() == SearchPageRequest.Sort.KEY ) {
+            return new Sort( new SortField( LuceneIndex.SORT_KEY_FIELD, SortField.Type.STRING, page.isReverse() ),
+                             new SortField( null, SortField.Type.DOC ) );
+        }
+        if ( page.isReverse() ) {
+            return new Sort( new SortField( null, SortField.Type.SCORE, true ) );
+        }
+        return Sort.RELEVANCE;
+    }
+
     private Query buildQuery( final Map<String, ?> attrs,
                               final ClusterSegment... clusterSegments ) {
         final BooleanQuery query = new BooleanQuery();
@@ -266,8 +632,35 @@ public class LuceneSearchIndex implements SearchIndex {
         }
     }
 
+    private SearchPage<KObject> emptyPage( final SearchPageRequest page ) {
+        return new SearchPage<KObject>( Collections.<KObject>emptyList(), page.getOffset(), 0, true );
+    }
+
     private String format( final String term ) {
         return term.toLowerCase();
     }
 
+    /**
+     * Numeric encodings of the fields {@link SimpleFieldFactory} builds for searchable properties.
+     */
+    private enum RangeEncoding {
+        INT, LONG, FLOAT, DOUBLE;
+
+        static RangeEncoding of( final Class<?> type ) {
+            if ( type == Integer.class ) {
+                return INT;
+            }
+            if ( type == Long.class || Date.class.isAssignableFrom( type ) || FileTime.class.isAssignableFrom( type ) ) {
+                return LONG;
+            }
+            if ( type == Double.class ) {
+                return DOUBLE;
+            }
+            if ( type == Float.class ) {
+                return FLOAT;
+            }
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.index;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+import org.uberfire.ext.metadata.backend.lucene.index.directory.DeleteCommand;
+import org.uberfire.ext.metadata.backend.lucene.index.directory.Directory;
+import org.uberfire.ext.metadata.backend.lucene.index.directory.DirectoryLuceneIndex;
+import org.uberfire.ext.metadata.backend.lucene.model.KClusterImpl;
+import org.uberfire.ext.metadata.model.KCluster;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class IndexCommitterTest {
+
+    @Test
+    public void testCommitAfterMaxPendingChanges() {
+        final IndexCommitter committer = new IndexCommitter( 3, 60000 );
+        final LuceneIndex index = mockIndex( "cluster1" );
+
+        committer.changed( index );
+        committer.changed( index );
+
+        verify( index, times( 1 ) ).markUncommitted();
+        verify( index, never() ).commit();
+        assertEquals( 2, committer.getPendingChanges( index.getCluster() ) );
+
+        committer.changed( index );
+
+        verify( index, times( 1 ) ).commit();
+        assertEquals( 0, committer.getPendingChanges( index.getCluster() ) );
+
+        committer.dispose();
+    }
+
+    @Test
+    public void testBackgroundCommitAfterDelay() {
+        final IndexCommitter committer = new IndexCommitter( 1000, 50 );
+        final LuceneIndex index = mockIndex( "cluster1" );
+
+        committer.changed( index );
+
+        verify( index, timeout( 5000 ).times( 1 ) ).commit();
+
+        committer.dispose();
+    }
+
+    @Test
+    public void testNoDelayCommitsEveryChange() {
+        final IndexCommitter committer = new IndexCommitter( 1000, 0 );
+        final LuceneIndex index = mockIndex( "cluster1" );
+
+        committer.changed( index );
+        committer.changed( index );
+
+        verify( index, times( 2 ) ).commit();
+        verify( index, never() ).markUncommitted();
+    }
+
+    @Test
+    public void testDisposeFlushesPendingChanges() {
+        final IndexCommitter committer = new IndexCommitter( 1000, 60000 );
+        final LuceneIndex index1 = mockIndex( "cluster1" );
+        final LuceneIndex index2 = mockIndex( "cluster2" );
+
+        committer.changed( index1 );
+        committer.changed( index2 );
+        committer.dispose();
+
+        verify( index1, times( 1 ) ).commit();
+        verify( index2, times( 1 ) ).commit();
+    }
+
+    @Test
+    public void testUncommittedIndexIsRebuilt() throws Exception {
+        final KCluster cluster = new KClusterImpl( "cluster1" );
+        final Directory directory = new Directory( new RAMDirectory(), mock( DeleteCommand.class ), false );
+
+        final DirectoryLuceneIndex index = new DirectoryLuceneIndex( cluster, directory, new IndexWriterConfig( new StandardAnalyzer() ) );
+        assertFalse( index.freshIndex() );
+        index.markUncommitted();
+        // simulates a crash: the writer goes away without a commit through the index
+        index.writer().close();
+
+        final DirectoryLuceneIndex reopened = new DirectoryLuceneIndex( cluster, directory, new IndexWriterConfig( new StandardAnalyzer() ) );
+        assertTrue( reopened.freshIndex() );
+        reopened.commit();
+        reopened.writer().close();
+
+        final DirectoryLuceneIndex clean = new DirectoryLuceneIndex( cluster, directory, new IndexWriterConfig( new StandardAnalyzer() ) );
+        assertFalse( clean.freshIndex() );
+        clean.writer().close();
+    }
+
+    private LuceneIndex mockIndex( final String clusterId ) {
+        final LuceneIndex index = mock( LuceneIndex.class );
+        when( index.getCluster() ).thenReturn( new KClusterImpl( clusterId ) );
+        return index;
+    }
+}
@@ -16,15 +16,27 @@
 
 package org.uberfire.ext.metadata.backend.lucene.index;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.ext.metadata.backend.lucene.LuceneConfig;
 import org.uberfire.ext.metadata.backend.lucene.fields.FieldFactory;
+import org.uberfire.ext.metadata.backend.lucene.metamodel.InMemoryMetaModelStore;
 import org.uberfire.ext.metadata.engine.MetaModelStore;
+import org.uberfire.ext.metadata.model.KObject;
+import org.uberfire.ext.metadata.model.KProperty;
+import org.uberfire.ext.metadata.model.schema.MetaObject;
+import org.uberfire.ext.metadata.model.schema.MetaType;
 
-import static org.junit.Assert.assertTrue;
-import static org.mockito.Mockito.mock;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
 
 public class LuceneIndexEngineTest {
 
@@ -38,4 +50,67 @@ public class LuceneIndexEngineTest {
         assertTrue( PriorityDisposableRegistry.getDisposables().contains( config ) );
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIndexObjectsInOneBatch() {
+        final LuceneIndex index = mock( LuceneIndex.class );
+        final LuceneIndexManager indexManager = mock( LuceneIndexManager.class );
+        final IndexCommitter committer = mock( IndexCommitter.class );
+        when( indexManager.indexOf( any( KObject.class ) ) ).thenReturn( index );
+
+        final LuceneIndexEngine engine = new LuceneIndexEngine( mock( FieldFactory.class ),
+                                                                mock( MetaModelStore.class ),
+                                                                indexManager,
+                                                                committer );
+
+        final KObject first = newKObject( "a", "first" );
+        final KObject second = newKObject( "b", "second" );
+        final KObject updatedFirst = newKObject( "a", "updated" );
+        engine.index( first, second, updatedFirst );
+
+        final ArgumentCaptor<Map> docs = ArgumentCaptor.forClass( Map.class );
+        verify( index, times( 1 ) ).indexDocuments( docs.capture() );
+        verify( index, never() ).indexDocument( anyString(), any( Document.class ) );
+        verify( committer, times( 1 ) ).changed( index );
+
+        final Map<String, Document> indexed = docs.getValue();
+        assertEquals( 2, indexed.size() );
+        assertEquals( "updated", indexed.get( "a" ).get( "key" ) );
+        assertEquals( "second", indexed.get( "b" ).get( "key" ) );
+        assertEquals( "a", new ArrayList<String>( indexed.keySet() ).get( 1 ) );
+    }
+
+    private KObject newKObject( final String id,
+                                final String key ) {
+        final MetaType type = mock( MetaType.class );
+        when( type.getName() ).thenReturn( "type" );
+
+        final KObject object = mock( KObject.class );
+        when( object.getId() ).thenReturn( id );
+        when( object.getType() ).thenReturn( type );
+        when( object.getKey() ).thenReturn( key );
+        when( object.getClusterId() ).thenReturn( "cluster" );
+        when( object.getSegmentId() ).thenReturn( "segment" );
+        when( object.getProperties() ).thenReturn( Collections.<KProperty<?>>emptyList() );
+        return object;
+    }
+
+    @Test
+    public void testMetaModelOnlyUpdatedOnChange() {
+        final LuceneIndexManager indexManager = mock( LuceneIndexManager.class );
+        when( indexManager.indexOf( any( KObject.class ) ) ).thenReturn( mock( LuceneIndex.class ) );
+        final MetaModelStore metaModelStore = spy( new InMemoryMetaModelStore() );
+
+        final LuceneIndexEngine engine = new LuceneIndexEngine( mock( FieldFactory.class ),
+                                                                metaModelStore,
+                                                                indexManager,
+                                                                mock( IndexCommitter.class ) );
+
+        engine.index( newKObject( "a", "first" ) );
+        engine.index( newKObject( "b", "second" ) );
+
+        verify( metaModelStore, times( 1 ) ).add( any( MetaObject.class ) );
+        verify( metaModelStore, never() ).update( any( MetaObject.class ) );
+    }
+
 }
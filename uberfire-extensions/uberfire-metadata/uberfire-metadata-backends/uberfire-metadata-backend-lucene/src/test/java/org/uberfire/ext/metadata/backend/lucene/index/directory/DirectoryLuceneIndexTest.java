@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.index.directory;
+
+import java.util.Collections;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+import org.uberfire.ext.metadata.backend.lucene.model.KClusterImpl;
+import org.uberfire.ext.metadata.model.KCluster;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class DirectoryLuceneIndexTest {
+
+    @Test
+    public void testIndexOfPreviousFormatIsRebuilt() throws Exception {
+        final KCluster cluster = new KClusterImpl( "cluster1" );
+        final RAMDirectory ramDirectory = new RAMDirectory();
+        final Directory directory = new Directory( ramDirectory, mock( DeleteCommand.class ), false );
+
+        // documents written before the index format was recorded
+        final IndexWriter previous = new IndexWriter( ramDirectory, new IndexWriterConfig( new StandardAnalyzer() ) );
+        final Document doc = new Document();
+        doc.add( new StringField( "id", "doc1", Field.Store.YES ) );
+        previous.addDocument( doc );
+        previous.setCommitData( Collections.singletonMap( "checkpoint", "1" ) );
+        previous.close();
+
+        final DirectoryLuceneIndex index = new DirectoryLuceneIndex( cluster, directory, new IndexWriterConfig( new StandardAnalyzer() ) );
+        assertTrue( index.freshIndex() );
+        assertEquals( 0, index.writer().numDocs() );
+        assertTrue( index.getCheckpoint().isEmpty() );
+        index.commit();
+        index.writer().close();
+
+        final DirectoryLuceneIndex rebuilt = new DirectoryLuceneIndex( cluster, directory, new IndexWriterConfig( new StandardAnalyzer() ) );
+        assertFalse( rebuilt.freshIndex() );
+        rebuilt.writer().close();
+    }
+}
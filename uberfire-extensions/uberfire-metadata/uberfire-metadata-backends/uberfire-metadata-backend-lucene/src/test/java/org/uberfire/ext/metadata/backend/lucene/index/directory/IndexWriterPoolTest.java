@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.index.directory;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Test;
+import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndex;
+import org.uberfire.ext.metadata.backend.lucene.model.KClusterImpl;
+
+import static org.junit.Assert.*;
+
+public class IndexWriterPoolTest {
+
+    @Test
+    public void testLeastRecentlyUsedWriterIsEvicted() {
+        final IndexWriterPool pool = new IndexWriterPool( 2, 16 );
+        final DirectoryFactory factory = new DirectoryFactory( DirectoryType.INMEMORY, new StandardAnalyzer(), pool );
+
+        final LuceneIndex index1 = factory.newCluster( new KClusterImpl( "pool-cluster1" ) );
+        final LuceneIndex index2 = factory.newCluster( new KClusterImpl( "pool-cluster2" ) );
+        final LuceneIndex index3 = factory.newCluster( new KClusterImpl( "pool-cluster3" ) );
+        assertEquals( 0, pool.getOpenWriters() );
+
+        index1.indexDocument( "1", newDocument( "1" ) );
+        index2.indexDocument( "2", newDocument( "2" ) );
+        index1.indexDocument( "11", newDocument( "11" ) );
+        assertEquals( 2, pool.getOpenWriters() );
+
+        index3.indexDocument( "3", newDocument( "3" ) );
+
+        assertEquals( 2, pool.getOpenWriters() );
+        assertEquals( 1, pool.getEvicted() );
+        assertFalse( index2.getFootprint().isWriterOpen() );
+        assertTrue( index1.getFootprint().isWriterOpen() );
+        assertTrue( index2.getFootprint().getIndexSize() > 0 );
+
+        // searching the evicted index doesn't reopen its writer
+        final IndexSearcher searcher = index2.nrtSearcher();
+        try {
+            assertEquals( 1, searcher.getIndexReader().numDocs() );
+        } finally {
+            index2.nrtRelease( searcher );
+        }
+        assertFalse( index2.getFootprint().isWriterOpen() );
+
+        index2.indexDocument( "22", newDocument( "22" ) );
+        assertTrue( index2.getFootprint().isWriterOpen() );
+        assertEquals( 4, pool.getOpened() );
+
+        final IndexSearcher reopened = index2.nrtSearcher();
+        try {
+            assertEquals( 2, reopened.getIndexReader().numDocs() );
+        } finally {
+            index2.nrtRelease( reopened );
+        }
+
+        factory.dispose();
+        assertEquals( 0, pool.getOpenWriters() );
+    }
+
+    private Document newDocument( final String id ) {
+        final Document doc = new Document();
+        doc.add( new StringField( "id", id, Field.Store.YES ) );
+        return doc;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.backend.lucene.metamodel;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.uberfire.ext.metadata.model.schema.MetaObject;
+import org.uberfire.ext.metadata.model.schema.MetaProperty;
+import org.uberfire.ext.metadata.model.schema.MetaType;
+
+import static org.junit.Assert.*;
+
+public class PersistentMetaModelStoreTest {
+
+    @Test
+    public void testReloadAfterDispose() throws Exception {
+        final File file = new File( createTempDirectory(), PersistentMetaModelStore.FILE_NAME );
+
+        final PersistentMetaModelStore store = new PersistentMetaModelStore( file );
+        store.add( newMetaObject( "type1", newMetaProperty( "name", false, String.class ) ) );
+
+        final MetaObject stored = store.getMetaObject( "type1" );
+        stored.getProperty( "name" ).setAsSearchable();
+        stored.addProperty( newMetaProperty( "size", true, Long.class ) );
+        stored.getProperty( "size" ).addType( Integer.class );
+        store.update( stored );
+        store.dispose();
+
+        assertTrue( file.exists() );
+
+        final PersistentMetaModelStore reloaded = new PersistentMetaModelStore( file );
+        final MetaObject metaObject = reloaded.getMetaObject( "type1" );
+        assertNotNull( metaObject );
+        assertEquals( 2, metaObject.getProperties().size() );
+        assertTrue( metaObject.getProperty( "name" ).isSearchable() );
+        assertEquals( Collections.<Class<?>>singleton( String.class ), metaObject.getProperty( "name" ).getTypes() );
+        assertEquals( new HashSet<Class<?>>() {{
+            add( Long.class );
+            add( Integer.class );
+        }}, metaObject.getProperty( "size" ).getTypes() );
+        assertNull( reloaded.getMetaObject( "type2" ) );
+        reloaded.dispose();
+    }
+
+    @Test
+    public void testWriteOnlyOnChange() throws Exception {
+        final File file = new File( createTempDirectory(), PersistentMetaModelStore.FILE_NAME );
+
+        final PersistentMetaModelStore store = new PersistentMetaModelStore( file );
+        store.add( newMetaObject( "type1", newMetaProperty( "name", true, String.class ) ) );
+        store.flush();
+        assertTrue( file.delete() );
+
+        final MetaObject stored = store.getMetaObject( "type1" );
+        stored.getProperty( "name" ).setAsSearchable();
+        stored.getProperty( "name" ).addType( String.class );
+        stored.addProperty( newMetaProperty( "name", false, Long.class ) );
+        store.flush();
+        assertFalse( file.exists() );
+
+        stored.getProperty( "name" ).addType( Long.class );
+        store.flush();
+        assertTrue( file.exists() );
+        store.dispose();
+    }
+
+    @Test
+    public void testClusterMetamodelsAreKeptInTheirIndexDirectory() throws Exception {
+        final File hostingDir = createTempDirectory();
+
+        final ClusteredMetaModelStore store = new ClusteredMetaModelStore( hostingDir );
+        store.forCluster( "cluster1" ).add( newMetaObject( "type1", newMetaProperty( "size", true, Long.class ) ) );
+        store.forCluster( "cluster2" ).add( newMetaObject( "type1", newMetaProperty( "name", false, String.class ) ) );
+        store.forCluster( "cluster3" ).add( newMetaObject( "type1", newMetaProperty( "name", true, String.class ) ) );
+        store.remove( "cluster3" );
+        store.dispose();
+
+        assertTrue( new File( new File( hostingDir, "cluster1" ), PersistentMetaModelStore.FILE_NAME ).isFile() );
+        assertTrue( new File( new File( hostingDir, "cluster2" ), PersistentMetaModelStore.FILE_NAME ).isFile() );
+        assertFalse( new File( hostingDir, "cluster3" ).exists() );
+
+        final ClusteredMetaModelStore reloaded = new ClusteredMetaModelStore( hostingDir );
+        final MetaObject metaObject = reloaded.getMetaObject( "type1" );
+        assertEquals( 2, metaObject.getProperties().size() );
+        assertTrue( metaObject.getProperty( "size" ).isSearchable() );
+        assertFalse( metaObject.getProperty( "name" ).isSearchable() );
+        assertEquals( 1, reloaded.forCluster( "cluster1" ).getMetaObject( "type1" ).getProperties().size() );
+        assertNull( reloaded.getMetaObject( "type2" ) );
+        reloaded.dispose();
+    }
+
+    private MetaObject newMetaObject( final String type,
+                                      final MetaProperty... properties ) {
+        final Set<MetaProperty> propertySet = new HashSet<MetaProperty>();
+        Collections.addAll( propertySet, properties );
+        return new MetaObject() {
+            @Override
+            public MetaType getType() {
+                return new MetaType() {
+                    @Override
+                    public String getName() {
+                        return type;
+                    }
+                };
+            }
+
+            @Override
+            public Collection<MetaProperty> getProperties() {
+                return propertySet;
+            }
+
+            @Override
+            public MetaProperty getProperty( final String name ) {
+                for ( final MetaProperty property : propertySet ) {
+                    if ( property.getName().equals( name ) ) {
+                        return property;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void addProperty( final MetaProperty metaProperty ) {
+                propertySet.add( metaProperty );
+            }
+        };
+    }
+
+    private MetaProperty newMetaProperty( final String name,
+                                          final boolean searchable,
+                                          final Class<?> type ) {
+        final Set<Class<?>> types = new HashSet<Class<?>>();
+        types.add( type );
+        return new MetaProperty() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public Set<Class<?>> getTypes() {
+                return types;
+            }
+
+            @Override
+            public boolean isSearchable() {
+                return searchable;
+            }
+
+            @Override
+            public void setAsSearchable() {
+            }
+
+            @Override
+            public void addType( final Class<?> aClass ) {
+                types.add( aClass );
+            }
+        };
+    }
+
+    private static File createTempDirectory() throws Exception {
+        final File temp = File.createTempFile( "metamodel", Long.toString( System.nanoTime() ) );
+        assertTrue( temp.delete() );
+        assertTrue( temp.mkdir() );
+        temp.deleteOnExit();
+        return temp;
+    }
+}
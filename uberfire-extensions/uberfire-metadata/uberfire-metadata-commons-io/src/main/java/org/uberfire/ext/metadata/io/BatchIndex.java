@@ -16,7 +16,17 @@
 
 package org.uberfire.ext.metadata.io;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +40,7 @@ import org.uberfire.ext.metadata.model.KObject;
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.FileSystemRefsAware;
 import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.FileVisitResult;
 import org.uberfire.java.nio.file.Path;
@@ -48,11 +59,19 @@ public final class BatchIndex {
 
     private static final Logger LOG = LoggerFactory.getLogger( BatchIndex.class );
 
+    public static final String PARALLELISM_PROPERTY = "org.uberfire.metadata.index.batch.threads";
+    public static final String BATCH_SIZE_PROPERTY = "org.uberfire.metadata.index.batch.size";
+    private static final int PROGRESS_INTERVAL = 1000;
+
     private final MetaIndexEngine indexEngine;
     private final IOService ioService;
     private final Class<? extends FileAttributeView>[] views;
     private final AtomicBoolean indexDisposed = new AtomicBoolean( false );
     private final Observer observer;
+    private final int parallelism = Integer.getInteger( PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors() );
+    private final int maxInFlight = Math.max( 1, parallelism ) * 64;
+    private final int batchSize = Integer.getInteger( BATCH_SIZE_PROPERTY, 100 );
+    private ForkJoinPool pool;
 
     public BatchIndex( final MetaIndexEngine indexEngine,
                        final IOService ioService,
@@ -90,9 +109,15 @@ public final class BatchIndex {
                     } );
 
                     try {
+                        // refs are taken before walking, commits made meanwhile get caught up on next start
+                        final Map<String, String> refs = fs instanceof FileSystemRefsAware ? ( (FileSystemRefsAware) fs ).getRefs() : null;
                         for ( final Path root : fs.getRootDirectories() ) {
                             BatchIndex.this.run( root );
                         }
+                        if ( refs != null && !indexDisposed.get() ) {
+                            indexEngine.setCheckpoint( KObjectUtil.toKCluster( fs ),
+                                                       refs );
+                        }
                         indexFinished.set( true );
                     } catch ( Exception ex ) {
                         if ( !indexDisposed.get() ) {
@@ -133,71 +158,35 @@ public final class BatchIndex {
             logInformation( "Starting indexing of " + root.toUri() + " ..." );
 
             final KCluster cluster = KObjectUtil.toKCluster( root.getFileSystem() );
+            final IndexingPipeline pipeline = new IndexingPipeline( root );
 
-            walkFileTree( checkNotNull( "root",
-                                        root ),
-                          new SimpleFileVisitor<Path>() {
-                              @Override
-                              public FileVisitResult visitFile( final Path file,
-                                                                final BasicFileAttributes attrs ) throws IOException {
-                                  if ( indexDisposed.get() ) {
-                                      return FileVisitResult.TERMINATE;
-                                  }
-                                  try {
+            try {
+                walkFileTree( checkNotNull( "root",
+                                            root ),
+                              new SimpleFileVisitor<Path>() {
+                                  @Override
+                                  public FileVisitResult visitFile( final Path file,
+                                                                    final BasicFileAttributes attrs ) throws IOException {
+                                      if ( indexDisposed.get() ) {
+                                          return FileVisitResult.TERMINATE;
+                                      }
                                       checkNotNull( "file",
                                                     file );
                                       checkNotNull( "attrs",
                                                     attrs );
 
                                       if ( !file.getFileName().toString().startsWith( "." ) ) {
-                                          
-                                          LOG.debug( "Indexing " + file.toUri() );
-
-                                          //Default indexing
-                                          for ( final Class<? extends FileAttributeView> view : views ) {
-                                              ioService.getFileAttributeView( file,
-                                                                              view );
-                                          }
-                                          final FileAttribute<?>[] allAttrs = ioService.convert( ioService.readAttributes( file ) );
-                                          if ( !indexDisposed.get() ) {
-                                              indexEngine.index( KObjectUtil.toKObject( file,
-                                                                                        allAttrs ) );
-                                          } else {
-                                              return FileVisitResult.TERMINATE;
-                                          }
-
-                                          //Additional indexing
-                                          for ( Indexer indexer : IndexersFactory.getIndexers() ) {
-                                              if ( file.getFileSystem().isOpen() ) {
-                                                  if ( indexer.supportsPath( file ) ) {
-                                                      final KObject kObject = indexer.toKObject( file );
-                                                      if ( kObject != null ) {
-                                                          if ( !indexDisposed.get() ) {
-                                                              indexEngine.index( kObject );
-                                                          } else {
-                                                              return FileVisitResult.TERMINATE;
-                                                          }
-                                                      }
-                                                  }
-                                              }
-                                          }
-
+                                          pipeline.submit( file );
                                       }
-                                  } catch ( final Exception ex ) {
                                       if ( indexDisposed.get() ) {
-                                          logWarning( "Batch index couldn't finish. [@" + root.toUri().toString() + "]" );
                                           return FileVisitResult.TERMINATE;
-                                      } else {
-                                          logError( "Index fails. [@" + file.toString() + "]",
-                                                    ex );
                                       }
+                                      return FileVisitResult.CONTINUE;
                                   }
-                                  if ( indexDisposed.get() ) {
-                                      return FileVisitResult.TERMINATE;
-                                  }
-                                  return FileVisitResult.CONTINUE;
-                              }
-                          } );
+                              } );
+            } finally {
+                pipeline.finish();
+            }
 
             if ( !indexDisposed.get() ) {
                 logInformation( "Completed indexing of " + root.toUri() );
@@ -226,6 +215,182 @@ public final class BatchIndex {
         }
     }
 
+    /**
+     * Builds the index objects of a file: the default one from its attributes, plus the ones of the additional indexers.
+     * <p>
+     * Files are extracted concurrently, but indexers are contributed from outside and aren't required to be thread
+     * safe, so the calls to each indexer are serialized. A failing indexer only loses its own object.
+     */
+    private List<KObject> toKObjects( final Path file ) {
+        final List<KObject> result = new ArrayList<KObject>();
+
+        LOG.debug( "Indexing " + file.toUri() );
+
+        //Default indexing
+        for ( final Class<? extends FileAttributeView> view : views ) {
+            ioService.getFileAttributeView( file,
+                                            view );
+        }
+        final FileAttribute<?>[] allAttrs = ioService.convert( ioService.readAttributes( file ) );
+        result.add( KObjectUtil.toKObject( file,
+                                           allAttrs ) );
+
+        //Additional indexing
+        for ( Indexer indexer : IndexersFactory.getIndexers() ) {
+            if ( indexDisposed.get() ) {
+                break;
+            }
+            if ( file.getFileSystem().isOpen() ) {
+                try {
+                    final KObject kObject;
+                    synchronized ( indexer ) {
+                        kObject = indexer.supportsPath( file ) ? indexer.toKObject( file ) : null;
+                    }
+                    if ( kObject != null ) {
+                        result.add( kObject );
+                    }
+                } catch ( final Exception ex ) {
+                    if ( !indexDisposed.get() ) {
+                        logError( "Indexer " + indexer.getClass().getName() + " fails. [@" + file.toString() + "]",
+                                  ex );
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if ( pool == null ) {
+            pool = new ForkJoinPool( parallelism );
+        }
+        return pool;
+    }
+
+    /**
+     * Indexing of a root in three stages: the caller enumerates files and submits them, their attributes and indexers
+     * are extracted in parallel on the fork/join pool, and a single writer thread hands the resulting objects to the
+     * index engine in batches. The number of files in extraction and of objects waiting for the writer are both
+     * bounded, so enumeration slows down to the pace of the slower stages.
+     */
+    private class IndexingPipeline {
+
+        private final Path root;
+        private final Semaphore inFlight = new Semaphore( maxInFlight );
+        private final BlockingQueue<KObject> queue = new ArrayBlockingQueue<KObject>( maxInFlight * 2 );
+        private final AtomicInteger extractedFiles = new AtomicInteger( 0 );
+        private final AtomicLong indexedObjects = new AtomicLong( 0 );
+        private final Thread writer;
+        private volatile boolean extractionDone = false;
+
+        IndexingPipeline( final Path root ) {
+            this.root = root;
+            this.writer = new Thread( new Runnable() {
+                @Override
+                public void run() {
+                    write();
+                }
+            }, "BatchIndex writer [" + root.toUri() + "]" );
+            this.writer.setDaemon( true );
+            this.writer.start();
+        }
+
+        void submit( final Path file ) {
+            try {
+                inFlight.acquire();
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( "Interrupted while indexing " + root.toUri(), e );
+            }
+
+            final Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        extract( file );
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            };
+            if ( parallelism > 1 ) {
+                getPool().execute( task );
+            } else {
+                task.run();
+            }
+        }
+
+        /**
+         * Waits for everything submitted to be extracted and written, or dropped if the index got disposed.
+         */
+        void finish() {
+            inFlight.acquireUninterruptibly( maxInFlight );
+            inFlight.release( maxInFlight );
+            extractionDone = true;
+            try {
+                writer.join();
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void extract( final Path file ) {
+            if ( indexDisposed.get() ) {
+                return;
+            }
+            try {
+                for ( final KObject kObject : toKObjects( file ) ) {
+                    while ( !queue.offer( kObject, 100, TimeUnit.MILLISECONDS ) ) {
+                        if ( indexDisposed.get() || !writer.isAlive() ) {
+                            return;
+                        }
+                    }
+                }
+                final int files = extractedFiles.incrementAndGet();
+                if ( files % PROGRESS_INTERVAL == 0 ) {
+                    logInformation( "Indexing of " + root.toUri() + " in progress: " + files + " files processed." );
+                }
+            } catch ( final Exception ex ) {
+                if ( !indexDisposed.get() ) {
+                    logError( "Index fails. [@" + file.toString() + "]",
+                              ex );
+                }
+            }
+        }
+
+        private void write() {
+            final List<KObject> batch = new ArrayList<KObject>( batchSize );
+            while ( !indexDisposed.get() ) {
+                final KObject first;
+                try {
+                    first = queue.poll( 100, TimeUnit.MILLISECONDS );
+                } catch ( final InterruptedException e ) {
+                    return;
+                }
+                if ( first == null ) {
+                    if ( extractionDone && queue.isEmpty() ) {
+                        return;
+                    }
+                    continue;
+                }
+
+                batch.add( first );
+                queue.drainTo( batch, batchSize - 1 );
+                try {
+                    indexEngine.index( batch.toArray( new KObject[ batch.size() ] ) );
+                    indexedObjects.addAndGet( batch.size() );
+                } catch ( final Exception ex ) {
+                    if ( !indexDisposed.get() ) {
+                        logError( "Index fails. [@" + root.toUri().toString() + "]",
+                                  ex );
+                    }
+                }
+                batch.clear();
+            }
+        }
+    }
+
     private void logInformation( final String message ) {
         observer.information( message );
         LOG.info( message );
@@ -245,6 +410,11 @@ public final class BatchIndex {
 
     public void dispose() {
         indexEngine.dispose();
+        synchronized ( this ) {
+            if ( pool != null ) {
+                pool.shutdownNow();
+            }
+        }
     }
 
 }
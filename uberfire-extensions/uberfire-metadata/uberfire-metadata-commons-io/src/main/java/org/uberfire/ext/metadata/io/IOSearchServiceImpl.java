@@ -26,6 +26,8 @@ import org.uberfire.ext.metadata.model.KObject;
 import org.uberfire.ext.metadata.search.ClusterSegment;
 import org.uberfire.ext.metadata.search.IOSearchService;
 import org.uberfire.ext.metadata.search.SearchIndex;
+import org.uberfire.ext.metadata.search.SearchPage;
+import org.uberfire.ext.metadata.search.SearchPageRequest;
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.base.FileSystemId;
 import org.uberfire.java.nio.base.SegmentedPath;
@@ -79,20 +81,76 @@ public class IOSearchServiceImpl implements IOSearchService {
         }};
     }
 
+    @Override
+    public SearchPage<Path> searchByAttrs( final Map<String, ?> attrs,
+                                           final Filter filter,
+                                           final SearchPageRequest page,
+                                           final Path... roots ) {
+        return toPaths( searchIndex.searchByAttrs( attrs,
+                                                   filter,
+                                                   checkNotNull( "page", page ),
+                                                   buildClusterSegments( roots ) ) );
+    }
+
+    @Override
+    public SearchPage<Path> fullTextSearch( final String _term,
+                                            final Filter filter,
+                                            final SearchPageRequest page,
+                                            final Path... roots ) {
+        checkNotNull( "page", page );
+        final String term = checkNotNull( "term", _term ).trim();
+        if ( term.isEmpty() ) {
+            return new SearchPage<Path>( Collections.<Path>emptyList(), page.getOffset(), 0, true );
+        }
+        return toPaths( searchIndex.fullTextSearch( term,
+                                                    filter,
+                                                    page,
+                                                    buildClusterSegments( roots ) ) );
+    }
+
+    @Override
+    public int searchByAttrsHits( final Map<String, ?> attrs,
+                                  final Path... roots ) {
+        return searchIndex.searchByAttrsHits( attrs,
+                                              buildClusterSegments( roots ) );
+    }
+
+    @Override
+    public int fullTextSearchHits( final String term,
+                                   final Path... roots ) {
+        return searchIndex.fullTextSearchHits( term,
+                                               buildClusterSegments( roots ) );
+    }
+
     @Override
     public int searchByAttrsHits( final Map<String, ?> attrs,
+                                  final Filter filter,
                                   final Path... roots ) {
         return searchIndex.searchByAttrsHits( attrs,
+                                              filter,
                                               buildClusterSegments( roots ) );
     }
 
     @Override
     public int fullTextSearchHits( final String term,
+                                   final Filter filter,
                                    final Path... roots ) {
         return searchIndex.fullTextSearchHits( term,
+                                               filter,
                                                buildClusterSegments( roots ) );
     }
 
+    private SearchPage<Path> toPaths( final SearchPage<KObject> page ) {
+        final List<Path> paths = new ArrayList<Path>( page.getResults().size() );
+        for ( final KObject kObject : page.getResults() ) {
+            paths.add( ioService.get( URI.create( kObject.getKey() ) ) );
+        }
+        return new SearchPage<Path>( paths,
+                                     page.getOffset(),
+                                     page.getTotalHits(),
+                                     page.isLastPage() );
+    }
+
     private ClusterSegment[] buildClusterSegments( final Path[] roots ) {
         if ( roots == null || roots.length == 0 ) {
             return new ClusterSegment[ 0 ];
@@ -22,8 +22,10 @@ import static org.uberfire.java.nio.file.StandardWatchEventKind.ENTRY_MODIFY;
 
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,6 +42,7 @@ import org.uberfire.io.IOWatchService;
 import org.uberfire.io.impl.IOServiceDotFileImpl;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.FSPath;
+import org.uberfire.java.nio.base.FileSystemChangesAware;
 import org.uberfire.java.nio.base.WatchContext;
 import org.uberfire.java.nio.file.DeleteOption;
 import org.uberfire.java.nio.file.DirectoryNotEmptyException;
@@ -66,6 +69,7 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
     private final Class<? extends FileAttributeView>[] views;
     private final List<FileSystem> watchedList = new ArrayList<FileSystem>();
     private final List<WatchService> watchServices = new ArrayList<WatchService>();
+    private final Set<KCluster> checkedClusters = new HashSet<KCluster>();
 
     private final Observer observer;
 
@@ -262,92 +266,9 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
 
                         @Override
                         public void run() {
-                            for ( WatchEvent object : events ) {
-                                if ( isDisposed() ) {
-                                    return;
-                                }
-                                try {
-                                    final WatchContext context = ( (WatchContext) object.context() );
-                                    if ( object.kind() == ENTRY_MODIFY || object.kind() == ENTRY_CREATE ) {
-
-                                        final Path path = context.getPath();
-
-                                        if ( !path.getFileName().toString().startsWith( "." ) ) {
-                                            //Default indexing
-                                            for ( final Class<? extends FileAttributeView> view : views ) {
-                                                getFileAttributeView( path,
-                                                                      view );
-                                            }
-                                            final FileAttribute<?>[] allAttrs = convert( readAttributes( path ) );
-                                            indexEngine.index( KObjectUtil.toKObject( path,
-                                                                                      allAttrs ) );
-
-                                            //Additional indexing
-                                            for ( Indexer indexer : IndexersFactory.getIndexers() ) {
-                                                if ( isDisposed() ) {
-                                                    return;
-                                                }
-                                                if ( indexer.supportsPath( path ) ) {
-                                                    final KObject kObject = indexer.toKObject( path );
-                                                    if ( kObject != null ) {
-                                                        indexEngine.index( kObject );
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                    if ( object.kind() == StandardWatchEventKind.ENTRY_RENAME ) {
-                                        //Default indexing
-                                        final Path sourcePath = context.getOldPath();
-                                        final Path destinationPath = context.getPath();
-                                        indexEngine.rename( KObjectUtil.toKObjectKey( sourcePath ),
-                                                            KObjectUtil.toKObject( destinationPath ) );
-
-                                        //Additional indexing
-                                        for ( Indexer indexer : IndexersFactory.getIndexers() ) {
-                                            if ( isDisposed() ) {
-                                                return;
-                                            }
-                                            if ( indexer.supportsPath( destinationPath ) ) {
-                                                final KObjectKey kObjectSource = indexer.toKObjectKey( sourcePath );
-                                                final KObject kObjectDestination = indexer.toKObject( destinationPath );
-                                                if ( kObjectSource != null && kObjectDestination != null ) {
-                                                    indexEngine.rename( kObjectSource,
-                                                                        kObjectDestination );
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                    if ( object.kind() == StandardWatchEventKind.ENTRY_DELETE ) {
-                                        //Default indexing
-                                        final Path oldPath = context.getOldPath();
-                                        indexEngine.delete( KObjectUtil.toKObjectKey( oldPath ) );
-
-                                        //Additional indexing
-                                        for ( Indexer indexer : IndexersFactory.getIndexers() ) {
-                                            if ( isDisposed() ) {
-                                                return;
-                                            }
-                                            if ( indexer.supportsPath( oldPath ) ) {
-                                                final KObjectKey kObject = indexer.toKObjectKey( oldPath );
-                                                if ( kObject != null ) {
-                                                    indexEngine.delete( kObject );
-                                                }
-                                            }
-                                        }
-                                    }
-
-                                } catch ( final Exception ex ) {
-                                    LOGGER.error( "Error during indexing. { " + object.toString() + " }", ex );
-                                }
-                            }
-                        }
-
-                        private boolean isDisposed() {
-                            return isDisposed || ws.isClose();
+                            indexEvents( events,
+                                         ws );
                         }
-
                     };
                     if ( defaultInstance.equals( unmanagedInstance ) ) {
                         // if default and unmanaged are same instance simply run the job to avoid duplicated threads
@@ -362,21 +283,188 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
         } );
     }
 
+    private void indexEvents( final List<WatchEvent<?>> events,
+                              final WatchService ws ) {
+        for ( WatchEvent object : events ) {
+            if ( isDisposed( ws ) ) {
+                return;
+            }
+            try {
+                final WatchContext context = ( (WatchContext) object.context() );
+                if ( object.kind() == ENTRY_MODIFY || object.kind() == ENTRY_CREATE ) {
+
+                    final Path path = context.getPath();
+
+                    if ( !path.getFileName().toString().startsWith( "." ) ) {
+                        //Default indexing
+                        for ( final Class<? extends FileAttributeView> view : views ) {
+                            getFileAttributeView( path,
+                                                  view );
+                        }
+                        final FileAttribute<?>[] allAttrs = convert( readAttributes( path ) );
+                        indexEngine.index( KObjectUtil.toKObject( path,
+                                                                  allAttrs ) );
+
+                        //Additional indexing
+                        for ( Indexer indexer : IndexersFactory.getIndexers() ) {
+                            if ( isDisposed( ws ) ) {
+                                return;
+                            }
+                            if ( indexer.supportsPath( path ) ) {
+                                final KObject kObject = indexer.toKObject( path );
+                                if ( kObject != null ) {
+                                    indexEngine.index( kObject );
+                                }
+                            }
+                        }
+                    }
+                }
+                if ( object.kind() == StandardWatchEventKind.ENTRY_RENAME ) {
+                    //Default indexing
+                    final Path sourcePath = context.getOldPath();
+                    final Path destinationPath = context.getPath();
+                    indexEngine.rename( KObjectUtil.toKObjectKey( sourcePath ),
+                                        KObjectUtil.toKObject( destinationPath ) );
+
+                    //Additional indexing
+                    for ( Indexer indexer : IndexersFactory.getIndexers() ) {
+                        if ( isDisposed( ws ) ) {
+                            return;
+                        }
+                        if ( indexer.supportsPath( destinationPath ) ) {
+                            final KObjectKey kObjectSource = indexer.toKObjectKey( sourcePath );
+                            final KObject kObjectDestination = indexer.toKObject( destinationPath );
+                            if ( kObjectSource != null && kObjectDestination != null ) {
+                                indexEngine.rename( kObjectSource,
+                                                    kObjectDestination );
+                            }
+                        }
+                    }
+                }
+
+                if ( object.kind() == StandardWatchEventKind.ENTRY_DELETE ) {
+                    //Default indexing
+                    final Path oldPath = context.getOldPath();
+                    indexEngine.delete( KObjectUtil.toKObjectKey( oldPath ) );
+
+                    //Additional indexing
+                    for ( Indexer indexer : IndexersFactory.getIndexers() ) {
+                        if ( isDisposed( ws ) ) {
+                            return;
+                        }
+                        if ( indexer.supportsPath( oldPath ) ) {
+                            final KObjectKey kObject = indexer.toKObjectKey( oldPath );
+                            if ( kObject != null ) {
+                                indexEngine.delete( kObject );
+                            }
+                        }
+                    }
+                }
+
+            } catch ( final Exception ex ) {
+                LOGGER.error( "Error during indexing. { " + object.toString() + " }", ex );
+            }
+        }
+    }
+
+    private boolean isDisposed( final WatchService ws ) {
+        return isDisposed || ( ws != null && ws.isClose() );
+    }
+
     private synchronized void indexIfFresh( final FileSystem fs ) {
         final KCluster cluster = KObjectUtil.toKCluster( fs );
         if ( indexEngine.freshIndex( cluster ) ) {
+            checkedClusters.add( cluster );
             // See https://bugzilla.redhat.com/show_bug.cgi?id=1288132
             // Record batch index as being started before the async indexing actually runs to
             // prevent multiple batch indexes for the same FileSystem being scheduled.
             indexEngine.startBatch( cluster );
             index( fs );
+        } else if ( checkedClusters.add( cluster ) && fs instanceof FileSystemChangesAware ) {
+            reconcile( (FileSystemChangesAware) fs,
+                       cluster );
         }
     }
 
-    private void index( final FileSystem fs ) {
+    private synchronized void index( final FileSystem fs ) {
+        checkedClusters.add( KObjectUtil.toKCluster( fs ) );
         batchIndex.runAsync( fs );
     }
 
+    /**
+     * Catches an existing index up with the commits made since its checkpoint, e.g. while the node was down.
+     * Only an index without checkpoint is rebuilt from scratch.
+     */
+    private void reconcile( final FileSystemChangesAware fs,
+                            final KCluster cluster ) {
+        final Map<String, String> checkpoint = indexEngine.getCheckpoint( cluster );
+        if ( checkpoint == null ) {
+            rebuild( (FileSystem) fs,
+                     cluster );
+            return;
+        }
+
+        SimpleAsyncExecutorService.getDefaultInstance().execute( new DescriptiveRunnable() {
+            @Override
+            public String getDescription() {
+                return "FS Index Reconcile [" + cluster.getClusterId() + "]";
+            }
+
+            @Override
+            public void run() {
+                final Map<String, String> refs = fs.getRefs();
+                final List<WatchEvent<?>> events = new ArrayList<WatchEvent<?>>();
+                final Set<String> names = new HashSet<String>( checkpoint.keySet() );
+                names.addAll( refs.keySet() );
+                for ( final String name : names ) {
+                    final String from = checkpoint.get( name );
+                    final String to = refs.get( name );
+                    if ( from != null && from.equals( to ) ) {
+                        continue;
+                    }
+                    final List<WatchEvent<?>> changes = fs.getChanges( name,
+                                                                       from,
+                                                                       to );
+                    if ( changes == null ) {
+                        LOGGER.warn( "Index of '" + cluster.getClusterId() + "' can't be caught up, commit " + from + " of " + name + " is gone. Rebuilding it." );
+                        rebuild( (FileSystem) fs,
+                                 cluster );
+                        return;
+                    }
+                    events.addAll( changes );
+                }
+
+                if ( events.isEmpty() ) {
+                    if ( !refs.equals( checkpoint ) ) {
+                        indexEngine.setCheckpoint( cluster,
+                                                   refs );
+                    }
+                    return;
+                }
+
+                LOGGER.info( "Catching up index of '" + cluster.getClusterId() + "' with " + events.size() + " changes." );
+                indexEngine.startBatch( cluster );
+                try {
+                    indexEvents( events,
+                                 null );
+                } finally {
+                    indexEngine.commit( cluster );
+                }
+                if ( !isDisposed ) {
+                    indexEngine.setCheckpoint( cluster,
+                                               refs );
+                }
+            }
+        } );
+    }
+
+    private synchronized void rebuild( final FileSystem fs,
+                                       final KCluster cluster ) {
+        indexEngine.delete( cluster );
+        indexEngine.startBatch( cluster );
+        index( fs );
+    }
+
     @Override
     public void delete( final Path path,
                         final DeleteOption... options ) throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException, IOException, SecurityException {
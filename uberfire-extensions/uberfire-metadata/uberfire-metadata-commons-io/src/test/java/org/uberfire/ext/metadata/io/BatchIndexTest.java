@@ -30,7 +30,10 @@ import org.junit.Test;
 import org.uberfire.ext.metadata.backend.lucene.LuceneConfigBuilder;
 import org.uberfire.ext.metadata.backend.lucene.index.LuceneIndex;
 import org.uberfire.ext.metadata.engine.Index;
+import org.uberfire.ext.metadata.engine.Indexer;
 import org.uberfire.ext.metadata.engine.Observer;
+import org.uberfire.ext.metadata.model.KObject;
+import org.uberfire.ext.metadata.model.KObjectKey;
 import org.uberfire.io.IOService;
 import org.uberfire.io.attribute.DublinCoreView;
 import org.uberfire.io.impl.IOServiceDotFileImpl;
@@ -261,4 +264,57 @@ public class BatchIndexTest extends BaseIndexTest {
 
     }
 
+    @Test
+    public void testFailingIndexerKeepsDefaultObject() throws IOException {
+        final Path file = ioService().get( "git://temp-repo-test/failing/indexer.txt" );
+        ioService().write( file,
+                           "some content here",
+                           Collections.<OpenOption>emptySet(),
+                           new FileAttribute<Object>() {
+                               @Override
+                               public String name() {
+                                   return "dcore.author";
+                               }
+
+                               @Override
+                               public Object value() {
+                                   return "Failing Indexer Owner";
+                               }
+                           } );
+
+        IndexersFactory.addIndexer( new Indexer() {
+            @Override
+            public boolean supportsPath( final Path path ) {
+                return true;
+            }
+
+            @Override
+            public KObject toKObject( final Path path ) {
+                throw new RuntimeException( "indexer failure" );
+            }
+
+            @Override
+            public KObjectKey toKObjectKey( final Path path ) {
+                return null;
+            }
+        } );
+
+        new BatchIndex( config.getIndexEngine(),
+                        ioService(),
+                        observer(),
+                        DublinCoreView.class ).run( ioService().get( "git://temp-repo-test/failing" ) );
+
+        final Index index = config.getIndexManager().get( toKCluster( file.getFileSystem() ) );
+        final IndexSearcher searcher = ( (LuceneIndex) index ).nrtSearcher();
+        try {
+            final TopScoreDocCollector collector = TopScoreDocCollector.create( 10 );
+
+            searcher.search( new TermQuery( new Term( "dcore.author", "owner" ) ), collector );
+
+            assertEquals( 1, collector.topDocs().scoreDocs.length );
+        } finally {
+            ( (LuceneIndex) index ).nrtRelease( searcher );
+        }
+    }
+
 }
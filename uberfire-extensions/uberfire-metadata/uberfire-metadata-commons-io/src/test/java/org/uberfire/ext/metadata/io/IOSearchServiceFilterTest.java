@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.uberfire.ext.metadata.model.KObject;
+import org.uberfire.ext.metadata.model.KProperty;
+import org.uberfire.ext.metadata.search.IOSearchService;
+import org.uberfire.ext.metadata.search.QueryFilter;
+import org.uberfire.ext.metadata.search.SearchPage;
+import org.uberfire.ext.metadata.search.SearchPageRequest;
+import org.uberfire.java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class IOSearchServiceFilterTest extends BaseIndexTest {
+
+    @Override
+    protected String[] getRepositoryNames() {
+        return new String[]{ this.getClass().getSimpleName() };
+    }
+
+    @Test
+    public void testQueryFilter() throws IOException, InterruptedException {
+
+        final IOSearchServiceImpl searchIndex = new IOSearchServiceImpl( config.getSearchIndex(), ioService() );
+
+        final Path base = getBasePath( this.getClass().getSimpleName() );
+        ioService().write( base.resolve( "file1.txt" ),
+                           "content1" );
+        ioService().write( base.resolve( "file2.txt" ),
+                           "content2" );
+        ioService().write( base.resolve( "dir/file3.txt" ),
+                           "content3" );
+        final Path root = base.getRoot();
+
+        Thread.sleep( 5000 ); //wait for events to be consumed from jgit -> (notify changes -> watcher -> index) -> lucene index
+
+        final Map<String, Object> attributes = new HashMap<String, Object>() {{
+            put( "filename",
+                 "*.txt" );
+        }};
+
+        assertEquals( 3,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     new IOSearchService.NoOpFilter(),
+                                                     root ) );
+
+        final QueryFilter inDir = new QueryFilter().keyPrefixes( base.resolve( "dir" ).toUri().toString() + "/" );
+        assertEquals( 1,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     inDir,
+                                                     root ) );
+        assertEquals( 1,
+                      searchIndex.searchByAttrs( attributes,
+                                                 inDir,
+                                                 root ).size() );
+
+        final SearchPage<Path> page = searchIndex.searchByAttrs( attributes,
+                                                                 inDir,
+                                                                 new SearchPageRequest( 0, 10 ),
+                                                                 root );
+        assertEquals( 1, page.getTotalHits() );
+        assertEquals( "file3.txt", page.getResults().get( 0 ).getFileName().toString() );
+        assertTrue( page.isLastPage() );
+
+        // same criteria, served from the filter cache
+        assertEquals( 1,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     new QueryFilter().keyPrefixes( base.resolve( "dir" ).toUri().toString() + "/" ),
+                                                     root ) );
+
+        assertEquals( 0,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     new QueryFilter().types( "unknown" ),
+                                                     root ) );
+        assertEquals( 3,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     new QueryFilter().types( Path.class.getName() ),
+                                                     root ) );
+
+        // predicate filters are still applied, on loaded objects
+        assertEquals( 2,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     new IOSearchService.Filter() {
+                                                         @Override
+                                                         public boolean accept( final KObject kObject ) {
+                                                             return !kObject.getKey().contains( "/dir/" );
+                                                         }
+                                                     },
+                                                     root ) );
+
+        // including the ones looking at properties, which are loaded for them
+        final IOSearchService.Filter byFileName = new IOSearchService.Filter() {
+            @Override
+            public boolean accept( final KObject kObject ) {
+                for ( final KProperty<?> property : kObject.getProperties() ) {
+                    if ( property.getName().equals( "filename" ) && "file1.txt".equals( property.getValue() ) ) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+        assertEquals( 1,
+                      searchIndex.searchByAttrs( attributes,
+                                                 byFileName,
+                                                 root ).size() );
+        assertEquals( 1,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     byFileName,
+                                                     root ) );
+        assertEquals( 1,
+                      searchIndex.searchByAttrs( attributes,
+                                                 byFileName,
+                                                 new SearchPageRequest( 0, 10 ),
+                                                 root ).getResults().size() );
+
+        // files written after the first search show up once the index is refreshed
+        ioService().write( base.resolve( "dir/file4.txt" ),
+                           "content4" );
+        Thread.sleep( 5000 );
+        assertEquals( 2,
+                      searchIndex.searchByAttrsHits( attributes,
+                                                     inDir,
+                                                     root ) );
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 JBoss, by Red Hat, Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.ext.metadata.io;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.uberfire.ext.metadata.model.KObject;
+import org.uberfire.ext.metadata.search.IOSearchService;
+import org.uberfire.ext.metadata.search.SearchPage;
+import org.uberfire.ext.metadata.search.SearchPageRequest;
+import org.uberfire.java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class IOSearchServicePagingTest extends BaseIndexTest {
+
+    @Override
+    protected String[] getRepositoryNames() {
+        return new String[]{ this.getClass().getSimpleName() };
+    }
+
+    @Test
+    public void testPagedSearch() throws IOException, InterruptedException {
+
+        final IOSearchServiceImpl searchIndex = new IOSearchServiceImpl( config.getSearchIndex(), ioService() );
+
+        final Path base = getBasePath( this.getClass().getSimpleName() );
+        for ( int i = 1; i <= 5; i++ ) {
+            ioService().write( base.resolve( "file" + i + ".txt" ),
+                               "content" + i );
+        }
+        final Path root = base.getRoot();
+
+        Thread.sleep( 5000 ); //wait for events to be consumed from jgit -> (notify changes -> watcher -> index) -> lucene index
+
+        final Map<String, Object> attributes = new HashMap<String, Object>() {{
+            put( "filename",
+                 "*.txt" );
+        }};
+
+        {
+            final SearchPageRequest request = new SearchPageRequest( 0, 2, SearchPageRequest.Sort.KEY, false );
+            final SearchPage<Path> page1 = searchIndex.searchByAttrs( attributes,
+                                                                      new IOSearchService.NoOpFilter(),
+                                                                      request,
+                                                                      root );
+            assertEquals( 5, page1.getTotalHits() );
+            assertEquals( 2, page1.getResults().size() );
+            assertEquals( "file1.txt", page1.getResults().get( 0 ).getFileName().toString() );
+            assertEquals( "file2.txt", page1.getResults().get( 1 ).getFileName().toString() );
+            assertFalse( page1.isLastPage() );
+
+            final SearchPage<Path> page2 = searchIndex.searchByAttrs( attributes,
+                                                                      new IOSearchService.NoOpFilter(),
+                                                                      request.next(),
+                                                                      root );
+            assertEquals( 2, page2.getOffset() );
+            assertEquals( "file3.txt", page2.getResults().get( 0 ).getFileName().toString() );
+            assertEquals( "file4.txt", page2.getResults().get( 1 ).getFileName().toString() );
+            assertFalse( page2.isLastPage() );
+
+            final SearchPage<Path> page3 = searchIndex.searchByAttrs( attributes,
+                                                                      new IOSearchService.NoOpFilter(),
+                                                                      request.next().next(),
+                                                                      root );
+            assertEquals( 1, page3.getResults().size() );
+            assertEquals( "file5.txt", page3.getResults().get( 0 ).getFileName().toString() );
+            assertTrue( page3.isLastPage() );
+        }
+
+        {
+            final SearchPage<Path> page = searchIndex.searchByAttrs( attributes,
+                                                                     new IOSearchService.NoOpFilter(),
+                                                                     new SearchPageRequest( 0, 2, SearchPageRequest.Sort.KEY, true ),
+                                                                     root );
+            assertEquals( "file5.txt", page.getResults().get( 0 ).getFileName().toString() );
+            assertEquals( "file4.txt", page.getResults().get( 1 ).getFileName().toString() );
+        }
+
+        {
+            // rejected hits don't count against the page
+            final SearchPage<Path> page = searchIndex.searchByAttrs( attributes,
+                                                                     new IOSearchService.Filter() {
+                                                                         @Override
+                                                                         public boolean accept( final KObject kObject ) {
+                                                                             return !kObject.getKey().endsWith( "file1.txt" ) && !kObject.getKey().endsWith( "file2.txt" );
+                                                                         }
+                                                                     },
+                                                                     new SearchPageRequest( 0, 2, SearchPageRequest.Sort.KEY, false ),
+                                                                     root );
+            assertEquals( 2, page.getResults().size() );
+            assertEquals( "file3.txt", page.getResults().get( 0 ).getFileName().toString() );
+            assertEquals( "file4.txt", page.getResults().get( 1 ).getFileName().toString() );
+            assertFalse( page.isLastPage() );
+        }
+
+        {
+            final SearchPage<Path> page = searchIndex.fullTextSearch( "",
+                                                                      new IOSearchService.NoOpFilter(),
+                                                                      new SearchPageRequest( 0, 10 ),
+                                                                      root );
+            assertEquals( 0, page.getResults().size() );
+            assertTrue( page.isLastPage() );
+        }
+    }
+}
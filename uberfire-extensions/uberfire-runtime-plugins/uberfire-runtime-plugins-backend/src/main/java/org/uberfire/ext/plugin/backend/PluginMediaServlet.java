@@ -18,7 +18,6 @@ package org.uberfire.ext.plugin.backend;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.util.HashMap;
 import javax.enterprise.event.Event;
@@ -42,6 +41,7 @@ import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
 import org.uberfire.java.nio.file.Path;
 import org.uberfire.server.BaseUploadServlet;
 import org.uberfire.server.MimeType;
+import org.uberfire.server.util.FileStreamUtil;
 
 public class PluginMediaServlet
         extends BaseUploadServlet {
@@ -97,7 +97,7 @@ public class PluginMediaServlet
     public void doGet( final HttpServletRequest req,
                        final HttpServletResponse resp ) throws IOException {
         String mime = null;
-        InputStream in;
+        String resource = null;
 
         boolean isPreview = req.getParameterMap().containsKey( "preview" );
 
@@ -113,18 +113,12 @@ public class PluginMediaServlet
         final Path mediaPath = root.resolve( filename.replace( pattern, "/" ) );
         if ( !ioService.exists( mediaPath ) ) {
             mime = "image/png";
-            in = getClass().getResourceAsStream( "/nofound.png" );
+            resource = "/nofound.png";
         } else {
             mime = MimeType.fromExtension( "." + FilenameUtils.getExtension( mediaPath.getFileName().toString() ) ).getType();
-            if ( isPreview ) {
-                if ( mime != null && !mime.startsWith( "image/" ) ) {
-                    mime = "image/png";
-                    in = getClass().getResourceAsStream( "/placeholder.png" );
-                } else {
-                    in = ioService.newInputStream( mediaPath );
-                }
-            } else {
-                in = ioService.newInputStream( mediaPath );
+            if ( isPreview && mime != null && !mime.startsWith( "image/" ) ) {
+                mime = "image/png";
+                resource = "/placeholder.png";
             }
         }
 
@@ -135,15 +129,17 @@ public class PluginMediaServlet
 
         resp.setContentType( mime );
 
-        final OutputStream out = resp.getOutputStream();
+        if ( resource == null ) {
+            FileStreamUtil.stream( ioService, mediaPath, req, resp );
+            return;
+        }
 
-        byte[] buf = new byte[ 1024 ];
-        int count = 0;
-        while ( ( count = in.read( buf ) ) >= 0 ) {
-            out.write( buf, 0, count );
+        final InputStream in = getClass().getResourceAsStream( resource );
+        try {
+            FileStreamUtil.copy( in, resp.getOutputStream(), -1 );
+        } finally {
+            in.close();
         }
-        out.close();
-        in.close();
     }
 
     @Override
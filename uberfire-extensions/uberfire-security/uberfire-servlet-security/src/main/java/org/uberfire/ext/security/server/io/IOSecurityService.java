@@ -35,6 +35,7 @@ import org.uberfire.backend.server.security.FileSystemResourceAdaptor;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
 import org.uberfire.java.nio.file.CopyOption;
@@ -127,6 +128,24 @@ public class IOSecurityService implements IOService {
         service.endBatch();
     }
 
+    @Override
+    public void commit( FileSystem fs,
+                        ChangeSet changes,
+                        Option... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        if ( !authManager.authorize( toResource( fs ), getUser() ) ) {
+            throw new SecurityException();
+        }
+        for ( final ChangeSet.Change change : changes.getChanges() ) {
+            if ( !authManager.authorize( toResource( change.getPath() ), getUser() ) ) {
+                throw new SecurityException();
+            }
+            if ( change.getTarget() != null && !authManager.authorize( toResource( change.getTarget() ), getUser() ) ) {
+                throw new SecurityException();
+            }
+        }
+        service.commit( fs, changes, options );
+    }
+
     @Override
     public FileAttribute<?>[] convert( Map<String, ?> attrs ) {
         return service.convert( attrs );
@@ -28,6 +28,7 @@ import java.util.Set;
 
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
 import org.uberfire.java.nio.file.CopyOption;
@@ -85,6 +86,13 @@ public class MockIOService implements IOService {
 
     }
 
+    @Override
+    public void commit( FileSystem fs,
+                        ChangeSet changes,
+                        Option... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+
+    }
+
     @Override
     public FileAttribute<?>[] convert( Map<String, ?> attrs ) {
         return new FileAttribute<?>[ 0 ];
@@ -30,6 +30,7 @@ import java.util.Set;
 import org.uberfire.commons.lifecycle.Disposable;
 import org.uberfire.commons.lifecycle.PriorityDisposable;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.AtomicMoveNotSupportedException;
 import org.uberfire.java.nio.file.CopyOption;
@@ -69,6 +70,16 @@ public interface IOService extends PriorityDisposable {
 
     void endBatch();
 
+    /**
+     * Applies all the writes, deletes, moves and copies of the set to the given file system as a single change,
+     * i.e. one commit on versioned file systems, notified to watchers as one batch of events. Preferred over
+     * <code>startBatch</code>/<code>endBatch</code> around individual writes for bulk changes.
+     */
+    void commit( final FileSystem fs,
+                 final ChangeSet changes,
+                 final Option... options )
+            throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException;
+
     FileAttribute<?>[] convert( final Map<String, ?> attrs );
 
     Path get( final String first,
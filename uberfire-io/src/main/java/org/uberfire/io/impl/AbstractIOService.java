@@ -46,7 +46,11 @@ import org.uberfire.io.IOWatchService;
 import org.uberfire.io.lock.BatchLockControl;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.AbstractPath;
+import org.uberfire.java.nio.base.AttrHolder;
+import org.uberfire.java.nio.base.ChangeSet;
+import org.uberfire.java.nio.base.ChangeSetAware;
 import org.uberfire.java.nio.base.FileSystemState;
+import org.uberfire.java.nio.base.FileSystemStateAware;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.CopyOption;
 import org.uberfire.java.nio.file.DirectoryNotEmptyException;
@@ -64,6 +68,7 @@ import org.uberfire.java.nio.file.Option;
 import org.uberfire.java.nio.file.Path;
 import org.uberfire.java.nio.file.Paths;
 import org.uberfire.java.nio.file.ProviderNotFoundException;
+import org.uberfire.java.nio.file.StandardCopyOption;
 import org.uberfire.java.nio.file.StandardOpenOption;
 import org.uberfire.java.nio.file.attribute.FileAttribute;
 import org.uberfire.java.nio.file.attribute.FileTime;
@@ -166,13 +171,8 @@ public abstract class AbstractIOService implements IOServiceIdentifiable,
             throw new RuntimeException( "There is no batch process." );
         }
 
-        if ( batchLockControl.getHoldCount() > 1 ) {
-            batchLockControl.unlock();
-            return;
-        }
-
         try {
-            cleanUpAndUnsetBatchModeOnFileSystems();
+            cleanUpAndUnsetBatchModeOnFileSystems( batchLockControl.getReleasedOnUnlock() );
         } catch ( Exception e ) {
             throw new RuntimeException( "Exception cleaning and unsetting batch mode on FS.", e );
         } finally {
@@ -180,13 +180,86 @@ public abstract class AbstractIOService implements IOServiceIdentifiable,
         }
     }
 
-    private void cleanUpAndUnsetBatchModeOnFileSystems() {
+    @Override
+    public void commit( final FileSystem fs,
+                        final ChangeSet changes,
+                        final Option... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        checkNotNull( "fs", fs );
+        checkNotNull( "changes", changes );
+        // the given file system may be a proxy, its paths aren't
+        final FileSystem fileSystem = getFirstRootDirectory( fs ).getFileSystem();
+        for ( final ChangeSet.Change change : changes.getChanges() ) {
+            if ( !fileSystem.equals( change.getPath().getFileSystem() ) ||
+                    ( change.getTarget() != null && !fileSystem.equals( change.getTarget().getFileSystem() ) ) ) {
+                throw new IllegalArgumentException( "All the changes of a set must belong to the file system they are committed to." );
+            }
+        }
+        if ( changes.isEmpty() ) {
+            return;
+        }
+
+        if ( fileSystem.provider() instanceof ChangeSetAware ) {
+            // waits for batches of other threads, or joins the one of the current thread
+            batchLockControl.lock( fileSystem );
+            try {
+                ( (ChangeSetAware) fileSystem.provider() ).commit( changes, options );
+            } finally {
+                batchLockControl.unlock();
+            }
+        } else if ( fileSystem instanceof FileSystemStateAware ) {
+            startBatch( new FileSystem[]{ fileSystem }, options );
+            try {
+                apply( changes );
+            } finally {
+                endBatch();
+            }
+        } else {
+            // no batches on this file system either, changes are applied one after the other
+            apply( changes );
+        }
+
+        for ( final ChangeSet.Change change : changes.getChanges() ) {
+            clearAttrs( change.getPath() );
+            clearAttrs( change.getTarget() );
+        }
+    }
+
+    private void apply( final ChangeSet changes ) {
+        for ( final ChangeSet.Change change : changes.getChanges() ) {
+            switch ( change.getType() ) {
+                case WRITE:
+                    write( change.getPath(), change.getContent() );
+                    break;
+                case DELETE:
+                    deleteIfExists( change.getPath() );
+                    break;
+                case MOVE:
+                    move( change.getPath(), change.getTarget(), StandardCopyOption.REPLACE_EXISTING );
+                    break;
+                case COPY:
+                    copy( change.getPath(), change.getTarget(), StandardCopyOption.REPLACE_EXISTING );
+                    break;
+            }
+        }
+    }
+
+    private void clearAttrs( final Path path ) {
+        if ( path instanceof AttrHolder ) {
+            ( (AttrHolder) path ).getAttrStorage().clear();
+        }
+    }
+
+    private void cleanUpAndUnsetBatchModeOnFileSystems( final List<FileSystem> released ) {
         if ( !fileSystems.isEmpty() ) {
             cleanupClosedFileSystems();
         }
 
-        for ( final FileSystem fs : fileSystems ) {
-            unsetBatchModeOn( fs );
+        // only the filesystems the current thread no longer holds leave batch mode, others may still be
+        // part of an outer batch of this thread or of a batch owned by another thread
+        for ( final FileSystem fs : released ) {
+            if ( fs.isOpen() ) {
+                unsetBatchModeOn( fs );
+            }
         }
     }
 
@@ -204,6 +277,7 @@ public abstract class AbstractIOService implements IOServiceIdentifiable,
         }
 
         fileSystems.removeAll( removeList );
+        batchLockControl.evictClosed();
     }
 
     private void setBatchModeOn( FileSystem fs ) {
@@ -27,6 +27,8 @@ import org.uberfire.io.IOWatchService;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.AbstractBasicFileAttributeView;
 import org.uberfire.java.nio.base.AttrHolder;
+import org.uberfire.java.nio.base.ChangeSet;
+import org.uberfire.java.nio.base.ChangeSetAware;
 import org.uberfire.java.nio.base.NeedsPreloadedAttrs;
 import org.uberfire.java.nio.base.Properties;
 import org.uberfire.java.nio.base.dotfiles.DotFileOption;
@@ -36,9 +38,11 @@ import org.uberfire.java.nio.file.CopyOption;
 import org.uberfire.java.nio.file.DeleteOption;
 import org.uberfire.java.nio.file.DirectoryNotEmptyException;
 import org.uberfire.java.nio.file.FileAlreadyExistsException;
+import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.Files;
 import org.uberfire.java.nio.file.NoSuchFileException;
 import org.uberfire.java.nio.file.OpenOption;
+import org.uberfire.java.nio.file.Option;
 import org.uberfire.java.nio.file.Path;
 import org.uberfire.java.nio.file.attribute.FileAttribute;
 import org.uberfire.java.nio.file.attribute.FileAttributeView;
@@ -98,6 +102,51 @@ public class IOServiceDotFileImpl
         return result;
     }
 
+    @Override
+    public void commit( final FileSystem fs,
+                        final ChangeSet changes,
+                        final Option... options )
+            throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        checkNotNull( "fs", fs );
+        checkNotNull( "changes", changes );
+        if ( !( fs.provider() instanceof ChangeSetAware ) ) {
+            // changes are applied one by one, through the methods above that already take care of dot files
+            super.commit( fs, changes, options );
+            return;
+        }
+
+        final ChangeSet withDotFiles = new ChangeSet();
+        for ( final ChangeSet.Change change : changes.getChanges() ) {
+            final Path path = change.getPath();
+            final Path target = change.getTarget();
+            switch ( change.getType() ) {
+                case WRITE:
+                    withDotFiles.write( path, change.getContent() );
+                    break;
+                case DELETE:
+                    withDotFiles.delete( path ).delete( dot( path ) );
+                    break;
+                case MOVE:
+                    withDotFiles.move( path, target );
+                    if ( Files.exists( dot( path ) ) ) {
+                        withDotFiles.move( dot( path ), dot( target ) );
+                    } else {
+                        withDotFiles.delete( dot( target ) );
+                    }
+                    break;
+                case COPY:
+                    withDotFiles.copy( path, target );
+                    if ( Files.exists( dot( path ) ) ) {
+                        withDotFiles.copy( dot( path ), dot( target ) );
+                    } else {
+                        withDotFiles.delete( dot( target ) );
+                    }
+                    break;
+            }
+        }
+        super.commit( fs, withDotFiles, options );
+    }
+
     @Override
     public SeekableByteChannel newByteChannel( final Path path,
                                                final Set<? extends OpenOption> options,
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.uberfire.java.nio.base.FileSystemRefsAware;
+import org.uberfire.java.nio.file.FileSystem;
+
+/**
+ * Ref related entries of SYNC_FS messages. Each updated ref is sent as "ref_&lt;name&gt;" = "&lt;old id&gt;:&lt;new id&gt;",
+ * with an empty old id when unknown and an empty new id when deleted; "fs_refs" flags that the sender listed its refs,
+ * so a message without ref entries means nothing changed.
+ */
+final class FileSystemSyncContent {
+
+    static final String REFS = "fs_refs";
+    static final String REF_PREFIX = "ref_";
+    static final String SENT_AT = "fs_sent_at";
+
+    private FileSystemSyncContent() {
+    }
+
+    static Map<String, String> getRefs( final FileSystem fileSystem ) {
+        if ( fileSystem instanceof FileSystemRefsAware ) {
+            return ( (FileSystemRefsAware) fileSystem ).getRefs();
+        }
+        return null;
+    }
+
+    /**
+     * Adds the refs that changed between both snapshots; with no previous snapshot all current refs are sent.
+     */
+    static void putRefs( final Map<String, String> content,
+                         final Map<String, String> before,
+                         final Map<String, String> after ) {
+        content.put( SENT_AT, String.valueOf( System.currentTimeMillis() ) );
+        if ( after == null ) {
+            return;
+        }
+        content.put( REFS, Boolean.TRUE.toString() );
+        for ( final Map.Entry<String, String> ref : after.entrySet() ) {
+            final String oldId = before == null ? null : before.get( ref.getKey() );
+            if ( before == null || !ref.getValue().equals( oldId ) ) {
+                content.put( REF_PREFIX + ref.getKey(), ( oldId == null ? "" : oldId ) + ":" + ref.getValue() );
+            }
+        }
+        if ( before != null ) {
+            for ( final Map.Entry<String, String> ref : before.entrySet() ) {
+                if ( !after.containsKey( ref.getKey() ) ) {
+                    content.put( REF_PREFIX + ref.getKey(), ref.getValue() + ":" );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the updated refs of the message, ref name to new id (empty if deleted), or null if the sender
+     * didn't list them.
+     */
+    static Map<String, String> getUpdatedRefs( final Map<String, String> content ) {
+        if ( !content.containsKey( REFS ) ) {
+            return null;
+        }
+        final Map<String, String> result = new HashMap<String, String>();
+        for ( final Map.Entry<String, String> entry : content.entrySet() ) {
+            if ( entry.getKey().startsWith( REF_PREFIX ) ) {
+                final String value = entry.getValue();
+                result.put( entry.getKey().substring( REF_PREFIX.length() ), value.substring( value.indexOf( ':' ) + 1 ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes refs as the "refs" parameter of a sync uri: "name:id" pairs joined by ':', which git forbids in ref names.
+     */
+    static String encodeRefs( final Map<String, String> refs ) {
+        final StringBuilder sb = new StringBuilder();
+        for ( final Map.Entry<String, String> ref : refs.entrySet() ) {
+            if ( ref.getValue().isEmpty() ) {
+                continue;
+            }
+            if ( sb.length() > 0 ) {
+                sb.append( ':' );
+            }
+            sb.append( ref.getKey() ).append( ':' ).append( ref.getValue() );
+        }
+        return sb.toString();
+    }
+
+    static long getSentAt( final Map<String, String> content ) {
+        final String value = content.get( SENT_AT );
+        if ( value == null ) {
+            return -1;
+        }
+        try {
+            return Long.parseLong( value );
+        } catch ( final NumberFormatException ex ) {
+            return -1;
+        }
+    }
+}
@@ -32,14 +32,43 @@ public class FileSystemSyncLock<V> extends LockExecuteNotifyAsyncReleaseTemplate
     private final String scheme;
     private final String id;
     private final String uri;
+    private final String[] lockedResources;
+    private final FileSystem fileSystem;
+    private Map<String, String> refsBeforeExecute;
 
     public FileSystemSyncLock( final String serviceId,
                                final FileSystem _fileSystem ) {
-        final FileSystem fileSystem = _fileSystem.getRootDirectories().iterator().next().getFileSystem();
+        this( serviceId, _fileSystem, null );
+    }
+
+    /**
+     * Syncs the given file system, but also holds the lock of a second file system while the task runs
+     * (e.g. the source of a move).
+     */
+    public FileSystemSyncLock( final String serviceId,
+                               final FileSystem _fileSystem,
+                               final FileSystem _otherFileSystem ) {
+        this.fileSystem = _fileSystem.getRootDirectories().iterator().next().getFileSystem();
         this.serviceId = serviceId;
         this.scheme = fileSystem.getRootDirectories().iterator().next().toUri().getScheme();
         this.id = ( (FileSystemId) fileSystem ).id();
         this.uri = fileSystem.toString();
+        if ( _otherFileSystem == null ) {
+            this.lockedResources = new String[]{ id };
+        } else {
+            final FileSystem otherFileSystem = _otherFileSystem.getRootDirectories().iterator().next().getFileSystem();
+            this.lockedResources = new String[]{ id, ( (FileSystemId) otherFileSystem ).id() };
+        }
+    }
+
+    @Override
+    protected void beforeExecute() {
+        refsBeforeExecute = FileSystemSyncContent.getRefs( fileSystem );
+    }
+
+    @Override
+    public String[] getLockedResources() {
+        return lockedResources;
     }
 
     @Override
@@ -54,10 +83,12 @@ public class FileSystemSyncLock<V> extends LockExecuteNotifyAsyncReleaseTemplate
 
     @Override
     public Map<String, String> buildContent() {
-        return new HashMap<String, String>() {{
+        final Map<String, String> content = new HashMap<String, String>() {{
             put( "fs_scheme", scheme );
             put( "fs_id", id );
             put( "fs_uri", uri );
         }};
+        FileSystemSyncContent.putRefs( content, refsBeforeExecute, FileSystemSyncContent.getRefs( fileSystem ) );
+        return content;
     }
 }
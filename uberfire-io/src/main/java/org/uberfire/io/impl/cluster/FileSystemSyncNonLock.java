@@ -34,10 +34,11 @@ public class FileSystemSyncNonLock<V> {
     private final String scheme;
     private final String id;
     private final String uri;
+    private final FileSystem fileSystem;
 
     public FileSystemSyncNonLock( final String serviceId,
                                   final FileSystem _fileSystem ) {
-        final FileSystem fileSystem = _fileSystem.getRootDirectories().iterator().next().getFileSystem();
+        this.fileSystem = _fileSystem.getRootDirectories().iterator().next().getFileSystem();
         this.serviceId = serviceId;
         this.scheme = fileSystem.getRootDirectories().iterator().next().toUri().getScheme();
         this.id = ( (FileSystemId) fileSystem ).id();
@@ -52,12 +53,17 @@ public class FileSystemSyncNonLock<V> {
         return serviceId;
     }
 
+    /**
+     * Used at the end of batches, when the refs from before the changes are unknown: all current refs are sent.
+     */
     public Map<String, String> buildContent() {
-        return new HashMap<String, String>() {{
+        final Map<String, String> content = new HashMap<String, String>() {{
             put( "fs_scheme", scheme );
             put( "fs_id", id );
             put( "fs_uri", uri );
         }};
+        FileSystemSyncContent.putRefs( content, null, FileSystemSyncContent.getRefs( fileSystem ) );
+        return content;
     }
 
     public void sendMessage( final ClusterService clusterService ) {
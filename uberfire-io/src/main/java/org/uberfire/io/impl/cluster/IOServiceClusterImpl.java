@@ -25,9 +25,12 @@ import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -35,7 +38,6 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +56,7 @@ import org.uberfire.commons.message.MessageType;
 import org.uberfire.io.IOService;
 import org.uberfire.io.impl.IOServiceLockable;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.base.FileSystemId;
 import org.uberfire.java.nio.base.FileSystemState;
 import org.uberfire.java.nio.base.FileSystemStateAware;
@@ -91,6 +94,16 @@ public class IOServiceClusterImpl implements IOService {
 
     protected final Set<String> batchFileSystems = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
 
+    // cluster locks taken by each startBatch call of the current thread, released when its outermost batch ends
+    private final ThreadLocal<LinkedList<String[]>> batchLocks = new ThreadLocal<LinkedList<String[]>>() {
+        @Override
+        protected LinkedList<String[]> initialValue() {
+            return new LinkedList<String[]>();
+        }
+    };
+
+    private final ConcurrentHashMap<String, ReplicationStats> replicationStats = new ConcurrentHashMap<String, ReplicationStats>();
+
     private NewFileSystemListener newFileSystemListener = null;
 
     IOServiceClusterImpl() {
@@ -233,72 +246,125 @@ public class IOServiceClusterImpl implements IOService {
     @Override
     public void startBatch( FileSystem[] fs,
                             final Option... options ) {
-        clusterService.lock();
-        for ( final FileSystem _f : fs ) {
-            final FileSystem f = _f.getRootDirectories().iterator().next().getFileSystem();
-            if ( f instanceof FileSystemId ) {
-                batchFileSystems.add( ( (FileSystemId) f ).id() );
-            }
+        final String[] resources = lockBatch( fs );
+        try {
+            service.startBatch( fs, options );
+        } catch ( final RuntimeException ex ) {
+            unlockBatch( resources );
+            throw ex;
         }
-        service.startBatch( fs, options );
     }
 
     @Override
     public void startBatch( final FileSystem _fs,
                             final Option... options ) {
-        clusterService.lock();
         final FileSystem fs = _fs.getRootDirectories().iterator().next().getFileSystem();
-        if ( fs instanceof FileSystemId ) {
-            batchFileSystems.add( ( (FileSystemId) fs ).id() );
+        final String[] resources = lockBatch( fs );
+        try {
+            service.startBatch( fs, options );
+        } catch ( final RuntimeException ex ) {
+            unlockBatch( resources );
+            throw ex;
         }
-
-        service.startBatch( fs, options );
     }
 
     @Override
     public void startBatch( final FileSystem... fs ) {
-        clusterService.lock();
-        for ( final FileSystem _f : fs ) {
-            final FileSystem f = _f.getRootDirectories().iterator().next().getFileSystem();
-            if ( f instanceof FileSystemId ) {
-                batchFileSystems.add( ( (FileSystemId) f ).id() );
-            }
+        final String[] resources = lockBatch( fs );
+        try {
+            service.startBatch( fs );
+        } catch ( final RuntimeException ex ) {
+            unlockBatch( resources );
+            throw ex;
+        }
+    }
+
+    @Override
+    public void commit( final FileSystem fs,
+                        final ChangeSet changes,
+                        final Option... options ) throws IllegalArgumentException, UnsupportedOperationException, IOException, SecurityException {
+        if ( isBatch( fs ) ) {
+            service.commit( fs, changes, options );
+        } else {
+            new FileSystemSyncLock<Void>( service.getId(), fs ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    service.commit( fs, changes, options );
+                    return null;
+                }
+            } ) );
         }
-        service.startBatch( fs );
     }
 
     @Override
     public void endBatch() {
         service.endBatch();
-        if ( service.getLockControl().getHoldCount() == 0 ) {
-            final AtomicInteger process = new AtomicInteger( batchFileSystems.size() );
+        if ( service.getLockControl().getHoldCount() > 0 ) {
+            // inner batch: its locks are released, and its file systems synced, by the outermost one
+            return;
+        }
 
+        final LinkedList<String[]> locked = batchLocks.get();
+        batchLocks.remove();
+
+        final Set<String> fileSystemIds = new HashSet<String>();
+        for ( final String[] resources : locked ) {
+            fileSystemIds.addAll( Arrays.asList( resources ) );
+        }
+
+        try {
             for ( final FileSystem _fs : service.getFileSystems() ) {
                 final FileSystem fs = _fs.getRootDirectories().iterator().next().getFileSystem();
                 if ( fs instanceof FileSystemId &&
-                        batchFileSystems.contains( ( (FileSystemId) fs ).id() ) ) {
+                        fileSystemIds.contains( ( (FileSystemId) fs ).id() ) ) {
                     try {
                         new FileSystemSyncNonLock<Void>( service.getId(), fs ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                             @Override
                             public Void call() throws Exception {
-                                if ( process.decrementAndGet() == 0 ) {
-                                    clusterService.unlock();
-                                }
                                 return null;
                             }
                         } ) );
                     } catch ( Exception ex ) {
                         logger.error( "End batch error", ex );
-                        if ( process.decrementAndGet() == 0 ) {
-                            clusterService.unlock();
-                        }
                     }
                 }
             }
-            batchFileSystems.clear();
-        } else {
-            clusterService.unlock();
+        } finally {
+            batchFileSystems.removeAll( fileSystemIds );
+            final Iterator<String[]> iterator = locked.descendingIterator();
+            while ( iterator.hasNext() ) {
+                clusterService.unlock( iterator.next() );
+            }
+        }
+    }
+
+    /**
+     * Takes the cluster locks of the given file systems for the current thread's batch.
+     */
+    private String[] lockBatch( final FileSystem... fs ) {
+        final List<String> ids = new ArrayList<String>( fs.length );
+        for ( final FileSystem _f : fs ) {
+            final FileSystem f = _f.getRootDirectories().iterator().next().getFileSystem();
+            if ( f instanceof FileSystemId ) {
+                ids.add( ( (FileSystemId) f ).id() );
+            }
+        }
+
+        final String[] resources = ids.toArray( new String[ ids.size() ] );
+        clusterService.lock( resources );
+        batchLocks.get().add( resources );
+        batchFileSystems.addAll( ids );
+
+        return resources;
+    }
+
+    private void unlockBatch( final String[] resources ) {
+        final LinkedList<String[]> locked = batchLocks.get();
+        locked.remove( resources );
+        if ( locked.isEmpty() ) {
+            batchLocks.remove();
         }
+        clusterService.unlock( resources );
     }
 
     @Override
@@ -571,10 +637,11 @@ public class IOServiceClusterImpl implements IOService {
             return service.move( source, target, options );
         }
 
-        return new FileSystemSyncLock<Path>( service.getId(), source.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        // both file systems are locked upfront, so their locks are always taken in the same order
+        return new FileSystemSyncLock<Path>( service.getId(), source.getFileSystem(), target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
-                return new FileSystemSyncLock<Path>( service.getId(), target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+                return new FileSystemSyncNonLock<Path>( service.getId(), target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
                     @Override
                     public Path call() throws Exception {
                         return service.move( source, target, options );
@@ -1034,31 +1101,62 @@ public class IOServiceClusterImpl implements IOService {
                 final String scheme = content.get( "fs_scheme" );
                 final String id = content.get( "fs_id" );
                 final String[] supportedUris = cleanup( content.get( "fs_uri" ).split( "\n" ) );
+                final Map<String, String> refs = FileSystemSyncContent.getUpdatedRefs( content );
+                final long sentAt = FileSystemSyncContent.getSentAt( content );
+                final ReplicationStats stats = getOrCreateReplicationStats( id );
 
+                if ( refs != null && isUpToDate( id, refs ) ) {
+                    stats.onUpToDate( sentAt );
+                    return null;
+                }
+
+                final String refsParam = refs == null ? "" : "&refs=" + encode( FileSystemSyncContent.encodeRefs( refs ) );
                 for ( final String supportedUri : supportedUris ) {
                     try {
-                        String origin;
-                        try {
-                            origin = URLEncoder.encode( supportedUri, "UTF-8" );
-                        } catch ( UnsupportedEncodingException e ) {
-                            origin = supportedUri;
-                        }
-
-                        final URI fs = URI.create( scheme + "://" + id + "?sync=" + origin + "&force" );
+                        final URI fs = URI.create( scheme + "://" + id + "?sync=" + encode( supportedUri ) + "&force" + refsParam );
 
                         service.getFileSystem( fs );
-                        break;
+                        stats.onSynced( sentAt );
+                        return null;
                     } catch ( Exception e ) {
                         // try the other supported uri in case of failure
                         logger.warn( "File system synchronization for origin {} failed with error {}, trying another if available",
                                      supportedUri, e.getMessage() );
                     }
                 }
+                stats.onFailed();
             }
 
             return null;
         }
 
+        /**
+         * True if the local file system already has all the refs of the message, so there is nothing to fetch.
+         */
+        private boolean isUpToDate( final String id,
+                                    final Map<String, String> refs ) {
+            final FileSystem fs = findFileSystem( id );
+            final Map<String, String> localRefs = fs == null ? null : FileSystemSyncContent.getRefs( fs );
+            if ( localRefs == null ) {
+                return false;
+            }
+            for ( final Map.Entry<String, String> ref : refs.entrySet() ) {
+                // deleted refs aren't replicated
+                if ( !ref.getValue().isEmpty() && !ref.getValue().equals( localRefs.get( ref.getKey() ) ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String encode( final String value ) {
+            try {
+                return URLEncoder.encode( value, "UTF-8" );
+            } catch ( UnsupportedEncodingException e ) {
+                return value;
+            }
+        }
+
         private String[] cleanup( final String... split ) {
             final List<String> result = new ArrayList<String>( split.length );
             for ( final String s : split ) {
@@ -1071,6 +1169,39 @@ public class IOServiceClusterImpl implements IOService {
         }
     }
 
+    private FileSystem findFileSystem( final String id ) {
+        for ( final FileSystem _fs : service.getFileSystems() ) {
+            final FileSystem fs = _fs.getRootDirectories().iterator().next().getFileSystem();
+            if ( fs instanceof FileSystemId && ( (FileSystemId) fs ).id().equals( id ) ) {
+                return fs;
+            }
+        }
+        return null;
+    }
+
+    private ReplicationStats getOrCreateReplicationStats( final String id ) {
+        ReplicationStats stats = replicationStats.get( id );
+        if ( stats == null ) {
+            final ReplicationStats newStats = new ReplicationStats();
+            stats = replicationStats.putIfAbsent( id, newStats );
+            if ( stats == null ) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Replication metrics of the given file system on this node, or null if no sync message was received for it yet.
+     */
+    public ReplicationStats getReplicationStats( final String fileSystemId ) {
+        return replicationStats.get( fileSystemId );
+    }
+
+    public Map<String, ReplicationStats> getReplicationStats() {
+        return Collections.unmodifiableMap( replicationStats );
+    }
+
     class QueryFileSystemMessageHandler implements MessageHandler {
 
         @Override
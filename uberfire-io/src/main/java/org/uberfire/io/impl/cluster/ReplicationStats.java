@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replication metrics of a file system on this node, fed by the SYNC_FS messages it receives. Lag is the time
+ * between the message being sent and the file system being up to date here, so it includes clock skew between nodes.
+ */
+public class ReplicationStats {
+
+    private final AtomicLong received = new AtomicLong( 0 );
+    private final AtomicLong upToDate = new AtomicLong( 0 );
+    private final AtomicLong synced = new AtomicLong( 0 );
+    private final AtomicLong failed = new AtomicLong( 0 );
+    private final AtomicLong lastLag = new AtomicLong( -1 );
+    private final AtomicLong maxLag = new AtomicLong( 0 );
+    private final AtomicLong totalLag = new AtomicLong( 0 );
+    private final AtomicLong lastSyncTime = new AtomicLong( 0 );
+
+    void onUpToDate( final long sentAt ) {
+        received.incrementAndGet();
+        upToDate.incrementAndGet();
+        recordLag( sentAt );
+    }
+
+    void onSynced( final long sentAt ) {
+        received.incrementAndGet();
+        synced.incrementAndGet();
+        recordLag( sentAt );
+    }
+
+    void onFailed() {
+        received.incrementAndGet();
+        failed.incrementAndGet();
+    }
+
+    private void recordLag( final long sentAt ) {
+        final long now = System.currentTimeMillis();
+        lastSyncTime.set( now );
+        if ( sentAt < 0 ) {
+            return;
+        }
+        final long lag = Math.max( 0, now - sentAt );
+        lastLag.set( lag );
+        totalLag.addAndGet( lag );
+        long max = maxLag.get();
+        while ( lag > max && !maxLag.compareAndSet( max, lag ) ) {
+            max = maxLag.get();
+        }
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * Messages that needed no fetch because the refs were already up to date.
+     */
+    public long getUpToDate() {
+        return upToDate.get();
+    }
+
+    public long getSynced() {
+        return synced.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Lag of the last message, in milliseconds, or -1 if unknown.
+     */
+    public long getLastLag() {
+        return lastLag.get();
+    }
+
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    public long getTotalLag() {
+        return totalLag.get();
+    }
+
+    public long getLastSyncTime() {
+        return lastSyncTime.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationStats{" +
+                "received=" + received +
+                ", upToDate=" + upToDate +
+                ", synced=" + synced +
+                ", failed=" + failed +
+                ", lastLag=" + lastLag +
+                ", maxLag=" + maxLag +
+                ", totalLag=" + totalLag +
+                '}';
+    }
+}
@@ -16,13 +16,23 @@
 
 package org.uberfire.io.impl.cluster.helix;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.helix.Criteria;
+import org.apache.helix.HelixAdmin;
+import org.apache.helix.HelixConstants;
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixException;
 import org.apache.helix.HelixManager;
 import org.apache.helix.InstanceType;
 import org.apache.helix.NotificationContext;
@@ -30,6 +40,7 @@ import org.apache.helix.messaging.handling.HelixTaskResult;
 import org.apache.helix.messaging.handling.MessageHandler;
 import org.apache.helix.messaging.handling.MessageHandlerFactory;
 import org.apache.helix.model.ExternalView;
+import org.apache.helix.model.IdealState;
 import org.apache.helix.model.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,27 +56,63 @@ import static java.util.Arrays.*;
 import static java.util.UUID.*;
 import static org.apache.helix.HelixManagerFactory.*;
 
+/**
+ * {@link ClusterService} backed by a Helix resource whose partitions use the LeaderStandby state model: holding a
+ * lock on a partition means being its leader.
+ * <p>
+ * Locks are striped over the partitions of the resource. Partition 0 belongs to the cluster wide lock and every
+ * resource (e.g. a repository) maps to one of the other partitions, so writers of resources on different partitions
+ * don't wait for each other. The cluster wide lock, {@link #lock()}, takes every partition, so it still excludes all
+ * the resource writers; with a single partition everything shares partition 0.
+ * <p>
+ * Partitions are always taken in ascending order, which keeps threads and nodes from deadlocking. When a thread that
+ * already holds partitions needs a lower one (e.g. a batch on one repository that then writes another one, or takes
+ * the cluster wide lock) it releases what it holds and takes everything again in ascending order, so other writers
+ * may get in between; callers needing several resources atomically should lock them in a single call.
+ * <p>
+ * The first node to start creates the Helix resource with the configured number of partitions. Every node must stripe
+ * over the same count, so an existing resource is only resized by a node that starts while no other node is live.
+ */
 public class ClusterServiceHelix implements ClusterService {
 
     private static final AtomicInteger counter = new AtomicInteger( 0 );
     private static final Logger logger = LoggerFactory.getLogger( ClusterServiceHelix.class );
+    private static final long STATE_RECHECK_INTERVAL = 1000;
+
+    public static final int DEFAULT_PARTITIONS = 16;
 
     private final String clusterName;
     private final String instanceName;
     private final HelixManager participantManager;
     private final String resourceName;
+    private final int configuredPartitions;
     private final Map<String, MessageHandlerResolver> messageHandlerResolver = new ConcurrentHashMap<String, MessageHandlerResolver>();
 
-    private final ReentrantLock lock = new ReentrantLock( true );
+    // partition states of this instance as reported by the state transitions, used to wake up lock waiters
+    private final Map<String, String> partitionStates = new HashMap<String, String>();
+
+    // one local lock per partition, partition 0 is the cluster wide lock
+    private final Map<Integer, ReentrantLock> locks = new HashMap<Integer, ReentrantLock>();
+    private volatile int partitionCount = 1;
 
     public ClusterServiceHelix( final String clusterName,
                                 final String zkAddress,
                                 final String instanceName,
                                 final String resourceName,
                                 final MessageHandlerResolver messageHandlerResolver ) {
+        this( clusterName, zkAddress, instanceName, resourceName, DEFAULT_PARTITIONS, messageHandlerResolver );
+    }
+
+    public ClusterServiceHelix( final String clusterName,
+                                final String zkAddress,
+                                final String instanceName,
+                                final String resourceName,
+                                final int partitions,
+                                final MessageHandlerResolver messageHandlerResolver ) {
         this.clusterName = clusterName;
         this.instanceName = instanceName;
         this.resourceName = resourceName;
+        this.configuredPartitions = Math.max( 1, partitions );
         addMessageHandlerResolver( messageHandlerResolver );
         this.participantManager = getZkHelixManager( clusterName, zkAddress, instanceName );
         PriorityDisposableRegistry.register( this );
@@ -89,16 +136,29 @@ public class ClusterServiceHelix implements ClusterService {
     void start() {
         try {
             participantManager.getMessagingService().registerMessageHandlerFactory( Message.MessageType.USER_DEFINE_MSG.toString(), new MessageHandlerResolverWrapper().convert() );
-            participantManager.getStateMachineEngine().registerStateModelFactory( "LeaderStandby", new LockTransitionalFactory() );
+            participantManager.getStateMachineEngine().registerStateModelFactory( "LeaderStandby", new LockTransitionalFactory( new LockTransitionModel.TransitionListener() {
+                @Override
+                public void onTransition( final String partition,
+                                          final String state ) {
+                    onPartitionTransition( partition, state );
+                }
+            } ) );
             participantManager.connect();
-            offlinePartition();
+            provisionPartitions();
+            partitionCount = readPartitionCount();
+            for ( int i = 0; i < partitionCount; i++ ) {
+                offlinePartition( i );
+            }
         } catch ( final Exception ex ) {
             throw new RuntimeException( ex );
         }
     }
 
     String getNodeStatus() {
-        final String partition = resourceName + "_0";
+        return getNodeStatus( partitionName( 0 ) );
+    }
+
+    String getNodeStatus( final String partition ) {
         final ExternalView view = getResourceExternalView();
         if ( clusterIsNotSetYet( view, partition ) ) {
             return "OFFLINE";
@@ -107,6 +167,70 @@ public class ClusterServiceHelix implements ClusterService {
         return stateMap.get( instanceName );
     }
 
+    /**
+     * Creates the lock resource if it doesn't exist yet, or resizes it to the configured number of partitions while
+     * this is the only live node. Every live node is a replica of every partition, so any of them can become leader.
+     */
+    void provisionPartitions() {
+        final HelixAdmin admin = participantManager.getClusterManagmentTool();
+        IdealState idealState = admin.getResourceIdealState( clusterName, resourceName );
+        if ( idealState == null ) {
+            try {
+                admin.addResource( clusterName, resourceName, configuredPartitions, "LeaderStandby", IdealState.RebalanceMode.FULL_AUTO.toString() );
+            } catch ( final HelixException ex ) {
+                // created by another node meanwhile
+                return;
+            }
+            idealState = admin.getResourceIdealState( clusterName, resourceName );
+        } else if ( idealState.getNumPartitions() == configuredPartitions ) {
+            return;
+        } else if ( !isOnlyLiveInstance() ) {
+            logger.warn( "Lock resource '" + resourceName + "' has " + idealState.getNumPartitions() + " partitions instead of " +
+                                 configuredPartitions + "; it can only be resized while a single node is running." );
+            return;
+        } else {
+            idealState.setNumPartitions( configuredPartitions );
+        }
+        idealState.setRebalanceMode( IdealState.RebalanceMode.FULL_AUTO );
+        idealState.setReplicas( HelixConstants.StateModelToken.ANY_LIVEINSTANCE.toString() );
+        admin.setResourceIdealState( clusterName, resourceName, idealState );
+    }
+
+    private boolean isOnlyLiveInstance() {
+        final HelixDataAccessor accessor = participantManager.getHelixDataAccessor();
+        final List<String> liveInstances = accessor.getChildNames( accessor.keyBuilder().liveInstances() );
+        return liveInstances == null || liveInstances.isEmpty() ||
+                ( liveInstances.size() == 1 && liveInstances.contains( instanceName ) );
+    }
+
+    int readPartitionCount() {
+        final IdealState idealState = participantManager.getClusterManagmentTool().getResourceIdealState( clusterName, resourceName );
+        if ( idealState == null || idealState.getNumPartitions() < 1 ) {
+            return 1;
+        }
+        return idealState.getNumPartitions();
+    }
+
+    int getPartitionCount() {
+        return partitionCount;
+    }
+
+    /**
+     * Maps a resource to its lock partition. With a single partition everything shares the cluster wide lock,
+     * otherwise partition 0 is kept for cluster wide operations and resources are striped over the others.
+     */
+    int getPartition( final String resourceId ) {
+        final int count = getPartitionCount();
+        if ( count <= 1 ) {
+            return 0;
+        }
+        return 1 + ( resourceId.hashCode() & Integer.MAX_VALUE ) % ( count - 1 );
+    }
+
+    String partitionName( final int partition ) {
+        return resourceName + "_" + partition;
+    }
+
     ExternalView getResourceExternalView() {
         return participantManager.getClusterManagmentTool().getResourceExternalView( clusterName, resourceName );
     }
@@ -136,63 +260,195 @@ public class ClusterServiceHelix implements ClusterService {
 
     @Override
     public int getHoldCount() {
-        return lock.getHoldCount();
+        return getLock( 0 ).getHoldCount();
     }
 
-    private void offlinePartition() {
-        if ( "OFFLINE".equals( getNodeStatus() ) ) {
-            return;
+    /**
+     * Takes every partition, in ascending order, so the cluster wide lock excludes the writers of all resources.
+     */
+    @Override
+    public void lock() {
+        final List<Integer> partitions = new ArrayList<Integer>();
+        for ( int i = 0; i < getPartitionCount(); i++ ) {
+            partitions.add( i );
         }
-        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
-        while ( !"OFFLINE".equals( getNodeStatus() ) ) {
-            try {
-                Thread.sleep( 10 );
-            } catch ( InterruptedException e ) {
-            }
+        lockPartitions( partitions );
+    }
+
+    @Override
+    public void unlock() {
+        for ( int i = getPartitionCount() - 1; i >= 0; i-- ) {
+            unlockPartition( i );
+        }
+    }
+
+    @Override
+    public void lock( final String... resourceIds ) {
+        lockPartitions( getPartitions( resourceIds ) );
+    }
+
+    @Override
+    public void unlock( final String... resourceIds ) {
+        final List<Integer> partitions = getPartitions( resourceIds );
+        for ( int i = partitions.size() - 1; i >= 0; i-- ) {
+            unlockPartition( partitions.get( i ) );
+        }
+    }
+
+    private List<Integer> getPartitions( final String... resourceIds ) {
+        final SortedSet<Integer> partitions = new TreeSet<Integer>();
+        for ( final String resourceId : resourceIds ) {
+            partitions.add( getPartition( resourceId ) );
         }
+        return new ArrayList<Integer>( partitions );
     }
 
-    private void enablePartition() {
-        if ( "LEADER".equals( getNodeStatus() ) ) {
+    /**
+     * Takes the given partitions, sorted ascending. If the current thread holds a partition above one it still has to
+     * take, everything it holds is released first and taken again along with the new ones, in ascending order.
+     */
+    private void lockPartitions( final List<Integer> partitions ) {
+        final SortedMap<Integer, Integer> held = getHeldPartitions();
+        boolean outOfOrder = false;
+        for ( final Integer partition : partitions ) {
+            if ( !held.containsKey( partition ) && !held.isEmpty() && partition < held.lastKey() ) {
+                outOfOrder = true;
+                break;
+            }
+        }
+        if ( !outOfOrder ) {
+            lockInOrder( partitions );
             return;
         }
-        participantManager.getClusterManagmentTool().enablePartition( true, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
-        while ( !"LEADER".equals( getNodeStatus() ) ) {
+
+        for ( final Map.Entry<Integer, Integer> entry : held.entrySet() ) {
+            for ( int i = 0; i < entry.getValue(); i++ ) {
+                unlockPartition( entry.getKey() );
+            }
+        }
+        final SortedSet<Integer> all = new TreeSet<Integer>( held.keySet() );
+        all.addAll( partitions );
+        lockInOrder( new ArrayList<Integer>( all ) );
+        // restore the hold counts: one was taken above, plus the one requested now for partitions already held
+        for ( final Map.Entry<Integer, Integer> entry : held.entrySet() ) {
+            final int holds = entry.getValue() - 1 + ( partitions.contains( entry.getKey() ) ? 1 : 0 );
+            for ( int i = 0; i < holds; i++ ) {
+                lockPartition( entry.getKey() );
+            }
+        }
+    }
+
+    private void lockInOrder( final List<Integer> partitions ) {
+        for ( int i = 0; i < partitions.size(); i++ ) {
             try {
-                Thread.sleep( 10 );
-            } catch ( InterruptedException e ) {
+                lockPartition( partitions.get( i ) );
+            } catch ( final RuntimeException ex ) {
+                for ( int j = i - 1; j >= 0; j-- ) {
+                    unlockPartition( partitions.get( j ) );
+                }
+                throw ex;
             }
         }
     }
 
-    private void disablePartition() {
-        String nodeStatus = getNodeStatus();
-        if ( "STANDBY".equals( nodeStatus ) || "OFFLINE".equals( nodeStatus ) ) {
-            return;
+    private SortedMap<Integer, Integer> getHeldPartitions() {
+        final SortedMap<Integer, Integer> held = new TreeMap<Integer, Integer>();
+        synchronized ( locks ) {
+            for ( final Map.Entry<Integer, ReentrantLock> entry : locks.entrySet() ) {
+                if ( entry.getValue().isHeldByCurrentThread() ) {
+                    held.put( entry.getKey(), entry.getValue().getHoldCount() );
+                }
+            }
         }
-        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
+        return held;
+    }
 
-        while ( !( "STANDBY".equals( nodeStatus ) || "OFFLINE".equals( nodeStatus ) ) ) {
-            try {
-                Thread.sleep( 10 );
-                nodeStatus = getNodeStatus();
-            } catch ( InterruptedException e ) {
+    private ReentrantLock getLock( final int partition ) {
+        synchronized ( locks ) {
+            ReentrantLock lock = locks.get( partition );
+            if ( lock == null ) {
+                lock = new ReentrantLock( true );
+                locks.put( partition, lock );
             }
+            return lock;
         }
     }
 
-    @Override
-    public void lock() {
+    void lockPartition( final int partition ) {
+        final ReentrantLock lock = getLock( partition );
         lock.lock();
+        if ( lock.getHoldCount() == 1 ) {
+            try {
+                enablePartition( partition );
+            } catch ( final RuntimeException ex ) {
+                lock.unlock();
+                throw ex;
+            }
+        }
+    }
 
-        enablePartition();
+    void unlockPartition( final int partition ) {
+        final ReentrantLock lock = getLock( partition );
+        try {
+            if ( lock.getHoldCount() == 1 ) {
+                disablePartition( partition );
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
-    @Override
-    public void unlock() {
-        disablePartition();
+    void onPartitionTransition( final String partition,
+                                final String state ) {
+        synchronized ( partitionStates ) {
+            partitionStates.put( partition, state );
+            partitionStates.notifyAll();
+        }
+    }
+
+    private void offlinePartition( final int partition ) {
+        if ( "OFFLINE".equals( getNodeStatus( partitionName( partition ) ) ) ) {
+            return;
+        }
+        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( partitionName( partition ) ) );
+        awaitState( partitionName( partition ), "OFFLINE" );
+    }
 
-        lock.unlock();
+    void enablePartition( final int partition ) {
+        if ( "LEADER".equals( getNodeStatus( partitionName( partition ) ) ) ) {
+            return;
+        }
+        participantManager.getClusterManagmentTool().enablePartition( true, clusterName, instanceName, resourceName, asList( partitionName( partition ) ) );
+        awaitState( partitionName( partition ), "LEADER" );
+    }
+
+    void disablePartition( final int partition ) {
+        final String nodeStatus = getNodeStatus( partitionName( partition ) );
+        if ( "STANDBY".equals( nodeStatus ) || "OFFLINE".equals( nodeStatus ) ) {
+            return;
+        }
+        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( partitionName( partition ) ) );
+        awaitState( partitionName( partition ), "STANDBY", "OFFLINE" );
+    }
+
+    /**
+     * Waits until this instance reaches one of the given states on the partition. Waiters are woken up by the
+     * state transitions; the external view is re-checked periodically in case a transition is missed.
+     */
+    private void awaitState( final String partition,
+                             final String... states ) {
+        final List<String> expected = asList( states );
+        synchronized ( partitionStates ) {
+            while ( !expected.contains( partitionStates.get( partition ) ) &&
+                    !expected.contains( getNodeStatus( partition ) ) ) {
+                try {
+                    partitionStates.wait( STATE_RECHECK_INTERVAL );
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException( "Interrupted while waiting for partition '" + partition + "' to become " + expected, e );
+                }
+            }
+        }
     }
 
     @Override
@@ -25,35 +25,59 @@ import org.apache.helix.participant.statemachine.Transition;
 @StateModelInfo(initialState = "OFFLINE", states = { "LEADER", "STANDBY" })
 public class LockTransitionModel extends StateModel {
 
+    public interface TransitionListener {
+
+        void onTransition( final String partition,
+                           final String state );
+    }
+
     private final String lockName;
+    private final TransitionListener listener;
 
     public LockTransitionModel( final String lockName ) {
+        this( lockName, null );
+    }
+
+    public LockTransitionModel( final String lockName,
+                                final TransitionListener listener ) {
         this.lockName = lockName;
+        this.listener = listener;
     }
 
     @Transition(from = "STANDBY", to = "LEADER")
     public void lock( final Message m,
                       final NotificationContext context ) {
+        notifyTransition( "LEADER" );
     }
 
     @Transition(from = "LEADER", to = "STANDBY")
     public void release( final Message m,
                          final NotificationContext context ) {
+        notifyTransition( "STANDBY" );
     }
 
     @Transition(from = "STANDBY", to = "OFFLINE")
     public void toOffLine( final Message m,
                            final NotificationContext context ) {
+        notifyTransition( "OFFLINE" );
     }
 
     @Transition(from = "OFFLINE", to = "STANDBY")
     public void toStandBy( final Message m,
                            final NotificationContext context ) {
+        notifyTransition( "STANDBY" );
     }
 
     @Transition(from = "OFFLINE", to = "DROPPED")
     public void dropped( final Message m,
                          final NotificationContext context ) {
+        notifyTransition( "DROPPED" );
+    }
+
+    private void notifyTransition( final String state ) {
+        if ( listener != null ) {
+            listener.onTransition( lockName, state );
+        }
     }
 
 }
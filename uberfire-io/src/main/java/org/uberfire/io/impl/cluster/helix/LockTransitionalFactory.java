@@ -20,8 +20,18 @@ import org.apache.helix.participant.statemachine.StateModelFactory;
 
 public class LockTransitionalFactory extends StateModelFactory<LockTransitionModel> {
 
+    private final LockTransitionModel.TransitionListener listener;
+
+    public LockTransitionalFactory() {
+        this( null );
+    }
+
+    public LockTransitionalFactory( final LockTransitionModel.TransitionListener listener ) {
+        this.listener = listener;
+    }
+
     @Override
     public LockTransitionModel createNewStateModel( final String lockName ) {
-        return new LockTransitionModel( lockName );
+        return new LockTransitionModel( lockName, listener );
     }
 }
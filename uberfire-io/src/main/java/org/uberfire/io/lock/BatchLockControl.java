@@ -16,27 +16,398 @@
 
 package org.uberfire.io.lock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.uberfire.java.nio.file.FileSystem;
+import org.uberfire.java.nio.file.Path;
 
+/**
+ * Batch locks, one fair reentrant lock per {@link FileSystem}.
+ * <p>
+ * A batch over several filesystems acquires their locks in a fixed global order, so two batches sharing
+ * filesystems can't deadlock each other. Each call to {@link #lock(FileSystem...)} is released by exactly one
+ * call to {@link #unlock()}, in reverse order; hold counts and lock state are tracked per thread.
+ * <p>
+ * Locks are keyed by the file system the root directories belong to, so a proxy (e.g. an injected bean) and the
+ * file system reached through one of its paths share the same lock. Locks of closed file systems are dropped once
+ * nobody holds or waits for them.
+ */
 public class BatchLockControl {
 
-    private ReentrantLock lock = new ReentrantLock( true );
+    public static final String LOCK_TIMEOUT_PROPERTY = "org.uberfire.io.batch.lock.timeout";
+
+    private static final Comparator<FileSystemLock> LOCK_ORDER = new Comparator<FileSystemLock>() {
+        @Override
+        public int compare( final FileSystemLock o1,
+                            final FileSystemLock o2 ) {
+            return o1.order < o2.order ? -1 : ( o1.order == o2.order ? 0 : 1 );
+        }
+    };
+
+    private final Map<FileSystem, FileSystemLock> locks = new HashMap<FileSystem, FileSystemLock>();
+    private long nextOrder = 0;
+
+    private final ThreadLocal<LinkedList<List<FileSystemLock>>> heldBatches = new ThreadLocal<LinkedList<List<FileSystemLock>>>() {
+        @Override
+        protected LinkedList<List<FileSystemLock>> initialValue() {
+            return new LinkedList<List<FileSystemLock>>();
+        }
+    };
+
+    private final long timeoutMillis;
+
+    public BatchLockControl() {
+        this( Long.getLong( LOCK_TIMEOUT_PROPERTY, 0L ), TimeUnit.SECONDS );
+    }
+
+    /**
+     * @param timeout how long {@link #lock(FileSystem...)} waits for a filesystem before giving up; zero or less
+     * waits forever.
+     */
+    public BatchLockControl( final long timeout,
+                             final TimeUnit unit ) {
+        this.timeoutMillis = unit.toMillis( timeout );
+    }
 
     public void lock( final FileSystem... fileSystems ) {
-        lock.lock();
+        if ( timeoutMillis <= 0 ) {
+            acquire( fileSystems, -1 );
+        } else if ( !acquire( fileSystems, timeoutMillis ) ) {
+            throw new RuntimeException( "Timeout waiting for batch lock on " + Arrays.toString( fileSystems ) + "." );
+        }
+    }
+
+    /**
+     * Same as {@link #lock(FileSystem...)} but gives up, holding nothing, if all the locks couldn't be acquired
+     * within the given time.
+     */
+    public boolean tryLock( final long timeout,
+                            final TimeUnit unit,
+                            final FileSystem... fileSystems ) {
+        return acquire( fileSystems, unit.toMillis( timeout ) );
     }
 
+    /**
+     * Releases the locks taken by the last lock call of the current thread.
+     */
     public void unlock() {
-        lock.unlock();
+        final LinkedList<List<FileSystemLock>> batches = heldBatches.get();
+        if ( batches.isEmpty() ) {
+            throw new IllegalMonitorStateException( "There is no batch lock held by the current thread." );
+        }
+
+        final List<FileSystemLock> batch = batches.removeLast();
+        for ( int i = batch.size() - 1; i >= 0; i-- ) {
+            batch.get( i ).release();
+        }
+        if ( batches.isEmpty() ) {
+            heldBatches.remove();
+        }
+    }
+
+    /**
+     * Returns the filesystems the current thread will stop holding on the next {@link #unlock()}, i.e. the ones
+     * locked by its last lock call and not by an outer one.
+     */
+    public List<FileSystem> getReleasedOnUnlock() {
+        final LinkedList<List<FileSystemLock>> batches = heldBatches.get();
+        final List<FileSystem> result = new ArrayList<FileSystem>();
+        if ( !batches.isEmpty() ) {
+            for ( final FileSystemLock lock : batches.getLast() ) {
+                if ( lock.lock.getHoldCount() == 1 ) {
+                    result.add( lock.fileSystem );
+                }
+            }
+        }
+        return result;
     }
 
+    /**
+     * Returns true if the current thread holds a batch lock.
+     */
     public boolean isLocked() {
-        return lock.isLocked();
+        return !heldBatches.get().isEmpty();
     }
 
+    /**
+     * Drops the locks of closed file systems that no thread holds or waits for.
+     */
+    public void evictClosed() {
+        synchronized ( locks ) {
+            final Iterator<FileSystemLock> iterator = locks.values().iterator();
+            while ( iterator.hasNext() ) {
+                final FileSystemLock lock = iterator.next();
+                if ( !lock.fileSystem.isOpen() && !lock.lock.isLocked() && !lock.lock.hasQueuedThreads() ) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public boolean isLocked( final FileSystem fileSystem ) {
+        final FileSystemLock lock = getLockIfExists( fileSystem );
+        return lock != null && lock.lock.isLocked();
+    }
+
+    /**
+     * Number of nested batch locks held by the current thread.
+     */
     public int getHoldCount() {
-        return lock.getHoldCount();
+        return heldBatches.get().size();
+    }
+
+    public LockStats getStats( final FileSystem fileSystem ) {
+        final FileSystemLock lock = getLockIfExists( fileSystem );
+        return lock == null ? null : lock.stats();
+    }
+
+    public Map<FileSystem, LockStats> getStats() {
+        final Map<FileSystem, LockStats> result = new HashMap<FileSystem, LockStats>();
+        synchronized ( locks ) {
+            for ( final FileSystemLock lock : locks.values() ) {
+                result.put( lock.fileSystem, lock.stats() );
+            }
+        }
+        return result;
+    }
+
+    private boolean acquire( final FileSystem[] fileSystems,
+                             final long timeoutMillis ) {
+        final List<FileSystemLock> batch = resolveLocks( fileSystems );
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        for ( int i = 0; i < batch.size(); i++ ) {
+            final long remaining = timeoutMillis < 0 ? -1 : Math.max( 0, deadline - System.currentTimeMillis() );
+            if ( !batch.get( i ).acquire( remaining ) ) {
+                for ( int j = i - 1; j >= 0; j-- ) {
+                    batch.get( j ).release();
+                }
+                return false;
+            }
+        }
+
+        heldBatches.get().add( batch );
+        return true;
+    }
+
+    private List<FileSystemLock> resolveLocks( final FileSystem[] fileSystems ) {
+        final List<FileSystemLock> result = new ArrayList<FileSystemLock>();
+        if ( fileSystems == null ) {
+            return result;
+        }
+        synchronized ( locks ) {
+            for ( final FileSystem given : fileSystems ) {
+                if ( given == null ) {
+                    continue;
+                }
+                final FileSystem fileSystem = resolve( given );
+                FileSystemLock lock = locks.get( fileSystem );
+                if ( lock == null ) {
+                    evictClosed();
+                    lock = new FileSystemLock( fileSystem, nextOrder++ );
+                    locks.put( fileSystem, lock );
+                }
+                if ( !result.contains( lock ) ) {
+                    result.add( lock );
+                }
+            }
+        }
+        Collections.sort( result, LOCK_ORDER );
+        return result;
+    }
+
+    private FileSystemLock getLockIfExists( final FileSystem fileSystem ) {
+        synchronized ( locks ) {
+            return locks.get( resolve( fileSystem ) );
+        }
+    }
+
+    /**
+     * Returns the file system the root directories of the given one belong to; a proxy doesn't equal the file
+     * system it delegates to, but its paths do belong to that one.
+     */
+    private static FileSystem resolve( final FileSystem fileSystem ) {
+        try {
+            final Iterable<Path> roots = fileSystem.getRootDirectories();
+            final Iterator<Path> iterator = roots != null ? roots.iterator() : null;
+            if ( iterator != null && iterator.hasNext() ) {
+                final Path root = iterator.next();
+                if ( root != null && root.getFileSystem() != null ) {
+                    return root.getFileSystem();
+                }
+            }
+        } catch ( final RuntimeException e ) {
+            // closed file systems may refuse to list their roots, they are their own key
+        }
+        return fileSystem;
+    }
+
+    private static class FileSystemLock {
+
+        private final FileSystem fileSystem;
+        private final long order;
+        private final ReentrantLock lock = new ReentrantLock( true );
+
+        private final AtomicLong acquisitions = new AtomicLong( 0 );
+        private final AtomicLong contended = new AtomicLong( 0 );
+        private final AtomicLong timeouts = new AtomicLong( 0 );
+        private final AtomicLong totalWaitTime = new AtomicLong( 0 );
+        private final AtomicLong maxWaitTime = new AtomicLong( 0 );
+        private final AtomicLong totalHoldTime = new AtomicLong( 0 );
+
+        // only written by the owner thread
+        private volatile long acquiredAt;
+
+        FileSystemLock( final FileSystem fileSystem,
+                        final long order ) {
+            this.fileSystem = fileSystem;
+            this.order = order;
+        }
+
+        boolean acquire( final long timeoutMillis ) {
+            final long start = System.currentTimeMillis();
+            try {
+                // timed tryLock, unlike tryLock(), honours the fairness policy
+                if ( !lock.tryLock( 0, TimeUnit.MILLISECONDS ) ) {
+                    contended.incrementAndGet();
+                    if ( timeoutMillis < 0 ) {
+                        lock.lock();
+                    } else if ( !lock.tryLock( timeoutMillis, TimeUnit.MILLISECONDS ) ) {
+                        timeouts.incrementAndGet();
+                        return false;
+                    }
+                }
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                timeouts.incrementAndGet();
+                return false;
+            }
+
+            final long now = System.currentTimeMillis();
+            final long waited = now - start;
+            acquisitions.incrementAndGet();
+            totalWaitTime.addAndGet( waited );
+            long max = maxWaitTime.get();
+            while ( waited > max && !maxWaitTime.compareAndSet( max, waited ) ) {
+                max = maxWaitTime.get();
+            }
+            if ( lock.getHoldCount() == 1 ) {
+                acquiredAt = now;
+            }
+            return true;
+        }
+
+        /**
+         * Returns true if the current thread released its last hold on the lock.
+         */
+        boolean release() {
+            final boolean last = lock.getHoldCount() == 1;
+            if ( last ) {
+                totalHoldTime.addAndGet( System.currentTimeMillis() - acquiredAt );
+            }
+            lock.unlock();
+            return last;
+        }
+
+        LockStats stats() {
+            return new LockStats( acquisitions.get(),
+                                  contended.get(),
+                                  timeouts.get(),
+                                  totalWaitTime.get(),
+                                  maxWaitTime.get(),
+                                  totalHoldTime.get(),
+                                  lock.getQueueLength(),
+                                  lock.isLocked() );
+        }
+    }
+
+    /**
+     * Snapshot of the contention metrics of a filesystem batch lock; times are in milliseconds.
+     */
+    public static class LockStats {
+
+        private final long acquisitions;
+        private final long contended;
+        private final long timeouts;
+        private final long totalWaitTime;
+        private final long maxWaitTime;
+        private final long totalHoldTime;
+        private final int queueLength;
+        private final boolean locked;
+
+        LockStats( final long acquisitions,
+                   final long contended,
+                   final long timeouts,
+                   final long totalWaitTime,
+                   final long maxWaitTime,
+                   final long totalHoldTime,
+                   final int queueLength,
+                   final boolean locked ) {
+            this.acquisitions = acquisitions;
+            this.contended = contended;
+            this.timeouts = timeouts;
+            this.totalWaitTime = totalWaitTime;
+            this.maxWaitTime = maxWaitTime;
+            this.totalHoldTime = totalHoldTime;
+            this.queueLength = queueLength;
+            this.locked = locked;
+        }
+
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        public long getContended() {
+            return contended;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getTotalWaitTime() {
+            return totalWaitTime;
+        }
+
+        public long getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        public long getTotalHoldTime() {
+            return totalHoldTime;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        public boolean isLocked() {
+            return locked;
+        }
+
+        @Override
+        public String toString() {
+            return "LockStats{" +
+                    "acquisitions=" + acquisitions +
+                    ", contended=" + contended +
+                    ", timeouts=" + timeouts +
+                    ", totalWaitTime=" + totalWaitTime +
+                    ", maxWaitTime=" + maxWaitTime +
+                    ", totalHoldTime=" + totalHoldTime +
+                    ", queueLength=" + queueLength +
+                    ", locked=" + locked +
+                    '}';
+        }
     }
 }
@@ -34,6 +34,7 @@ import org.uberfire.io.impl.IOServiceDotFileImpl;
 import org.uberfire.java.nio.base.AbstractBasicFileAttributeView;
 import org.uberfire.java.nio.base.AbstractPath;
 import org.uberfire.java.nio.base.AttrHolder;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.base.NeedsPreloadedAttrs;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.FileAlreadyExistsException;
@@ -331,6 +332,44 @@ public abstract class CommonIOServiceDotFileTest {
         assertTrue( ioService().exists( dot( tfile ) ) );
     }
 
+    @Test
+    public void testCommitChangeSet() {
+        final Path sfile = getFilePath();
+        final Path tfile = getTargetPath();
+
+        ioService().deleteIfExists( sfile );
+        ioService().deleteIfExists( tfile );
+
+        ioService().write( sfile, "wow", Collections.<OpenOption>emptySet(), new FileAttribute<Object>() {
+            @Override
+            public String name() {
+                return "custom";
+            }
+
+            @Override
+            public Object value() {
+                return dateValue;
+            }
+        } );
+
+        assertTrue( ioService().exists( dot( sfile ) ) );
+
+        ioService().commit( sfile.getFileSystem(), new ChangeSet()
+                .write( sfile, "moved wow" )
+                .move( sfile, tfile ) );
+
+        assertFalse( ioService().exists( sfile ) );
+        assertFalse( ioService().exists( dot( sfile ) ) );
+        assertTrue( ioService().exists( tfile ) );
+        assertTrue( ioService().exists( dot( tfile ) ) );
+        assertEquals( "moved wow", ioService().readAllString( tfile ) );
+
+        ioService().commit( tfile.getFileSystem(), new ChangeSet().delete( tfile ) );
+
+        assertFalse( ioService().exists( tfile ) );
+        assertFalse( ioService().exists( dot( tfile ) ) );
+    }
+
     @Test
     public void createDirectories() {
         final Path dir = getComposedDirectoryPath();
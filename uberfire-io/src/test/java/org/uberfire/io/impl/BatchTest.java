@@ -23,6 +23,9 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.AfterClass;
@@ -33,6 +36,7 @@ import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.io.CommonIOServiceDotFileTest;
 import org.uberfire.io.IOService;
 import org.uberfire.io.impl.IOServiceDotFileImpl;
+import org.uberfire.io.lock.BatchLockControl;
 import org.uberfire.java.nio.base.options.CommentedOption;
 import org.uberfire.java.nio.base.version.VersionAttributeView;
 import org.uberfire.java.nio.file.FileSystem;
@@ -44,7 +48,7 @@ import org.uberfire.java.nio.fs.jgit.JGitFileSystem;
 import org.uberfire.java.nio.fs.jgit.JGitFileSystemProvider;
 
 import static org.junit.Assert.*;
-import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.*;
 
 public class BatchTest {
 
@@ -577,6 +581,104 @@ public class BatchTest {
         System.out.println( "After writes" );
     }
 
+    @Test
+    public void batchesOnDifferentFileSystemsDontBlockEachOther() throws IOException, InterruptedException {
+        final Path init = ioService.get( URI.create( "git://check-amend-repo-test-2/readme.txt" ) );
+        ioService.write( init, "init!" );
+
+        ioService.startBatch( new FileSystem[]{ fs1 } );
+        assertTrue( fs1Batch.isOnBatch() );
+
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final AtomicBoolean wasOnBatch = new AtomicBoolean( false );
+        new Thread( "other-fs" ) {
+            @Override
+            public void run() {
+                ioService.startBatch( new FileSystem[]{ fs3 } );
+                wasOnBatch.set( fs3Batch.isOnBatch() );
+                ioService.write( init, "other fs batch!" );
+                ioService.endBatch();
+                done.countDown();
+            }
+        }.start();
+
+        assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+        assertTrue( wasOnBatch.get() );
+        assertFalse( fs3Batch.isOnBatch() );
+        assertTrue( fs1Batch.isOnBatch() );
+
+        ioService.endBatch();
+        assertFalse( fs1Batch.isOnBatch() );
+
+        final BatchLockControl.LockStats stats = ( (IOServiceLockable) ioService ).getLockControl().getStats( fs3 );
+        assertNotNull( stats );
+        assertFalse( stats.isLocked() );
+        assertEquals( 0, stats.getQueueLength() );
+    }
+
+    @Test
+    public void lockTimeout() throws InterruptedException {
+        final BatchLockControl lockControl = new BatchLockControl();
+        lockControl.lock( fs1, fs2 );
+
+        final AtomicBoolean acquired = new AtomicBoolean( true );
+        final Thread thread = new Thread( "timeout" ) {
+            @Override
+            public void run() {
+                acquired.set( lockControl.tryLock( 50, TimeUnit.MILLISECONDS, fs2, fs3 ) );
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertFalse( acquired.get() );
+        assertFalse( lockControl.isLocked( fs3 ) );
+        assertEquals( 1, lockControl.getStats( fs2 ).getTimeouts() );
+
+        lockControl.unlock();
+        assertFalse( lockControl.isLocked() );
+        assertFalse( lockControl.isLocked( fs1 ) );
+    }
+
+    @Test
+    public void proxiesShareTheLockOfTheirFileSystem() throws InterruptedException {
+        final FileSystem proxy = mock( FileSystem.class );
+        when( proxy.getRootDirectories() ).thenReturn( fs2.getRootDirectories() );
+
+        final BatchLockControl lockControl = new BatchLockControl();
+        lockControl.lock( proxy );
+        assertTrue( lockControl.isLocked( fs2 ) );
+
+        final AtomicBoolean acquired = new AtomicBoolean( true );
+        final Thread thread = new Thread( "proxy" ) {
+            @Override
+            public void run() {
+                acquired.set( lockControl.tryLock( 50, TimeUnit.MILLISECONDS, fs2 ) );
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertFalse( acquired.get() );
+        lockControl.unlock();
+        assertFalse( lockControl.isLocked( proxy ) );
+    }
+
+    @Test
+    public void locksOfClosedFileSystemsAreEvicted() {
+        final FileSystem closed = mock( FileSystem.class );
+        when( closed.isOpen() ).thenReturn( false );
+
+        final BatchLockControl lockControl = new BatchLockControl();
+        lockControl.lock( closed );
+        lockControl.evictClosed();
+        assertNotNull( lockControl.getStats( closed ) );
+
+        lockControl.unlock();
+        lockControl.evictClosed();
+        assertNull( lockControl.getStats( closed ) );
+    }
+
     @Test
     public void exceptionOnCleanUpAndUnsetBatchModeOnFileSystemsShouldReleaseLock() throws IOException, InterruptedException {
         IOServiceDotFileImpl ioServiceSpy = spy( (IOServiceDotFileImpl) ioService );
@@ -18,12 +18,15 @@ package org.uberfire.io.impl.cluster;
 
 import java.net.URI;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 import org.uberfire.commons.cluster.ClusterService;
 import org.uberfire.io.impl.IOServiceLockable;
 import org.uberfire.io.lock.BatchLockControl;
 import org.uberfire.java.nio.base.FileSystemId;
+import org.uberfire.java.nio.base.FileSystemRefsAware;
 import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.Option;
 import org.uberfire.java.nio.file.Path;
@@ -73,7 +76,7 @@ public class IOServiceClusterImplTest {
 
             assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
 
-            verify( clusterService, times( 1 ) ).unlock();
+            verify( clusterService, times( 1 ) ).unlock( "my-fsid" );
         }
 
         {
@@ -93,7 +96,7 @@ public class IOServiceClusterImplTest {
 
             assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
 
-            verify( clusterService, times( 2 ) ).unlock();
+            verify( clusterService, times( 2 ) ).unlock( "my-fsid" );
         }
 
         {
@@ -113,10 +116,53 @@ public class IOServiceClusterImplTest {
 
             assertEquals( 0, ioServiceCluster.batchFileSystems.size() );
 
-            verify( clusterService, times( 3 ) ).unlock();
+            verify( clusterService, times( 3 ) ).unlock( "my-fsid" );
         }
     }
 
+    @Test
+    public void testSyncMessageSkipsUpToDateFileSystems() {
+        final FileSystem fs = mock( FileSystem.class, withSettings().extraInterfaces( FileSystemId.class, FileSystemRefsAware.class ) );
+        final Path rootPath = mock( Path.class );
+        when( fs.getRootDirectories() ).thenReturn( Arrays.asList( rootPath ) );
+        when( rootPath.getFileSystem() ).thenReturn( fs );
+        when( ( (FileSystemId) fs ).id() ).thenReturn( "my-fsid" );
+        when( ( (FileSystemRefsAware) fs ).getRefs() ).thenReturn( new HashMap<String, String>() {{
+            put( "refs/heads/master", "b" );
+        }} );
+
+        final IOServiceLockable serviceLockable = mock( IOServiceLockable.class );
+        when( serviceLockable.getFileSystems() ).thenReturn( Arrays.asList( fs ) );
+
+        final IOServiceClusterImpl ioServiceCluster = new TestWrapper( mock( ClusterService.class ), serviceLockable );
+        final IOServiceClusterImpl.SyncFileSystemMessageHandler handler = ioServiceCluster.new SyncFileSystemMessageHandler();
+
+        final Map<String, String> content = new HashMap<String, String>();
+        content.put( "fs_scheme", "git" );
+        content.put( "fs_id", "my-fsid" );
+        content.put( "fs_uri", "git://localhost:9418/my-fsid" );
+        FileSystemSyncContent.putRefs( content,
+                                       new HashMap<String, String>() {{
+                                           put( "refs/heads/master", "a" );
+                                       }},
+                                       new HashMap<String, String>() {{
+                                           put( "refs/heads/master", "b" );
+                                       }} );
+
+        handler.handleMessage( ClusterMessageType.SYNC_FS, content );
+
+        verify( serviceLockable, never() ).getFileSystem( any( URI.class ) );
+        assertEquals( 1, ioServiceCluster.getReplicationStats( "my-fsid" ).getUpToDate() );
+
+        content.put( "ref_refs/heads/master", "b:c" );
+
+        handler.handleMessage( ClusterMessageType.SYNC_FS, content );
+
+        verify( serviceLockable ).getFileSystem( URI.create( "git://my-fsid?sync=git%3A%2F%2Flocalhost%3A9418%2Fmy-fsid&force&refs=refs%2Fheads%2Fmaster%3Ac" ) );
+        assertEquals( 1, ioServiceCluster.getReplicationStats( "my-fsid" ).getSynced() );
+        assertEquals( 2, ioServiceCluster.getReplicationStats( "my-fsid" ).getReceived() );
+    }
+
     private class TestWrapper extends IOServiceClusterImpl {
 
         public TestWrapper( final ClusterService clusterService,
@@ -16,8 +16,13 @@
 
 package org.uberfire.io.impl.cluster.helix;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.helix.HelixManager;
 import org.apache.helix.model.ExternalView;
@@ -26,6 +31,7 @@ import org.junit.Test;
 import org.uberfire.commons.lifecycle.PriorityDisposableRegistry;
 import org.uberfire.commons.message.MessageHandlerResolver;
 
+import static java.util.Arrays.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
@@ -33,6 +39,8 @@ public class ClusterServiceHelixTest {
 
     ClusterServiceHelix clusterServiceHelix;
     ExternalView externalView;
+    int partitions;
+    List<String> partitionEvents;
 
     @Test
     public void getNodeStatusEmptyOrNullShouldReturnOfflineTest() {
@@ -62,9 +70,162 @@ public class ClusterServiceHelixTest {
         assertEquals( "OFFLINE", clusterServiceHelix.getNodeStatus() );
     }
 
+    @Test
+    public void singlePartitionUsesClusterWideLockTest() {
+        partitions = 1;
+        assertEquals( 0, clusterServiceHelix.getPartition( "repo1" ) );
+        assertEquals( 0, clusterServiceHelix.getPartition( "repo2" ) );
+    }
+
+    @Test
+    public void resourcesAreStripedOverPartitionsTest() {
+        partitions = 8;
+        for ( int i = 0; i < 100; i++ ) {
+            final int partition = clusterServiceHelix.getPartition( "repo" + i );
+            assertTrue( partition >= 1 && partition < 8 );
+            assertEquals( partition, clusterServiceHelix.getPartition( "repo" + i ) );
+        }
+    }
+
+    @Test
+    public void nestedLocksEnablePartitionOnceTest() {
+        partitions = 8;
+        final int partition = clusterServiceHelix.getPartition( "repo" );
+
+        clusterServiceHelix.lock( "repo" );
+        clusterServiceHelix.lock( "repo" );
+        clusterServiceHelix.unlock( "repo" );
+        assertEquals( 1, partitionEvents.size() );
+        clusterServiceHelix.unlock( "repo" );
+
+        assertEquals( asList( "enable_" + partition, "disable_" + partition ), partitionEvents );
+    }
+
+    @Test
+    public void locksOnDifferentPartitionsDontBlockEachOtherTest() throws InterruptedException {
+        partitions = 8;
+        String other = null;
+        for ( int i = 0; other == null; i++ ) {
+            if ( clusterServiceHelix.getPartition( "repo" + i ) != clusterServiceHelix.getPartition( "repo" ) ) {
+                other = "repo" + i;
+            }
+        }
+        final String otherRepo = other;
+
+        clusterServiceHelix.lock( "repo" );
+        try {
+            final CountDownLatch locked = new CountDownLatch( 1 );
+            new Thread() {
+                @Override
+                public void run() {
+                    clusterServiceHelix.lock( otherRepo );
+                    locked.countDown();
+                    clusterServiceHelix.unlock( otherRepo );
+                }
+            }.start();
+            assertTrue( locked.await( 5, TimeUnit.SECONDS ) );
+        } finally {
+            clusterServiceHelix.unlock( "repo" );
+        }
+    }
+
+    @Test
+    public void multipleResourcesAreLockedInPartitionOrderTest() {
+        partitions = 8;
+        final List<Integer> expected = new ArrayList<Integer>();
+        for ( final String repo : new String[]{ "repoA", "repoB", "repoC" } ) {
+            final int partition = clusterServiceHelix.getPartition( repo );
+            if ( !expected.contains( partition ) ) {
+                expected.add( partition );
+            }
+        }
+        Collections.sort( expected );
+
+        clusterServiceHelix.lock( "repoC", "repoA", "repoB" );
+        clusterServiceHelix.unlock( "repoC", "repoA", "repoB" );
+
+        for ( int i = 0; i < expected.size(); i++ ) {
+            assertEquals( "enable_" + expected.get( i ), partitionEvents.get( i ) );
+            assertEquals( "disable_" + expected.get( expected.size() - 1 - i ), partitionEvents.get( expected.size() + i ) );
+        }
+    }
+
+    @Test
+    public void clusterWideLockTakesEveryPartitionTest() throws InterruptedException {
+        partitions = 4;
+
+        clusterServiceHelix.lock();
+        clusterServiceHelix.unlock();
+        assertEquals( asList( "enable_0", "enable_1", "enable_2", "enable_3", "disable_3", "disable_2", "disable_1", "disable_0" ),
+                      partitionEvents );
+
+        clusterServiceHelix.lock();
+        try {
+            final CountDownLatch locked = new CountDownLatch( 1 );
+            new Thread() {
+                @Override
+                public void run() {
+                    clusterServiceHelix.lock( "repo" );
+                    locked.countDown();
+                    clusterServiceHelix.unlock( "repo" );
+                }
+            }.start();
+            assertFalse( locked.await( 200, TimeUnit.MILLISECONDS ) );
+        } finally {
+            clusterServiceHelix.unlock();
+        }
+    }
+
+    @Test
+    public void lowerPartitionIsTakenByReacquiringInOrderTest() {
+        partitions = 8;
+        String low = null;
+        String high = null;
+        for ( int i = 0; low == null || high == null; i++ ) {
+            final int partition = clusterServiceHelix.getPartition( "repo" + i );
+            if ( partition == 1 ) {
+                low = "repo" + i;
+            } else if ( partition == 7 ) {
+                high = "repo" + i;
+            }
+        }
+
+        clusterServiceHelix.lock( high );
+        clusterServiceHelix.lock( high );
+        clusterServiceHelix.lock( low );
+        assertEquals( asList( "enable_7", "disable_7", "enable_1", "enable_7" ), partitionEvents );
+
+        // hold counts survive the reacquire: the partition is only released on the last unlock
+        clusterServiceHelix.unlock( low );
+        clusterServiceHelix.unlock( high );
+        assertEquals( 5, partitionEvents.size() );
+        clusterServiceHelix.unlock( high );
+        assertEquals( asList( "enable_7", "disable_7", "enable_1", "enable_7", "disable_1", "disable_7" ), partitionEvents );
+    }
+
+    @Test
+    public void clusterWideLockWhileHoldingResourceTest() {
+        partitions = 3;
+        String repo = null;
+        for ( int i = 0; repo == null; i++ ) {
+            if ( clusterServiceHelix.getPartition( "repo" + i ) == 2 ) {
+                repo = "repo" + i;
+            }
+        }
+
+        clusterServiceHelix.lock( repo );
+        clusterServiceHelix.lock();
+        assertEquals( asList( "enable_2", "disable_2", "enable_0", "enable_1", "enable_2" ), partitionEvents );
+        clusterServiceHelix.unlock();
+        clusterServiceHelix.unlock( repo );
+        assertEquals( asList( "enable_2", "disable_2", "enable_0", "enable_1", "enable_2", "disable_1", "disable_0", "disable_2" ), partitionEvents );
+    }
+
     @Before
     public void setup() {
         externalView = mock( ExternalView.class );
+        partitions = 1;
+        partitionEvents = new ArrayList<String>();
 
         clusterServiceHelix = new ClusterServiceHelix( "clusterName",
                                                        "zkAddress",
@@ -90,6 +251,25 @@ public class ClusterServiceHelixTest {
             ExternalView getResourceExternalView() {
                 return externalView;
             }
+
+            @Override
+            int getPartitionCount() {
+                return partitions;
+            }
+
+            @Override
+            void enablePartition( final int partition ) {
+                synchronized ( partitionEvents ) {
+                    partitionEvents.add( "enable_" + partition );
+                }
+            }
+
+            @Override
+            void disablePartition( final int partition ) {
+                synchronized ( partitionEvents ) {
+                    partitionEvents.add( "disable_" + partition );
+                }
+            }
         };
 
         assertTrue( PriorityDisposableRegistry.getDisposables().contains( clusterServiceHelix ) );
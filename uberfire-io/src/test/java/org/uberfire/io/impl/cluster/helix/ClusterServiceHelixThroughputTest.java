@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.io.impl.cluster.helix;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.I0Itec.zkclient.IDefaultNameSpace;
+import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.ZkServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.helix.HelixManager;
+import org.apache.helix.controller.HelixControllerMain;
+import org.apache.helix.tools.ClusterSetup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Two nodes sharing a lock resource on an embedded ZooKeeper, each writing its own repositories: writes holding the
+ * cluster wide lock are compared with writes holding only their repository's lock.
+ */
+public class ClusterServiceHelixThroughputTest {
+
+    private static final String CLUSTER = "uf-lock-throughput";
+    private static final String RESOURCE = "vfs-lock";
+    private static final String[] NODES = new String[]{ "localhost_12001", "localhost_12002" };
+    private static final int PARTITIONS = 8;
+    private static final int WRITERS_PER_NODE = 2;
+    private static final long WRITE_MILLIS = 5;
+    private static final long DURATION_MILLIS = 3000;
+
+    private File zkDir;
+    private ZkServer zkServer;
+    private HelixManager controller;
+    private final List<ClusterServiceHelix> nodes = new ArrayList<ClusterServiceHelix>();
+
+    @Before
+    public void setup() throws Exception {
+        zkDir = File.createTempFile( "zk", "throughput" );
+        zkDir.delete();
+        zkDir.mkdirs();
+
+        final int port = freePort();
+        zkServer = new ZkServer( new File( zkDir, "data" ).getAbsolutePath(),
+                                 new File( zkDir, "log" ).getAbsolutePath(),
+                                 new IDefaultNameSpace() {
+                                     @Override
+                                     public void createDefaultNameSpace( final ZkClient zkClient ) {
+                                     }
+                                 },
+                                 port );
+        zkServer.start();
+        final String zkAddress = "localhost:" + port;
+
+        final ClusterSetup setup = new ClusterSetup( zkAddress );
+        setup.addCluster( CLUSTER, true );
+        for ( final String node : NODES ) {
+            setup.addInstanceToCluster( CLUSTER, node );
+        }
+        controller = HelixControllerMain.startHelixController( zkAddress, CLUSTER, "controller", HelixControllerMain.STANDALONE );
+
+        for ( final String node : NODES ) {
+            nodes.add( new ClusterServiceHelix( CLUSTER, zkAddress, node, RESOURCE, PARTITIONS, null ) );
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for ( final ClusterServiceHelix node : nodes ) {
+            node.dispose();
+        }
+        if ( controller != null ) {
+            controller.disconnect();
+        }
+        if ( zkServer != null ) {
+            zkServer.shutdown();
+        }
+        FileUtils.deleteQuietly( zkDir );
+    }
+
+    @Test
+    public void independentRepositoriesAreWrittenInParallelTest() throws Exception {
+        for ( final ClusterServiceHelix node : nodes ) {
+            assertEquals( PARTITIONS, node.getPartitionCount() );
+        }
+
+        final long clusterWide = measureWrites( true );
+        final long perRepository = measureWrites( false );
+
+        assertTrue( "writes per repository lock: " + perRepository + ", with the cluster wide lock: " + clusterWide,
+                    perRepository > clusterWide );
+    }
+
+    private long measureWrites( final boolean clusterWide ) throws InterruptedException {
+        final List<String> repositories = repositoriesOnDistinctPartitions( nodes.size() * WRITERS_PER_NODE );
+        final AtomicLong writes = new AtomicLong( 0 );
+        final long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+
+        final List<Thread> writers = new ArrayList<Thread>();
+        for ( int i = 0; i < repositories.size(); i++ ) {
+            final ClusterServiceHelix node = nodes.get( i % nodes.size() );
+            final String repository = repositories.get( i );
+            writers.add( new Thread() {
+                @Override
+                public void run() {
+                    while ( System.currentTimeMillis() < deadline ) {
+                        if ( clusterWide ) {
+                            node.lock();
+                        } else {
+                            node.lock( repository );
+                        }
+                        try {
+                            Thread.sleep( WRITE_MILLIS );
+                            writes.incrementAndGet();
+                        } catch ( final InterruptedException e ) {
+                            return;
+                        } finally {
+                            if ( clusterWide ) {
+                                node.unlock();
+                            } else {
+                                node.unlock( repository );
+                            }
+                        }
+                    }
+                }
+            } );
+        }
+        for ( final Thread writer : writers ) {
+            writer.start();
+        }
+        for ( final Thread writer : writers ) {
+            writer.join();
+        }
+        return writes.get();
+    }
+
+    private List<String> repositoriesOnDistinctPartitions( final int count ) {
+        final List<String> result = new ArrayList<String>();
+        final Set<Integer> partitions = new HashSet<Integer>();
+        for ( int i = 0; result.size() < count; i++ ) {
+            if ( partitions.add( nodes.get( 0 ).getPartition( "repo" + i ) ) ) {
+                result.add( "repo" + i );
+            }
+        }
+        return result;
+    }
+
+    private static int freePort() throws Exception {
+        final ServerSocket socket = new ServerSocket( 0 );
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -36,6 +36,8 @@ import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileNameFilter;
+import org.uberfire.java.nio.base.FileTreeWalkAware;
 import org.uberfire.java.nio.channels.SeekableByteChannel;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributeView;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
@@ -181,7 +183,7 @@ public final class Files {
         final Pattern pattern = Pattern.compile( regex );
 
         return newDirectoryStream( dir,
-                                   new DirectoryStream.Filter<Path>() {
+                                   new FileNameFilter<Path>() {
 
                                        @Override
                                        public boolean accept( final Path entry ) throws IOException {
@@ -192,10 +194,12 @@ public final class Files {
                                                return false;
                                            }
 
-                                           if ( pattern.matcher( entry.getFileName().toString() ).find() ) {
-                                               return true;
-                                           }
-                                           return false;
+                                           return acceptName( entry.getFileName().toString() );
+                                       }
+
+                                       @Override
+                                       public boolean acceptName( final String fileName ) {
+                                           return pattern.matcher( fileName ).find();
                                        }
                                    } );
 
@@ -908,6 +912,11 @@ public final class Files {
                                      final int maxDepth,
                                      final FileVisitor<Path> visitor )
             throws IllegalArgumentException, SecurityException, IOException {
+        final FileSystemProvider provider = providerOf( start );
+        if ( provider instanceof FileTreeWalkAware && ( (FileTreeWalkAware) provider ).walkFileTree( start, maxDepth, visitor ) ) {
+            return start;
+        }
+
         new FileTreeWalker( visitor, maxDepth ).walk( start );
 
         return start;
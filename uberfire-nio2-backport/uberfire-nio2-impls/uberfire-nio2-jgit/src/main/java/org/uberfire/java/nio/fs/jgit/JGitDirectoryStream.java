@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileNameFilter;
+import org.uberfire.java.nio.file.DirectoryStream;
+import org.uberfire.java.nio.file.Path;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
+
+/**
+ * {@link DirectoryStream} over the raw tree object of a git directory.
+ * <p>
+ * Entries are decoded one at a time while iterating, so only the tree object itself is held in memory, and
+ * paths are only built for the entries accepted by the filter. Filters implementing {@link FileNameFilter}
+ * (e.g. globs) are applied to the entry names, before any path is built.
+ */
+public class JGitDirectoryStream implements DirectoryStream<Path> {
+
+    private final JGitPathImpl dir;
+    private final String prefix;
+    private final Filter<Path> filter;
+    private byte[] tree;
+
+    /**
+     * @param dir the listed directory
+     * @param tree raw content of the tree object of the directory
+     * @param filter filter of the entries; null accepts all of them
+     */
+    public JGitDirectoryStream( final JGitPathImpl dir,
+                                final byte[] tree,
+                                final Filter<Path> filter ) {
+        this.dir = checkNotNull( "dir", dir );
+        this.tree = checkNotNull( "tree", tree );
+        this.filter = filter;
+        final String gitPath = fixPath( dir.getPath() );
+        this.prefix = gitPath.isEmpty() ? "/" : "/" + gitPath + "/";
+    }
+
+    @Override
+    public void close() throws IOException {
+        if ( tree == null ) {
+            throw new IOException( "This stream is closed." );
+        }
+        tree = null;
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        if ( tree == null ) {
+            throw new IOException( "This stream is closed." );
+        }
+        final CanonicalTreeParser parser = new CanonicalTreeParser();
+        parser.reset( tree );
+
+        return new Iterator<Path>() {
+            private Path nextEntry = null;
+
+            @Override
+            public boolean hasNext() {
+                if ( nextEntry == null ) {
+                    nextEntry = readNextEntry();
+                }
+                return nextEntry != null;
+            }
+
+            @Override
+            public Path next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                final Path result = nextEntry;
+                nextEntry = null;
+                return result;
+            }
+
+            private Path readNextEntry() {
+                // stops as soon as the stream gets closed
+                while ( tree != null && !parser.eof() ) {
+                    final String name = parser.getEntryPathString();
+                    Path result = null;
+                    if ( filter instanceof FileNameFilter ) {
+                        if ( ( (FileNameFilter<Path>) filter ).acceptName( name ) ) {
+                            result = toPath( name, parser );
+                        }
+                    } else {
+                        final Path path = toPath( name, parser );
+                        if ( filter == null || filter.accept( path ) ) {
+                            result = path;
+                        }
+                    }
+                    parser.next();
+                    if ( result != null ) {
+                        return result;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private Path toPath( final String name,
+                         final CanonicalTreeParser parser ) {
+        return JGitPathImpl.create( dir.getFileSystem(), prefix + name, dir.getHost(), parser.getEntryObjectId(), dir.isRealPath() );
+    }
+}
@@ -19,6 +19,7 @@ package org.uberfire.java.nio.fs.jgit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -35,11 +36,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.FileSystemChangesAware;
 import org.uberfire.java.nio.base.FileSystemId;
 import org.uberfire.java.nio.base.FileSystemState;
 import org.uberfire.java.nio.base.FileSystemStateAware;
@@ -58,6 +62,7 @@ import org.uberfire.java.nio.file.WatchService;
 import org.uberfire.java.nio.file.Watchable;
 import org.uberfire.java.nio.file.attribute.UserPrincipalLookupService;
 import org.uberfire.java.nio.file.spi.FileSystemProvider;
+import org.uberfire.java.nio.fs.jgit.util.JGitHistoryIndex;
 
 import static java.util.Arrays.*;
 import static java.util.Collections.*;
@@ -67,7 +72,8 @@ import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 
 public class JGitFileSystem implements FileSystem,
                                        FileSystemId,
-                                       FileSystemStateAware {
+                                       FileSystemStateAware,
+                                       FileSystemChangesAware {
 
     private static final Logger LOGGER = LoggerFactory.getLogger( JGitFileSystem.class );
 
@@ -84,6 +90,7 @@ public class JGitFileSystem implements FileSystem,
     private final Map<WatchService, Queue<WatchKey>> events = new ConcurrentHashMap<WatchService, Queue<WatchKey>>();
     private final Collection<WatchService> watchServices = new ArrayList<WatchService>();
     private final AtomicInteger numberOfCommitsSinceLastGC = new AtomicInteger( 0 );
+    private final JGitHistoryIndex historyIndex;
 
     private FileSystemState state = FileSystemState.NORMAL;
     private CommitInfo batchCommitInfo = null;
@@ -111,6 +118,7 @@ public class JGitFileSystem implements FileSystem,
         this.credential = checkNotNull( "credential", credential );
         this.listMode = listMode;
         this.fileStore = new JGitFileStore( gitRepo.getRepository() );
+        this.historyIndex = new JGitHistoryIndex( gitRepo.getRepository() );
         if ( fullHostNames != null && !fullHostNames.isEmpty() ) {
             final StringBuilder sb = new StringBuilder();
             final Iterator<Map.Entry<String, String>> iterator = fullHostNames.entrySet().iterator();
@@ -144,6 +152,49 @@ public class JGitFileSystem implements FileSystem,
         return credential;
     }
 
+    public JGitHistoryIndex getHistoryIndex() {
+        return historyIndex;
+    }
+
+    @Override
+    public Map<String, String> getRefs() {
+        final Map<String, String> result = new HashMap<String, String>();
+        for ( final Ref ref : gitRepo.getRepository().getAllRefs().values() ) {
+            if ( ref.getObjectId() != null &&
+                    ( ref.getName().startsWith( Constants.R_HEADS ) || ref.getName().startsWith( Constants.R_TAGS ) ) ) {
+                result.put( ref.getName(), ref.getObjectId().name() );
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<WatchEvent<?>> getChanges( final String ref,
+                                           final String fromCommitId,
+                                           final String toCommitId ) {
+        checkNotEmpty( "ref", ref );
+        if ( !ref.startsWith( Constants.R_HEADS ) ) {
+            return emptyList();
+        }
+        final ObjectId oldTree = resolveTree( fromCommitId );
+        final ObjectId newTree = resolveTree( toCommitId );
+        if ( ( fromCommitId != null && oldTree == null ) || ( toCommitId != null && newTree == null ) ) {
+            return null;
+        }
+        return provider.buildEvents( this, ref, "<system>", "<system>", "", oldTree, newTree );
+    }
+
+    private ObjectId resolveTree( final String commitId ) {
+        if ( commitId == null ) {
+            return null;
+        }
+        try {
+            return getTreeRefObjectId( gitRepo.getRepository(), commitId );
+        } catch ( final RuntimeException ex ) {
+            return null;
+        }
+    }
+
     @Override
     public FileSystemProvider provider() {
         return provider;
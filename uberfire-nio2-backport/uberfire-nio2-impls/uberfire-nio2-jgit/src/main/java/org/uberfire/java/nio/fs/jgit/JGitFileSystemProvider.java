@@ -18,7 +18,6 @@ package org.uberfire.java.nio.fs.jgit;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.FilterOutputStream;
 import java.io.InputStream;
@@ -36,10 +35,8 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
@@ -55,6 +52,7 @@ import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
 import org.eclipse.jgit.internal.storage.file.WindowCache;
+import org.eclipse.jgit.lib.AbbreviatedObjectId;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
@@ -94,8 +92,11 @@ import org.uberfire.java.nio.EncodingUtil;
 import org.uberfire.java.nio.IOException;
 import org.uberfire.java.nio.base.AbstractPath;
 import org.uberfire.java.nio.base.BasicFileAttributesImpl;
+import org.uberfire.java.nio.base.ChangeSet;
+import org.uberfire.java.nio.base.ChangeSetAware;
 import org.uberfire.java.nio.base.ExtendedAttributeView;
 import org.uberfire.java.nio.base.FileSystemState;
+import org.uberfire.java.nio.base.FileTreeWalkAware;
 import org.uberfire.java.nio.base.SeekableByteChannelFileBasedImpl;
 import org.uberfire.java.nio.base.WatchContext;
 import org.uberfire.java.nio.base.dotfiles.DotFileOption;
@@ -117,6 +118,7 @@ import org.uberfire.java.nio.file.FileStore;
 import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
 import org.uberfire.java.nio.file.FileSystemNotFoundException;
+import org.uberfire.java.nio.file.FileVisitor;
 import org.uberfire.java.nio.file.LinkOption;
 import org.uberfire.java.nio.file.NoSuchFileException;
 import org.uberfire.java.nio.file.NotDirectoryException;
@@ -137,9 +139,15 @@ import org.uberfire.java.nio.fs.jgit.daemon.git.Daemon;
 import org.uberfire.java.nio.fs.jgit.daemon.git.DaemonClient;
 import org.uberfire.java.nio.fs.jgit.daemon.ssh.BaseGitCommand;
 import org.uberfire.java.nio.fs.jgit.daemon.ssh.GitSSHService;
+import org.uberfire.java.nio.fs.jgit.util.ChangeSetCommitContent;
 import org.uberfire.java.nio.fs.jgit.util.CommitContent;
 import org.uberfire.java.nio.fs.jgit.util.CopyCommitContent;
+import org.uberfire.java.nio.fs.jgit.util.BufferedCommitContent;
+import org.uberfire.java.nio.fs.jgit.util.ContentBuffer;
+import org.uberfire.java.nio.fs.jgit.util.ContentBufferByteChannel;
 import org.uberfire.java.nio.fs.jgit.util.DefaultCommitContent;
+import org.uberfire.java.nio.fs.jgit.util.JGitFileTreeWalker;
+import org.uberfire.java.nio.fs.jgit.util.JGitMaintenanceScheduler;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 import org.uberfire.java.nio.fs.jgit.util.MoveCommitContent;
@@ -156,6 +164,8 @@ import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.PathType.*;
 import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 
 public class JGitFileSystemProvider implements SecuredFileSystemProvider,
+                                               FileTreeWalkAware,
+                                               ChangeSetAware,
                                                Disposable {
 
     private static final Logger LOG = LoggerFactory.getLogger( JGitFileSystemProvider.class );
@@ -186,23 +196,35 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     public static final String DEFAULT_HOST_ADDR = "127.0.0.1";
     public static final String DAEMON_DEFAULT_ENABLED = "true";
     public static final String DAEMON_DEFAULT_PORT = "9418";
+    public static final String DAEMON_DEFAULT_THREADS = String.valueOf( Daemon.DEFAULT_WORKER_THREADS );
+    public static final String DAEMON_DEFAULT_QUEUE = String.valueOf( Daemon.DEFAULT_PENDING_CONNECTIONS );
+    public static final String DAEMON_DEFAULT_IDLE_TIMEOUT = "300";
     public static final String SSH_DEFAULT_ENABLED = "true";
     public static final String SSH_DEFAULT_PORT = "8001";
     public static final String SSH_IDLE_TIMEOUT = "10000";
     public static final String SSH_ALGORITHM = "DSA";
     public static final String SSH_CERT_PASSPHRASE = "";
     public static final String DEFAULT_COMMIT_LIMIT_TO_GC = "20";
+    public static final String DEFAULT_MAINTENANCE_THREADS = "1";
+    public static final String DEFAULT_SPILL_THRESHOLD_KB = "1024";
+    public static final String DEFAULT_PATH_CACHE_SIZE_KB = String.valueOf( JGitUtil.DEFAULT_PATH_CACHE_SIZE / 1024 );
+    public static final String DEFAULT_PACK_COMPRESSION_LEVEL = String.valueOf( JGitUtil.DEFAULT_PACK_COMPRESSION_LEVEL );
 
     private File gitReposParentDir;
 
     private File hookDir;
 
     private int commitLimit;
+    private JGitMaintenanceScheduler maintenanceScheduler;
+    private int spillThreshold;
     private boolean daemonEnabled;
     private int daemonPort;
     private String daemonHostAddr;
     private String daemonHostName;
     private int daemonHostPort;
+    private int daemonThreads;
+    private int daemonQueue;
+    private int daemonIdleTimeout;
 
     private boolean sshEnabled;
     private int sshPort;
@@ -243,6 +265,9 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         final ConfigProperty hostNameProp = config.get( "org.uberfire.nio.git.daemon.hostname", hostProp.isDefault() ? DEFAULT_HOST_NAME : hostProp.getValue() );
         final ConfigProperty portProp = config.get( "org.uberfire.nio.git.daemon.port", DAEMON_DEFAULT_PORT );
         final ConfigProperty hostPortProp = config.get( "org.uberfire.nio.git.daemon.hostport", DAEMON_DEFAULT_PORT );
+        final ConfigProperty daemonThreadsProp = config.get( "org.uberfire.nio.git.daemon.threads", DAEMON_DEFAULT_THREADS );
+        final ConfigProperty daemonQueueProp = config.get( "org.uberfire.nio.git.daemon.queue", DAEMON_DEFAULT_QUEUE );
+        final ConfigProperty daemonIdleTimeoutProp = config.get( "org.uberfire.nio.git.daemon.idle.timeout", DAEMON_DEFAULT_IDLE_TIMEOUT );
         final ConfigProperty sshEnabledProp = config.get( "org.uberfire.nio.git.ssh.enabled", SSH_DEFAULT_ENABLED );
         final ConfigProperty sshHostProp = config.get( "org.uberfire.nio.git.ssh.host", DEFAULT_HOST_ADDR );
         final ConfigProperty sshHostNameProp = config.get( "org.uberfire.nio.git.ssh.hostname", sshHostProp.isDefault() ? DEFAULT_HOST_NAME : sshHostProp.getValue() );
@@ -253,6 +278,10 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         final ConfigProperty sshAlgorithmProp = config.get( "org.uberfire.nio.git.ssh.algorithm", SSH_ALGORITHM );
         final ConfigProperty sshPassphraseProp = config.get( "org.uberfire.nio.git.ssh.passphrase", SSH_CERT_PASSPHRASE );
         final ConfigProperty commitLimitProp = config.get( "org.uberfire.nio.git.gc.limit", DEFAULT_COMMIT_LIMIT_TO_GC );
+        final ConfigProperty maintenanceThreadsProp = config.get( "org.uberfire.nio.git.gc.threads", DEFAULT_MAINTENANCE_THREADS );
+        final ConfigProperty spillThresholdProp = config.get( "org.uberfire.nio.git.write.spill.threshold.kb", DEFAULT_SPILL_THRESHOLD_KB );
+        final ConfigProperty pathCacheSizeProp = config.get( "org.uberfire.nio.git.cache.path.size.kb", DEFAULT_PATH_CACHE_SIZE_KB );
+        final ConfigProperty packCompressionProp = config.get( "org.uberfire.nio.git.pack.compression", DEFAULT_PACK_COMPRESSION_LEVEL );
 
         if ( LOG.isDebugEnabled() ) {
             LOG.debug( config.getConfigurationSummary( "Summary of JGit configuration:" ) );
@@ -267,6 +296,15 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         gitReposParentDir = new File( bareReposDirProp.getValue(), REPOSITORIES_CONTAINER_DIR );
         commitLimit = commitLimitProp.getIntValue();
+        maintenanceScheduler = new JGitMaintenanceScheduler( maintenanceThreadsProp.getIntValue() );
+        spillThreshold = spillThresholdProp.getIntValue() * 1024;
+        JGitUtil.getPathCache().setMaxWeight( pathCacheSizeProp.getIntValue() * 1024L );
+        try {
+            JGitUtil.setPackCompressionLevel( packCompressionProp.getIntValue() );
+        } catch ( final RuntimeException exception ) {
+            LOG.error( "Pack compression level should be between -1 and 9 - Parameter is ignored, now using default value." );
+            JGitUtil.setPackCompressionLevel( JGitUtil.DEFAULT_PACK_COMPRESSION_LEVEL );
+        }
 
         daemonEnabled = enabledProp.getBooleanValue();
         if ( daemonEnabled ) {
@@ -274,6 +312,21 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             daemonHostAddr = hostProp.getValue();
             daemonHostName = hostNameProp.getValue();
             daemonHostPort = hostPortProp.getIntValue();
+            daemonThreads = daemonThreadsProp.getIntValue();
+            if ( daemonThreads <= 0 ) {
+                LOG.error( "Daemon threads should be positive - Parameter is ignored, now using default value." );
+                daemonThreads = Daemon.DEFAULT_WORKER_THREADS;
+            }
+            daemonQueue = daemonQueueProp.getIntValue();
+            if ( daemonQueue <= 0 ) {
+                LOG.error( "Daemon queue size should be positive - Parameter is ignored, now using default value." );
+                daemonQueue = Daemon.DEFAULT_PENDING_CONNECTIONS;
+            }
+            daemonIdleTimeout = daemonIdleTimeoutProp.getIntValue();
+            if ( daemonIdleTimeout < 0 ) {
+                LOG.error( "Daemon idle timeout should not be negative - Parameter is ignored, now using default value." );
+                daemonIdleTimeout = Integer.parseInt( DAEMON_DEFAULT_IDLE_TIMEOUT );
+            }
         }
 
         sshEnabled = sshEnabledProp.getBooleanValue();
@@ -314,6 +367,8 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
         repoIndex.remove( fileSystem.gitRepo().getRepository() );
         clusterMap.remove( fileSystem.gitRepo().getRepository() );
+        JGitUtil.getPathCache().invalidate( fileSystem.gitRepo().getRepository() );
+        maintenanceScheduler.cancel( fileSystem );
     }
 
     public Set<JGitFileSystem> getOpenFileSystems() {
@@ -476,11 +531,10 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                         //persisted. Using a default of null rather than ALL is a safer default as *all* GIT repositories created
                         //from within the workbench have a ListMode of null.
                         final JGitFileSystem fs = new JGitFileSystem( this, fullHostNames, newRepository( repoDir, true ), name, null, buildCredential( null ) );
-                        LOG.debug( "Running GIT GC on '" + name + "'" );
-                        JGitUtil.gc( fs.gitRepo() );
                         LOG.debug( "Registering existing GIT filesystem '" + name + "' at " + repoDir );
                         fileSystems.put( name, fs );
                         repoIndex.put( fs.gitRepo().getRepository(), fs );
+                        maintenanceScheduler.schedule( fs, JGitMaintenanceScheduler.Task.GC );
                     } else {
                         LOG.debug( "Not registering " + repoDir + " as a GIT filesystem because it is not a directory" );
                     }
@@ -508,7 +562,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                                                   final Collection<ReceiveCommand> commands ) {
                             fs.lock();
                             if ( clusterService != null ) {
-                                clusterService.lock();
+                                clusterService.lock( fs.id() );
                             }
 
                             for ( final ReceiveCommand command : commands ) {
@@ -557,10 +611,19 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                                                               put( "fs_scheme", "git" );
                                                               put( "fs_id", fs.id() );
                                                               put( "fs_uri", fs.toString() );
+                                                              put( "fs_sent_at", String.valueOf( System.currentTimeMillis() ) );
+                                                              put( "fs_refs", "true" );
+                                                              final Map<String, String> refs = fs.getRefs();
+                                                              for ( final Map.Entry<String, RevCommit> oldTreeRef : oldTreeRefs.entrySet() ) {
+                                                                  final String newId = refs.get( oldTreeRef.getKey() );
+                                                                  put( "ref_" + oldTreeRef.getKey(),
+                                                                       ( oldTreeRef.getValue() == null ? "" : oldTreeRef.getValue().name() ) + ":" +
+                                                                               ( newId == null ? "" : newId ) );
+                                                              }
                                                           }}
                                                         );
 
-                                clusterService.unlock();
+                                clusterService.unlock( fs.id() );
                             }
                         }
                     } );
@@ -585,6 +648,9 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             daemonService = new Daemon( new InetSocketAddress( daemonHostAddr, daemonPort ),
                                         new ExecutorWrapper( SimpleAsyncExecutorService.getUnmanagedInstance() ) );
             daemonService.setRepositoryResolver( new RepositoryResolverImpl<DaemonClient>() );
+            daemonService.setWorkerThreads( daemonThreads );
+            daemonService.setPendingConnections( daemonQueue );
+            daemonService.setIdleTimeout( daemonIdleTimeout );
             try {
                 daemonService.start();
             } catch ( java.io.IOException e ) {
@@ -606,11 +672,13 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     }
 
     /**
-     * Closes and disposes all open filesystems and stops the Git and SSH daemons if they are running. This filesystem
-     * provider can be reactivated by attempting to open a new filesystem, by creating a new filesystem, or by calling
+     * Stops repository maintenance, closes and disposes all open filesystems and stops the Git and SSH daemons if they
+     * are running. This filesystem provider can be reactivated by attempting to open a new filesystem, by creating a new filesystem, or by calling
      * {@link #rescanForExistingRepositories()}.
      */
     public void shutdown() {
+        // running maintenance has to be over before the repositories get closed
+        maintenanceScheduler.shutdown();
         for ( JGitFileSystem fs : getOpenFileSystems() ) {
             fs.close();
         }
@@ -618,6 +686,13 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         forceStopDaemon();
     }
 
+    /**
+     * Returns the scheduler that runs GC and other maintenance tasks of the managed git repositories.
+     */
+    public JGitMaintenanceScheduler getMaintenanceScheduler() {
+        return maintenanceScheduler;
+    }
+
     /**
      * Returns the directory that contains all the git repositories managed by this file system provider.
      */
@@ -759,7 +834,11 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                 final Map<String, String> params = getQueryParams( uri );
                 try {
                     fileSystem.lock();
-                    syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), hasForceFlag( uri ) );
+                    if ( params.containsKey( "refs" ) ) {
+                        syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), parseRefs( params.get( "refs" ) ) );
+                    } else {
+                        syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), hasForceFlag( uri ) );
+                    }
                 } finally {
                     fileSystem.unlock();
                 }
@@ -822,21 +901,34 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             throw new NotDirectoryException( path.toString() );
         }
 
-        try {
-            final File file = File.createTempFile( "gitz", "woot" );
-            return new FilterOutputStream( new FileOutputStream( file ) ) {
-                @Override
-                public void close() throws java.io.IOException {
-                    super.close();
+        final ContentBuffer content = new ContentBuffer( spillThreshold );
+        return new FilterOutputStream( content.newOutputStream() ) {
+            private boolean closed = false;
+
+            @Override
+            public void write( final byte[] b,
+                               final int off,
+                               final int len ) throws java.io.IOException {
+                out.write( b, off, len );
+            }
+
+            @Override
+            public void close() throws java.io.IOException {
+                if ( closed ) {
+                    return;
+                }
+                closed = true;
+                super.close();
 
-                    commit( gPath, buildCommitInfo( "{" + toPathImpl( path ).getPath() + "}", Arrays.asList( options ) ), new DefaultCommitContent( new HashMap<String, File>() {{
-                        put( gPath.getPath(), file );
+                try {
+                    commit( gPath, buildCommitInfo( "{" + toPathImpl( path ).getPath() + "}", Arrays.asList( options ) ), new BufferedCommitContent( new HashMap<String, ContentBuffer>() {{
+                        put( gPath.getPath(), content );
                     }} ) );
+                } finally {
+                    content.dispose();
                 }
-            };
-        } catch ( java.io.IOException e ) {
-            throw new IOException( "Could not create file or output stream.", e );
-        }
+            }
+        };
     }
 
     private CommitInfo buildCommitInfo( final String defaultMessage,
@@ -927,31 +1019,40 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                                                        final Set<? extends OpenOption> options,
                                                        final JGitPathImpl gPath,
                                                        final FileAttribute<?>[] attrs ) throws java.io.IOException {
-        final File file = File.createTempFile( "gitz", "woot" );
+        final ContentBuffer content = new ContentBuffer( spillThreshold );
 
-        return new SeekableByteChannelFileBasedImpl( new RandomAccessFile( file, "rw" ).getChannel() ) {
+        return new ContentBufferByteChannel( content ) {
             @Override
             public void close() throws java.io.IOException {
+                if ( !isOpen() ) {
+                    return;
+                }
                 super.close();
 
-                File tempDot = null;
+                final ContentBuffer dotContent;
                 final boolean hasDotContent;
                 if ( options != null && options.contains( new DotFileOption() ) ) {
                     deleteIfExists( dot( path ), extractCommentedOption( options ) );
-                    tempDot = File.createTempFile( "meta", "dot" );
-                    hasDotContent = buildDotFile( path, new FileOutputStream( tempDot ), attrs );
+                    dotContent = new ContentBuffer( spillThreshold );
+                    hasDotContent = buildDotFile( path, dotContent.newOutputStream(), attrs );
                 } else {
+                    dotContent = null;
                     hasDotContent = false;
                 }
 
-                final File dotfile = tempDot;
-
-                commit( gPath, buildCommitInfo( "{" + toPathImpl( path ).getPath() + "}", options ), new DefaultCommitContent( new HashMap<String, File>() {{
-                    put( gPath.getPath(), file );
-                    if ( hasDotContent ) {
-                        put( toPathImpl( dot( gPath ) ).getPath(), dotfile );
+                try {
+                    commit( gPath, buildCommitInfo( "{" + toPathImpl( path ).getPath() + "}", options ), new BufferedCommitContent( new HashMap<String, ContentBuffer>() {{
+                        put( gPath.getPath(), content );
+                        if ( hasDotContent ) {
+                            put( toPathImpl( dot( gPath ) ).getPath(), dotContent );
+                        }
+                    }} ) );
+                } finally {
+                    content.dispose();
+                    if ( dotContent != null ) {
+                        dotContent.dispose();
                     }
-                }} ) );
+                }
             }
 
         };
@@ -977,20 +1078,9 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
     @Override
     public DirectoryStream<Path> newDirectoryStream( final Path path,
-                                                     final DirectoryStream.Filter<Path> pfilter )
+                                                     final DirectoryStream.Filter<Path> filter )
             throws NotDirectoryException, IOException, SecurityException {
         checkNotNull( "path", path );
-        final DirectoryStream.Filter<Path> filter;
-        if ( pfilter == null ) {
-            filter = new DirectoryStream.Filter<Path>() {
-                @Override
-                public boolean accept( final Path entry ) throws IOException {
-                    return true;
-                }
-            };
-        } else {
-            filter = pfilter;
-        }
 
         final JGitPathImpl gPath = toPathImpl( path );
 
@@ -1000,83 +1090,77 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
             throw new NotDirectoryException( path.toString() );
         }
 
-        final List<JGitPathInfo> pathContent = listPathContent( gPath.getFileSystem().gitRepo(), gPath.getRefTree(), gPath.getPath() );
-
-        return new DirectoryStream<Path>() {
-            boolean isClosed = false;
-
-            @Override
-            public void close() throws IOException {
-                if ( isClosed ) {
-                    throw new IOException( "This stream is closed." );
-                }
-                isClosed = true;
-            }
+        final byte[] tree = readTree( gPath.getFileSystem().gitRepo(), gPath.getRefTree(), gPath.getPath() );
 
-            @Override
-            public Iterator<Path> iterator() {
-                if ( isClosed ) {
-                    throw new IOException( "This stream is closed." );
-                }
-                return new Iterator<Path>() {
-                    private int i = -1;
-                    private Path nextEntry = null;
-                    public boolean atEof = false;
+        return new JGitDirectoryStream( gPath, tree != null ? tree : new byte[ 0 ], filter );
+    }
 
-                    @Override
-                    public boolean hasNext() {
-                        if ( nextEntry == null && !atEof ) {
-                            nextEntry = readNextEntry();
-                        }
-                        return nextEntry != null;
-                    }
+    /**
+     * Walks the whole tree with a single git tree walk instead of listing and resolving every directory and file
+     * on its own.
+     */
+    @Override
+    public boolean walkFileTree( final Path start,
+                                 final int maxDepth,
+                                 final FileVisitor<? super Path> visitor ) throws IOException {
+        checkNotNull( "start", start );
+        checkNotNull( "visitor", visitor );
 
-                    @Override
-                    public Path next() {
-                        final Path result;
-                        if ( nextEntry == null && !atEof ) {
-                            result = readNextEntry();
-                        } else {
-                            result = nextEntry;
-                            nextEntry = null;
-                        }
-                        if ( result == null ) {
-                            throw new NoSuchElementException();
-                        }
-                        return result;
-                    }
+        if ( !( start instanceof JGitPathImpl ) ) {
+            return false;
+        }
 
-                    private Path readNextEntry() {
-                        if ( atEof ) {
-                            return null;
-                        }
+        new JGitFileTreeWalker( visitor, maxDepth ).walk( (JGitPathImpl) start );
+        return true;
+    }
 
-                        Path result = null;
-                        while ( true ) {
-                            i++;
-                            if ( i >= pathContent.size() ) {
-                                atEof = true;
-                                break;
-                            }
+    /**
+     * Applies the whole set with a single commit, built on one in-memory index of the branch head. All the paths
+     * must belong to the same file system and branch.
+     */
+    @Override
+    public void commit( final ChangeSet changes,
+                        final Option... options ) throws IllegalArgumentException, IOException {
+        checkNotNull( "changes", changes );
+        if ( changes.isEmpty() ) {
+            return;
+        }
 
-                            final JGitPathInfo content = pathContent.get( i );
-                            final Path path = JGitPathImpl.create( gPath.getFileSystem(), "/" + content.getPath(), gPath.getHost(), content.getObjectId(), gPath.isRealPath() );
-                            if ( filter.accept( path ) ) {
-                                result = path;
-                                break;
-                            }
-                        }
+        final JGitPathImpl first = toPathImpl( changes.getChanges().get( 0 ).getPath() );
+        final ChangeSetCommitContent content = new ChangeSetCommitContent();
+        for ( final ChangeSet.Change change : changes.getChanges() ) {
+            final JGitPathImpl gPath = toChangedPath( first, change.getPath() );
+            String target = null;
+            if ( change.getTarget() != null ) {
+                final JGitPathImpl gTarget = toChangedPath( first, change.getTarget() );
+                final String source = fixPath( gPath.getPath() );
+                if ( fixPath( gTarget.getPath() ).equals( source ) || fixPath( gTarget.getPath() ).startsWith( source + "/" ) ) {
+                    throw new IllegalArgumentException( "Can't move or copy '" + gPath.getPath() + "' into itself." );
+                }
+                target = gTarget.getPath();
+            }
+            content.add( change.getType(), gPath.getPath(), target, change.getContent() );
+        }
 
-                        return result;
-                    }
+        final String defaultMessage;
+        if ( changes.size() == 1 ) {
+            defaultMessage = "{" + first.getPath() + "}";
+        } else {
+            defaultMessage = "{" + first.getPath() + "} and " + ( changes.size() - 1 ) + " more changes";
+        }
+        commit( first, buildCommitInfo( defaultMessage, Arrays.asList( options ) ), content );
+    }
 
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
-                    }
-                };
-            }
-        };
+    private JGitPathImpl toChangedPath( final JGitPathImpl first,
+                                        final Path path ) {
+        final JGitPathImpl gPath = toPathImpl( path );
+        if ( !gPath.getFileSystem().equals( first.getFileSystem() ) || !gPath.getRefTree().equals( first.getRefTree() ) ) {
+            throw new IllegalArgumentException( "All the changes of a set must belong to the same file system and branch." );
+        }
+        if ( isRoot( gPath ) ) {
+            throw new IllegalArgumentException( "The root of a file system can't be changed by a change set." );
+        }
+        return gPath;
     }
 
     @Override
@@ -1808,7 +1892,7 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
 
             if ( isOriginalStateBatch && !fileSystem.isOnBatch() ) {
                 fileSystem.setBatchCommitInfo( null );
-                notifyAllDiffs();
+                notifyAllDiffs( fileSystem );
             }
             fileSystem.setHadCommitOnBatchState( false );
             return;
@@ -1887,6 +1971,18 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
     }
 
     //by spec, it should be a list of pairs, but here we're just uisng a map.
+    /**
+     * Parses the refs of a sync request, encoded as "name:id" pairs joined by ':' (a char git forbids in ref names).
+     */
+    private static Map<String, String> parseRefs( final String value ) {
+        final Map<String, String> result = new HashMap<String, String>();
+        final String[] parts = value.split( ":" );
+        for ( int i = 0; i + 1 < parts.length; i += 2 ) {
+            result.put( parts[ i ], parts[ i + 1 ] );
+        }
+        return result;
+    }
+
     private static Map<String, String> getQueryParams( final URI uri ) {
         final String[] params = uri.getQuery().split( "&" );
         return new HashMap<String, String>( params.length ) {{
@@ -1972,92 +2068,108 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
         final JGitFileSystem fileSystem = path.getFileSystem();
         fileSystem.lock();
 
-        final Git git = fileSystem.gitRepo();
-        final String branchName = path.getRefTree();
-        final boolean batchState = fileSystem.isOnBatch();
-        final boolean amend = batchState && fileSystem.isHadCommitOnBatchState( path.getRoot() );
+        try {
+            final Git git = fileSystem.gitRepo();
+            final String branchName = path.getRefTree();
+            final boolean batchState = fileSystem.isOnBatch();
+            final boolean amend = batchState && fileSystem.isHadCommitOnBatchState( path.getRoot() );
 
-        final ObjectId oldHead = JGitUtil.getTreeRefObjectId( path.getFileSystem().gitRepo().getRepository(), branchName );
+            final ObjectId oldHead = JGitUtil.getTreeRefObjectId( path.getFileSystem().gitRepo().getRepository(), branchName );
 
-        final boolean hasCommit;
-        if ( batchState && fileSystem.getBatchCommitInfo() != null ) {
-            hasCommit = JGitUtil.commit( git, branchName, fileSystem.getBatchCommitInfo(), amend, commitContent );
-        } else {
-            hasCommit = JGitUtil.commit( git, branchName, commitInfo, amend, commitContent );
-        }
+            final boolean hasCommit;
+            if ( batchState && fileSystem.getBatchCommitInfo() != null ) {
+                hasCommit = JGitUtil.commit( git, branchName, fileSystem.getBatchCommitInfo(), amend, commitContent );
+            } else {
+                hasCommit = JGitUtil.commit( git, branchName, commitInfo, amend, commitContent );
+            }
 
-        if ( !batchState ) {
-            if ( hasCommit ) {
-                int value = fileSystem.incrementAndGetCommitCount();
-                if ( value >= commitLimit ) {
-                    JGitUtil.gc( git );
-                    fileSystem.resetCommitCount();
+            if ( !batchState ) {
+                if ( hasCommit ) {
+                    int value = fileSystem.incrementAndGetCommitCount();
+                    if ( value >= commitLimit ) {
+                        maintenanceScheduler.schedule( fileSystem, JGitMaintenanceScheduler.Task.GC );
+                        fileSystem.resetCommitCount();
+                    }
                 }
-            }
 
-            final ObjectId newHead = JGitUtil.getTreeRefObjectId( path.getFileSystem().gitRepo().getRepository(), branchName );
+                final ObjectId newHead = JGitUtil.getTreeRefObjectId( path.getFileSystem().gitRepo().getRepository(), branchName );
 
-            postCommitHook( git.getRepository() );
+                if ( hasCommit ) {
+                    updateHistoryIndex( fileSystem, branchName );
+                }
 
-            notifyDiffs( path.getFileSystem(), branchName, commitInfo.getSessionId(), commitInfo.getName(), commitInfo.getMessage(), oldHead, newHead );
-        } else {
-            synchronized ( oldHeadsOfPendingDiffsLock ) {
-                if ( !oldHeadsOfPendingDiffs.containsKey( path.getFileSystem() ) ||
-                        !oldHeadsOfPendingDiffs.get( path.getFileSystem() ).containsKey( branchName ) ) {
+                postCommitHook( git.getRepository() );
 
-                    if ( !oldHeadsOfPendingDiffs.containsKey( path.getFileSystem() ) ) {
-                        oldHeadsOfPendingDiffs.put( path.getFileSystem(), new ConcurrentHashMap<String, NotificationModel>() );
-                    }
+                notifyDiffs( path.getFileSystem(), branchName, commitInfo.getSessionId(), commitInfo.getName(), commitInfo.getMessage(), oldHead, newHead );
+            } else {
+                synchronized ( oldHeadsOfPendingDiffsLock ) {
+                    if ( !oldHeadsOfPendingDiffs.containsKey( path.getFileSystem() ) ||
+                            !oldHeadsOfPendingDiffs.get( path.getFileSystem() ).containsKey( branchName ) ) {
 
-                    if ( fileSystem.getBatchCommitInfo() != null ) {
-                        oldHeadsOfPendingDiffs.get( path.getFileSystem() ).put( branchName, new NotificationModel( oldHead, fileSystem.getBatchCommitInfo().getSessionId(), fileSystem.getBatchCommitInfo().getName(), fileSystem.getBatchCommitInfo().getMessage() ) );
+                        if ( !oldHeadsOfPendingDiffs.containsKey( path.getFileSystem() ) ) {
+                            oldHeadsOfPendingDiffs.put( path.getFileSystem(), new ConcurrentHashMap<String, NotificationModel>() );
+                        }
 
-                    } else {
-                        oldHeadsOfPendingDiffs.get( path.getFileSystem() ).put( branchName, new NotificationModel( oldHead, commitInfo.getSessionId(), commitInfo.getName(), commitInfo.getMessage() ) );
+                        if ( fileSystem.getBatchCommitInfo() != null ) {
+                            oldHeadsOfPendingDiffs.get( path.getFileSystem() ).put( branchName, new NotificationModel( oldHead, fileSystem.getBatchCommitInfo().getSessionId(), fileSystem.getBatchCommitInfo().getName(), fileSystem.getBatchCommitInfo().getMessage() ) );
+
+                        } else {
+                            oldHeadsOfPendingDiffs.get( path.getFileSystem() ).put( branchName, new NotificationModel( oldHead, commitInfo.getSessionId(), commitInfo.getName(), commitInfo.getMessage() ) );
+                        }
                     }
                 }
             }
-        }
 
-        if ( path.getFileSystem().isOnBatch() && !fileSystem.isHadCommitOnBatchState( path.getRoot() ) ) {
-            fileSystem.setHadCommitOnBatchState( path.getRoot(), hasCommit );
+            if ( path.getFileSystem().isOnBatch() && !fileSystem.isHadCommitOnBatchState( path.getRoot() ) ) {
+                fileSystem.setHadCommitOnBatchState( path.getRoot(), hasCommit );
+            }
+        } finally {
+            fileSystem.unlock();
         }
+    }
 
-        fileSystem.unlock();
+    private void updateHistoryIndex( final JGitFileSystem fileSystem,
+                                     final String branchName ) {
+        try {
+            fileSystem.getHistoryIndex().update( branchName );
+        } catch ( final Exception ex ) {
+            LOG.error( String.format( "Couldn't update history index for repository `%s` branch `%s`.", fileSystem.toString(), branchName ), ex );
+        }
     }
 
     private void postCommitHook( final Repository repository ) {
         detectedFS.runHookIfPresent( repository, "post-commit", new String[ 0 ] );
     }
 
-    private void notifyAllDiffs() {
+    private void notifyAllDiffs( final JGitFileSystem fileSystem ) {
         synchronized ( oldHeadsOfPendingDiffsLock ) {
-            for ( Map.Entry<JGitFileSystem, Map<String, NotificationModel>> jGitFileSystemMapEntry : oldHeadsOfPendingDiffs.entrySet() ) {
-                for ( Map.Entry<String, NotificationModel> branchNameNotificationModelEntry : jGitFileSystemMapEntry.getValue().entrySet() ) {
-                    final ObjectId newHead = JGitUtil.getTreeRefObjectId( jGitFileSystemMapEntry.getKey().gitRepo().getRepository(), branchNameNotificationModelEntry.getKey() );
-                    try {
-                        notifyDiffs( jGitFileSystemMapEntry.getKey(),
-                                     branchNameNotificationModelEntry.getKey(),
-                                     branchNameNotificationModelEntry.getValue().getSessionId(),
-                                     branchNameNotificationModelEntry.getValue().getUserName(),
-                                     branchNameNotificationModelEntry.getValue().getMessage(),
-                                     branchNameNotificationModelEntry.getValue().getOriginalHead(),
-                                     newHead );
-                    } catch ( final Exception ex ) {
-                        LOG.error( String.format( "Couldn't produce diff notification for repository `%s` branch `%s`.", jGitFileSystemMapEntry.getKey().toString(), branchNameNotificationModelEntry.getKey() ), ex );
-                    }
-                }
+            // other filesystems may still be in a batch of their own, only flush this one
+            final Map<String, NotificationModel> pendingDiffs = oldHeadsOfPendingDiffs.remove( fileSystem );
+            if ( pendingDiffs == null ) {
+                return;
             }
 
-            for ( JGitFileSystem fileSystem : oldHeadsOfPendingDiffs.keySet() ) {
-                int value = fileSystem.incrementAndGetCommitCount();
-                if ( value >= commitLimit ) {
-                    JGitUtil.gc( fileSystem.gitRepo() );
-                    fileSystem.resetCommitCount();
+            for ( Map.Entry<String, NotificationModel> branchNameNotificationModelEntry : pendingDiffs.entrySet() ) {
+                final ObjectId newHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), branchNameNotificationModelEntry.getKey() );
+                updateHistoryIndex( fileSystem, branchNameNotificationModelEntry.getKey() );
+                try {
+                    notifyDiffs( fileSystem,
+                                 branchNameNotificationModelEntry.getKey(),
+                                 branchNameNotificationModelEntry.getValue().getSessionId(),
+                                 branchNameNotificationModelEntry.getValue().getUserName(),
+                                 branchNameNotificationModelEntry.getValue().getMessage(),
+                                 branchNameNotificationModelEntry.getValue().getOriginalHead(),
+                                 newHead );
+                } catch ( final Exception ex ) {
+                    LOG.error( String.format( "Couldn't produce diff notification for repository `%s` branch `%s`.", fileSystem.toString(), branchNameNotificationModelEntry.getKey() ), ex );
                 }
             }
 
-            oldHeadsOfPendingDiffs.clear();
+            int value = fileSystem.incrementAndGetCommitCount();
+            if ( value >= commitLimit ) {
+                maintenanceScheduler.schedule( fileSystem, JGitMaintenanceScheduler.Task.GC );
+                fileSystem.resetCommitCount();
+            }
         }
     }
 
@@ -2068,53 +2180,61 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                       final String message,
                       final ObjectId oldHead,
                       final ObjectId newHead ) {
+        final List<WatchEvent<?>> events = buildEvents( fs, _tree, sessionId, userName, message, oldHead, newHead );
+        if ( !events.isEmpty() ) {
+            fs.publishEvents( JGitPathImpl.createRoot( fs, "/", toHost( fs, _tree ), false ), events );
+        }
+    }
 
-        final String tree;
-        if ( _tree.startsWith( "refs/" ) ) {
-            tree = _tree.substring( _tree.lastIndexOf( "/" ) + 1 );
+    /**
+     * Builds the watch events of the changes between both trees. With no new tree every file of the old one is
+     * reported as deleted.
+     */
+    List<WatchEvent<?>> buildEvents( final JGitFileSystem fs,
+                                     final String _tree,
+                                     final String sessionId,
+                                     final String userName,
+                                     final String message,
+                                     final ObjectId oldHead,
+                                     final ObjectId newHead ) {
+        final String host = toHost( fs, _tree );
+        final boolean removed = newHead == null && oldHead != null;
+
+        final List<DiffEntry> diff;
+        if ( removed ) {
+            diff = JGitUtil.getDiff( fs.gitRepo().getRepository(), null, oldHead );
         } else {
-            tree = _tree;
+            diff = JGitUtil.getDiff( fs.gitRepo().getRepository(), oldHead, newHead );
         }
-
-        final String host = tree + "@" + fs.getName();
-        final Path root = JGitPathImpl.createRoot( fs, "/", host, false );
-
-        final List<DiffEntry> diff = JGitUtil.getDiff( fs.gitRepo().getRepository(), oldHead, newHead );
         final List<WatchEvent<?>> events = new ArrayList<WatchEvent<?>>( diff.size() );
 
         for ( final DiffEntry diffEntry : diff ) {
             final Path oldPath;
-            if ( !diffEntry.getOldPath().equals( DiffEntry.DEV_NULL ) ) {
-                oldPath = JGitPathImpl.create( fs, "/" + diffEntry.getOldPath(), host, null, false );
-            } else {
-                oldPath = null;
-            }
-
             final Path newPath;
-            if ( !diffEntry.getNewPath().equals( DiffEntry.DEV_NULL ) ) {
-                JGitPathInfo pathInfo = resolvePath( fs.gitRepo(), tree, diffEntry.getNewPath() );
-                newPath = JGitPathImpl.create( fs, "/" + pathInfo.getPath(), host, pathInfo.getObjectId(), false );
-            } else {
+            if ( removed ) {
+                oldPath = JGitPathImpl.create( fs, "/" + diffEntry.getNewPath(), host, null, false );
                 newPath = null;
+            } else {
+                if ( !diffEntry.getOldPath().equals( DiffEntry.DEV_NULL ) ) {
+                    oldPath = JGitPathImpl.create( fs, "/" + diffEntry.getOldPath(), host, null, false );
+                } else {
+                    oldPath = null;
+                }
+
+                if ( !diffEntry.getNewPath().equals( DiffEntry.DEV_NULL ) ) {
+                    // the diff walk already carries the new blob id, no need to resolve the path again
+                    final AbbreviatedObjectId newId = diffEntry.getNewId();
+                    newPath = JGitPathImpl.create( fs, "/" + diffEntry.getNewPath(), host, newId != null && newId.isComplete() ? newId.toObjectId() : null, false );
+                } else {
+                    newPath = null;
+                }
             }
+            final WatchEvent.Kind<?> kind = removed ? StandardWatchEventKind.ENTRY_DELETE : toKind( diffEntry.getChangeType() );
 
             events.add( new WatchEvent() {
                 @Override
                 public Kind kind() {
-                    DiffEntry.ChangeType changeType = diffEntry.getChangeType();
-                    switch ( changeType ) {
-                        case ADD:
-                        case COPY:
-                            return StandardWatchEventKind.ENTRY_CREATE;
-                        case DELETE:
-                            return StandardWatchEventKind.ENTRY_DELETE;
-                        case MODIFY:
-                            return StandardWatchEventKind.ENTRY_MODIFY;
-                        case RENAME:
-                            return StandardWatchEventKind.ENTRY_RENAME;
-                        default:
-                            throw new RuntimeException( "Unsupported change type: " + changeType );
-                    }
+                    return kind;
                 }
 
                 @Override
@@ -2161,13 +2281,38 @@ public class JGitFileSystemProvider implements SecuredFileSystemProvider,
                             ", sessionId='" + sessionId + '\'' +
                             ", userName='" + userName + '\'' +
                             ", message='" + message + '\'' +
-                            ", changeType=" + diffEntry.getChangeType() +
+                            ", changeType=" + ( removed ? DiffEntry.ChangeType.DELETE : diffEntry.getChangeType() ) +
                             '}';
                 }
             } );
         }
-        if ( !events.isEmpty() ) {
-            fs.publishEvents( root, events );
+        return events;
+    }
+
+    private static String toHost( final JGitFileSystem fs,
+                                  final String _tree ) {
+        final String tree;
+        if ( _tree.startsWith( "refs/" ) ) {
+            tree = _tree.substring( _tree.lastIndexOf( "/" ) + 1 );
+        } else {
+            tree = _tree;
+        }
+        return tree + "@" + fs.getName();
+    }
+
+    private static WatchEvent.Kind<?> toKind( final DiffEntry.ChangeType changeType ) {
+        switch ( changeType ) {
+            case ADD:
+            case COPY:
+                return StandardWatchEventKind.ENTRY_CREATE;
+            case DELETE:
+                return StandardWatchEventKind.ENTRY_DELETE;
+            case MODIFY:
+                return StandardWatchEventKind.ENTRY_MODIFY;
+            case RENAME:
+                return StandardWatchEventKind.ENTRY_RENAME;
+            default:
+                throw new RuntimeException( "Unsupported change type: " + changeType );
         }
     }
 
@@ -24,17 +24,27 @@ import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.Deflater;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jgit.errors.RepositoryNotFoundException;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.PacketLineOut;
 import org.eclipse.jgit.transport.ServiceMayNotContinueException;
 import org.eclipse.jgit.transport.UploadPack;
 import org.eclipse.jgit.transport.resolver.RepositoryResolver;
@@ -42,10 +52,14 @@ import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
 import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
 import org.eclipse.jgit.transport.resolver.UploadPackFactory;
 import org.uberfire.commons.async.DescriptiveRunnable;
-import org.uberfire.commons.async.SimpleAsyncExecutorService;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 
 /**
  * Basic daemon for the anonymous <code>git://</code> transport protocol.
+ * <p>
+ * Connections are accepted by a selector on a single thread and served by a bounded pool of worker threads.
+ * Connections that arrive while all the workers are busy wait in a bounded queue; once the queue is full, new
+ * connections are answered with an error and closed right away, so a burst of clients can't exhaust threads.
  */
 public class Daemon {
 
@@ -54,7 +68,11 @@ public class Daemon {
      */
     public static final int DEFAULT_PORT = 9418;
 
-    private static final int BACKLOG = 5;
+    public static final int DEFAULT_WORKER_THREADS = 16;
+
+    public static final int DEFAULT_PENDING_CONNECTIONS = 64;
+
+    private static final int BACKLOG = 50;
 
     private InetSocketAddress myAddress;
 
@@ -64,14 +82,38 @@ public class Daemon {
 
     private int timeout;
 
+    private int idleTimeout;
+
+    private int workerThreads = DEFAULT_WORKER_THREADS;
+
+    private int pendingConnections = DEFAULT_PENDING_CONNECTIONS;
+
     private volatile RepositoryResolver<DaemonClient> repositoryResolver;
 
     private volatile UploadPackFactory<DaemonClient> uploadPackFactory;
 
-    private ServerSocket listenSock = null;
+    private ServerSocketChannel listenChannel = null;
+
+    private Selector selector = null;
+
+    private ThreadPoolExecutor workers = null;
 
     private final Executor acceptThreadPool;
 
+    private final AtomicLong acceptedConnections = new AtomicLong();
+
+    private final AtomicLong rejectedConnections = new AtomicLong();
+
+    private final AtomicLong timedOutConnections = new AtomicLong();
+
+    private final AtomicLong completedConnections = new AtomicLong();
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    final AtomicLong bytesRead = new AtomicLong();
+
+    final AtomicLong bytesWritten = new AtomicLong();
+
     /**
      * Configures a new daemon for the specified network address. The daemon will not attempt to bind to an address or
      * accept connections until a call to {@link #start()}.
@@ -97,10 +139,7 @@ public class Daemon {
                                               ServiceNotAuthorizedException {
                 final UploadPack up = new UploadPack( db );
                 up.setTimeout( getTimeout() );
-
-                final PackConfig config = new PackConfig( db );
-                config.setCompressionLevel( Deflater.BEST_COMPRESSION );
-                up.setPackConfig( config );
+                up.setPackConfig( JGitUtil.newUploadPackConfig( db ) );
 
                 return up;
             }
@@ -117,6 +156,10 @@ public class Daemon {
                                     ServiceNotEnabledException,
                                     ServiceNotAuthorizedException {
                 UploadPack up = uploadPackFactory.create( dc, db );
+                // the socket timeout only covers reads, a client that stops reading the pack must time out too
+                if ( up.getTimeout() <= 0 && 0 < getIdleTimeout() ) {
+                    up.setTimeout( getIdleTimeout() );
+                }
                 InputStream in = dc.getInputStream();
                 OutputStream out = dc.getOutputStream();
                 up.upload( in, out, null );
@@ -167,6 +210,114 @@ public class Daemon {
         timeout = seconds;
     }
 
+    /**
+     * @return timeout (in seconds) of inactivity after which a connected client is dropped; 0 if disabled.
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Set the time a connected client may stay idle, i.e. without sending or reading any data.
+     * Applies from the moment the connection is served until it is closed, unless an IO timeout is set.
+     * @param seconds number of seconds of inactivity before the connection is closed; 0 disables it.
+     */
+    public void setIdleTimeout( final int seconds ) {
+        checkCondition( "idle timeout must not be negative", seconds >= 0 );
+        idleTimeout = seconds;
+    }
+
+    /**
+     * @return maximum number of connections served at the same time.
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Sets the maximum number of connections served at the same time. Takes effect the next time the daemon is
+     * started.
+     * @param threads number of worker threads.
+     */
+    public void setWorkerThreads( final int threads ) {
+        checkCondition( "worker threads must be positive", threads > 0 );
+        workerThreads = threads;
+    }
+
+    /**
+     * @return maximum number of accepted connections waiting for a worker.
+     */
+    public int getPendingConnections() {
+        return pendingConnections;
+    }
+
+    /**
+     * Sets the maximum number of accepted connections waiting for a worker; further connections are rejected.
+     * Takes effect the next time the daemon is started.
+     * @param connections size of the pending connection queue.
+     */
+    public void setPendingConnections( final int connections ) {
+        checkCondition( "pending connections must be positive", connections > 0 );
+        pendingConnections = connections;
+    }
+
+    /**
+     * @return number of connections accepted since this daemon was created, including the rejected ones.
+     */
+    public long getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    /**
+     * @return number of connections closed without being served, because all the workers were busy and the
+     * pending connection queue was full.
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * @return number of connections closed because the client was idle or too slow.
+     */
+    public long getTimedOutConnections() {
+        return timedOutConnections.get();
+    }
+
+    /**
+     * @return number of connections served, whatever their outcome.
+     */
+    public long getCompletedConnections() {
+        return completedConnections.get();
+    }
+
+    /**
+     * @return number of connections being served right now.
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * @return number of accepted connections waiting for a worker right now.
+     */
+    public synchronized int getQueuedConnections() {
+        return workers != null ? workers.getQueue().size() : 0;
+    }
+
+    /**
+     * @return number of bytes received from clients since this daemon was created.
+     */
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * @return number of bytes sent to clients since this daemon was created.
+     */
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
     /**
      * Sets the resolver that locates repositories by name.
      *
@@ -207,12 +358,31 @@ public class Daemon {
         InetAddress listenAddress = myAddress != null ? myAddress.getAddress() : null;
         int listenPort = myAddress != null ? myAddress.getPort() : 0;
 
+        final ServerSocketChannel channel = ServerSocketChannel.open();
+        final Selector acceptSelector;
         try {
-            this.listenSock = new ServerSocket( listenPort, BACKLOG, listenAddress );
+            // as ServerSocket does, so the daemon can be restarted on the same port right away
+            channel.socket().setReuseAddress( true );
+            channel.socket().bind( new InetSocketAddress( listenAddress, listenPort ), BACKLOG );
+            channel.configureBlocking( false );
+            acceptSelector = Selector.open();
+            channel.register( acceptSelector, SelectionKey.OP_ACCEPT );
         } catch ( IOException e ) {
+            channel.close();
             throw new IOException( "Failed to open server socket for " + listenAddress + ":" + listenPort, e );
         }
-        myAddress = (InetSocketAddress) listenSock.getLocalSocketAddress();
+        this.listenChannel = channel;
+        this.selector = acceptSelector;
+        myAddress = (InetSocketAddress) channel.socket().getLocalSocketAddress();
+
+        final ThreadPoolExecutor workerPool = new ThreadPoolExecutor( workerThreads,
+                                                                      workerThreads,
+                                                                      60L,
+                                                                      TimeUnit.SECONDS,
+                                                                      new ArrayBlockingQueue<Runnable>( pendingConnections ),
+                                                                      new WorkerThreadFactory( myAddress.getPort() ) );
+        workerPool.allowCoreThreadTimeOut( true );
+        this.workers = workerPool;
 
         run.set( true );
         acceptThreadPool.execute( new DescriptiveRunnable() {
@@ -225,10 +395,12 @@ public class Daemon {
             public void run() {
                 while ( isRunning() && !Thread.currentThread().isInterrupted() ) {
                     try {
-                        listenSock.setSoTimeout( 5000 );
-                        startClient( listenSock.accept() );
-                    } catch ( InterruptedIOException e ) {
-                        // Test again to see if we should keep accepting.
+                        if ( acceptSelector.select( 5000 ) > 0 ) {
+                            acceptSelector.selectedKeys().clear();
+                            acceptPending( channel, workerPool );
+                        }
+                    } catch ( ClosedSelectorException e ) {
+                        break;
                     } catch ( IOException e ) {
                         break;
                     }
@@ -253,13 +425,39 @@ public class Daemon {
     public synchronized void stop() {
         if ( run.getAndSet( false ) ) {
             try {
-                listenSock.close();
+                selector.close();
+            } catch ( IOException e ) {
+            }
+            try {
+                listenChannel.close();
+            } catch ( IOException e ) {
+            }
+            // connections already accepted are still served
+            workers.shutdown();
+        }
+    }
+
+    private void acceptPending( final ServerSocketChannel channel,
+                                final ThreadPoolExecutor workerPool ) throws IOException {
+        SocketChannel client;
+        while ( ( client = channel.accept() ) != null ) {
+            acceptedConnections.incrementAndGet();
+            final Socket s = client.socket();
+            try {
+                // the git protocol is served through blocking streams
+                client.configureBlocking( true );
+                startClient( s, workerPool );
+            } catch ( RejectedExecutionException e ) {
+                rejectedConnections.incrementAndGet();
+                reject( s );
             } catch ( IOException e ) {
+                closeQuietly( s );
             }
         }
     }
 
-    private void startClient( final Socket s ) {
+    private void startClient( final Socket s,
+                              final Executor workerPool ) {
         final DaemonClient dc = new DaemonClient( this );
 
         final SocketAddress peer = s.getRemoteSocketAddress();
@@ -267,7 +465,7 @@ public class Daemon {
             dc.setRemoteAddress( ( (InetSocketAddress) peer ).getAddress() );
         }
 
-        SimpleAsyncExecutorService.getUnmanagedInstance().execute( new DescriptiveRunnable() {
+        workerPool.execute( new DescriptiveRunnable() {
             @Override
             public String getDescription() {
                 return "Git-Daemon-Client " + peer.toString();
@@ -275,30 +473,47 @@ public class Daemon {
 
             @Override
             public void run() {
+                activeConnections.incrementAndGet();
                 try {
                     dc.execute( s );
                 } catch ( ServiceNotEnabledException e ) {
                     // Ignored. Client cannot use this repository.
                 } catch ( ServiceNotAuthorizedException e ) {
                     // Ignored. Client cannot use this repository.
+                } catch ( InterruptedIOException e ) {
+                    // Client idle or too slow
+                    timedOutConnections.incrementAndGet();
                 } catch ( IOException e ) {
                     // Ignore unexpected IO exceptions from clients
                 } finally {
-                    try {
-                        s.getInputStream().close();
-                    } catch ( IOException e ) {
-                        // Ignore close exceptions
-                    }
-                    try {
-                        s.getOutputStream().close();
-                    } catch ( IOException e ) {
-                        // Ignore close exceptions
-                    }
+                    closeQuietly( s );
+                    activeConnections.decrementAndGet();
+                    completedConnections.incrementAndGet();
                 }
             }
         } );
     }
 
+    private void reject( final Socket s ) {
+        try {
+            final PacketLineOut out = new PacketLineOut( s.getOutputStream() );
+            out.writeString( "ERR too many connections, try again later\n" );
+            out.flush();
+        } catch ( IOException e ) {
+            // Ignore, the client is dropped anyway
+        } finally {
+            closeQuietly( s );
+        }
+    }
+
+    private static void closeQuietly( final Socket s ) {
+        try {
+            s.close();
+        } catch ( IOException e ) {
+            // Ignore close exceptions
+        }
+    }
+
     synchronized DaemonService matchService( final String cmd ) {
         for ( final DaemonService d : services ) {
             if ( d.handles( cmd ) ) {
@@ -338,4 +553,21 @@ public class Daemon {
             return null;
         }
     }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger( 0 );
+        private final int port;
+
+        WorkerThreadFactory( final int port ) {
+            this.port = port;
+        }
+
+        @Override
+        public Thread newThread( final Runnable r ) {
+            final Thread thread = new Thread( r, "Git-Daemon-Worker-" + port + "-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
 }
\ No newline at end of file
@@ -17,11 +17,14 @@
 package org.uberfire.java.nio.fs.jgit.daemon.git;
 
 import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jgit.transport.PacketLineIn;
 import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
@@ -76,11 +79,13 @@ public class DaemonClient {
 
     void execute( final Socket sock ) throws IOException,
             ServiceNotEnabledException, ServiceNotAuthorizedException {
-        rawIn = new BufferedInputStream( sock.getInputStream() );
-        rawOut = new SafeBufferedOutputStream( sock.getOutputStream() );
+        rawIn = new BufferedInputStream( new CountingInputStream( sock.getInputStream(), daemon.bytesRead ) );
+        rawOut = new SafeBufferedOutputStream( new CountingOutputStream( sock.getOutputStream(), daemon.bytesWritten ) );
 
         if ( 0 < daemon.getTimeout() ) {
             sock.setSoTimeout( daemon.getTimeout() * 1000 );
+        } else if ( 0 < daemon.getIdleTimeout() ) {
+            sock.setSoTimeout( daemon.getIdleTimeout() * 1000 );
         }
         String cmd = new PacketLineIn( rawIn ).readStringRaw();
         final int nul = cmd.indexOf( '\0' );
@@ -96,7 +101,66 @@ public class DaemonClient {
         if ( srv == null ) {
             return;
         }
-        sock.setSoTimeout( 0 );
+        if ( 0 >= daemon.getTimeout() ) {
+            sock.setSoTimeout( daemon.getIdleTimeout() * 1000 );
+        }
         srv.execute( this, cmd );
     }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private final AtomicLong count;
+
+        CountingInputStream( final InputStream in,
+                             final AtomicLong count ) {
+            super( in );
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if ( b >= 0 ) {
+                count.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read( final byte[] b,
+                         final int off,
+                         final int len ) throws IOException {
+            final int n = super.read( b, off, len );
+            if ( n > 0 ) {
+                count.addAndGet( n );
+            }
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private final AtomicLong count;
+
+        CountingOutputStream( final OutputStream out,
+                              final AtomicLong count ) {
+            super( out );
+            this.count = count;
+        }
+
+        @Override
+        public void write( final int b ) throws IOException {
+            out.write( b );
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void write( final byte[] b,
+                           final int off,
+                           final int len ) throws IOException {
+            // not through FilterOutputStream, which writes byte by byte
+            out.write( b, off, len );
+            count.addAndGet( len );
+        }
+    }
 }
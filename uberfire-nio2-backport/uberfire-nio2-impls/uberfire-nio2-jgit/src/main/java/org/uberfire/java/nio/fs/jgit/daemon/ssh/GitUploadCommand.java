@@ -19,11 +19,9 @@ package org.uberfire.java.nio.fs.jgit.daemon.ssh;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.zip.Deflater;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.UploadPack;
 import org.uberfire.java.nio.fs.jgit.JGitFileSystem;
 import org.uberfire.java.nio.fs.jgit.JGitFileSystemProvider;
@@ -52,10 +50,7 @@ public class GitUploadCommand extends BaseGitCommand {
                             final OutputStream err,
                             final JGitFileSystem fileSystem ) {
         final UploadPack up = new UploadPack( repository );
-
-        final PackConfig config = new PackConfig( repository );
-        config.setCompressionLevel( Deflater.BEST_COMPRESSION );
-        up.setPackConfig( config );
+        up.setPackConfig( JGitUtil.newUploadPackConfig( repository ) );
 
         try {
             up.upload( in, out, err );
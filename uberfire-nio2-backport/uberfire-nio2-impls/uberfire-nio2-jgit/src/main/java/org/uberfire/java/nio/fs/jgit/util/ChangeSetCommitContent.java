@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.uberfire.java.nio.base.ChangeSet;
+
+/**
+ * Ordered writes, deletes, moves and copies, by git path, applied to HEAD in a single index.
+ */
+public class ChangeSetCommitContent implements CommitContent {
+
+    private final List<Change> changes = new ArrayList<Change>();
+
+    public void add( final ChangeSet.Type type,
+                     final String path,
+                     final String target,
+                     final byte[] content ) {
+        changes.add( new Change( type, path, target, content ) );
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public static class Change {
+
+        private final ChangeSet.Type type;
+        private final String path;
+        private final String target;
+        private final byte[] content;
+
+        Change( final ChangeSet.Type type,
+                final String path,
+                final String target,
+                final byte[] content ) {
+            this.type = type;
+            this.path = path;
+            this.target = target;
+            this.content = content;
+        }
+
+        public ChangeSet.Type getType() {
+            return type;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
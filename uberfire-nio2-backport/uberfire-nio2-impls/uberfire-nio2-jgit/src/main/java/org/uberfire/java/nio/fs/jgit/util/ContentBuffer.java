@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+
+import static org.eclipse.jgit.lib.Constants.*;
+
+/**
+ * Random access content holder used by the write path: content is kept in memory and only spilled to a
+ * temporary file once it grows beyond the configured threshold. On commit the content is inserted straight
+ * into the repository through {@link #insert(ObjectInserter)}.
+ */
+public class ContentBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int threshold;
+
+    private byte[] data = new byte[ 0 ];
+    private long size = 0;
+
+    private File spillFile;
+    private RandomAccessFile spill;
+
+    public ContentBuffer( final int threshold ) {
+        this.threshold = threshold;
+    }
+
+    public synchronized void write( final long position,
+                                    final byte[] b,
+                                    final int off,
+                                    final int len ) throws IOException {
+        final long end = position + len;
+        if ( spill == null && end > threshold ) {
+            spill();
+        }
+
+        if ( spill != null ) {
+            spill.seek( position );
+            spill.write( b, off, len );
+        } else {
+            ensureCapacity( (int) end );
+            System.arraycopy( b, off, data, (int) position, len );
+        }
+        size = Math.max( size, end );
+    }
+
+    public synchronized int read( final long position,
+                                  final byte[] b,
+                                  final int off,
+                                  final int len ) throws IOException {
+        if ( position >= size ) {
+            return -1;
+        }
+        final int n = (int) Math.min( len, size - position );
+        if ( spill != null ) {
+            spill.seek( position );
+            spill.readFully( b, off, n );
+        } else {
+            System.arraycopy( data, (int) position, b, off, n );
+        }
+        return n;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized void truncate( final long newSize ) throws IOException {
+        if ( newSize >= size ) {
+            return;
+        }
+        if ( spill != null ) {
+            spill.setLength( newSize );
+        } else {
+            Arrays.fill( data, (int) newSize, (int) size, (byte) 0 );
+        }
+        size = newSize;
+    }
+
+    public synchronized boolean isSpilled() {
+        return spill != null;
+    }
+
+    /**
+     * Returns a stream that appends to the end of this buffer.
+     */
+    public OutputStream newOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write( final int b ) throws IOException {
+                write( new byte[]{ (byte) b }, 0, 1 );
+            }
+
+            @Override
+            public void write( final byte[] b,
+                               final int off,
+                               final int len ) throws IOException {
+                synchronized ( ContentBuffer.this ) {
+                    ContentBuffer.this.write( size, b, off, len );
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the content as a blob through the given inserter, without flushing it.
+     */
+    public synchronized ObjectId insert( final ObjectInserter inserter ) throws IOException {
+        if ( spill == null ) {
+            return inserter.insert( OBJ_BLOB, data, 0, (int) size );
+        }
+        final InputStream in = new FileInputStream( spillFile );
+        try {
+            return inserter.insert( OBJ_BLOB, size, in );
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Releases memory and removes the spill file, if any.
+     */
+    public synchronized void dispose() {
+        data = new byte[ 0 ];
+        size = 0;
+        if ( spill != null ) {
+            try {
+                spill.close();
+            } catch ( final IOException ignored ) {
+            }
+            spillFile.delete();
+            spill = null;
+            spillFile = null;
+        }
+    }
+
+    private void ensureCapacity( final int capacity ) {
+        if ( capacity > data.length ) {
+            int newCapacity = Math.max( data.length * 2, INITIAL_CAPACITY );
+            while ( newCapacity < capacity ) {
+                newCapacity *= 2;
+            }
+            data = Arrays.copyOf( data, Math.min( newCapacity, Math.max( threshold, capacity ) ) );
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = File.createTempFile( "gitz", "woot" );
+        spill = new RandomAccessFile( spillFile, "rw" );
+        spill.write( data, 0, (int) size );
+        data = new byte[ 0 ];
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.channels.SeekableByteChannel;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * {@link SeekableByteChannel} over a {@link ContentBuffer}.
+ */
+public class ContentBufferByteChannel
+        implements SeekableByteChannel {
+
+    private final ContentBuffer buffer;
+    private long position = 0;
+    private boolean open = true;
+
+    public ContentBufferByteChannel( final ContentBuffer buffer ) {
+        this.buffer = checkNotNull( "buffer", buffer );
+    }
+
+    public ContentBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public long position() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position( final long newPosition ) throws IOException {
+        checkOpen();
+        checkCondition( "position should not be negative", newPosition >= 0 );
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        checkOpen();
+        return buffer.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate( final long size ) throws IOException {
+        checkOpen();
+        try {
+            buffer.truncate( size );
+        } catch ( java.io.IOException e ) {
+            throw new IOException( e );
+        }
+        if ( position > size ) {
+            position = size;
+        }
+        return this;
+    }
+
+    @Override
+    public int read( final ByteBuffer dst ) throws java.io.IOException {
+        checkOpen();
+        final byte[] chunk = new byte[ dst.remaining() ];
+        final int n = buffer.read( position, chunk, 0, chunk.length );
+        if ( n > 0 ) {
+            dst.put( chunk, 0, n );
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int write( final ByteBuffer src ) throws java.io.IOException {
+        checkOpen();
+        final int n = src.remaining();
+        if ( src.hasArray() ) {
+            buffer.write( position, src.array(), src.arrayOffset() + src.position(), n );
+            src.position( src.limit() );
+        } else {
+            final byte[] chunk = new byte[ n ];
+            src.get( chunk );
+            buffer.write( position, chunk, 0, n );
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws java.io.IOException {
+        open = false;
+    }
+
+    private void checkOpen() {
+        if ( !open ) {
+            throw new IOException( new ClosedChannelException() );
+        }
+    }
+}
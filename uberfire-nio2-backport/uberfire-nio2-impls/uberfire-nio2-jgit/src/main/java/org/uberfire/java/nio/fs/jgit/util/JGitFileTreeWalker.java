@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.file.FileVisitResult;
+import org.uberfire.java.nio.file.FileVisitor;
+import org.uberfire.java.nio.file.NoSuchFileException;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
+import org.uberfire.java.nio.fs.jgit.JGitFileSystem;
+import org.uberfire.java.nio.fs.jgit.JGitPathImpl;
+
+import static org.eclipse.jgit.lib.Constants.*;
+import static org.eclipse.jgit.lib.FileMode.*;
+import static org.uberfire.commons.validation.Preconditions.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
+
+/**
+ * Walks a file tree of a {@link JGitFileSystem} with a single {@link TreeWalk}, handing the visitor attributes
+ * built from the walk itself (type, size and blob id) instead of resolving every path again.
+ * <p>
+ * Visiting order and semantics are the ones of the generic walker behind <code>Files.walkFileTree</code>:
+ * directories at max depth are visited as files, and entries that are neither trees nor regular files (links,
+ * submodules) are reported to {@link FileVisitor#visitFileFailed(Object, IOException)}.
+ */
+public class JGitFileTreeWalker {
+
+    private final FileVisitor<? super Path> visitor;
+    private final int maxDepth;
+
+    public JGitFileTreeWalker( final FileVisitor<? super Path> visitor,
+                               final int maxDepth ) {
+        this.visitor = checkNotNull( "visitor", visitor );
+        this.maxDepth = maxDepth;
+    }
+
+    public void walk( final JGitPathImpl start ) throws IOException {
+        checkNotNull( "start", start );
+
+        final JGitFileSystem fs = start.getFileSystem();
+        final String branchName = start.getRefTree();
+        final JGitPathInfo startInfo = resolvePath( fs.gitRepo(), branchName, start.getPath() );
+        if ( startInfo == null || startInfo.getPathType() == null ) {
+            visitor.visitFileFailed( start, new NoSuchFileException( start.toString() ) );
+            return;
+        }
+
+        final ObjectId commitId = resolveObjectId( fs.gitRepo(), branchName );
+        final BasicFileAttributes startAttrs = buildBasicAttributes( fs, branchName, commitId, startInfo );
+
+        if ( maxDepth <= 0 || !PathType.DIRECTORY.equals( startInfo.getPathType() ) ) {
+            visitor.visitFile( start, startAttrs );
+            return;
+        }
+
+        if ( visitor.preVisitDirectory( start, startAttrs ) != FileVisitResult.CONTINUE ) {
+            return;
+        }
+
+        final Repository repo = fs.gitRepo().getRepository();
+        final String gitPath = fixPath( start.getPath() );
+        final String prefix = gitPath.isEmpty() ? "" : gitPath + "/";
+
+        // open directories, the start one first; entries at tree walk depth n are children of the n-th
+        final List<Path> openDirs = new ArrayList<Path>();
+        openDirs.add( start );
+        // depth whose remaining entries should be skipped, after a SKIP_SIBLINGS
+        int skipDepth = -1;
+
+        TreeWalk tw = null;
+        try {
+            final ObjectId tree = startInfo.getObjectId() != null ? startInfo.getObjectId() : repo.resolve( branchName + "^{tree}" );
+            if ( tree != null ) {
+                tw = new TreeWalk( repo );
+                tw.setRecursive( false );
+                tw.reset( tree );
+
+                while ( tw.next() ) {
+                    final int depth = tw.getDepth();
+
+                    while ( openDirs.size() > depth + 1 ) {
+                        final int closedDepth = openDirs.size() - 2;
+                        final FileVisitResult result = visitor.postVisitDirectory( openDirs.remove( openDirs.size() - 1 ), null );
+                        if ( isTerminated( result ) ) {
+                            return;
+                        }
+                        if ( result == FileVisitResult.SKIP_SIBLINGS ) {
+                            skipDepth = closedDepth;
+                        }
+                    }
+                    if ( skipDepth > depth ) {
+                        skipDepth = -1;
+                    }
+                    if ( skipDepth == depth ) {
+                        continue;
+                    }
+
+                    final ObjectId id = tw.getObjectId( 0 );
+                    final FileMode mode = tw.getFileMode( 0 );
+                    final String entryPath = prefix + tw.getPathString();
+                    final Path path = JGitPathImpl.create( fs, "/" + entryPath, start.getHost(), id, start.isRealPath() );
+
+                    final FileVisitResult result;
+                    if ( tw.isSubtree() ) {
+                        final BasicFileAttributes attrs = buildBasicAttributes( fs, branchName, commitId, new JGitPathInfo( id, entryPath, TREE ) );
+                        if ( depth + 1 >= maxDepth ) {
+                            result = visitor.visitFile( path, attrs );
+                        } else {
+                            result = visitor.preVisitDirectory( path, attrs );
+                            if ( result == FileVisitResult.CONTINUE ) {
+                                openDirs.add( path );
+                                tw.enterSubtree();
+                                continue;
+                            }
+                        }
+                    } else if ( mode.equals( REGULAR_FILE ) || mode.equals( EXECUTABLE_FILE ) ) {
+                        final long size = tw.getObjectReader().getObjectSize( id, OBJ_BLOB );
+                        result = visitor.visitFile( path, buildBasicAttributes( fs, branchName, commitId, new JGitPathInfo( id, entryPath, REGULAR_FILE, size ) ) );
+                    } else {
+                        result = visitor.visitFileFailed( path, new NoSuchFileException( path.toString() ) );
+                    }
+
+                    if ( isTerminated( result ) ) {
+                        return;
+                    }
+                    if ( result == FileVisitResult.SKIP_SIBLINGS ) {
+                        skipDepth = depth;
+                    }
+                }
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        } finally {
+            if ( tw != null ) {
+                tw.close();
+            }
+        }
+
+        for ( int i = openDirs.size() - 1; i >= 0; i-- ) {
+            if ( isTerminated( visitor.postVisitDirectory( openDirs.get( i ), null ) ) ) {
+                return;
+            }
+        }
+    }
+
+    private static boolean isTerminated( final FileVisitResult result ) {
+        return result == null || result == FileVisitResult.TERMINATE;
+    }
+}
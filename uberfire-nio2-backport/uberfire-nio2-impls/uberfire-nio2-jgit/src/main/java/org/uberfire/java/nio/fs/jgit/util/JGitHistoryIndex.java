@@ -0,0 +1,576 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Incremental per-branch index that maps every path (files and the directories containing them) to the
+ * commits that touched it, oldest first.
+ * <p>
+ * The index follows the branch head lazily: every lookup (and every non batch commit done through the
+ * provider) appends the commits created since the last indexed tip. If the tip is no longer reachable
+ * from the head (amend, forced push) the unreachable records are dropped first. Records are appended to a
+ * log file inside the repository directory, so a restart only replays the log instead of walking history.
+ */
+public class JGitHistoryIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger( JGitHistoryIndex.class );
+
+    public static final String INDEX_DIR = "uf-history";
+
+    private static final int MAGIC = 0x55464849;
+    private static final int VERSION = 1;
+
+    private final Repository repository;
+    private final File indexDir;
+    private final Map<String, BranchHistory> branches = new ConcurrentHashMap<String, BranchHistory>();
+
+    public JGitHistoryIndex( final Repository repository ) {
+        this.repository = checkNotNull( "repository", repository );
+        this.indexDir = new File( repository.getDirectory(), INDEX_DIR );
+    }
+
+    /**
+     * Brings the index of the given branch up to date with its current head.
+     */
+    public void update( final String branchName ) {
+        final Ref ref = resolveRef( branchName );
+        if ( ref == null ) {
+            return;
+        }
+        getBranchHistory( ref ).update( ref.getObjectId() );
+    }
+
+    /**
+     * Returns the history of the given path on the given branch, or null if the tree reference is not a
+     * branch (e.g. a commit id) and therefore can't be served from the index.
+     */
+    public PathHistory getHistory( final String branchName,
+                                   final String gitPath ) {
+        checkNotNull( "gitPath", gitPath );
+        final Ref ref = resolveRef( branchName );
+        if ( ref == null ) {
+            return null;
+        }
+        final BranchHistory history = getBranchHistory( ref );
+        return history.getHistory( ref.getObjectId(), gitPath );
+    }
+
+    public void clear() {
+        branches.clear();
+    }
+
+    private Ref resolveRef( final String branchName ) {
+        try {
+            final Ref ref = repository.getRefDatabase().getRef( branchName );
+            if ( ref == null || ref.getObjectId() == null ) {
+                return null;
+            }
+            return ref;
+        } catch ( final java.io.IOException e ) {
+            return null;
+        }
+    }
+
+    private BranchHistory getBranchHistory( final Ref ref ) {
+        final String name = ref.getName();
+        BranchHistory history = branches.get( name );
+        if ( history == null ) {
+            synchronized ( branches ) {
+                history = branches.get( name );
+                if ( history == null ) {
+                    history = new BranchHistory( indexFile( name ) );
+                    branches.put( name, history );
+                }
+            }
+        }
+        return history;
+    }
+
+    private File indexFile( final String refName ) {
+        try {
+            return new File( indexDir, URLEncoder.encode( refName, "UTF-8" ) + ".idx" );
+        } catch ( final UnsupportedEncodingException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    public static class PathHistory {
+
+        private final List<ObjectId> commits;
+        private final long firstCommitTime;
+        private final long lastCommitTime;
+
+        PathHistory( final List<ObjectId> commits,
+                     final long firstCommitTime,
+                     final long lastCommitTime ) {
+            this.commits = commits;
+            this.firstCommitTime = firstCommitTime;
+            this.lastCommitTime = lastCommitTime;
+        }
+
+        /**
+         * Commits that touched the path, oldest first.
+         */
+        public List<ObjectId> getCommits() {
+            return commits;
+        }
+
+        public ObjectId getFirstCommit() {
+            return commits.isEmpty() ? null : commits.get( 0 );
+        }
+
+        public ObjectId getLastCommit() {
+            return commits.isEmpty() ? null : commits.get( commits.size() - 1 );
+        }
+
+        /**
+         * Committer time, in milliseconds, of the oldest commit that touched the path.
+         */
+        public long getFirstCommitTime() {
+            return firstCommitTime;
+        }
+
+        /**
+         * Committer time, in milliseconds, of the newest commit that touched the path.
+         */
+        public long getLastCommitTime() {
+            return lastCommitTime;
+        }
+    }
+
+    private class BranchHistory {
+
+        private final File file;
+
+        private final List<ObjectId> commits = new ArrayList<ObjectId>();
+        private final IntArray commitTimes = new IntArray();
+        private final List<Long> recordOffsets = new ArrayList<Long>();
+        // paths (including parent directories) each record was added to, so it can be removed without a scan
+        private final List<String[]> recordPaths = new ArrayList<String[]>();
+        private final Set<ObjectId> indexed = new HashSet<ObjectId>();
+        private final Map<String, IntArray> paths = new HashMap<String, IntArray>();
+
+        private boolean loaded = false;
+        // once a write fails the log no longer matches memory; stop writing so it gets rebuilt on restart
+        private boolean persistent = true;
+
+        BranchHistory( final File file ) {
+            this.file = file;
+        }
+
+        synchronized PathHistory getHistory( final ObjectId head,
+                                             final String gitPath ) {
+            update( head );
+            final IntArray touched = paths.get( gitPath );
+            if ( touched == null || touched.size() == 0 ) {
+                return new PathHistory( Collections.<ObjectId>emptyList(), 0L, 0L );
+            }
+            final ObjectId[] result = new ObjectId[ touched.size() ];
+            for ( int i = 0; i < result.length; i++ ) {
+                result[ i ] = commits.get( touched.get( i ) );
+            }
+            return new PathHistory( Collections.unmodifiableList( Arrays.asList( result ) ),
+                                    commitTimes.get( touched.get( 0 ) ) * 1000L,
+                                    commitTimes.get( touched.get( touched.size() - 1 ) ) * 1000L );
+        }
+
+        synchronized void update( final ObjectId head ) {
+            if ( !loaded ) {
+                load();
+                loaded = true;
+            }
+
+            if ( !commits.isEmpty() && commits.get( commits.size() - 1 ).equals( head ) ) {
+                return;
+            }
+
+            final RevWalk rw = new RevWalk( repository );
+            try {
+                final RevCommit headCommit = rw.parseCommit( head );
+
+                // drop records that are no longer reachable from the head (amended or rewritten commits)
+                while ( !commits.isEmpty() ) {
+                    final RevCommit tip = parseCommitOrNull( rw, commits.get( commits.size() - 1 ) );
+                    if ( tip != null && rw.isMergedInto( tip, headCommit ) ) {
+                        break;
+                    }
+                    removeLastRecord();
+                }
+            } catch ( final java.io.IOException e ) {
+                throw new RuntimeException( e );
+            } finally {
+                rw.dispose();
+            }
+
+            final RevWalk walk = new RevWalk( repository );
+            try {
+                walk.sort( RevSort.TOPO );
+                walk.sort( RevSort.REVERSE, true );
+                walk.markStart( walk.parseCommit( head ) );
+                if ( !commits.isEmpty() ) {
+                    walk.markUninteresting( walk.parseCommit( commits.get( commits.size() - 1 ) ) );
+                }
+
+                final List<Record> newRecords = new ArrayList<Record>();
+                for ( final RevCommit commit : walk ) {
+                    // a rewrite across merges can walk side branches that are still indexed
+                    if ( indexed.contains( commit ) ) {
+                        continue;
+                    }
+                    newRecords.add( new Record( commit.copy(), commit.getCommitTime(), changedPaths( commit ) ) );
+                }
+
+                persist( newRecords );
+                for ( final Record record : newRecords ) {
+                    addRecord( record );
+                }
+            } catch ( final java.io.IOException e ) {
+                throw new RuntimeException( e );
+            } finally {
+                walk.dispose();
+            }
+        }
+
+        private RevCommit parseCommitOrNull( final RevWalk rw,
+                                             final ObjectId id ) {
+            try {
+                return rw.parseCommit( id );
+            } catch ( final Exception e ) {
+                return null;
+            }
+        }
+
+        private List<String> changedPaths( final RevCommit commit ) throws java.io.IOException {
+            final List<String> result = new ArrayList<String>();
+            final TreeWalk tw = new TreeWalk( repository );
+            try {
+                final int parentCount = commit.getParentCount();
+                if ( parentCount == 0 ) {
+                    tw.addTree( new EmptyTreeIterator() );
+                } else {
+                    for ( final RevCommit parent : commit.getParents() ) {
+                        tw.addTree( parent.getTree() );
+                    }
+                }
+                final int nth = tw.addTree( commit.getTree() );
+                tw.setRecursive( true );
+                tw.setFilter( TreeFilter.ANY_DIFF );
+                while ( tw.next() ) {
+                    // same rule as git log: a merge only touches paths that differ from every parent
+                    boolean sameAsParent = false;
+                    for ( int i = 0; i < nth && parentCount > 1; i++ ) {
+                        if ( tw.idEqual( i, nth ) && tw.getRawMode( i ) == tw.getRawMode( nth ) ) {
+                            sameAsParent = true;
+                            break;
+                        }
+                    }
+                    if ( !sameAsParent ) {
+                        result.add( tw.getPathString() );
+                    }
+                }
+            } finally {
+                tw.close();
+            }
+            return result;
+        }
+
+        private void addRecord( final Record record ) {
+            if ( !indexed.add( record.commitId ) ) {
+                return;
+            }
+            final int index = commits.size();
+            commits.add( record.commitId );
+            commitTimes.add( record.commitTime );
+            recordOffsets.add( record.offset );
+
+            final Set<String> touched = new LinkedHashSet<String>();
+            touched.add( "" );
+            for ( final String path : record.paths ) {
+                String current = path;
+                while ( touched.add( current ) ) {
+                    final int sep = current.lastIndexOf( '/' );
+                    if ( sep == -1 ) {
+                        break;
+                    }
+                    current = current.substring( 0, sep );
+                }
+            }
+            for ( final String path : touched ) {
+                IntArray entries = paths.get( path );
+                if ( entries == null ) {
+                    entries = new IntArray();
+                    paths.put( path, entries );
+                }
+                entries.add( index );
+            }
+            recordPaths.add( touched.toArray( new String[ touched.size() ] ) );
+        }
+
+        private void removeLastRecord() {
+            final int index = commits.size() - 1;
+            final long offset = recordOffsets.get( index );
+            indexed.remove( commits.remove( index ) );
+            commitTimes.removeLast();
+            recordOffsets.remove( index );
+
+            for ( final String path : recordPaths.remove( index ) ) {
+                final IntArray entries = paths.get( path );
+                entries.removeLast();
+                if ( entries.size() == 0 ) {
+                    paths.remove( path );
+                }
+            }
+
+            truncate( offset );
+        }
+
+        private void load() {
+            if ( !file.exists() ) {
+                return;
+            }
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+                if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+                    throw new java.io.IOException( "Unknown history index format." );
+                }
+                long offset = 8;
+                final long length = file.length();
+                final byte[] rawId = new byte[ Constants.OBJECT_ID_LENGTH ];
+                while ( offset < length ) {
+                    final Record record;
+                    try {
+                        in.readFully( rawId );
+                        record = new Record( ObjectId.fromRaw( rawId ), in.readInt(), readPaths( in ) );
+                    } catch ( final EOFException eof ) {
+                        // a write was interrupted, drop the torn record so the next append starts on a boundary
+                        LOG.warn( "History index '" + file + "' ends with an incomplete record, truncating it." );
+                        in.close();
+                        in = null;
+                        truncate( offset );
+                        break;
+                    }
+                    record.offset = offset;
+                    offset = offset + record.size();
+                    addRecord( record );
+                }
+            } catch ( final Exception e ) {
+                LOG.warn( "History index '" + file + "' is unreadable, rebuilding it.", e );
+                commits.clear();
+                commitTimes.clear();
+                recordOffsets.clear();
+                recordPaths.clear();
+                indexed.clear();
+                paths.clear();
+                file.delete();
+            } finally {
+                if ( in != null ) {
+                    try {
+                        in.close();
+                    } catch ( final java.io.IOException ignored ) {
+                    }
+                }
+            }
+        }
+
+        private void discardFile() {
+            persistent = false;
+            file.delete();
+        }
+
+        private List<String> readPaths( final DataInputStream in ) throws java.io.IOException {
+            final int size = in.readInt();
+            final List<String> result = new ArrayList<String>( size );
+            for ( int i = 0; i < size; i++ ) {
+                result.add( in.readUTF() );
+            }
+            return result;
+        }
+
+        private void persist( final List<Record> records ) {
+            if ( records.isEmpty() || !persistent ) {
+                return;
+            }
+            DataOutputStream out = null;
+            try {
+                if ( !indexDir.exists() ) {
+                    indexDir.mkdirs();
+                }
+                final boolean isNew = !file.exists() || file.length() == 0;
+                long offset = isNew ? 8 : file.length();
+                out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file, !isNew ) ) );
+                if ( isNew ) {
+                    out.writeInt( MAGIC );
+                    out.writeInt( VERSION );
+                }
+                final byte[] rawId = new byte[ Constants.OBJECT_ID_LENGTH ];
+                for ( final Record record : records ) {
+                    record.offset = offset;
+                    record.commitId.copyRawTo( rawId, 0 );
+                    out.write( rawId );
+                    out.writeInt( record.commitTime );
+                    out.writeInt( record.paths.size() );
+                    for ( final String path : record.paths ) {
+                        out.writeUTF( path );
+                    }
+                    offset = offset + record.size();
+                }
+            } catch ( final java.io.IOException e ) {
+                // the in memory index is still valid, it'll just be rebuilt on next start
+                LOG.error( "Can't persist history index '" + file + "'.", e );
+                discardFile();
+            } finally {
+                if ( out != null ) {
+                    try {
+                        out.close();
+                    } catch ( final java.io.IOException ignored ) {
+                    }
+                }
+            }
+        }
+
+        private void truncate( final long offset ) {
+            if ( !persistent || !file.exists() ) {
+                return;
+            }
+            if ( offset < 0 ) {
+                discardFile();
+                return;
+            }
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile( file, "rw" );
+                raf.setLength( offset );
+            } catch ( final java.io.IOException e ) {
+                LOG.error( "Can't truncate history index '" + file + "'.", e );
+                discardFile();
+            } finally {
+                if ( raf != null ) {
+                    try {
+                        raf.close();
+                    } catch ( final java.io.IOException ignored ) {
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Record {
+
+        private final ObjectId commitId;
+        private final int commitTime;
+        private final List<String> paths;
+        private long offset = -1;
+
+        Record( final ObjectId commitId,
+                final int commitTime,
+                final List<String> paths ) {
+            this.commitId = commitId;
+            this.commitTime = commitTime;
+            this.paths = paths;
+        }
+
+        long size() {
+            long size = Constants.OBJECT_ID_LENGTH + 4 + 4;
+            for ( final String path : paths ) {
+                size += 2 + utfLength( path );
+            }
+            return size;
+        }
+
+        private static int utfLength( final String s ) {
+            int length = 0;
+            for ( int i = 0; i < s.length(); i++ ) {
+                final char c = s.charAt( i );
+                if ( c >= 0x0001 && c <= 0x007F ) {
+                    length++;
+                } else if ( c > 0x07FF ) {
+                    length += 3;
+                } else {
+                    length += 2;
+                }
+            }
+            return length;
+        }
+    }
+
+    private static class IntArray {
+
+        private int[] values = new int[ 4 ];
+        private int size = 0;
+
+        void add( final int value ) {
+            if ( size == values.length ) {
+                values = Arrays.copyOf( values, size * 2 );
+            }
+            values[ size++ ] = value;
+        }
+
+        int get( final int index ) {
+            return values[ index ];
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.uberfire.java.nio.fs.jgit.JGitFileSystem;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Runs repository maintenance (gc, pack-refs, repack) off the caller thread, on a dedicated bounded pool.
+ * <p>
+ * Requests are queued per filesystem: a request for work that is already pending on the same filesystem is
+ * merged into the pending one, and at most one task runs against a given repository at any time.
+ */
+public class JGitMaintenanceScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger( JGitMaintenanceScheduler.class );
+
+    public enum Task {
+        GC, PACK_REFS, REPACK
+    }
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final int threads;
+    private volatile ThreadPoolExecutor executor;
+    private final Map<JGitFileSystem, RepositoryState> states = new ConcurrentHashMap<JGitFileSystem, RepositoryState>();
+
+    private final AtomicInteger queueDepth = new AtomicInteger( 0 );
+    private final AtomicLong mergedRequests = new AtomicLong( 0 );
+    private final AtomicLong executedTasks = new AtomicLong( 0 );
+
+    public JGitMaintenanceScheduler( final int threads ) {
+        checkCondition( "threads should be greater than zero", threads > 0 );
+        this.threads = threads;
+        this.executor = newExecutor( threads );
+    }
+
+    private static ThreadPoolExecutor newExecutor( final int threads ) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor( threads,
+                                                                    threads,
+                                                                    60L,
+                                                                    TimeUnit.SECONDS,
+                                                                    new LinkedBlockingQueue<Runnable>(),
+                                                                    new MaintenanceThreadFactory() );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Queues the given maintenance task for the filesystem. Returns false if the same task was already
+     * pending and the request got merged into it.
+     */
+    public boolean schedule( final JGitFileSystem fs,
+                             final Task task ) {
+        checkNotNull( "fs", fs );
+        checkNotNull( "task", task );
+
+        final RepositoryState state = getState( fs );
+        final boolean submit;
+        synchronized ( state ) {
+            if ( state.removed ) {
+                // cancelled and dropped meanwhile, a new state gets created for the filesystem
+                return schedule( fs, task );
+            }
+            state.cancelled = false;
+            if ( !state.pending.add( task ) ) {
+                mergedRequests.incrementAndGet();
+                return false;
+            }
+            queueDepth.incrementAndGet();
+            submit = !state.running;
+            state.running = true;
+        }
+
+        if ( submit ) {
+            executor().execute( new Runnable() {
+                @Override
+                public void run() {
+                    drain( fs, state );
+                }
+            } );
+        }
+        return true;
+    }
+
+    /**
+     * Drops any pending work for the filesystem; a task already running is left to finish. The filesystem's state is
+     * kept until then, so work scheduled meanwhile waits for the running task instead of starting next to it.
+     */
+    public void cancel( final JGitFileSystem fs ) {
+        final RepositoryState state = states.get( fs );
+        if ( state != null ) {
+            synchronized ( state ) {
+                queueDepth.addAndGet( -state.pending.size() );
+                state.pending.clear();
+                state.cancelled = true;
+                if ( !state.running ) {
+                    remove( fs, state );
+                }
+            }
+        }
+    }
+
+    // called holding the state's lock
+    private void remove( final JGitFileSystem fs,
+                         final RepositoryState state ) {
+        state.removed = true;
+        states.remove( fs );
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getPendingTasks( final JGitFileSystem fs ) {
+        final RepositoryState state = states.get( fs );
+        if ( state == null ) {
+            return 0;
+        }
+        synchronized ( state ) {
+            return state.pending.size();
+        }
+    }
+
+    public long getMergedRequests() {
+        return mergedRequests.get();
+    }
+
+    public long getExecutedTasks() {
+        return executedTasks.get();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the metrics of the last maintenance run for the filesystem, or null if nothing ran yet.
+     */
+    public RunInfo getLastRun( final JGitFileSystem fs ) {
+        final RepositoryState state = states.get( fs );
+        return state == null ? null : state.lastRun;
+    }
+
+    /**
+     * Drops all pending work and stops the pool, waiting for the running tasks to finish; a gc or repack is never
+     * interrupted half way. Scheduling a task afterwards starts a new pool.
+     */
+    public void shutdown() {
+        final ThreadPoolExecutor current;
+        synchronized ( this ) {
+            current = executor;
+            current.shutdown();
+        }
+        for ( final JGitFileSystem fs : states.keySet() ) {
+            cancel( fs );
+        }
+        try {
+            if ( !current.awaitTermination( SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS ) ) {
+                LOG.warn( "GIT maintenance still running after " + SHUTDOWN_TIMEOUT_SECONDS + " seconds, no longer waiting for it." );
+            }
+        } catch ( final InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized ThreadPoolExecutor executor() {
+        if ( executor.isShutdown() ) {
+            executor = newExecutor( threads );
+        }
+        return executor;
+    }
+
+    private RepositoryState getState( final JGitFileSystem fs ) {
+        RepositoryState state = states.get( fs );
+        if ( state == null ) {
+            synchronized ( states ) {
+                state = states.get( fs );
+                if ( state == null ) {
+                    state = new RepositoryState();
+                    states.put( fs, state );
+                }
+            }
+        }
+        return state;
+    }
+
+    private void drain( final JGitFileSystem fs,
+                        final RepositoryState state ) {
+        while ( true ) {
+            final Task task;
+            synchronized ( state ) {
+                if ( state.pending.isEmpty() || Thread.currentThread().isInterrupted() ) {
+                    state.running = false;
+                    if ( state.cancelled ) {
+                        remove( fs, state );
+                    }
+                    return;
+                }
+                task = state.pending.iterator().next();
+                state.pending.remove( task );
+                queueDepth.decrementAndGet();
+            }
+
+            if ( !fs.isOpen() ) {
+                continue;
+            }
+
+            final long start = System.currentTimeMillis();
+            Exception error = null;
+            try {
+                LOG.debug( "Running GIT " + task + " on '" + fs.getName() + "'" );
+                run( fs, task );
+            } catch ( final Exception ex ) {
+                error = ex;
+                LOG.error( "GIT " + task + " on '" + fs.getName() + "' failed.", ex );
+            } finally {
+                executedTasks.incrementAndGet();
+                state.lastRun = new RunInfo( task, start, System.currentTimeMillis() - start, error );
+            }
+        }
+    }
+
+    /**
+     * Runs a single task on the calling maintenance thread.
+     */
+    protected void run( final JGitFileSystem fs,
+                        final Task task ) throws Exception {
+        final Repository repository = fs.gitRepo().getRepository();
+        if ( task == Task.GC || !( repository instanceof FileRepository ) ) {
+            JGitUtil.gc( fs.gitRepo() );
+            return;
+        }
+        final GC gc = new GC( (FileRepository) repository );
+        gc.setPackConfig( JGitUtil.newMaintenancePackConfig( repository ) );
+        if ( task == Task.PACK_REFS ) {
+            gc.packRefs();
+        } else {
+            gc.repack();
+        }
+    }
+
+    private static class RepositoryState {
+
+        private final Set<Task> pending = EnumSet.noneOf( Task.class );
+        private boolean running = false;
+        private boolean cancelled = false;
+        private boolean removed = false;
+        private volatile RunInfo lastRun;
+    }
+
+    public static class RunInfo {
+
+        private final Task task;
+        private final long startTime;
+        private final long duration;
+        private final Exception error;
+
+        RunInfo( final Task task,
+                 final long startTime,
+                 final long duration,
+                 final Exception error ) {
+            this.task = task;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.error = error;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    private static class MaintenanceThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger( 0 );
+
+        @Override
+        public Thread newThread( final Runnable r ) {
+            final Thread thread = new Thread( r, "uberfire-git-maintenance-" + count.incrementAndGet() );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Bounded LRU cache of resolved paths, keyed by repository, tree id and path.
+ * <p>
+ * Tree objects are immutable, so an entry never becomes stale: a new commit produces a new tree id and
+ * lookups against it simply miss. Entries are only dropped to honour the memory budget or when a
+ * repository is disposed. Negative lookups (path not found in the tree) are cached as well.
+ */
+public final class JGitPathCache {
+
+    // rough per entry footprint: key, value, linked map node and the object ids
+    private static final int ENTRY_OVERHEAD = 200;
+
+    private static final JGitUtil.JGitPathInfo NOT_FOUND = new JGitUtil.JGitPathInfo( null, "", FileMode.MISSING );
+
+    private final Map<Key, JGitUtil.JGitPathInfo> entries = new LinkedHashMap<Key, JGitUtil.JGitPathInfo>( 256, 0.75f, true );
+
+    private final AtomicLong hitCount = new AtomicLong( 0 );
+    private final AtomicLong missCount = new AtomicLong( 0 );
+    private final AtomicLong evictionCount = new AtomicLong( 0 );
+
+    private long maxWeight;
+    private long weight = 0;
+
+    public JGitPathCache( final long maxWeight ) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the cached lookup result. The returned {@link Lookup} is null on a cache miss; a hit on a
+     * path that does not exist in the tree returns a Lookup whose {@link Lookup#getPathInfo()} is null.
+     */
+    public Lookup get( final Repository repository,
+                       final ObjectId treeId,
+                       final String path ) {
+        checkNotNull( "repository", repository );
+        checkNotNull( "treeId", treeId );
+        checkNotNull( "path", path );
+
+        final JGitUtil.JGitPathInfo result;
+        synchronized ( this ) {
+            result = entries.get( new Key( repository, treeId, path ) );
+        }
+
+        if ( result == null ) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+        return new Lookup( result == NOT_FOUND ? null : result );
+    }
+
+    public void put( final Repository repository,
+                     final ObjectId treeId,
+                     final String path,
+                     final JGitUtil.JGitPathInfo pathInfo ) {
+        checkNotNull( "repository", repository );
+        checkNotNull( "treeId", treeId );
+        checkNotNull( "path", path );
+
+        if ( maxWeight <= 0 ) {
+            return;
+        }
+
+        final Key key = new Key( repository, treeId, path );
+        synchronized ( this ) {
+            final JGitUtil.JGitPathInfo old = entries.put( key, pathInfo == null ? NOT_FOUND : pathInfo );
+            if ( old == null ) {
+                weight += key.weight();
+            }
+            evictIfNeeded();
+        }
+    }
+
+    public synchronized void invalidate( final Repository repository ) {
+        final Iterator<Key> iterator = entries.keySet().iterator();
+        while ( iterator.hasNext() ) {
+            final Key key = iterator.next();
+            if ( key.repository == repository ) {
+                weight -= key.weight();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized void setMaxWeight( final long maxWeight ) {
+        this.maxWeight = maxWeight;
+        evictIfNeeded();
+    }
+
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private void evictIfNeeded() {
+        final Iterator<Key> iterator = entries.keySet().iterator();
+        while ( weight > maxWeight && iterator.hasNext() ) {
+            final Key eldest = iterator.next();
+            weight -= eldest.weight();
+            iterator.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    public static class Lookup {
+
+        private final JGitUtil.JGitPathInfo pathInfo;
+
+        Lookup( final JGitUtil.JGitPathInfo pathInfo ) {
+            this.pathInfo = pathInfo;
+        }
+
+        public JGitUtil.JGitPathInfo getPathInfo() {
+            return pathInfo;
+        }
+    }
+
+    private static class Key {
+
+        private final Repository repository;
+        private final ObjectId treeId;
+        private final String path;
+        private final int hash;
+
+        Key( final Repository repository,
+             final ObjectId treeId,
+             final String path ) {
+            this.repository = repository;
+            this.treeId = treeId;
+            this.path = path;
+            int result = System.identityHashCode( repository );
+            result = 31 * result + treeId.hashCode();
+            result = 31 * result + path.hashCode();
+            this.hash = result;
+        }
+
+        long weight() {
+            return ENTRY_OVERHEAD + 2L * path.length();
+        }
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof Key ) ) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return repository == key.repository &&
+                    hash == key.hash &&
+                    path.equals( key.path ) &&
+                    treeId.equals( key.treeId );
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -32,7 +32,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
 
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.CreateBranchCommand;
@@ -46,10 +49,12 @@ import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.api.errors.MultipleParentsNotAllowedException;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
 import org.eclipse.jgit.dircache.DirCacheEditor;
 import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
@@ -64,6 +69,7 @@ import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.transport.RefSpec;
@@ -72,10 +78,12 @@ import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.uberfire.commons.data.Pair;
 import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.base.ChangeSet;
 import org.uberfire.java.nio.base.FileTimeImpl;
 import org.uberfire.java.nio.base.version.VersionAttributes;
 import org.uberfire.java.nio.base.version.VersionHistory;
 import org.uberfire.java.nio.base.version.VersionRecord;
+import org.uberfire.java.nio.file.FileAlreadyExistsException;
 import org.uberfire.java.nio.file.NoSuchFileException;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
 import org.uberfire.java.nio.file.attribute.FileTime;
@@ -93,6 +101,15 @@ import static org.uberfire.commons.validation.Preconditions.*;
 
 public final class JGitUtil {
 
+    public static final long DEFAULT_PATH_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private static final JGitPathCache PATH_CACHE = new JGitPathCache( DEFAULT_PATH_CACHE_SIZE );
+
+    // same as git's core.compression default; level 9 costs a lot more CPU per clone for a few percent of size
+    public static final int DEFAULT_PACK_COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private static volatile int packCompressionLevel = DEFAULT_PACK_COMPRESSION_LEVEL;
+
     private JGitUtil() {
     }
 
@@ -350,6 +367,86 @@ public final class JGitUtil {
         }
     }
 
+    /**
+     * Brings the given refs up to date with origin, where refs maps ref names to the commit ids origin has for them.
+     * Refs already pointing to the expected commit are skipped, and only the stale ones whose commits are missing
+     * locally are fetched. Returns true if any local ref was updated.
+     */
+    public static boolean syncRepository( final Git git,
+                                          final CredentialsProvider credentialsProvider,
+                                          final String origin,
+                                          final Map<String, String> refs )
+            throws InvalidRemoteException {
+        checkNotEmpty( "origin", origin );
+
+        final Repository repository = git.getRepository();
+        final Map<String, ObjectId> staleRefs = new HashMap<String, ObjectId>();
+        final List<RefSpec> specs = new ArrayList<RefSpec>();
+
+        try {
+            for ( final Map.Entry<String, String> entry : refs.entrySet() ) {
+                if ( entry.getValue() == null || entry.getValue().isEmpty() ||
+                        !( entry.getKey().startsWith( R_HEADS ) || entry.getKey().startsWith( R_TAGS ) ) ) {
+                    continue;
+                }
+                final ObjectId expected = ObjectId.fromString( entry.getValue() );
+                final Ref local = repository.getRefDatabase().getRef( entry.getKey() );
+                if ( local != null && expected.equals( local.getObjectId() ) ) {
+                    continue;
+                }
+                staleRefs.put( entry.getKey(), expected );
+                if ( !repository.hasObject( expected ) ) {
+                    specs.add( new RefSpec( "+" + entry.getKey() + ":" + toUpstreamRef( entry.getKey() ) ) );
+                }
+            }
+
+            if ( staleRefs.isEmpty() ) {
+                return false;
+            }
+
+            if ( !specs.isEmpty() ) {
+                final StoredConfig config = repository.getConfig();
+                config.setString( "remote", "upstream", "url", origin );
+                config.save();
+
+                git.fetch()
+                        .setCredentialsProvider( credentialsProvider )
+                        .setRefSpecs( specs )
+                        .setRemote( origin )
+                        .call();
+            }
+
+            for ( final Map.Entry<String, ObjectId> entry : staleRefs.entrySet() ) {
+                ObjectId target = entry.getValue();
+                if ( !repository.hasObject( target ) ) {
+                    // origin moved on since the message was sent, take whatever was fetched
+                    final Ref fetched = repository.getRefDatabase().getRef( toUpstreamRef( entry.getKey() ) );
+                    if ( fetched == null ) {
+                        continue;
+                    }
+                    target = fetched.getObjectId();
+                }
+                final RefUpdate update = repository.updateRef( entry.getKey() );
+                update.setNewObjectId( target );
+                update.setForceUpdate( true );
+                update.update();
+            }
+        } catch ( final InvalidRemoteException e ) {
+            throw e;
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+
+        return true;
+    }
+
+    private static String toUpstreamRef( final String refName ) {
+        if ( refName.startsWith( R_HEADS ) ) {
+            return R_REMOTES + "upstream/" + refName.substring( R_HEADS.length() );
+        }
+        return refName;
+    }
+
     public static void pushRepository( final Git git,
                                        final CredentialsProvider credentialsProvider,
                                        final String origin,
@@ -564,10 +661,14 @@ public final class JGitUtil {
                 final DirCache index;
                 if ( content instanceof DefaultCommitContent ) {
                     index = createTemporaryIndex( git, originId, (DefaultCommitContent) content );
+                } else if ( content instanceof BufferedCommitContent ) {
+                    index = createTemporaryIndex( git, originId, (BufferedCommitContent) content );
                 } else if ( content instanceof MoveCommitContent ) {
                     index = createTemporaryIndex( git, originId, (MoveCommitContent) content );
                 } else if ( content instanceof CopyCommitContent ) {
                     index = createTemporaryIndex( git, originId, (CopyCommitContent) content );
+                } else if ( content instanceof ChangeSetCommitContent ) {
+                    index = createTemporaryIndex( git, originId, (ChangeSetCommitContent) content );
                 } else if ( content instanceof RevertCommitContent ) {
                     index = createTemporaryIndex( git, originId );
                 } else {
@@ -636,6 +737,11 @@ public final class JGitUtil {
             } finally {
                 odi.close();
             }
+        } catch ( final IOException e ) {
+            // invalid changes (e.g. moving a missing file) reach the caller as they are
+            throw e;
+        } catch ( final IllegalArgumentException e ) {
+            throw e;
         } catch ( final Throwable t ) {
             throw new RuntimeException( t );
         }
@@ -669,41 +775,93 @@ public final class JGitUtil {
 
         final Map<String, File> content = commitContent.getContent();
 
-        final Map<String, Pair<File, ObjectId>> paths = new HashMap<String, Pair<File, ObjectId>>( content.size() );
+        final Map<String, Pair<Long, ObjectId>> paths = new HashMap<String, Pair<Long, ObjectId>>( content.size() );
         final Set<String> path2delete = new HashSet<String>();
 
-        final DirCache inCoreIndex = DirCache.newInCore();
         final ObjectInserter inserter = git.getRepository().newObjectInserter();
-        final DirCacheEditor editor = inCoreIndex.editor();
 
         try {
             for ( final Map.Entry<String, File> pathAndContent : content.entrySet() ) {
                 final String gPath = fixPath( pathAndContent.getKey() );
                 if ( pathAndContent.getValue() == null ) {
-                    final TreeWalk treeWalk = new TreeWalk( git.getRepository() );
-                    treeWalk.addTree( new RevWalk( git.getRepository() ).parseTree( headId ) );
-                    treeWalk.setRecursive( true );
-                    treeWalk.setFilter( PathFilter.create( gPath ) );
-
-                    while ( treeWalk.next() ) {
-                        path2delete.add( treeWalk.getPathString() );
-                    }
-                    treeWalk.close();
+                    collectPathsToDelete( git, headId, gPath, path2delete );
                 } else {
+                    final InputStream inputStream = new FileInputStream( pathAndContent.getValue() );
                     try {
-                        final InputStream inputStream = new FileInputStream( pathAndContent.getValue() );
-                        try {
-                            final ObjectId objectId = inserter.insert( Constants.OBJ_BLOB, pathAndContent.getValue().length(), inputStream );
-                            paths.put( gPath, Pair.newPair( pathAndContent.getValue(), objectId ) );
-                        } finally {
-                            inputStream.close();
-                        }
-                    } catch ( final Exception ex ) {
-                        throw new RuntimeException( ex );
+                        final ObjectId objectId = inserter.insert( Constants.OBJ_BLOB, pathAndContent.getValue().length(), inputStream );
+                        paths.put( gPath, Pair.newPair( pathAndContent.getValue().length(), objectId ) );
+                    } finally {
+                        inputStream.close();
                     }
                 }
             }
+        } catch ( Exception e ) {
+            throw new RuntimeException( e );
+        } finally {
+            inserter.close();
+        }
+
+        return createTemporaryIndex( git, headId, paths, path2delete );
+    }
+
+    /**
+     * Creates an in-memory index of the issue change, streaming buffered content straight into the repository.
+     */
+    private static DirCache createTemporaryIndex( final Git git,
+                                                  final ObjectId headId,
+                                                  final BufferedCommitContent commitContent ) {
+
+        final Map<String, ContentBuffer> content = commitContent.getContent();
+
+        final Map<String, Pair<Long, ObjectId>> paths = new HashMap<String, Pair<Long, ObjectId>>( content.size() );
+        final Set<String> path2delete = new HashSet<String>();
+
+        final ObjectInserter inserter = git.getRepository().newObjectInserter();
+
+        try {
+            for ( final Map.Entry<String, ContentBuffer> pathAndContent : content.entrySet() ) {
+                final String gPath = fixPath( pathAndContent.getKey() );
+                if ( pathAndContent.getValue() == null ) {
+                    collectPathsToDelete( git, headId, gPath, path2delete );
+                } else {
+                    final ObjectId objectId = pathAndContent.getValue().insert( inserter );
+                    paths.put( gPath, Pair.newPair( pathAndContent.getValue().size(), objectId ) );
+                }
+            }
+            inserter.flush();
+        } catch ( Exception e ) {
+            throw new RuntimeException( e );
+        } finally {
+            inserter.close();
+        }
+
+        return createTemporaryIndex( git, headId, paths, path2delete );
+    }
 
+    private static void collectPathsToDelete( final Git git,
+                                              final ObjectId headId,
+                                              final String gPath,
+                                              final Set<String> path2delete ) throws java.io.IOException {
+        final TreeWalk treeWalk = new TreeWalk( git.getRepository() );
+        treeWalk.addTree( new RevWalk( git.getRepository() ).parseTree( headId ) );
+        treeWalk.setRecursive( true );
+        treeWalk.setFilter( PathFilter.create( gPath ) );
+
+        while ( treeWalk.next() ) {
+            path2delete.add( treeWalk.getPathString() );
+        }
+        treeWalk.close();
+    }
+
+    private static DirCache createTemporaryIndex( final Git git,
+                                                  final ObjectId headId,
+                                                  final Map<String, Pair<Long, ObjectId>> paths,
+                                                  final Set<String> path2delete ) {
+
+        final DirCache inCoreIndex = DirCache.newInCore();
+        final DirCacheEditor editor = inCoreIndex.editor();
+
+        try {
             if ( headId != null ) {
                 final TreeWalk treeWalk = new TreeWalk( git.getRepository() );
                 final int hIdx = treeWalk.addTree( new RevWalk( git.getRepository() ).parseTree( headId ) );
@@ -735,25 +893,20 @@ public final class JGitUtil {
                 treeWalk.close();
             }
 
-            for ( final Map.Entry<String, Pair<File, ObjectId>> pathAndContent : paths.entrySet() ) {
-                if ( pathAndContent.getValue().getK1() != null ) {
-                    editor.add( new DirCacheEditor.PathEdit( new DirCacheEntry( pathAndContent.getKey() ) ) {
-                        @Override
-                        public void apply( final DirCacheEntry ent ) {
-                            ent.setLength( pathAndContent.getValue().getK1().length() );
-                            ent.setLastModified( pathAndContent.getValue().getK1().lastModified() );
-                            ent.setFileMode( REGULAR_FILE );
-                            ent.setObjectId( pathAndContent.getValue().getK2() );
-                        }
-                    } );
-                }
+            for ( final Map.Entry<String, Pair<Long, ObjectId>> pathAndContent : paths.entrySet() ) {
+                editor.add( new DirCacheEditor.PathEdit( new DirCacheEntry( pathAndContent.getKey() ) ) {
+                    @Override
+                    public void apply( final DirCacheEntry ent ) {
+                        ent.setLength( pathAndContent.getValue().getK1() );
+                        ent.setFileMode( REGULAR_FILE );
+                        ent.setObjectId( pathAndContent.getValue().getK2() );
+                    }
+                } );
             }
 
             editor.finish();
         } catch ( Exception e ) {
             throw new RuntimeException( e );
-        } finally {
-            inserter.close();
         }
 
         if ( path2delete.isEmpty() && paths.isEmpty() ) {
@@ -869,6 +1022,177 @@ public final class JGitUtil {
         return inCoreIndex;
     }
 
+    /**
+     * Creates an in-memory index of HEAD with all the changes of the set applied in order, walking HEAD and
+     * inserting the new blobs only once for the whole set. Returns null if the changes leave HEAD as it was.
+     */
+    private static DirCache createTemporaryIndex( final Git git,
+                                                  final ObjectId headId,
+                                                  final ChangeSetCommitContent commitContent ) throws java.io.IOException {
+        final TreeMap<String, IndexEntry> entries = new TreeMap<String, IndexEntry>();
+        if ( headId != null ) {
+            final TreeWalk treeWalk = new TreeWalk( git.getRepository() );
+            try {
+                treeWalk.addTree( new RevWalk( git.getRepository() ).parseTree( headId ) );
+                treeWalk.setRecursive( true );
+                while ( treeWalk.next() ) {
+                    entries.put( treeWalk.getPathString(), new IndexEntry( treeWalk.getFileMode( 0 ), treeWalk.getObjectId( 0 ), -1 ) );
+                }
+            } finally {
+                treeWalk.close();
+            }
+        }
+
+        // HEAD entries of every touched path, to find out whether the set changes anything at all
+        final Map<String, IndexEntry> original = new HashMap<String, IndexEntry>();
+
+        final ObjectInserter inserter = git.getRepository().newObjectInserter();
+        try {
+            for ( final ChangeSetCommitContent.Change change : commitContent.getChanges() ) {
+                final String gPath = fixPath( change.getPath() );
+                switch ( change.getType() ) {
+                    case WRITE:
+                        final ObjectId objectId = inserter.insert( OBJ_BLOB, change.getContent() );
+                        putEntry( entries, original, gPath, new IndexEntry( REGULAR_FILE, objectId, change.getContent().length ) );
+                        break;
+                    case DELETE:
+                        removeEntries( entries, original, gPath );
+                        break;
+                    case MOVE:
+                    case COPY:
+                        final String gTarget = fixPath( change.getTarget() );
+                        // a move into its own subtree would copy the entries and then remove them all with the source
+                        if ( gTarget.equals( gPath ) || gTarget.startsWith( gPath + "/" ) ) {
+                            throw new IllegalArgumentException( "Can't move or copy '" + gPath + "' into itself." );
+                        }
+                        copyEntries( entries, original, gPath, gTarget );
+                        if ( change.getType() == ChangeSet.Type.MOVE ) {
+                            removeEntries( entries, original, gPath );
+                        }
+                        break;
+                }
+            }
+            inserter.flush();
+        } finally {
+            inserter.close();
+        }
+
+        boolean changed = false;
+        for ( final Map.Entry<String, IndexEntry> touched : original.entrySet() ) {
+            if ( !IndexEntry.same( touched.getValue(), entries.get( touched.getKey() ) ) ) {
+                changed = true;
+                break;
+            }
+        }
+        if ( !changed ) {
+            //no changes!
+            return null;
+        }
+
+        final DirCache inCoreIndex = DirCache.newInCore();
+        final DirCacheBuilder builder = inCoreIndex.builder();
+        for ( final Map.Entry<String, IndexEntry> entry : entries.entrySet() ) {
+            final DirCacheEntry dcEntry = new DirCacheEntry( entry.getKey() );
+            dcEntry.setFileMode( entry.getValue().mode );
+            dcEntry.setObjectId( entry.getValue().objectId );
+            if ( entry.getValue().length >= 0 ) {
+                dcEntry.setLength( entry.getValue().length );
+            }
+            builder.add( dcEntry );
+        }
+        builder.finish();
+
+        return inCoreIndex;
+    }
+
+    private static void putEntry( final TreeMap<String, IndexEntry> entries,
+                                  final Map<String, IndexEntry> original,
+                                  final String gPath,
+                                  final IndexEntry entry ) {
+        // a file can't replace a directory, nor live under another file
+        if ( !subEntries( entries, gPath ).isEmpty() ) {
+            throw new FileAlreadyExistsException( gPath );
+        }
+        for ( int i = gPath.indexOf( '/' ); i > 0; i = gPath.indexOf( '/', i + 1 ) ) {
+            if ( entries.containsKey( gPath.substring( 0, i ) ) ) {
+                throw new FileAlreadyExistsException( gPath.substring( 0, i ) );
+            }
+        }
+        touch( entries, original, gPath );
+        entries.put( gPath, entry );
+    }
+
+    private static void removeEntries( final TreeMap<String, IndexEntry> entries,
+                                       final Map<String, IndexEntry> original,
+                                       final String gPath ) {
+        if ( entries.containsKey( gPath ) ) {
+            touch( entries, original, gPath );
+            entries.remove( gPath );
+        }
+        final SortedMap<String, IndexEntry> children = subEntries( entries, gPath );
+        for ( final String child : new ArrayList<String>( children.keySet() ) ) {
+            touch( entries, original, child );
+        }
+        children.clear();
+    }
+
+    private static void copyEntries( final TreeMap<String, IndexEntry> entries,
+                                     final Map<String, IndexEntry> original,
+                                     final String gSource,
+                                     final String gTarget ) {
+        final IndexEntry file = entries.get( gSource );
+        if ( file != null ) {
+            putEntry( entries, original, gTarget, file );
+            return;
+        }
+        final SortedMap<String, IndexEntry> children = subEntries( entries, gSource );
+        if ( children.isEmpty() ) {
+            throw new NoSuchFileException( gSource );
+        }
+        if ( entries.containsKey( gTarget ) ) {
+            throw new FileAlreadyExistsException( gTarget );
+        }
+        for ( final Map.Entry<String, IndexEntry> child : new ArrayList<Map.Entry<String, IndexEntry>>( children.entrySet() ) ) {
+            putEntry( entries, original, gTarget + child.getKey().substring( gSource.length() ), child.getValue() );
+        }
+    }
+
+    private static SortedMap<String, IndexEntry> subEntries( final TreeMap<String, IndexEntry> entries,
+                                                             final String gPath ) {
+        return entries.subMap( gPath + "/", gPath + "/\uffff" );
+    }
+
+    private static void touch( final TreeMap<String, IndexEntry> entries,
+                               final Map<String, IndexEntry> original,
+                               final String gPath ) {
+        if ( !original.containsKey( gPath ) ) {
+            original.put( gPath, entries.get( gPath ) );
+        }
+    }
+
+    private static class IndexEntry {
+
+        private final FileMode mode;
+        private final ObjectId objectId;
+        private final long length;
+
+        private IndexEntry( final FileMode mode,
+                            final ObjectId objectId,
+                            final long length ) {
+            this.mode = mode;
+            this.objectId = objectId;
+            this.length = length;
+        }
+
+        private static boolean same( final IndexEntry a,
+                                     final IndexEntry b ) {
+            if ( a == null || b == null ) {
+                return a == b;
+            }
+            return a.mode.equals( b.mode ) && a.objectId.equals( b.objectId );
+        }
+    }
+
     private static DirCache createTemporaryIndex( final Git git,
                                                   final ObjectId headId ) {
 
@@ -981,53 +1305,35 @@ public final class JGitUtil {
         final List<VersionRecord> records = new ArrayList<VersionRecord>();
 
         if ( id != null ) {
-            try {
-                final LogCommand logCommand = fs.gitRepo().log().add( id );
-                if ( !gPath.isEmpty() ) {
-                    logCommand.addPath( gPath );
+            final JGitHistoryIndex.PathHistory history = fs.getHistoryIndex().getHistory( branchName, gPath );
+            if ( history != null ) {
+                final RevWalk revWalk = new RevWalk( fs.gitRepo().getRepository() );
+                try {
+                    for ( final ObjectId commitId : history.getCommits() ) {
+                        records.add( buildVersionRecord( fs, path, revWalk.parseCommit( commitId ) ) );
+                    }
+                } catch ( Exception e ) {
+                    throw new RuntimeException( e );
+                } finally {
+                    revWalk.dispose();
                 }
+            } else {
+                try {
+                    final LogCommand logCommand = fs.gitRepo().log().add( id );
+                    if ( !gPath.isEmpty() ) {
+                        logCommand.addPath( gPath );
+                    }
 
-                for ( final RevCommit commit : logCommand.call() ) {
-
-                    records.add( new VersionRecord() {
-                        @Override
-                        public String id() {
-                            return commit.name();
-                        }
-
-                        @Override
-                        public String author() {
-                            return commit.getAuthorIdent().getName();
-                        }
-
-                        @Override
-                        public String email() {
-                            return commit.getAuthorIdent().getEmailAddress();
-                        }
-
-                        @Override
-                        public String comment() {
-                            return commit.getFullMessage();
-                        }
-
-                        @Override
-                        public Date date() {
-                            return commit.getAuthorIdent().getWhen();
-                        }
-
-                        @Override
-                        public String uri() {
-                            return fs.getPath( commit.name(), path ).toUri().toString();
-                        }
-                    } );
+                    for ( final RevCommit commit : logCommand.call() ) {
+                        records.add( buildVersionRecord( fs, path, commit ) );
+                    }
+                } catch ( Exception e ) {
+                    throw new RuntimeException( e );
                 }
-            } catch ( Exception e ) {
-                throw new RuntimeException( e );
+                Collections.reverse( records );
             }
         }
 
-        Collections.reverse( records );
-
         return new VersionAttributes() {
             @Override
             public VersionHistory history() {
@@ -1087,7 +1393,43 @@ public final class JGitUtil {
 
             @Override
             public Object fileKey() {
-                return pathInfo.getObjectId() == null ? null : pathInfo.getObjectId().toString();
+                return pathInfo.getObjectId() == null ? null : pathInfo.getObjectId().name();
+            }
+        };
+    }
+
+    private static VersionRecord buildVersionRecord( final JGitFileSystem fs,
+                                                     final String path,
+                                                     final RevCommit commit ) {
+        return new VersionRecord() {
+            @Override
+            public String id() {
+                return commit.name();
+            }
+
+            @Override
+            public String author() {
+                return commit.getAuthorIdent().getName();
+            }
+
+            @Override
+            public String email() {
+                return commit.getAuthorIdent().getEmailAddress();
+            }
+
+            @Override
+            public String comment() {
+                return commit.getFullMessage();
+            }
+
+            @Override
+            public Date date() {
+                return commit.getAuthorIdent().getWhen();
+            }
+
+            @Override
+            public String uri() {
+                return fs.getPath( commit.name(), path ).toUri().toString();
             }
         };
     }
@@ -1101,8 +1443,18 @@ public final class JGitUtil {
             throw new NoSuchFileException( path );
         }
 
-        final ObjectId id = resolveObjectId( fs.gitRepo(), branchName );
-        final String gPath = fixPath( path );
+        return buildBasicAttributes( fs, branchName, resolveObjectId( fs.gitRepo(), branchName ), pathInfo );
+    }
+
+    /**
+     * Builds the attributes of an already resolved path; <code>commitId</code> is the head of the branch, only
+     * used to resolve the times.
+     */
+    public static BasicFileAttributes buildBasicAttributes( final JGitFileSystem fs,
+                                                            final String branchName,
+                                                            final ObjectId commitId,
+                                                            final JGitPathInfo pathInfo ) {
+        final String gPath = fixPath( pathInfo.getPath() );
 
         return new BasicFileAttributes() {
 
@@ -1112,20 +1464,11 @@ public final class JGitUtil {
             @Override
             public FileTime lastModifiedTime() {
                 if ( lastModifiedDate == -1L ) {
-                    RevWalk revWalk = null;
-                    try {
-                        final LogCommand logCommand = fs.gitRepo().log().add( id ).setMaxCount( 1 );
-                        if ( !gPath.isEmpty() ) {
-                            logCommand.addPath( gPath );
-                        }
-                        revWalk = (RevWalk) logCommand.call();
-                        lastModifiedDate = revWalk.iterator().next().getCommitterIdent().getWhen().getTime();
-                    } catch ( Exception ex ) {
-                        lastModifiedDate = 0;
-                    } finally {
-                        if ( revWalk != null ) {
-                            revWalk.dispose();
-                        }
+                    final JGitHistoryIndex.PathHistory history = fs.getHistoryIndex().getHistory( branchName, gPath );
+                    if ( history != null ) {
+                        lastModifiedDate = history.getLastCommitTime();
+                    } else {
+                        lastModifiedDate = resolveLastCommitTime( fs, commitId, gPath );
                     }
                 }
                 return new FileTimeImpl( lastModifiedDate );
@@ -1139,20 +1482,11 @@ public final class JGitUtil {
             @Override
             public FileTime creationTime() {
                 if ( creationDate == -1L ) {
-                    RevWalk revWalk = null;
-                    try {
-                        final LogCommand logCommand = fs.gitRepo().log().add( id ).setMaxCount( 1 );
-                        if ( !gPath.isEmpty() ) {
-                            logCommand.addPath( gPath );
-                        }
-                        revWalk = (RevWalk) logCommand.call();
-                        creationDate = revWalk.iterator().next().getCommitterIdent().getWhen().getTime();
-                    } catch ( Exception ex ) {
-                        creationDate = 0;
-                    } finally {
-                        if ( revWalk != null ) {
-                            revWalk.dispose();
-                        }
+                    final JGitHistoryIndex.PathHistory history = fs.getHistoryIndex().getHistory( branchName, gPath );
+                    if ( history != null ) {
+                        creationDate = history.getFirstCommitTime();
+                    } else {
+                        creationDate = resolveLastCommitTime( fs, commitId, gPath );
                     }
                 }
                 return new FileTimeImpl( creationDate );
@@ -1185,11 +1519,31 @@ public final class JGitUtil {
 
             @Override
             public Object fileKey() {
-                return pathInfo.getObjectId() == null ? null : pathInfo.getObjectId().toString();
+                return pathInfo.getObjectId() == null ? null : pathInfo.getObjectId().name();
             }
         };
     }
 
+    private static long resolveLastCommitTime( final JGitFileSystem fs,
+                                               final ObjectId id,
+                                               final String gPath ) {
+        RevWalk revWalk = null;
+        try {
+            final LogCommand logCommand = fs.gitRepo().log().add( id ).setMaxCount( 1 );
+            if ( !gPath.isEmpty() ) {
+                logCommand.addPath( gPath );
+            }
+            revWalk = (RevWalk) logCommand.call();
+            return revWalk.iterator().next().getCommitterIdent().getWhen().getTime();
+        } catch ( Exception ex ) {
+            return 0;
+        } finally {
+            if ( revWalk != null ) {
+                revWalk.dispose();
+            }
+        }
+    }
+
     public static void createBranch( final Git git,
                                      final String source,
                                      final String target ) {
@@ -1201,13 +1555,60 @@ public final class JGitUtil {
     }
 
     public static void gc( final Git git ) {
+        final Repository repository = git.getRepository();
+        if ( !( repository instanceof FileRepository ) ) {
+            try {
+                git.gc().call();
+            } catch ( GitAPIException e ) {
+                throw new RuntimeException( e );
+            }
+            return;
+        }
+        final GC gc = new GC( (FileRepository) repository );
+        gc.setPackConfig( newMaintenancePackConfig( repository ) );
         try {
-            git.gc().call();
-        } catch ( GitAPIException e ) {
+            gc.gc();
+        } catch ( Exception e ) {
             throw new RuntimeException( e );
         }
     }
 
+    public static int getPackCompressionLevel() {
+        return packCompressionLevel;
+    }
+
+    /**
+     * Sets the deflate level of the objects that can't be reused as they are when packing, from 0 (none) to 9
+     * (best), or -1 for the zlib default.
+     */
+    public static void setPackCompressionLevel( final int level ) {
+        checkCondition( "level should be between -1 and 9", level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION );
+        packCompressionLevel = level;
+    }
+
+    /**
+     * Pack settings to serve clones and fetches. Reusing deltas and objects from the packs on disk is already the
+     * JGit default; it is forced here so a repository's own pack config can't turn it off.
+     */
+    public static PackConfig newUploadPackConfig( final Repository repository ) {
+        final PackConfig config = new PackConfig( repository );
+        config.setCompressionLevel( packCompressionLevel );
+        config.setReuseDeltas( true );
+        config.setReuseObjects( true );
+        return config;
+    }
+
+    /**
+     * Pack settings for gc and repack. Writing the bitmap index is already the JGit default; it is forced here so a
+     * repository's own pack config can't turn it off.
+     */
+    public static PackConfig newMaintenancePackConfig( final Repository repository ) {
+        final PackConfig config = new PackConfig( repository );
+        config.setCompressionLevel( packCompressionLevel );
+        config.setBuildBitmaps( true );
+        return config;
+    }
+
     public static boolean hasBranch( final Git git,
                                      final String branchName ) {
         checkNotNull( "git", git );
@@ -1252,33 +1653,14 @@ public final class JGitUtil {
             return newPair( PathType.DIRECTORY, null );
         }
 
-        TreeWalk tw = null;
-        try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
-            tw.setFilter( PathFilter.create( gitPath ) );
-            tw.reset( tree );
-            while ( tw.next() ) {
-                if ( tw.getPathString().equals( gitPath ) ) {
-                    if ( tw.getFileMode( 0 ).equals( FileMode.TYPE_TREE ) ) {
-                        return newPair( PathType.DIRECTORY, tw.getObjectId( 0 ) );
-                    } else if ( tw.getFileMode( 0 ).equals( FileMode.TYPE_FILE ) ||
-                            tw.getFileMode( 0 ).equals( FileMode.EXECUTABLE_FILE ) ||
-                            tw.getFileMode( 0 ).equals( FileMode.REGULAR_FILE ) ) {
-                        return newPair( PathType.FILE, tw.getObjectId( 0 ) );
-                    }
-                }
-                if ( tw.isSubtree() ) {
-                    tw.enterSubtree();
-                }
-            }
-        } catch ( final Throwable ignored ) {
-        } finally {
-            if ( tw != null ) {
-                tw.close();
-            }
+        final JGitPathInfo pathInfo = resolveCachedPath( git, branchName, gitPath );
+        if ( pathInfo == null ) {
+            return newPair( PathType.NOT_FOUND, null );
+        }
+        if ( PathType.DIRECTORY.equals( pathInfo.getPathType() ) ) {
+            return newPair( PathType.DIRECTORY, pathInfo.getObjectId() );
         }
-        return newPair( PathType.NOT_FOUND, null );
+        return newPair( PathType.FILE, pathInfo.getObjectId() );
     }
 
     public static JGitPathInfo resolvePath( final Git git,
@@ -1294,25 +1676,55 @@ public final class JGitUtil {
             return new JGitPathInfo( null, "/", TREE );
         }
 
+        return resolveCachedPath( git, branchName, gitPath );
+    }
+
+    public static JGitPathCache getPathCache() {
+        return PATH_CACHE;
+    }
+
+    private static JGitPathInfo resolveCachedPath( final Git git,
+                                                   final String branchName,
+                                                   final String gitPath ) {
+        final Repository repo = git.getRepository();
+        final ObjectId tree;
+        try {
+            tree = repo.resolve( branchName + "^{tree}" );
+        } catch ( final Throwable ignored ) {
+            return null;
+        }
+        if ( tree == null ) {
+            return null;
+        }
+
+        final JGitPathCache.Lookup cached = PATH_CACHE.get( repo, tree, gitPath );
+        if ( cached != null ) {
+            return cached.getPathInfo();
+        }
+
         TreeWalk tw = null;
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
+            tw = new TreeWalk( repo );
             tw.setFilter( PathFilter.create( gitPath ) );
             tw.reset( tree );
+            JGitPathInfo result = null;
             while ( tw.next() ) {
                 if ( tw.getPathString().equals( gitPath ) ) {
                     if ( tw.getFileMode( 0 ).equals( TREE ) ) {
-                        return new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), TREE );
+                        result = new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), TREE );
+                        break;
                     } else if ( tw.getFileMode( 0 ).equals( REGULAR_FILE ) || tw.getFileMode( 0 ).equals( EXECUTABLE_FILE ) ) {
                         final long size = tw.getObjectReader().getObjectSize( tw.getObjectId( 0 ), OBJ_BLOB );
-                        return new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), REGULAR_FILE, size );
+                        result = new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), REGULAR_FILE, size );
+                        break;
                     }
                 }
                 if ( tw.isSubtree() ) {
                     tw.enterSubtree();
                 }
             }
+            PATH_CACHE.put( repo, tree, gitPath, result );
+            return result;
         } catch ( final Throwable ignored ) {
         } finally {
             if ( tw != null ) {
@@ -1331,39 +1743,61 @@ public final class JGitUtil {
         checkNotEmpty( "branchName", branchName );
 
         final String gitPath = fixPath( path );
+        final String prefix = gitPath.isEmpty() ? "" : gitPath + "/";
 
-        TreeWalk tw = null;
         final List<JGitPathInfo> result = new ArrayList<JGitPathInfo>();
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
-            boolean found = false;
+            final byte[] tree = readTree( git, branchName, path );
+            if ( tree == null ) {
+                return result;
+            }
+            final CanonicalTreeParser parser = new CanonicalTreeParser();
+            parser.reset( tree );
+            while ( !parser.eof() ) {
+                result.add( new JGitPathInfo( parser.getEntryObjectId(), prefix + parser.getEntryPathString(), parser.getEntryFileMode() ) );
+                parser.next();
+            }
+        } catch ( final Throwable ignored ) {
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the raw content of the tree object of the given directory, to be read with a
+     * {@link CanonicalTreeParser}, or null if the path is not a directory of the branch.
+     */
+    public static byte[] readTree( final Git git,
+                                   final String branchName,
+                                   final String path ) {
+        checkNotNull( "git", git );
+        checkNotNull( "path", path );
+        checkNotEmpty( "branchName", branchName );
+
+        final String gitPath = fixPath( path );
+        final Repository repo = git.getRepository();
+
+        ObjectReader reader = null;
+        try {
+            final ObjectId tree;
             if ( gitPath.isEmpty() ) {
-                found = true;
+                tree = repo.resolve( branchName + "^{tree}" );
             } else {
-                tw.setFilter( PathFilter.create( gitPath ) );
+                final JGitPathInfo pathInfo = resolveCachedPath( git, branchName, gitPath );
+                tree = pathInfo != null && PathType.DIRECTORY.equals( pathInfo.getPathType() ) ? pathInfo.getObjectId() : null;
             }
-            tw.reset( tree );
-            while ( tw.next() ) {
-                if ( !found && tw.isSubtree() ) {
-                    tw.enterSubtree();
-                }
-                if ( tw.getPathString().equals( gitPath ) ) {
-                    found = true;
-                    continue;
-                }
-                if ( found ) {
-                    result.add( new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), tw.getFileMode( 0 ) ) );
-                }
+            if ( tree == null ) {
+                return null;
             }
-        } catch ( final Throwable ignored ) {
+            reader = repo.newObjectReader();
+            return reader.open( tree, OBJ_TREE ).getCachedBytes();
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
         } finally {
-            if ( tw != null ) {
-                tw.close();
+            if ( reader != null ) {
+                reader.close();
             }
         }
-
-        return result;
     }
 
     public static class JGitPathInfo {
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.Test;
+import org.uberfire.java.nio.fs.jgit.util.ContentBuffer;
+import org.uberfire.java.nio.fs.jgit.util.ContentBufferByteChannel;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class ContentBufferTest extends AbstractTestInfra {
+
+    @Test
+    public void testSpillAboveThreshold() throws Exception {
+        final Git git = JGitUtil.newRepository( new File( createTempDirectory(), "buffer.git" ), true );
+        final ContentBuffer buffer = new ContentBuffer( 16 );
+
+        final OutputStream out = buffer.newOutputStream();
+        out.write( "0123456789".getBytes() );
+        assertThat( buffer.isSpilled() ).isFalse();
+
+        out.write( "0123456789".getBytes() );
+        assertThat( buffer.isSpilled() ).isTrue();
+        assertThat( buffer.size() ).isEqualTo( 20 );
+
+        final ObjectInserter inserter = git.getRepository().newObjectInserter();
+        final ObjectId id;
+        try {
+            id = buffer.insert( inserter );
+            inserter.flush();
+        } finally {
+            inserter.close();
+        }
+        assertThat( id ).isEqualTo( new ObjectInserter.Formatter().idFor( Constants.OBJ_BLOB, "01234567890123456789".getBytes() ) );
+        assertThat( new String( git.getRepository().open( id ).getBytes() ) ).isEqualTo( "01234567890123456789" );
+
+        buffer.dispose();
+        assertThat( buffer.size() ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void testSeekableChannel() throws Exception {
+        final ContentBufferByteChannel channel = new ContentBufferByteChannel( new ContentBuffer( 1024 ) );
+
+        channel.write( ByteBuffer.wrap( "hello world".getBytes() ) );
+        channel.position( 6 );
+        channel.write( ByteBuffer.wrap( "there".getBytes() ) );
+        assertThat( channel.size() ).isEqualTo( 11 );
+
+        channel.truncate( 8 );
+        assertThat( channel.position() ).isEqualTo( 8 );
+
+        final ByteBuffer dst = ByteBuffer.allocate( 32 );
+        channel.position( 0 );
+        assertThat( channel.read( dst ) ).isEqualTo( 8 );
+        assertThat( new String( dst.array(), 0, 8 ) ).isEqualTo( "hello th" );
+        assertThat( channel.read( dst ) ).isEqualTo( -1 );
+    }
+
+}
@@ -16,11 +16,19 @@
 
 package org.uberfire.java.nio.fs.jgit;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
+import org.uberfire.java.nio.fs.jgit.util.JGitMaintenanceScheduler;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 import org.uberfire.java.nio.file.DirectoryStream;
 import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
 import org.uberfire.java.nio.file.Path;
@@ -72,4 +80,157 @@ public class JGitFileSystemProviderGCTest extends AbstractTestInfra {
         assertThat( fs.getNumberOfCommitsSinceLastGC() ).isEqualTo( 1 );
     }
 
+    @Test
+    public void testGCRunsInBackground() throws Exception {
+        final URI newRepo = URI.create( "git://async-gc-repo-name" );
+
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( newRepo, EMPTY_ENV );
+        final JGitMaintenanceScheduler scheduler = provider.getMaintenanceScheduler();
+
+        for ( int i = 0; i < 20; i++ ) {
+            final Path path = provider.getPath( URI.create( "git://async-gc-repo-name/path/to/myfile" + i + ".txt" ) );
+            final OutputStream outStream = provider.newOutputStream( path );
+            outStream.write( ( "my cool" + i + " content" ).getBytes() );
+            outStream.close();
+        }
+        assertThat( fs.getNumberOfCommitsSinceLastGC() ).isEqualTo( 0 );
+
+        for ( int i = 0; i < 100 && scheduler.getLastRun( fs ) == null; i++ ) {
+            Thread.sleep( 100 );
+        }
+
+        assertThat( scheduler.getLastRun( fs ) ).isNotNull();
+        assertThat( scheduler.getLastRun( fs ).getTask() ).isEqualTo( JGitMaintenanceScheduler.Task.GC );
+        assertThat( scheduler.getLastRun( fs ).getError() ).isNull();
+    }
+
+    @Test
+    public void testMaintenanceRestartsAfterShutdown() throws Exception {
+        final URI newRepo = URI.create( "git://restart-gc-repo-name" );
+
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( newRepo, EMPTY_ENV );
+        final JGitMaintenanceScheduler scheduler = provider.getMaintenanceScheduler();
+
+        scheduler.shutdown();
+        assertThat( scheduler.getQueueDepth() ).isEqualTo( 0 );
+
+        assertThat( scheduler.schedule( fs, JGitMaintenanceScheduler.Task.GC ) ).isTrue();
+        for ( int i = 0; i < 100 && scheduler.getLastRun( fs ) == null; i++ ) {
+            Thread.sleep( 100 );
+        }
+
+        assertThat( scheduler.getLastRun( fs ) ).isNotNull();
+        assertThat( scheduler.getLastRun( fs ).getError() ).isNull();
+    }
+
+    @Test
+    public void testTaskScheduledAfterCancelWaitsForRunningOne() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://cancel-gc-repo-name" ), EMPTY_ENV );
+        final BlockingScheduler scheduler = new BlockingScheduler();
+        try {
+            scheduler.schedule( fs, JGitMaintenanceScheduler.Task.GC );
+            assertThat( scheduler.started.await( 10, TimeUnit.SECONDS ) ).isTrue();
+
+            scheduler.cancel( fs );
+            assertThat( scheduler.schedule( fs, JGitMaintenanceScheduler.Task.GC ) ).isTrue();
+            Thread.sleep( 200 );
+            assertThat( scheduler.running.get() ).isEqualTo( 1 );
+
+            scheduler.release.countDown();
+            for ( int i = 0; i < 100 && scheduler.runs.get() < 2; i++ ) {
+                Thread.sleep( 100 );
+            }
+            assertThat( scheduler.runs.get() ).isEqualTo( 2 );
+            assertThat( scheduler.maxRunning.get() ).isEqualTo( 1 );
+        } finally {
+            scheduler.release.countDown();
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdownWaitsForRunningTask() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://shutdown-gc-repo-name" ), EMPTY_ENV );
+        final BlockingScheduler scheduler = new BlockingScheduler();
+
+        scheduler.schedule( fs, JGitMaintenanceScheduler.Task.GC );
+        scheduler.schedule( fs, JGitMaintenanceScheduler.Task.REPACK );
+        assertThat( scheduler.started.await( 10, TimeUnit.SECONDS ) ).isTrue();
+
+        final Thread shutdown = new Thread() {
+            @Override
+            public void run() {
+                scheduler.shutdown();
+            }
+        };
+        shutdown.start();
+        shutdown.join( 200 );
+        assertThat( shutdown.isAlive() ).isTrue();
+
+        scheduler.release.countDown();
+        shutdown.join( 10000 );
+        assertThat( shutdown.isAlive() ).isFalse();
+        assertThat( scheduler.interrupted.get() ).isFalse();
+        // the pending repack was dropped
+        assertThat( scheduler.runs.get() ).isEqualTo( 1 );
+    }
+
+    private static class BlockingScheduler extends JGitMaintenanceScheduler {
+
+        final CountDownLatch started = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final AtomicInteger running = new AtomicInteger( 0 );
+        final AtomicInteger maxRunning = new AtomicInteger( 0 );
+        final AtomicInteger runs = new AtomicInteger( 0 );
+        final AtomicBoolean interrupted = new AtomicBoolean( false );
+
+        BlockingScheduler() {
+            super( 2 );
+        }
+
+        @Override
+        protected void run( final JGitFileSystem fs,
+                            final Task task ) throws Exception {
+            final int now = running.incrementAndGet();
+            synchronized ( maxRunning ) {
+                maxRunning.set( Math.max( maxRunning.get(), now ) );
+            }
+            started.countDown();
+            try {
+                release.await( 10, TimeUnit.SECONDS );
+            } catch ( final InterruptedException e ) {
+                interrupted.set( true );
+            } finally {
+                running.decrementAndGet();
+                runs.incrementAndGet();
+            }
+        }
+    }
+
+    @Test
+    public void testGCWritesBitmapIndex() throws IOException {
+        final URI newRepo = URI.create( "git://bitmap-gc-repo-name" );
+
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( newRepo, EMPTY_ENV );
+
+        for ( int i = 0; i < 5; i++ ) {
+            final Path path = provider.getPath( URI.create( "git://bitmap-gc-repo-name/path/to/myfile" + i + ".txt" ) );
+            final OutputStream outStream = provider.newOutputStream( path );
+            outStream.write( ( "my cool" + i + " content" ).getBytes() );
+            outStream.close();
+        }
+
+        JGitUtil.gc( fs.gitRepo() );
+
+        final File packDir = new File( fs.gitRepo().getRepository().getDirectory(), "objects/pack" );
+        final String[] bitmaps = packDir.list( new FilenameFilter() {
+            @Override
+            public boolean accept( final File dir,
+                                   final String name ) {
+                return name.endsWith( ".bitmap" );
+            }
+        } );
+        assertThat( bitmaps ).isNotNull().hasSize( 1 );
+    }
+
 }
@@ -25,18 +25,23 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.ObjectId;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.uberfire.commons.data.Pair;
+import org.uberfire.java.nio.base.ChangeSet;
+import org.uberfire.java.nio.base.FileNameFilter;
 import org.uberfire.java.nio.base.FileSystemState;
 import org.uberfire.java.nio.base.NotImplementedException;
+import org.uberfire.java.nio.base.WatchContext;
 import org.uberfire.java.nio.base.options.CommentedOption;
 import org.uberfire.java.nio.file.DirectoryNotEmptyException;
 import org.uberfire.java.nio.file.DirectoryStream;
@@ -45,6 +50,8 @@ import org.uberfire.java.nio.file.FileStore;
 import org.uberfire.java.nio.file.FileSystem;
 import org.uberfire.java.nio.file.FileSystemAlreadyExistsException;
 import org.uberfire.java.nio.file.FileSystemNotFoundException;
+import org.uberfire.java.nio.file.FileVisitResult;
+import org.uberfire.java.nio.file.FileVisitor;
 import org.uberfire.java.nio.file.NoSuchFileException;
 import org.uberfire.java.nio.file.NotDirectoryException;
 import org.uberfire.java.nio.file.Path;
@@ -55,6 +62,7 @@ import org.uberfire.java.nio.file.WatchService;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributeView;
 import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
 import org.uberfire.java.nio.file.attribute.FileTime;
+import org.uberfire.java.nio.fs.jgit.util.ChangeSetCommitContent;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 import org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 
@@ -226,6 +234,54 @@ public class JGitFileSystemProviderTest extends AbstractTestInfra {
         }
     }
 
+    @Test
+    public void testNewFileSystemSyncRefs() throws IOException {
+
+        final URI originRepo = URI.create( "git://my-simple-test-origin-refs" );
+
+        final JGitFileSystem origin = (JGitFileSystem) provider.newFileSystem( originRepo, new HashMap<String, Object>() {{
+            put( "listMode", "ALL" );
+        }} );
+
+        commit( origin.gitRepo(), "master", "user1", "user1@example.com", "commitx", null, null, false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "temp" ) );
+        }} );
+
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://my-repo-refs" ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_DEFAULT_REMOTE_NAME, "git://localhost:" + gitDaemonPort + "/my-simple-test-origin-refs" );
+            put( "listMode", "ALL" );
+        }} );
+
+        assertThat( fs.getRefs().get( "refs/heads/master" ) ).isEqualTo( origin.getRefs().get( "refs/heads/master" ) );
+
+        commit( origin.gitRepo(), "master", "user1", "user1@example.com", "commitx", null, null, false, new HashMap<String, File>() {{
+            put( "fileXXXXX.txt", tempFile( "temp" ) );
+        }} );
+        commit( origin.gitRepo(), "dev", "user1", "user1@example.com", "commitx", null, null, false, new HashMap<String, File>() {{
+            put( "fileYYYY.txt", tempFile( "temp" ) );
+        }} );
+
+        final String master = origin.getRefs().get( "refs/heads/master" );
+        final String dev = origin.getRefs().get( "refs/heads/dev" );
+        final String originUri = "git://localhost:" + gitDaemonPort + "/my-simple-test-origin-refs";
+
+        assertThat( fs.getRefs().get( "refs/heads/master" ) ).isNotEqualTo( master );
+
+        provider.getFileSystem( URI.create( "git://my-repo-refs?sync=" + originUri + "&force&refs=refs/heads/master:" + master ) );
+
+        assertThat( fs.getRefs().get( "refs/heads/master" ) ).isEqualTo( master );
+        assertThat( fs.getRefs().containsKey( "refs/heads/dev" ) ).isFalse();
+
+        assertThat( syncRepository( fs.gitRepo(), fs.getCredential(), originUri, new HashMap<String, String>() {{
+            put( "refs/heads/master", master );
+        }} ) ).isFalse();
+
+        provider.getFileSystem( URI.create( "git://my-repo-refs?sync=" + originUri + "&force&refs=refs/heads/master:" + master + ":refs/heads/dev:" + dev ) );
+
+        assertThat( fs.getRefs().get( "refs/heads/dev" ) ).isEqualTo( dev );
+        assertThat( fs.getRefs().get( "refs/heads/master" ) ).isEqualTo( master );
+    }
+
     @Test
     public void testNewFileSystemCloneAndPush() throws IOException {
 
@@ -954,6 +1010,67 @@ public class JGitFileSystemProviderTest extends AbstractTestInfra {
         assertThat( provider.newDirectoryStream( crazyPath, null ) ).isNotNull().hasSize( 1 );
     }
 
+    @Test
+    public void testNewDirectoryStreamIsLazy() throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://lazy-dirstream-test-repo" ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_INIT, "true" );
+        }} );
+        final Map<String, File> content = new HashMap<String, File>();
+        for ( int i = 0; i < 100; i++ ) {
+            content.put( "dir/file" + i + ( i % 2 == 0 ? ".txt" : ".java" ), tempFile( "content " + i ) );
+        }
+        JGitUtil.commit( fs.gitRepo(), "master", "name", "name@example.com", "files", null, null, false, content );
+
+        final Path dir = provider.getPath( URI.create( "git://master@lazy-dirstream-test-repo/dir" ) );
+
+        final List<String> acceptedNames = new ArrayList<String>();
+        final DirectoryStream<Path> filtered = provider.newDirectoryStream( dir, new FileNameFilter<Path>() {
+            @Override
+            public boolean accept( final Path entry ) {
+                fail( "name filters should be applied to the names" );
+                return false;
+            }
+
+            @Override
+            public boolean acceptName( final String fileName ) {
+                acceptedNames.add( fileName );
+                return fileName.endsWith( ".txt" );
+            }
+        } );
+        int count = 0;
+        for ( final Path path : filtered ) {
+            assertThat( path.toString() ).startsWith( "/dir/file" ).endsWith( ".txt" );
+            assertThat( provider.exists( path ) ).isTrue();
+            count++;
+        }
+        assertThat( count ).isEqualTo( 50 );
+        assertThat( acceptedNames ).hasSize( 100 );
+        filtered.close();
+
+        final List<Path> accepted = new ArrayList<Path>();
+        final DirectoryStream<Path> stream = provider.newDirectoryStream( dir, new DirectoryStream.Filter<Path>() {
+            @Override
+            public boolean accept( final Path entry ) {
+                accepted.add( entry );
+                return true;
+            }
+        } );
+        final Iterator<Path> iterator = stream.iterator();
+        assertThat( accepted ).isEmpty();
+        assertThat( iterator.next() ).isEqualTo( provider.getPath( URI.create( "git://master@lazy-dirstream-test-repo/dir/file0.txt" ) ) );
+        assertThat( iterator.next() ).isNotNull();
+        assertThat( accepted ).hasSize( 2 );
+
+        stream.close();
+        assertThat( iterator.hasNext() ).isFalse();
+        assertThat( accepted ).hasSize( 2 );
+        try {
+            stream.iterator();
+            failBecauseExceptionWasNotThrown( org.uberfire.java.nio.IOException.class );
+        } catch ( org.uberfire.java.nio.IOException ignored ) {
+        }
+    }
+
     @Test
     public void testDeleteNonEmptyDirectory() throws IOException {
         final URI newRepo = URI.create( "git://delete-non-empty-test-repo" );
@@ -1391,6 +1508,398 @@ public class JGitFileSystemProviderTest extends AbstractTestInfra {
         }
     }
 
+    @Test
+    public void testNotifyDiffsOnBulkCommit() throws Exception {
+        final List<WatchEvent<?>> events = notifyBulkCommit( "git://bulk-notify-repo", 1000 );
+
+        assertThat( events ).hasSize( 1000 );
+        final Set<String> paths = new HashSet<String>();
+        for ( final WatchEvent<?> event : events ) {
+            assertThat( event.kind() ).isEqualTo( StandardWatchEventKind.ENTRY_CREATE );
+            paths.add( ( (WatchContext) event.context() ).getPath().toString() );
+        }
+        assertThat( paths ).hasSize( 1000 );
+        assertThat( paths ).contains( "/bulk/dir7/file7.txt", "/bulk/dir9/file999.txt" );
+    }
+
+    @Test
+    public void testNotifyDiffsScalesWithChangedFiles() throws Exception {
+        final AtomicLong small = new AtomicLong();
+        final AtomicLong large = new AtomicLong();
+        assertThat( notifyBulkCommit( "git://bulk-notify-timing-1k", 1000, small ) ).hasSize( 1000 );
+        assertThat( notifyBulkCommit( "git://bulk-notify-timing-10k", 10000, large ) ).hasSize( 10000 );
+
+        // events come from the single diff walk, so ten times the files should cost about ten times as much;
+        // resolving every changed path from the root made it grow quadratically
+        assertThat( large.get() ).as( "notifyDiffs took " + small.get() + "ms for 1k files and " + large.get() + "ms for 10k" )
+                .isLessThan( 20 * Math.max( small.get(), 50 ) );
+    }
+
+    private List<WatchEvent<?>> notifyBulkCommit( final String uri,
+                                                  final int size ) throws IOException {
+        return notifyBulkCommit( uri, size, new AtomicLong() );
+    }
+
+    private List<WatchEvent<?>> notifyBulkCommit( final String uri,
+                                                  final int size,
+                                                  final AtomicLong notifyMillis ) throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( uri ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_INIT, "true" );
+        }} );
+        final WatchService ws = fs.newWatchService();
+
+        final Map<String, File> content = new HashMap<String, File>();
+        for ( int i = 0; i < size; i++ ) {
+            content.put( "bulk/dir" + ( i % 10 ) + "/file" + i + ".txt", tempFile( "content " + i ) );
+        }
+
+        final ObjectId oldHead = JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), "master" );
+        JGitUtil.commit( fs.gitRepo(), "master", "name", "name@example.com", "bulk", null, null, false, content );
+        final ObjectId newHead = JGitUtil.getTreeRefObjectId( fs.gitRepo().getRepository(), "master" );
+
+        final long start = System.currentTimeMillis();
+        provider.notifyDiffs( fs, "master", "session", "name", "bulk", oldHead, newHead );
+        notifyMillis.set( System.currentTimeMillis() - start );
+
+        final WatchKey key = ws.poll();
+        assertThat( key ).isNotNull();
+        return key.pollEvents();
+    }
+
+    @Test
+    public void testCommitChangeSet() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://changeset-test-repo" ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_INIT, "true" );
+        }} );
+        JGitUtil.commit( fs.gitRepo(), "master", "name", "name@example.com", "initial", null, null, false, new HashMap<String, File>() {{
+            put( "a.txt", tempFile( "a" ) );
+            put( "old.txt", tempFile( "old" ) );
+            put( "dir/b.txt", tempFile( "b" ) );
+            put( "dir/sub/c.txt", tempFile( "c" ) );
+        }} );
+
+        final Path root = provider.getPath( URI.create( "git://master@changeset-test-repo/" ) );
+        final JGitVersionAttributeView history = provider.getFileAttributeView( root, JGitVersionAttributeView.class );
+        final int commits = history.readAttributes().history().records().size();
+        final WatchService ws = fs.newWatchService();
+
+        provider.commit( new ChangeSet()
+                                 .write( path( "changeset-test-repo", "/new/file.txt" ), "new content" )
+                                 .write( path( "changeset-test-repo", "/a.txt" ), "changed a" )
+                                 .delete( path( "changeset-test-repo", "/old.txt" ) )
+                                 .move( path( "changeset-test-repo", "/dir" ), path( "changeset-test-repo", "/moved" ) )
+                                 .copy( path( "changeset-test-repo", "/a.txt" ), path( "changeset-test-repo", "/copy-of-a.txt" ) ),
+                         new CommentedOption( "name", "bulk changes" ) );
+
+        assertThat( provider.getFileAttributeView( root, JGitVersionAttributeView.class ).readAttributes().history().records().size() ).isEqualTo( commits + 1 );
+        assertThat( read( path( "changeset-test-repo", "/new/file.txt" ) ) ).isEqualTo( "new content" );
+        assertThat( read( path( "changeset-test-repo", "/a.txt" ) ) ).isEqualTo( "changed a" );
+        assertThat( read( path( "changeset-test-repo", "/copy-of-a.txt" ) ) ).isEqualTo( "changed a" );
+        assertThat( read( path( "changeset-test-repo", "/moved/b.txt" ) ) ).isEqualTo( "b" );
+        assertThat( read( path( "changeset-test-repo", "/moved/sub/c.txt" ) ) ).isEqualTo( "c" );
+        assertThat( provider.exists( path( "changeset-test-repo", "/old.txt" ) ) ).isFalse();
+        assertThat( provider.exists( path( "changeset-test-repo", "/dir" ) ) ).isFalse();
+
+        // one notification for the whole set
+        final WatchKey key = ws.poll();
+        assertThat( key ).isNotNull();
+        assertThat( key.pollEvents() ).isNotEmpty();
+        assertThat( ws.poll() ).isNull();
+
+        // nothing is committed if any change is invalid, and the file system stays usable
+        try {
+            provider.commit( new ChangeSet()
+                                     .write( path( "changeset-test-repo", "/a.txt" ), "lost" )
+                                     .move( path( "changeset-test-repo", "/missing.txt" ), path( "changeset-test-repo", "/other.txt" ) ) );
+            fail( "source doesn't exist" );
+        } catch ( final NoSuchFileException e ) {
+        }
+        assertThat( read( path( "changeset-test-repo", "/a.txt" ) ) ).isEqualTo( "changed a" );
+
+        provider.commit( new ChangeSet().write( path( "changeset-test-repo", "/a.txt" ), "changed a" ) );
+        assertThat( provider.getFileAttributeView( root, JGitVersionAttributeView.class ).readAttributes().history().records().size() ).isEqualTo( commits + 1 );
+        assertThat( ws.poll() ).isNull();
+
+        try {
+            provider.commit( new ChangeSet().move( path( "changeset-test-repo", "/moved" ), path( "changeset-test-repo", "/moved/inner" ) ) );
+            fail( "can't move a directory into itself" );
+        } catch ( final IllegalArgumentException e ) {
+        }
+        try {
+            provider.commit( new ChangeSet().move( path( "changeset-test-repo", "/moved" ), path( "changeset-test-repo", "/moved" ) ) );
+            fail( "can't move a directory onto itself" );
+        } catch ( final IllegalArgumentException e ) {
+        }
+
+        // the index is checked as well, whoever builds the content
+        final ChangeSetCommitContent intoItself = new ChangeSetCommitContent();
+        intoItself.add( ChangeSet.Type.MOVE, "moved", "moved/inner", null );
+        try {
+            JGitUtil.commit( fs.gitRepo(), "master", new CommitInfo( null, "name", "name@example.com", "into itself", null, null ), false, intoItself );
+            fail( "can't move a directory into itself" );
+        } catch ( final IllegalArgumentException e ) {
+        }
+        assertThat( read( path( "changeset-test-repo", "/moved/b.txt" ) ) ).isEqualTo( "b" );
+        assertThat( read( path( "changeset-test-repo", "/moved/sub/c.txt" ) ) ).isEqualTo( "c" );
+    }
+
+    @Test
+    public void testChangeSetIsFasterThanBatchWrites() throws Exception {
+        for ( final String repo : new String[]{ "batch-timing-repo", "changeset-timing-repo" } ) {
+            provider.newFileSystem( URI.create( "git://" + repo ), new HashMap<String, Object>() {{
+                put( JGitFileSystemProvider.GIT_ENV_KEY_INIT, "true" );
+            }} );
+        }
+        final int files = 1000;
+
+        long start = System.currentTimeMillis();
+        final Path batchRoot = path( "batch-timing-repo", "/" );
+        provider.setAttribute( batchRoot, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.BATCH );
+        for ( int i = 0; i < files; i++ ) {
+            final OutputStream out = provider.newOutputStream( path( "batch-timing-repo", "/dir" + ( i % 10 ) + "/file" + i + ".txt" ) );
+            out.write( ( "content " + i ).getBytes() );
+            out.close();
+        }
+        provider.setAttribute( batchRoot, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.NORMAL );
+        final long batch = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        final ChangeSet changeSet = new ChangeSet();
+        for ( int i = 0; i < files; i++ ) {
+            changeSet.write( path( "changeset-timing-repo", "/dir" + ( i % 10 ) + "/file" + i + ".txt" ), "content " + i );
+        }
+        provider.commit( changeSet );
+        final long committed = System.currentTimeMillis() - start;
+
+        assertThat( read( path( "changeset-timing-repo", "/dir9/file999.txt" ) ) ).isEqualTo( read( path( "batch-timing-repo", "/dir9/file999.txt" ) ) );
+        assertThat( committed ).as( "change set took " + committed + "ms, batch writes " + batch + "ms for " + files + " files" ).isLessThan( batch );
+    }
+
+    private Path path( final String repo,
+                       final String path ) {
+        return provider.getPath( URI.create( "git://master@" + repo + path ) );
+    }
+
+    private String read( final Path path ) throws IOException {
+        final InputStream inputStream = provider.newInputStream( path );
+        try {
+            return new Scanner( inputStream ).useDelimiter( "\\A" ).next();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Test
+    public void testWalkFileTree() throws Exception {
+        final JGitFileSystem fs = newWalkTestFileSystem( "git://walk-test-repo" );
+        final Path root = provider.getPath( URI.create( "git://master@walk-test-repo/" ) );
+
+        final RecordingVisitor visitor = new RecordingVisitor();
+        assertThat( provider.walkFileTree( root, Integer.MAX_VALUE, visitor ) ).isTrue();
+
+        assertThat( visitor.visits ).containsExactly( "pre:/",
+                                                      "pre:/dir1",
+                                                      "file:/dir1/file1.txt",
+                                                      "pre:/dir1/sub",
+                                                      "file:/dir1/sub/file2.txt",
+                                                      "post:/dir1/sub",
+                                                      "post:/dir1",
+                                                      "pre:/dir2",
+                                                      "file:/dir2/file3.txt",
+                                                      "post:/dir2",
+                                                      "file:/root.txt",
+                                                      "post:/" );
+        assertThat( visitor.visits ).isEqualTo( walkGeneric( root, Integer.MAX_VALUE, new RecordingVisitor() ).visits );
+
+        final BasicFileAttributes attrs = visitor.attrs.get( "/dir1/sub/file2.txt" );
+        assertThat( attrs.isRegularFile() ).isTrue();
+        assertThat( attrs.size() ).isEqualTo( "content2".length() );
+        assertThat( attrs.fileKey() ).isEqualTo( provider.readAttributes( provider.getPath( URI.create( "git://master@walk-test-repo/dir1/sub/file2.txt" ) ), BasicFileAttributes.class ).fileKey() );
+        assertThat( attrs.lastModifiedTime().toMillis() ).isGreaterThan( 0 );
+        assertThat( visitor.attrs.get( "/dir1" ).isDirectory() ).isTrue();
+
+        final Path dir1 = provider.getPath( URI.create( "git://master@walk-test-repo/dir1" ) );
+        assertThat( walk( dir1, Integer.MAX_VALUE, new RecordingVisitor() ).visits ).containsExactly( "pre:/dir1",
+                                                                                                        "file:/dir1/file1.txt",
+                                                                                                        "pre:/dir1/sub",
+                                                                                                        "file:/dir1/sub/file2.txt",
+                                                                                                        "post:/dir1/sub",
+                                                                                                        "post:/dir1" );
+
+        final Path file = provider.getPath( URI.create( "git://master@walk-test-repo/root.txt" ) );
+        assertThat( walk( file, Integer.MAX_VALUE, new RecordingVisitor() ).visits ).containsExactly( "file:/root.txt" );
+
+        final Path missing = provider.getPath( URI.create( "git://master@walk-test-repo/missing" ) );
+        assertThat( walk( missing, Integer.MAX_VALUE, new RecordingVisitor() ).visits ).containsExactly( "failed:/missing" );
+
+        fs.close();
+    }
+
+    @Test
+    public void testWalkFileTreeMatchesGenericWalk() throws Exception {
+        newWalkTestFileSystem( "git://walk-generic-test-repo" );
+        final Path root = provider.getPath( URI.create( "git://master@walk-generic-test-repo/" ) );
+
+        for ( final int maxDepth : new int[]{ 0, 1, 2, Integer.MAX_VALUE } ) {
+            assertThat( walk( root, maxDepth, new RecordingVisitor() ).visits ).isEqualTo( walkGeneric( root, maxDepth, new RecordingVisitor() ).visits );
+        }
+
+        final String[][] results = new String[][]{
+                { "/dir1", "SKIP_SUBTREE" },
+                { "/dir1", "SKIP_SIBLINGS" },
+                { "/dir1/file1.txt", "SKIP_SIBLINGS" },
+                { "/dir1/sub", "SKIP_SIBLINGS" },
+                { "/dir1/sub/file2.txt", "TERMINATE" },
+                { "/dir2/file3.txt", "SKIP_SIBLINGS" } };
+        for ( final String[] result : results ) {
+            final RecordingVisitor fast = walk( root, Integer.MAX_VALUE, new RecordingVisitor( result[ 0 ], FileVisitResult.valueOf( result[ 1 ] ) ) );
+            final RecordingVisitor generic = walkGeneric( root, Integer.MAX_VALUE, new RecordingVisitor( result[ 0 ], FileVisitResult.valueOf( result[ 1 ] ) ) );
+            assertThat( fast.visits ).as( result[ 0 ] + " " + result[ 1 ] ).isEqualTo( generic.visits );
+        }
+
+        final RecordingVisitor postSkip = new RecordingVisitor();
+        postSkip.postResult = "/dir1/sub";
+        final RecordingVisitor genericPostSkip = new RecordingVisitor();
+        genericPostSkip.postResult = "/dir1/sub";
+        assertThat( walk( root, Integer.MAX_VALUE, postSkip ).visits ).isEqualTo( walkGeneric( root, Integer.MAX_VALUE, genericPostSkip ).visits );
+    }
+
+    @Test
+    public void testWalkFileTreeIsFasterThanGenericWalk() throws Exception {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://walk-timing-repo" ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_INIT, "true" );
+        }} );
+        final Map<String, File> content = new HashMap<String, File>();
+        final File file = tempFile( "content" );
+        for ( int i = 0; i < 50000; i++ ) {
+            content.put( "dir" + ( i % 50 ) + "/sub" + ( i % 20 ) + "/file" + i + ".txt", file );
+        }
+        JGitUtil.commit( fs.gitRepo(), "master", "name", "name@example.com", "bulk", null, null, false, content );
+        final Path root = provider.getPath( URI.create( "git://master@walk-timing-repo/" ) );
+
+        long start = System.currentTimeMillis();
+        final int fastVisits = walk( root, Integer.MAX_VALUE, new RecordingVisitor() ).visits.size();
+        final long fast = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        final int genericVisits = walkGeneric( root, Integer.MAX_VALUE, new RecordingVisitor() ).visits.size();
+        final long generic = System.currentTimeMillis() - start;
+
+        assertThat( fastVisits ).isEqualTo( genericVisits );
+        assertThat( fast ).as( "single tree walk took " + fast + "ms, generic walk " + generic + "ms over 50k files" ).isLessThan( generic );
+
+        fs.close();
+    }
+
+    private JGitFileSystem newWalkTestFileSystem( final String uri ) throws IOException {
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( uri ), new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_ENV_KEY_INIT, "true" );
+        }} );
+        final Map<String, File> content = new HashMap<String, File>();
+        content.put( "dir1/file1.txt", tempFile( "content1" ) );
+        content.put( "dir1/sub/file2.txt", tempFile( "content2" ) );
+        content.put( "dir2/file3.txt", tempFile( "content3" ) );
+        content.put( "root.txt", tempFile( "root" ) );
+        JGitUtil.commit( fs.gitRepo(), "master", "name", "name@example.com", "walk", null, null, false, content );
+        return fs;
+    }
+
+    private RecordingVisitor walk( final Path start,
+                                   final int maxDepth,
+                                   final RecordingVisitor visitor ) {
+        provider.walkFileTree( start, maxDepth, visitor );
+        return visitor;
+    }
+
+    // same walk as the generic one in Files, using only the provider
+    private RecordingVisitor walkGeneric( final Path start,
+                                          final int maxDepth,
+                                          final RecordingVisitor visitor ) {
+        walkGeneric( start, 0, maxDepth, visitor );
+        return visitor;
+    }
+
+    private FileVisitResult walkGeneric( final Path file,
+                                         final int depth,
+                                         final int maxDepth,
+                                         final FileVisitor<Path> visitor ) {
+        final BasicFileAttributes attrs;
+        try {
+            attrs = provider.readAttributes( file, BasicFileAttributes.class );
+        } catch ( final org.uberfire.java.nio.IOException ex ) {
+            return visitor.visitFileFailed( file, ex );
+        }
+        if ( depth >= maxDepth || !attrs.isDirectory() ) {
+            return visitor.visitFile( file, attrs );
+        }
+        final FileVisitResult preResult = visitor.preVisitDirectory( file, attrs );
+        if ( preResult != FileVisitResult.CONTINUE ) {
+            return preResult;
+        }
+        for ( final Path entry : provider.newDirectoryStream( file, null ) ) {
+            final FileVisitResult result = walkGeneric( entry, depth + 1, maxDepth, visitor );
+            if ( result == null || result == FileVisitResult.TERMINATE ) {
+                return result;
+            }
+            if ( result == FileVisitResult.SKIP_SIBLINGS ) {
+                break;
+            }
+        }
+        return visitor.postVisitDirectory( file, null );
+    }
+
+    private static class RecordingVisitor implements FileVisitor<Path> {
+
+        final List<String> visits = new ArrayList<String>();
+        final Map<String, BasicFileAttributes> attrs = new HashMap<String, BasicFileAttributes>();
+        final String resultPath;
+        final FileVisitResult result;
+        String postResult;
+
+        RecordingVisitor() {
+            this( null, null );
+        }
+
+        RecordingVisitor( final String resultPath,
+                          final FileVisitResult result ) {
+            this.resultPath = resultPath;
+            this.result = result;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory( final Path dir,
+                                                  final BasicFileAttributes attrs ) {
+            return record( "pre", dir, attrs );
+        }
+
+        @Override
+        public FileVisitResult visitFile( final Path file,
+                                          final BasicFileAttributes attrs ) {
+            return record( "file", file, attrs );
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed( final Path file,
+                                                final org.uberfire.java.nio.IOException exc ) {
+            return record( "failed", file, null );
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory( final Path dir,
+                                                   final org.uberfire.java.nio.IOException exc ) {
+            visits.add( "post:" + dir.toString() );
+            return dir.toString().equals( postResult ) ? FileVisitResult.SKIP_SIBLINGS : FileVisitResult.CONTINUE;
+        }
+
+        private FileVisitResult record( final String kind,
+                                        final Path path,
+                                        final BasicFileAttributes attrs ) {
+            visits.add( kind + ":" + path.toString() );
+            this.attrs.put( path.toString(), attrs );
+            return path.toString().equals( resultPath ) ? result : FileVisitResult.CONTINUE;
+        }
+    }
+
     private static interface MyAttrs extends BasicFileAttributes {
 
     }
@@ -18,6 +18,8 @@ package org.uberfire.java.nio.fs.jgit;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -25,11 +27,15 @@ import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.uberfire.java.nio.base.WatchContext;
 import org.uberfire.java.nio.file.FileStore;
 import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.StandardWatchEventKind;
+import org.uberfire.java.nio.file.WatchEvent;
 
 import static org.fest.assertions.api.Assertions.*;
 import static org.mockito.Mockito.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
 
 public class JGitFileSystemTest extends AbstractTestInfra {
 
@@ -329,4 +335,42 @@ public class JGitFileSystemTest extends AbstractTestInfra {
         final JGitFileSystem fileSystem = new JGitFileSystem( fsProvider, null, git, "my-repo", CredentialsProvider.getDefault() );
         fileSystem.getPathMatcher( "*" );
     }
+
+    @Test
+    public void testGetChanges() throws IOException, GitAPIException {
+        final Git git = setupGit();
+        final JGitFileSystem fileSystem = new JGitFileSystem( provider, null, git, "my-repo", CredentialsProvider.getDefault() );
+
+        final String first = fileSystem.getRefs().get( "refs/heads/master" );
+
+        commit( git, "master", "name", "name@example.com", "cool2", null, null, false, new HashMap<String, File>() {{
+            put( "file1.txt", tempFile( "content changed" ) );
+            put( "file2.txt", null );
+            put( "file3.txt", tempFile( "content3" ) );
+        }} );
+        final String second = fileSystem.getRefs().get( "refs/heads/master" );
+
+        final List<WatchEvent<?>> changes = fileSystem.getChanges( "refs/heads/master", first, second );
+        assertThat( changes ).hasSize( 3 );
+        for ( final WatchEvent<?> event : changes ) {
+            final WatchContext context = (WatchContext) event.context();
+            if ( event.kind() == StandardWatchEventKind.ENTRY_MODIFY ) {
+                assertThat( context.getPath().toString() ).isEqualTo( "/file1.txt" );
+            } else if ( event.kind() == StandardWatchEventKind.ENTRY_DELETE ) {
+                assertThat( context.getOldPath().toString() ).isEqualTo( "/file2.txt" );
+            } else {
+                assertThat( event.kind() ).isEqualTo( StandardWatchEventKind.ENTRY_CREATE );
+                assertThat( context.getPath().toString() ).isEqualTo( "/file3.txt" );
+            }
+        }
+
+        assertThat( fileSystem.getChanges( "refs/heads/master", null, second ) ).hasSize( 2 );
+        final List<WatchEvent<?>> removed = fileSystem.getChanges( "refs/heads/master", second, null );
+        assertThat( removed ).hasSize( 2 );
+        assertThat( removed.get( 0 ).kind() ).isEqualTo( StandardWatchEventKind.ENTRY_DELETE );
+        assertThat( fileSystem.getChanges( "refs/heads/master", second, second ) ).isEmpty();
+
+        assertThat( fileSystem.getChanges( "refs/heads/master", "0123456789012345678901234567890123456789", second ) ).isNull();
+        assertThat( fileSystem.getChanges( "refs/tags/some-tag", first, second ) ).isEmpty();
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.eclipse.jgit.api.Git;
+import org.junit.Test;
+import org.uberfire.java.nio.fs.jgit.util.JGitHistoryIndex;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
+
+public class JGitHistoryIndexTest extends AbstractTestInfra {
+
+    @Test
+    public void testPathHistory() throws IOException {
+        final Git git = JGitUtil.newRepository( new File( createTempDirectory(), "history.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "first", null, null, false, new HashMap<String, File>() {{
+            put( "path/to/file1.txt", tempFile( "content1" ) );
+        }} );
+        commit( git, "master", "name", "name@example.com", "second", null, null, false, new HashMap<String, File>() {{
+            put( "path/file2.txt", tempFile( "content2" ) );
+        }} );
+        commit( git, "master", "name", "name@example.com", "third", null, null, false, new HashMap<String, File>() {{
+            put( "path/to/file1.txt", tempFile( "content1 changed" ) );
+        }} );
+
+        final JGitHistoryIndex index = new JGitHistoryIndex( git.getRepository() );
+
+        final JGitHistoryIndex.PathHistory file1 = index.getHistory( "master", "path/to/file1.txt" );
+        assertThat( file1.getCommits() ).hasSize( 2 );
+        assertThat( file1.getLastCommit() ).isEqualTo( getLastCommit( git, "master" ).getId() );
+
+        assertThat( index.getHistory( "master", "path/file2.txt" ).getCommits() ).hasSize( 1 );
+        assertThat( index.getHistory( "master", "path/to" ).getCommits() ).hasSize( 2 );
+        assertThat( index.getHistory( "master", "path" ).getCommits() ).hasSize( 3 );
+        assertThat( index.getHistory( "master", "" ).getCommits() ).hasSize( 3 );
+        assertThat( index.getHistory( "master", "missing.txt" ).getCommits() ).isEmpty();
+        assertThat( index.getHistory( "unknown_branch", "path" ) ).isNull();
+
+        commit( git, "master", "name", "name@example.com", "fourth", null, null, false, new HashMap<String, File>() {{
+            put( "path/file2.txt", null );
+        }} );
+
+        assertThat( index.getHistory( "master", "path/file2.txt" ).getCommits() ).hasSize( 2 );
+        assertThat( index.getHistory( "master", "" ).getCommits() ).hasSize( 4 );
+    }
+
+    @Test
+    public void testAmendAndReload() throws IOException {
+        final Git git = JGitUtil.newRepository( new File( createTempDirectory(), "history-amend.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "first", null, null, false, new HashMap<String, File>() {{
+            put( "file1.txt", tempFile( "content1" ) );
+        }} );
+        commit( git, "master", "name", "name@example.com", "second", null, null, false, new HashMap<String, File>() {{
+            put( "file2.txt", tempFile( "content2" ) );
+        }} );
+
+        final JGitHistoryIndex index = new JGitHistoryIndex( git.getRepository() );
+        assertThat( index.getHistory( "master", "file2.txt" ).getCommits() ).hasSize( 1 );
+
+        commit( git, "master", "name", "name@example.com", "second amended", null, null, true, new HashMap<String, File>() {{
+            put( "file3.txt", tempFile( "content3" ) );
+        }} );
+
+        assertThat( index.getHistory( "master", "" ).getCommits() ).hasSize( 2 );
+        assertThat( index.getHistory( "master", "file3.txt" ).getCommits() ).hasSize( 1 );
+        assertThat( index.getHistory( "master", "file3.txt" ).getLastCommit() ).isEqualTo( getLastCommit( git, "master" ).getId() );
+
+        final JGitHistoryIndex reloaded = new JGitHistoryIndex( git.getRepository() );
+        assertThat( new File( git.getRepository().getDirectory(), JGitHistoryIndex.INDEX_DIR ).list() ).hasSize( 1 );
+        assertThat( reloaded.getHistory( "master", "" ).getCommits() ).isEqualTo( index.getHistory( "master", "" ).getCommits() );
+        assertThat( reloaded.getHistory( "master", "file1.txt" ).getFirstCommitTime() ).isEqualTo( index.getHistory( "master", "file1.txt" ).getFirstCommitTime() );
+    }
+
+    @Test
+    public void testTornRecordIsTruncatedOnLoad() throws IOException {
+        final Git git = JGitUtil.newRepository( new File( createTempDirectory(), "history-torn.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "first", null, null, false, new HashMap<String, File>() {{
+            put( "file1.txt", tempFile( "content1" ) );
+        }} );
+
+        final JGitHistoryIndex index = new JGitHistoryIndex( git.getRepository() );
+        assertThat( index.getHistory( "master", "" ).getCommits() ).hasSize( 1 );
+
+        final File indexFile = new File( git.getRepository().getDirectory(), JGitHistoryIndex.INDEX_DIR ).listFiles()[ 0 ];
+        final long length = indexFile.length();
+        final FileOutputStream out = new FileOutputStream( indexFile, true );
+        try {
+            out.write( new byte[]{ 1, 2, 3, 4, 5 } );
+        } finally {
+            out.close();
+        }
+
+        commit( git, "master", "name", "name@example.com", "second", null, null, false, new HashMap<String, File>() {{
+            put( "file2.txt", tempFile( "content2" ) );
+        }} );
+
+        final JGitHistoryIndex reloaded = new JGitHistoryIndex( git.getRepository() );
+        assertThat( reloaded.getHistory( "master", "file1.txt" ).getCommits() ).hasSize( 1 );
+        assertThat( reloaded.getHistory( "master", "" ).getCommits() ).hasSize( 2 );
+        assertThat( indexFile.length() ).isGreaterThan( length );
+
+        final JGitHistoryIndex again = new JGitHistoryIndex( git.getRepository() );
+        assertThat( again.getHistory( "master", "" ).getCommits() ).isEqualTo( reloaded.getHistory( "master", "" ).getCommits() );
+        assertThat( again.getHistory( "master", "file2.txt" ).getCommits() ).hasSize( 1 );
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+import org.uberfire.java.nio.fs.jgit.util.JGitPathCache;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.PathType.*;
+import static org.uberfire.java.nio.fs.jgit.util.JGitUtil.*;
+
+public class JGitPathCacheTest extends AbstractTestInfra {
+
+    @Test
+    public void testCachedResolution() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final Git git = JGitUtil.newRepository( new File( parentFolder, "cache.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "path/to/file.txt", tempFile( "content" ) );
+        }} );
+
+        final JGitPathCache cache = JGitUtil.getPathCache();
+        final long misses = cache.getMissCount();
+        final long hits = cache.getHitCount();
+
+        final JGitPathInfo first = resolvePath( git, "master", "/path/to/file.txt" );
+        assertThat( first ).isNotNull();
+        assertThat( first.getPathType() ).isEqualTo( FILE );
+        assertThat( first.getSize() ).isEqualTo( "content".length() );
+        assertThat( cache.getMissCount() ).isEqualTo( misses + 1 );
+
+        final JGitPathInfo second = resolvePath( git, "master", "/path/to/file.txt" );
+        assertThat( second ).isSameAs( first );
+        assertThat( checkPath( git, "master", "/path/to/file.txt" ).getK1() ).isEqualTo( FILE );
+        assertThat( cache.getHitCount() ).isEqualTo( hits + 2 );
+
+        assertThat( checkPath( git, "master", "/path/to/missing.txt" ).getK1() ).isEqualTo( NOT_FOUND );
+        assertThat( checkPath( git, "master", "/path/to/missing.txt" ).getK1() ).isEqualTo( NOT_FOUND );
+        assertThat( cache.getHitCount() ).isEqualTo( hits + 3 );
+
+        commit( git, "master", "name", "name@example.com", "commit", null, null, false, new HashMap<String, File>() {{
+            put( "path/to/file.txt", tempFile( "new content" ) );
+            put( "path/to/missing.txt", tempFile( "not missing anymore" ) );
+        }} );
+
+        final JGitPathInfo updated = resolvePath( git, "master", "/path/to/file.txt" );
+        assertThat( updated.getObjectId() ).isNotEqualTo( first.getObjectId() );
+        assertThat( updated.getSize() ).isEqualTo( "new content".length() );
+        assertThat( checkPath( git, "master", "/path/to/missing.txt" ).getK1() ).isEqualTo( FILE );
+        assertThat( checkPath( git, "master", "/path/to" ).getK1() ).isEqualTo( DIRECTORY );
+
+        cache.invalidate( git.getRepository() );
+    }
+
+    @Test
+    public void testBudgetEviction() throws IOException {
+        final Git git = JGitUtil.newRepository( new File( createTempDirectory(), "eviction.git" ), true );
+        final JGitPathCache cache = new JGitPathCache( 1024 );
+
+        for ( int i = 0; i < 100; i++ ) {
+            cache.put( git.getRepository(), ObjectId.zeroId(), "file" + i, new JGitPathInfo( ObjectId.zeroId(), "file" + i, FileMode.REGULAR_FILE, 1 ) );
+        }
+
+        assertThat( cache.getWeight() ).isLessThanOrEqualTo( 1024 );
+        assertThat( cache.size() ).isLessThan( 100 );
+        assertThat( cache.getEvictionCount() ).isEqualTo( 100 - cache.size() );
+        assertThat( cache.get( git.getRepository(), ObjectId.zeroId(), "file0" ) ).isNull();
+        assertThat( cache.get( git.getRepository(), ObjectId.zeroId(), "file99" ).getPathInfo().getPath() ).isEqualTo( "file99" );
+
+        cache.invalidate( git.getRepository() );
+        assertThat( cache.size() ).isEqualTo( 0 );
+        assertThat( cache.getWeight() ).isEqualTo( 0 );
+    }
+
+}
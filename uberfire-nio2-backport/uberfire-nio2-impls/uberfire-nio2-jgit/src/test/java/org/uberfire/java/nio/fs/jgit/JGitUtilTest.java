@@ -25,6 +25,7 @@ import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffEntry.ChangeType;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.junit.Test;
 import org.uberfire.java.nio.base.version.VersionAttributes;
@@ -192,4 +193,38 @@ public class JGitUtilTest extends AbstractTestInfra {
         assertEquals( ChangeType.ADD, diff.get( 0 ).getChangeType());
         assertEquals( "path/to/file.txt", diff.get( 0 ).getNewPath());
     }
+
+    @Test
+    public void testPackConfig() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final Git git = JGitUtil.newRepository( new File( parentFolder, "pack-config.git" ), true );
+
+        assertThat( newUploadPackConfig( git.getRepository() ).getCompressionLevel() ).isEqualTo( DEFAULT_PACK_COMPRESSION_LEVEL );
+        assertThat( newUploadPackConfig( git.getRepository() ).isReuseDeltas() ).isTrue();
+        assertThat( newUploadPackConfig( git.getRepository() ).isReuseObjects() ).isTrue();
+        assertThat( newMaintenancePackConfig( git.getRepository() ).isBuildBitmaps() ).isTrue();
+
+        final StoredConfig repoConfig = git.getRepository().getConfig();
+        repoConfig.setBoolean( "pack", null, "reusedeltas", false );
+        repoConfig.setBoolean( "pack", null, "buildbitmaps", false );
+        repoConfig.save();
+        assertThat( newUploadPackConfig( git.getRepository() ).isReuseDeltas() ).isTrue();
+        assertThat( newMaintenancePackConfig( git.getRepository() ).isBuildBitmaps() ).isTrue();
+
+        try {
+            setPackCompressionLevel( 1 );
+            assertThat( newUploadPackConfig( git.getRepository() ).getCompressionLevel() ).isEqualTo( 1 );
+            assertThat( newMaintenancePackConfig( git.getRepository() ).getCompressionLevel() ).isEqualTo( 1 );
+
+            try {
+                setPackCompressionLevel( 10 );
+                fail( "level out of range" );
+            } catch ( final IllegalStateException e ) {
+            }
+            assertThat( getPackCompressionLevel() ).isEqualTo( 1 );
+        } finally {
+            setPackCompressionLevel( DEFAULT_PACK_COMPRESSION_LEVEL );
+        }
+    }
+
 }
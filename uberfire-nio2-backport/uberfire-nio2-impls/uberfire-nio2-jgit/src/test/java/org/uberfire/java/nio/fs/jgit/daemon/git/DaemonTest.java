@@ -18,11 +18,32 @@ package org.uberfire.java.nio.fs.jgit.daemon.git;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.transport.UploadPack;
+import org.eclipse.jgit.transport.resolver.RepositoryResolver;
+import org.eclipse.jgit.transport.resolver.UploadPackFactory;
 import org.junit.Test;
+import org.uberfire.java.nio.base.ChangeSet;
+import org.uberfire.java.nio.fs.jgit.CommitInfo;
+import org.uberfire.java.nio.fs.jgit.util.ChangeSetCommitContent;
+import org.uberfire.java.nio.fs.jgit.util.JGitUtil;
 
 
 public class DaemonTest {
@@ -51,4 +72,201 @@ public class DaemonTest {
 
         assertFalse( d.isRunning() );
     }
+
+    @Test
+    public void testRejectsConnectionsBeyondWorkersAndQueue() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Daemon d = new Daemon( new InetSocketAddress( "127.0.0.1", 0 ), executor );
+        d.setWorkerThreads( 1 );
+        d.setPendingConnections( 1 );
+        d.start();
+
+        final int port = d.getAddress().getPort();
+        // none of them sends a command, so the first one keeps the only worker busy
+        final Socket served = new Socket( "127.0.0.1", port );
+        final Socket queued = new Socket( "127.0.0.1", port );
+        final Socket rejected = new Socket( "127.0.0.1", port );
+        try {
+            rejected.setSoTimeout( 10000 );
+            final String response = readFully( rejected.getInputStream() );
+            assertTrue( response, response.contains( "ERR too many connections" ) );
+
+            final long deadline = System.currentTimeMillis() + 10000;
+            while ( d.getActiveConnections() == 0 && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 3, d.getAcceptedConnections() );
+            assertEquals( 1, d.getRejectedConnections() );
+            assertEquals( 1, d.getActiveConnections() );
+            assertEquals( 1, d.getQueuedConnections() );
+        } finally {
+            served.close();
+            queued.close();
+            rejected.close();
+            d.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdleConnectionTimesOut() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Daemon d = new Daemon( new InetSocketAddress( "127.0.0.1", 0 ), executor );
+        d.setIdleTimeout( 1 );
+        d.start();
+
+        final Socket idle = new Socket( "127.0.0.1", d.getAddress().getPort() );
+        try {
+            idle.setSoTimeout( 10000 );
+            assertEquals( -1, idle.getInputStream().read() );
+
+            final long deadline = System.currentTimeMillis() + 10000;
+            while ( d.getCompletedConnections() == 0 && System.currentTimeMillis() < deadline ) {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 1, d.getTimedOutConnections() );
+            assertEquals( 1, d.getCompletedConnections() );
+            assertEquals( 0, d.getActiveConnections() );
+        } finally {
+            idle.close();
+            d.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIdleTimeoutAppliesToUploadPack() throws Exception {
+        final File parent = File.createTempFile( "daemon", "timeout" );
+        parent.delete();
+        parent.mkdirs();
+
+        final Git origin = JGitUtil.newRepository( new File( parent, "origin.git" ), true );
+        final ChangeSetCommitContent content = new ChangeSetCommitContent();
+        content.add( ChangeSet.Type.WRITE, "file.txt", null, "content".getBytes() );
+        JGitUtil.commit( origin, "master", new CommitInfo( null, "name", "name@example.com", "commit", null, null ), false, content );
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final Daemon d = new Daemon( new InetSocketAddress( "127.0.0.1", 0 ), executor );
+        d.setIdleTimeout( 30 );
+        d.setRepositoryResolver( new RepositoryResolver<DaemonClient>() {
+            @Override
+            public Repository open( final DaemonClient req,
+                                    final String name ) {
+                origin.getRepository().incrementOpen();
+                return origin.getRepository();
+            }
+        } );
+        final List<UploadPack> served = new ArrayList<UploadPack>();
+        d.setUploadPackFactory( new UploadPackFactory<DaemonClient>() {
+            @Override
+            public UploadPack create( final DaemonClient req,
+                                      final Repository db ) {
+                final UploadPack up = new UploadPack( db );
+                served.add( up );
+                return up;
+            }
+        } );
+        d.start();
+        try {
+            cloneInParallel( "git://127.0.0.1:" + d.getAddress().getPort() + "/origin.git", parent, 1 );
+
+            // reads and writes of the pack time out, not only the socket reads
+            assertEquals( 1, served.size() );
+            assertEquals( 30, served.get( 0 ).getTimeout() );
+        } finally {
+            d.stop();
+            executor.shutdownNow();
+            FileUtils.deleteQuietly( parent );
+        }
+    }
+
+    @Test
+    public void testCloneWithUploadPackConfigIsNotSlowerThanBestCompression() throws Exception {
+        final File parent = File.createTempFile( "daemon", "clone" );
+        parent.delete();
+        parent.mkdirs();
+
+        final Git origin = JGitUtil.newRepository( new File( parent, "origin.git" ), true );
+        for ( int c = 0; c < 20; c++ ) {
+            final ChangeSetCommitContent content = new ChangeSetCommitContent();
+            for ( int i = 0; i < 200; i++ ) {
+                content.add( ChangeSet.Type.WRITE, "dir" + ( i % 20 ) + "/file" + i + ".txt", null, ( "content " + i + " of commit " + c ).getBytes() );
+            }
+            JGitUtil.commit( origin, "master", new CommitInfo( null, "name", "name@example.com", "commit " + c, null, null ), false, content );
+        }
+        JGitUtil.gc( origin );
+
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final Daemon d = new Daemon( new InetSocketAddress( "127.0.0.1", 0 ), executor );
+        d.setRepositoryResolver( new RepositoryResolver<DaemonClient>() {
+            @Override
+            public Repository open( final DaemonClient req,
+                                    final String name ) {
+                origin.getRepository().incrementOpen();
+                return origin.getRepository();
+            }
+        } );
+        d.start();
+        try {
+            final String uri = "git://127.0.0.1:" + d.getAddress().getPort() + "/origin.git";
+            cloneInParallel( uri, parent, 1 );
+
+            final long current = cloneInParallel( uri, parent, 4 );
+
+            // what every request used to get: a fresh config deflating at the best compression
+            d.setUploadPackFactory( new UploadPackFactory<DaemonClient>() {
+                @Override
+                public UploadPack create( final DaemonClient req,
+                                          final Repository db ) {
+                    final UploadPack up = new UploadPack( db );
+                    final PackConfig config = new PackConfig( db );
+                    config.setCompressionLevel( Deflater.BEST_COMPRESSION );
+                    up.setPackConfig( config );
+                    return up;
+                }
+            } );
+            final long previous = cloneInParallel( uri, parent, 4 );
+
+            assertTrue( "4 parallel clones took " + current + "ms with the upload pack config, " + previous + "ms with the best compression",
+                        current <= previous * 3 / 2 );
+        } finally {
+            d.stop();
+            executor.shutdownNow();
+            FileUtils.deleteQuietly( parent );
+        }
+    }
+
+    private static String readFully( final InputStream in ) throws Exception {
+        final StringBuilder result = new StringBuilder();
+        int c;
+        while ( ( c = in.read() ) != -1 ) {
+            result.append( (char) c );
+        }
+        return result.toString();
+    }
+
+    private static long cloneInParallel( final String uri,
+                                         final File parent,
+                                         final int clients ) throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool( clients );
+        try {
+            final List<Future<Void>> clones = new ArrayList<Future<Void>>();
+            final long start = System.currentTimeMillis();
+            for ( int i = 0; i < clients; i++ ) {
+                clones.add( pool.submit( new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        Git.cloneRepository().setURI( uri ).setBare( true ).setDirectory( new File( parent, "clone-" + UUID.randomUUID() ) ).call().close();
+                        return null;
+                    }
+                } ) );
+            }
+            for ( final Future<Void> clone : clones ) {
+                clone.get();
+            }
+            return System.currentTimeMillis() - start;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 }
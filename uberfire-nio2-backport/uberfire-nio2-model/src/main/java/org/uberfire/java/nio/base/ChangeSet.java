@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.uberfire.java.nio.file.Path;
+
+import static org.uberfire.commons.validation.Preconditions.*;
+
+/**
+ * Ordered set of writes, deletes, moves and copies to be applied to a file system as a single change.
+ * <p>
+ * Changes are applied in the order they were added, so a later change sees the result of the earlier ones
+ * (e.g. a file written and then moved ends up only at the target). Deletes, moves and copies of directories
+ * apply to their whole content, and moves and copies replace existing targets.
+ */
+public class ChangeSet {
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    public enum Type {
+        WRITE, DELETE, MOVE, COPY
+    }
+
+    private final List<Change> changes = new ArrayList<Change>();
+
+    public ChangeSet write( final Path path,
+                            final byte[] content ) {
+        changes.add( new Change( Type.WRITE, checkNotNull( "path", path ), null, checkNotNull( "content", content ) ) );
+        return this;
+    }
+
+    public ChangeSet write( final Path path,
+                            final String content ) {
+        return write( path, checkNotNull( "content", content ).getBytes( UTF_8 ) );
+    }
+
+    public ChangeSet delete( final Path path ) {
+        changes.add( new Change( Type.DELETE, checkNotNull( "path", path ), null, null ) );
+        return this;
+    }
+
+    public ChangeSet move( final Path source,
+                           final Path target ) {
+        changes.add( new Change( Type.MOVE, checkNotNull( "source", source ), checkNotNull( "target", target ), null ) );
+        return this;
+    }
+
+    public ChangeSet copy( final Path source,
+                           final Path target ) {
+        changes.add( new Change( Type.COPY, checkNotNull( "source", source ), checkNotNull( "target", target ), null ) );
+        return this;
+    }
+
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList( changes );
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    public static class Change {
+
+        private final Type type;
+        private final Path path;
+        private final Path target;
+        private final byte[] content;
+
+        private Change( final Type type,
+                        final Path path,
+                        final Path target,
+                        final byte[] content ) {
+            this.type = type;
+            this.path = path;
+            this.target = target;
+            this.content = content;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * The written or deleted path, or the source of a move or copy.
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * The target of a move or copy, null otherwise.
+         */
+        public Path getTarget() {
+            return target;
+        }
+
+        /**
+         * The content of a write, null otherwise.
+         */
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.file.Option;
+
+/**
+ * Implemented by providers able to apply a whole {@link ChangeSet} atomically, as a single commit, instead of
+ * one write, delete, move or copy at a time.
+ */
+public interface ChangeSetAware {
+
+    /**
+     * Applies all the changes at once: either all of them are visible afterwards or none is, and watchers are
+     * notified once for the whole set.
+     */
+    void commit( final ChangeSet changes,
+                 final Option... options ) throws IllegalArgumentException, IOException;
+}
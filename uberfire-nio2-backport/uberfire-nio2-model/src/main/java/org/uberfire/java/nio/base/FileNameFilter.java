@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import org.uberfire.java.nio.file.DirectoryStream;
+
+/**
+ * {@link DirectoryStream.Filter} that only depends on the file name of the entries, such as glob filters.
+ * <p>
+ * Providers may call {@link #acceptName(String)} instead of {@link #accept(Object)}, so entries can be filtered
+ * while listing a directory, before any path is built for them. Both methods should give the same answer.
+ */
+public interface FileNameFilter<T> extends DirectoryStream.Filter<T> {
+
+    boolean acceptName( final String fileName );
+}
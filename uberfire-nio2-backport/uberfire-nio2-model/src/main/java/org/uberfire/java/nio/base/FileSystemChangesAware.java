@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import java.util.List;
+
+import org.uberfire.java.nio.file.WatchEvent;
+
+/**
+ * Implemented by versioned file systems able to tell what changed between two states of a ref, so consumers that
+ * kept track of the refs they processed (see {@link FileSystemRefsAware#getRefs()}) can catch up without a full scan.
+ */
+public interface FileSystemChangesAware extends FileSystemRefsAware {
+
+    /**
+     * Returns the changes made on the ref between both commits, as the watch events the file system publishes on
+     * commits. A null <code>fromCommitId</code> reports every file of the ref as created, a null
+     * <code>toCommitId</code> reports them as deleted; refs not exposed through the root directories (e.g. tags)
+     * have no changes.
+     * <p>
+     * Returns null if a commit can't be resolved anymore.
+     */
+    List<WatchEvent<?>> getChanges( final String ref,
+                                    final String fromCommitId,
+                                    final String toCommitId );
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import java.util.Map;
+
+/**
+ * Implemented by file systems backed by a versioned store, so their state can be compared across cluster members.
+ */
+public interface FileSystemRefsAware {
+
+    /**
+     * Returns the current refs of the file system (e.g. git branches and tags), ref name to commit id.
+     */
+    Map<String, String> getRefs();
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.java.nio.base;
+
+import org.uberfire.java.nio.IOException;
+import org.uberfire.java.nio.file.FileVisitor;
+import org.uberfire.java.nio.file.Path;
+
+/**
+ * Implemented by providers able to walk a file tree in a single pass, faster than listing and reading the
+ * attributes of each directory and file one by one.
+ */
+public interface FileTreeWalkAware {
+
+    /**
+     * Walks the file tree rooted at <code>start</code> with the same semantics and visiting order as the generic
+     * walker used by <code>Files.walkFileTree</code>.
+     * <p>
+     * Returns false, without calling the visitor, if the given start can't be walked this way, in which case the
+     * generic walker should be used.
+     */
+    boolean walkFileTree( final Path start,
+                          final int maxDepth,
+                          final FileVisitor<? super Path> visitor ) throws IOException;
+}
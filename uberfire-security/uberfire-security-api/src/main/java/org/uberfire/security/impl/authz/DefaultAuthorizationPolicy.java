@@ -15,7 +15,9 @@
  */
 package org.uberfire.security.impl.authz;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.jboss.errai.common.client.api.annotations.Portable;
@@ -31,32 +33,68 @@ public class DefaultAuthorizationPolicy implements AuthorizationPolicy {
 
     private Set<DefaultAuthorizationEntry> entrySet = new HashSet<>();
 
+    // Entries by role and group name, built on demand so that policy loading doesn't scan the entries
+    private transient Map<String, DefaultAuthorizationEntry> roleIndex;
+    private transient Map<String, DefaultAuthorizationEntry> groupIndex;
+
     public DefaultAuthorizationPolicy() {
     }
 
     protected DefaultAuthorizationEntry registerAuthzEntry(DefaultAuthorizationEntry entry) {
         entrySet.add(entry);
+        if (roleIndex != null) {
+            indexEntry(entry);
+        }
         return entry;
     }
 
     protected DefaultAuthorizationEntry getAuthzEntry(Role role) {
-        for (DefaultAuthorizationEntry entry : entrySet) {
-            if (entry.getRole() != null && entry.getRole().equals(role)) {
-                return entry;
+        buildIndex();
+        DefaultAuthorizationEntry entry = role != null ? roleIndex.get(role.getName()) : null;
+        if (entry != null && entry.getRole().equals(role)) {
+            return entry;
+        }
+        for (DefaultAuthorizationEntry e : entrySet) {
+            if (e.getRole() != null && e.getRole().equals(role)) {
+                return e;
             }
         }
         return registerAuthzEntry(new DefaultAuthorizationEntry(role));
     }
 
     protected DefaultAuthorizationEntry getAuthzEntry(Group group) {
-        for (DefaultAuthorizationEntry entry : entrySet) {
-            if (entry.getGroup() != null && entry.getGroup().equals(group)) {
-                return entry;
+        buildIndex();
+        DefaultAuthorizationEntry entry = group != null ? groupIndex.get(group.getName()) : null;
+        if (entry != null && entry.getGroup().equals(group)) {
+            return entry;
+        }
+        for (DefaultAuthorizationEntry e : entrySet) {
+            if (e.getGroup() != null && e.getGroup().equals(group)) {
+                return e;
             }
         }
         return registerAuthzEntry(new DefaultAuthorizationEntry(group));
     }
 
+    private void buildIndex() {
+        if (roleIndex == null) {
+            roleIndex = new HashMap<>();
+            groupIndex = new HashMap<>();
+            for (DefaultAuthorizationEntry entry : entrySet) {
+                indexEntry(entry);
+            }
+        }
+    }
+
+    private void indexEntry(DefaultAuthorizationEntry entry) {
+        if (entry.getRole() != null) {
+            roleIndex.put(entry.getRole().getName(), entry);
+        }
+        if (entry.getGroup() != null) {
+            groupIndex.put(entry.getGroup().getName(), entry);
+        }
+    }
+
     @Override
     public Set<Role> getRoles() {
         Set<Role> result = new HashSet<>();
@@ -15,48 +15,323 @@
  */
 package org.uberfire.security.impl.authz;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.jboss.errai.security.shared.api.Group;
+import org.jboss.errai.security.shared.api.Role;
 import org.jboss.errai.security.shared.api.identity.User;
 import org.uberfire.security.authz.AuthorizationResult;
 import org.uberfire.security.authz.Permission;
 
+/**
+ * Cache of the authorization results computed by the {@link DefaultPermissionManager}.
+ * <p>
+ * Results are kept in one segment per user, each one with its own lock, so that checks for different users
+ * don't contend with each other. A segment remembers the roles and groups of the user it was built for and
+ * it's dropped as soon as the user shows up with a different set. Both the number of segments and the number
+ * of entries per segment are bounded (least recently used go first) and entries can optionally expire after
+ * a given time.
+ */
 public class DefaultAuthzResultCache {
 
-    final Map<Permission, Map<String, AuthorizationResult>> internal = new HashMap<>();
+    public static final int DEFAULT_MAX_USERS = 1000;
+    public static final int DEFAULT_MAX_ENTRIES_PER_USER = 1000;
+
+    private final int maxUsers;
+    private final int maxEntriesPerUser;
+    private final long ttlMillis;
+
+    // Guarded by itself, only held to look up, add or remove segments
+    private final Map<String, UserSegment> segments;
+
+    // Counters of the segments already dropped, guarded by the segments map
+    private long droppedHits = 0;
+    private long droppedMisses = 0;
+    private long evictions = 0;
+
+    public DefaultAuthzResultCache() {
+        this(DEFAULT_MAX_USERS, DEFAULT_MAX_ENTRIES_PER_USER, 0);
+    }
+
+    /**
+     * @param maxUsers Max number of users with cached results
+     * @param maxEntriesPerUser Max number of results cached per user
+     * @param ttlMillis How long a result stays valid since it was cached. Zero or less means forever.
+     */
+    public DefaultAuthzResultCache(int maxUsers, int maxEntriesPerUser, long ttlMillis) {
+        if (maxUsers <= 0 || maxEntriesPerUser <= 0) {
+            throw new IllegalArgumentException("Cache bounds should be greater than zero");
+        }
+        this.maxUsers = maxUsers;
+        this.maxEntriesPerUser = maxEntriesPerUser;
+        this.ttlMillis = ttlMillis;
+        this.segments = new LinkedHashMap<String, UserSegment>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserSegment> eldest) {
+                if (size() > DefaultAuthzResultCache.this.maxUsers) {
+                    dropped(eldest.getValue(), true);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
 
     public AuthorizationResult get(final User user, final Permission permission) {
-        Map<String, AuthorizationResult> result = internal.get(permission);
-        if (result == null) {
+        final UserSegment segment = getSegment(user, false);
+        if (segment == null) {
+            synchronized (segments) {
+                droppedMisses++;
+            }
             return null;
         }
-        AuthorizationResult decision = result.get(user.getIdentifier());
-        return decision == null ? null : decision;
+        return segment.get(permission);
     }
 
     public void put(final User user, final Permission permission, final AuthorizationResult authzResult) {
-        if (!internal.containsKey(permission)) {
-            internal.put(permission, new HashMap<>());
-        }
-        final Map<String, AuthorizationResult> result = internal.get(permission);
-        AuthorizationResult knowValue = result.get(user.getIdentifier());
-        if (!(result.containsKey(user.getIdentifier()) && authzResult.equals(knowValue))) {
-            result.put(user.getIdentifier(), authzResult);
-        }
+        getSegment(user, true).put(permission, authzResult);
     }
 
     public int size(User user) {
-        int count = 0;
-        for (Map<String, AuthorizationResult> userCache : internal.values()) {
-            if (userCache.containsKey(user.getIdentifier())) {
-                count++;
+        final UserSegment segment = getSegment(user, false);
+        return segment == null ? 0 : segment.size();
+    }
+
+    /**
+     * Drops all the results cached for the given user.
+     */
+    public void invalidate(User user) {
+        if (user != null) {
+            synchronized (segments) {
+                final UserSegment segment = segments.remove(user.getIdentifier());
+                if (segment != null) {
+                    dropped(segment, false);
+                }
             }
         }
-        return count;
+    }
+
+    /**
+     * Drops the results of all the users having the given role.
+     */
+    public void invalidate(Role role) {
+        if (role != null) {
+            invalidateIf(segment -> segment.roles.contains(role.getName()));
+        }
+    }
+
+    /**
+     * Drops the results of all the users belonging to the given group.
+     */
+    public void invalidate(Group group) {
+        if (group != null) {
+            invalidateIf(segment -> segment.groups.contains(group.getName()));
+        }
     }
 
     public void clear() {
-        internal.clear();
+        invalidateIf(segment -> true);
+    }
+
+    public long getHits() {
+        long total;
+        final List<UserSegment> current;
+        synchronized (segments) {
+            total = droppedHits;
+            current = new ArrayList<>(segments.values());
+        }
+        for (UserSegment segment : current) {
+            total += segment.getHits();
+        }
+        return total;
+    }
+
+    public long getMisses() {
+        long total;
+        final List<UserSegment> current;
+        synchronized (segments) {
+            total = droppedMisses;
+            current = new ArrayList<>(segments.values());
+        }
+        for (UserSegment segment : current) {
+            total += segment.getMisses();
+        }
+        return total;
+    }
+
+    /**
+     * Number of results removed because of the cache bounds, whether it was the whole user segment or
+     * a single entry. Expired or invalidated results are not counted.
+     */
+    public long getEvictions() {
+        long total;
+        final List<UserSegment> current;
+        synchronized (segments) {
+            total = evictions;
+            current = new ArrayList<>(segments.values());
+        }
+        for (UserSegment segment : current) {
+            total += segment.getEvictions();
+        }
+        return total;
+    }
+
+    public int getUserCount() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    private UserSegment getSegment(User user, boolean create) {
+        synchronized (segments) {
+            UserSegment segment = segments.get(user.getIdentifier());
+            if (segment != null && !segment.matches(user)) {
+                segments.remove(user.getIdentifier());
+                dropped(segment, false);
+                segment = null;
+            }
+            if (segment == null && create) {
+                segment = new UserSegment(user);
+                segments.put(user.getIdentifier(), segment);
+            }
+            return segment;
+        }
+    }
+
+    private void invalidateIf(SegmentFilter filter) {
+        synchronized (segments) {
+            Iterator<UserSegment> it = segments.values().iterator();
+            while (it.hasNext()) {
+                UserSegment segment = it.next();
+                if (filter.accept(segment)) {
+                    it.remove();
+                    dropped(segment, false);
+                }
+            }
+        }
+    }
+
+    // Must be called holding the segments lock
+    private void dropped(UserSegment segment, boolean evicted) {
+        droppedHits += segment.getHits();
+        droppedMisses += segment.getMisses();
+        evictions += segment.getEvictions() + (evicted ? segment.size() : 0);
+    }
+
+    // Permissions are created on every check, so results are keyed by value rather than by instance
+    private static String key(Permission permission) {
+        return permission.getName() + "|" + permission.getResult();
+    }
+
+    private interface SegmentFilter {
+
+        boolean accept(UserSegment segment);
+    }
+
+    private class UserSegment {
+
+        private final Set<String> roles = new HashSet<>();
+        private final Set<String> groups = new HashSet<>();
+        private final Map<String, CachedResult> results;
+        private long hits = 0;
+        private long misses = 0;
+        private long evictions = 0;
+
+        UserSegment(User user) {
+            if (user.getRoles() != null) {
+                for (Role role : user.getRoles()) {
+                    roles.add(role.getName());
+                }
+            }
+            if (user.getGroups() != null) {
+                for (Group group : user.getGroups()) {
+                    groups.add(group.getName());
+                }
+            }
+            results = new LinkedHashMap<String, CachedResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResult> eldest) {
+                    if (size() > maxEntriesPerUser) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        boolean matches(User user) {
+            int roleCount = 0;
+            if (user.getRoles() != null) {
+                for (Role role : user.getRoles()) {
+                    if (!roles.contains(role.getName())) {
+                        return false;
+                    }
+                    roleCount++;
+                }
+            }
+            int groupCount = 0;
+            if (user.getGroups() != null) {
+                for (Group group : user.getGroups()) {
+                    if (!groups.contains(group.getName())) {
+                        return false;
+                    }
+                    groupCount++;
+                }
+            }
+            return roleCount == roles.size() && groupCount == groups.size();
+        }
+
+        synchronized AuthorizationResult get(Permission permission) {
+            final String key = key(permission);
+            CachedResult cached = results.get(key);
+            if (cached != null && ttlMillis > 0 && System.currentTimeMillis() - cached.time > ttlMillis) {
+                results.remove(key);
+                cached = null;
+            }
+            if (cached == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return cached.result;
+        }
+
+        synchronized void put(Permission permission, AuthorizationResult result) {
+            results.put(key(permission), new CachedResult(result, ttlMillis > 0 ? System.currentTimeMillis() : 0));
+        }
+
+        synchronized int size() {
+            return results.size();
+        }
+
+        synchronized long getHits() {
+            return hits;
+        }
+
+        synchronized long getMisses() {
+            return misses;
+        }
+
+        synchronized long getEvictions() {
+            return evictions;
+        }
+    }
+
+    private static class CachedResult {
+
+        private final AuthorizationResult result;
+        private final long time;
+
+        CachedResult(AuthorizationResult result, long time) {
+            this.result = result;
+            this.time = time;
+        }
     }
 }
@@ -15,8 +15,13 @@
  */
 package org.uberfire.security.impl.authz;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import org.jboss.errai.common.client.api.annotations.Portable;
@@ -27,18 +32,26 @@ import static org.uberfire.security.authz.AuthorizationResult.*;
 
 /**
  * A collection where the permissions are ordered by name.
+ * <p>
+ * Lookups go through an index by name and by parent name (the name up to its last dot), so that, as long as
+ * the collection only holds {@link DotNamedPermission} instances, both {@link #get(String)} and
+ * {@link #implies(Permission)} take constant time regardless of the collection size. Otherwise implication
+ * checks fall back to iterating over the whole collection.
  */
 @Portable
 public class DefaultPermissionCollection implements PermissionCollection {
 
     private TreeSet<Permission> permissionSet = new TreeSet<>();
 
+    // Built on demand, so it also covers unmarshalled instances
+    private transient PermissionIndex index;
+
     public DefaultPermissionCollection() {
     }
 
     @Override
     public Collection<Permission> collection() {
-        return permissionSet;
+        return Collections.unmodifiableCollection(permissionSet);
     }
 
     @Override
@@ -46,8 +59,8 @@ public class DefaultPermissionCollection implements PermissionCollection {
         for (Permission p : permissions) {
 
             // Avoid redundancy
-            if (!implies(p)) {
-                permissionSet.add(p);
+            if (!implies(p) && permissionSet.add(p)) {
+                index().add(p);
             }
         }
         return this;
@@ -56,19 +69,16 @@ public class DefaultPermissionCollection implements PermissionCollection {
     @Override
     public PermissionCollection remove(Permission... permissions) {
         for (Permission p : permissions) {
-            permissionSet.remove(p);
+            if (permissionSet.remove(p)) {
+                index().remove(p.getName());
+            }
         }
         return this;
     }
 
     @Override
     public Permission get(String name) {
-        for (Permission p : permissionSet) {
-            if (equalsName(name, p.getName())) {
-                return p;
-            }
-        }
-        return null;
+        return index().byName.get(name);
     }
 
     protected boolean equalsName(String s1, String s2) {
@@ -77,12 +87,24 @@ public class DefaultPermissionCollection implements PermissionCollection {
 
     @Override
     public boolean implies(Permission permission) {
-        for (Permission p : permissionSet) {
-            if (p.implies(permission)) {
-                return true;
+        PermissionIndex idx = index();
+        String name = permission.getName();
+        if (idx.foreign > 0 || name == null) {
+            for (Permission p : permissionSet) {
+                if (p.implies(permission)) {
+                    return true;
+                }
             }
+            return false;
         }
-        return false;
+        // A dot named permission only implies itself and its direct children
+        Permission p = idx.byName.get(name);
+        if (p != null && p.implies(permission)) {
+            return true;
+        }
+        int lastDot = name.lastIndexOf('.');
+        p = lastDot < 0 ? null : idx.byName.get(name.substring(0, lastDot));
+        return p != null && p.implies(permission);
     }
 
     @Override
@@ -115,9 +137,10 @@ public class DefaultPermissionCollection implements PermissionCollection {
 
     @Override
     public DefaultPermissionCollection clone() {
+        // This collection has no redundant permissions, so there is no need to check them again
         DefaultPermissionCollection clone = new DefaultPermissionCollection();
         for (Permission p : permissionSet) {
-            clone.add(p.clone());
+            clone.permissionSet.add(p.clone());
         }
         return clone;
     }
@@ -126,16 +149,43 @@ public class DefaultPermissionCollection implements PermissionCollection {
         target.setResult(target.getResult().invert());
 
         // After inverting the permission ensure no implied permissions are left
-        Iterator<Permission> it = permissionSet.iterator();
-        while (it.hasNext()) {
-            Permission p = it.next();
+        PermissionIndex idx = index();
+        Collection<Permission> candidates = permissionSet;
+        if (idx.foreign == 0 && target.getName() != null) {
+            candidates = new ArrayList<>();
+            Permission same = idx.byName.get(target.getName());
+            if (same != null) {
+                candidates.add(same);
+            }
+            List<Permission> children = idx.byParent.get(target.getName());
+            if (children != null) {
+                candidates.addAll(children);
+            }
+        }
+        List<Permission> implied = new ArrayList<>();
+        for (Permission p : candidates) {
             if (!target.equals(p) && target.implies(p)) {
-                it.remove();
+                implied.add(p);
             }
         }
+        for (Permission p : implied) {
+            permissionSet.remove(p);
+            idx.remove(p.getName());
+        }
         return this;
     }
 
+    private PermissionIndex index() {
+        if (index == null) {
+            PermissionIndex idx = new PermissionIndex();
+            for (Permission p : permissionSet) {
+                idx.add(p);
+            }
+            index = idx;
+        }
+        return index;
+    }
+
     @Override
     public String toString() {
         StringBuilder out = new StringBuilder();
@@ -146,4 +196,52 @@ public class DefaultPermissionCollection implements PermissionCollection {
         }
         return out.toString();
     }
+
+    private static class PermissionIndex {
+
+        private final Map<String, Permission> byName = new HashMap<>();
+        private final Map<String, List<Permission>> byParent = new HashMap<>();
+
+        // Number of permissions whose implication rules are unknown
+        private int foreign = 0;
+
+        void add(Permission p) {
+            byName.put(p.getName(), p);
+            String parent = parentName(p.getName());
+            if (parent != null) {
+                List<Permission> children = byParent.get(parent);
+                if (children == null) {
+                    children = new ArrayList<>();
+                    byParent.put(parent, children);
+                }
+                children.add(p);
+            }
+            if (p.getClass() != DotNamedPermission.class) {
+                foreign++;
+            }
+        }
+
+        void remove(String name) {
+            Permission p = byName.remove(name);
+            if (p == null) {
+                return;
+            }
+            String parent = parentName(name);
+            List<Permission> children = parent != null ? byParent.get(parent) : null;
+            if (children != null) {
+                children.remove(p);
+                if (children.isEmpty()) {
+                    byParent.remove(parent);
+                }
+            }
+            if (p.getClass() != DotNamedPermission.class) {
+                foreign--;
+            }
+        }
+
+        private static String parentName(String name) {
+            int lastDot = name != null ? name.lastIndexOf('.') : -1;
+            return lastDot < 0 ? null : name.substring(0, lastDot);
+        }
+    }
 }
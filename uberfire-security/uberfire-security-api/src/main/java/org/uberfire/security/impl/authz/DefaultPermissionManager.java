@@ -16,9 +16,13 @@
 package org.uberfire.security.impl.authz;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
@@ -43,11 +47,19 @@ import static org.uberfire.security.authz.AuthorizationResult.*;
 @ApplicationScoped
 public class DefaultPermissionManager implements PermissionManager {
 
+    private static final int MAX_PRIORITY_SNAPSHOTS = 1000;
+
     private PermissionTypeRegistry permissionTypeRegistry;
     private AuthorizationPolicy authorizationPolicy = new DefaultAuthorizationPolicy();
     private DefaultAuthzResultCache cache;
     private VotingStrategy defaultVotingStrategy = VotingStrategy.PRIORITY;
     private Map<VotingStrategy,VotingAlgorithm> votingAlgorithmMap = new HashMap<>();
+    private Map<List<String>, PermissionSnapshot> prioritySnapshots = new LinkedHashMap<List<String>, PermissionSnapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, PermissionSnapshot> eldest) {
+            return size() > MAX_PRIORITY_SNAPSHOTS;
+        }
+    };
 
     @Inject
     public DefaultPermissionManager(PermissionTypeRegistry permissionTypeRegistry) {
@@ -71,8 +83,55 @@ public class DefaultPermissionManager implements PermissionManager {
     }
 
     public void setAuthorizationPolicy(AuthorizationPolicy authorizationPolicy) {
+        AuthorizationPolicy oldPolicy = this.authorizationPolicy;
         this.authorizationPolicy = authorizationPolicy != null ? authorizationPolicy : new DefaultAuthorizationPolicy();
-        this.cache.clear();
+        synchronized (prioritySnapshots) {
+            prioritySnapshots.clear();
+        }
+        invalidateCache(oldPolicy, this.authorizationPolicy);
+    }
+
+    /**
+     * Drops the cached results of the users holding a role or group whose permissions or priority differ
+     * between both policies. The same instance might have been modified in place, so it drops everything.
+     */
+    protected void invalidateCache(AuthorizationPolicy oldPolicy, AuthorizationPolicy newPolicy) {
+        if (oldPolicy == null || oldPolicy == newPolicy) {
+            cache.clear();
+            return;
+        }
+        // Policy lookups for unknown roles or groups register them, so only look up the ones on both sides
+        Set<Role> oldRoles = oldPolicy.getRoles();
+        Set<Role> newRoles = newPolicy.getRoles();
+        Set<Role> roles = new HashSet<>(oldRoles);
+        roles.addAll(newRoles);
+        for (Role role : roles) {
+            if (!oldRoles.contains(role) || !newRoles.contains(role)
+                    || oldPolicy.getPriority(role) != newPolicy.getPriority(role)
+                    || !equalPermissions(oldPolicy.getPermissions(role), newPolicy.getPermissions(role))) {
+                cache.invalidate(role);
+            }
+        }
+        Set<Group> oldGroups = oldPolicy.getGroups();
+        Set<Group> newGroups = newPolicy.getGroups();
+        Set<Group> groups = new HashSet<>(oldGroups);
+        groups.addAll(newGroups);
+        for (Group group : groups) {
+            if (!oldGroups.contains(group) || !newGroups.contains(group)
+                    || oldPolicy.getPriority(group) != newPolicy.getPriority(group)
+                    || !equalPermissions(oldPolicy.getPermissions(group), newPolicy.getPermissions(group))) {
+                cache.invalidate(group);
+            }
+        }
+    }
+
+    private boolean equalPermissions(PermissionCollection c1, PermissionCollection c2) {
+        if (c1 == null || c2 == null) {
+            return c1 == c2;
+        }
+        Collection<Permission> p1 = c1.collection();
+        Collection<Permission> p2 = c2.collection();
+        return p1.size() == p2.size() && p1.containsAll(p2);
     }
 
     @Override
@@ -235,23 +294,56 @@ public class DefaultPermissionManager implements PermissionManager {
         return result;
     }
 
+    /**
+     * The PRIORITY based permissions only depend on the user's roles and groups (in iteration order, as the
+     * priorities are applied pairwise), so they're computed once per combination and shared as a
+     * {@link PermissionSnapshot} until the policy changes.
+     */
     private PermissionCollection resolvePermissionsPriority(User user) {
-        PermissionCollection result = null;
+        boolean noRoles = user.getRoles() == null || user.getRoles().isEmpty();
+        boolean noGroups = user.getGroups() == null || user.getGroups().isEmpty();
+        if (authorizationPolicy == null || (noRoles && noGroups)) {
+            return null;
+        }
+        List<String> key = new ArrayList<>();
+        if (!noRoles) {
+            for (Role role : user.getRoles()) {
+                key.add(role.getName());
+            }
+        }
+        if (!noGroups) {
+            key.add(null);
+            for (Group group : user.getGroups()) {
+                key.add(group.getName());
+            }
+        }
+        synchronized (prioritySnapshots) {
+            PermissionSnapshot snapshot = prioritySnapshots.get(key);
+            if (snapshot == null) {
+                snapshot = new PermissionSnapshot(mergePermissionsPriority(user));
+                prioritySnapshots.put(key, snapshot);
+            }
+            return snapshot;
+        }
+    }
+
+    private PermissionCollection mergePermissionsPriority(User user) {
+        PermissionCollection result = new DefaultPermissionCollection();
         int lastPriority = 0;
 
-        if (user.getRoles() != null && authorizationPolicy != null) {
+        if (user.getRoles() != null) {
             for (Role role : user.getRoles()) {
                 PermissionCollection collection = authorizationPolicy.getPermissions(role);
                 int priority = authorizationPolicy.getPriority(role);
-                result = result == null ? collection : result.merge(collection, priority-lastPriority);
+                result = result.merge(collection, priority-lastPriority);
                 lastPriority = priority;
             }
         }
-        if (user.getGroups() != null && authorizationPolicy != null) {
+        if (user.getGroups() != null) {
             for (Group group : user.getGroups()) {
                 PermissionCollection collection = authorizationPolicy.getPermissions(group);
                 int priority = authorizationPolicy.getPriority(group);
-                result = result == null ? collection : result.merge(collection, priority-lastPriority);
+                result = result.merge(collection, priority-lastPriority);
                 lastPriority = priority;
             }
         }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.uberfire.security.impl.authz;
+
+import java.util.Collection;
+
+import org.uberfire.security.authz.Permission;
+import org.uberfire.security.authz.PermissionCollection;
+
+/**
+ * Read-only view over the effective permissions of a given combination of roles and groups. Instances are
+ * shared among all the users having the same roles and groups, so any attempt to modify them fails.
+ */
+public class PermissionSnapshot implements PermissionCollection {
+
+    private final PermissionCollection permissions;
+
+    /**
+     * @param permissions The effective permissions. The collection is not copied, so it should not be
+     * referenced from anywhere else.
+     */
+    public PermissionSnapshot(PermissionCollection permissions) {
+        this.permissions = permissions;
+    }
+
+    @Override
+    public PermissionCollection add(Permission... permissions) {
+        throw new UnsupportedOperationException("Permission snapshots can't be modified");
+    }
+
+    @Override
+    public PermissionCollection remove(Permission... permissions) {
+        throw new UnsupportedOperationException("Permission snapshots can't be modified");
+    }
+
+    @Override
+    public Permission get(String name) {
+        return permissions.get(name);
+    }
+
+    @Override
+    public Collection<Permission> collection() {
+        return permissions.collection();
+    }
+
+    @Override
+    public boolean implies(Permission permission) {
+        return permissions.implies(permission);
+    }
+
+    @Override
+    public PermissionCollection merge(PermissionCollection other, int priority) {
+        if (other == null || other.collection().isEmpty()) {
+            return this;
+        }
+        return permissions.merge(other, priority);
+    }
+
+    @Override
+    public PermissionCollection clone() {
+        return permissions.clone();
+    }
+
+    @Override
+    public String toString() {
+        return permissions.toString();
+    }
+}
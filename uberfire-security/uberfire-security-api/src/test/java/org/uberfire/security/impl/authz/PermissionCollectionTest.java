@@ -171,4 +171,66 @@ public class PermissionCollectionTest {
         assertEquals(result.collection().size(), 1);
         assertEquals(result.get("resource.read.id1").getResult(), AuthorizationResult.ACCESS_DENIED);
     }
+
+    @Test
+    public void testRemove() {
+        PermissionCollection pc = new DefaultPermissionCollection();
+        pc.add(new DotNamedPermission("resource.read", true));
+        assertTrue(pc.implies(p4));
+
+        pc.remove(new DotNamedPermission("resource.read", true));
+        assertNull(pc.get("resource.read"));
+        assertFalse(pc.implies(p4));
+
+        pc.add(p4);
+        assertEquals(pc.get("resource.read.id1"), p4);
+    }
+
+    @Test
+    public void testInvertRemovesChildren() {
+        DefaultPermissionCollection pc = new DefaultPermissionCollection();
+        pc.add(new DotNamedPermission("resource.read", false));
+        pc.add(new DotNamedPermission("resource.read.id1", true));
+        pc.add(new DotNamedPermission("resource.read.id2", false)); // Not added
+        pc.add(new DotNamedPermission("resource.read.id1.sub", true)); // Not added
+        pc.add(new DotNamedPermission("resource.read.id1.sub", false));
+        assertEquals(pc.collection().size(), 3);
+
+        pc.invert(pc.get("resource.read"));
+        assertEquals(pc.collection().size(), 2);
+        assertNull(pc.get("resource.read.id1"));
+        assertTrue(pc.implies(p6));
+        assertFalse(pc.implies(p7));
+        assertEquals(pc.get("resource.read.id1.sub").getResult(), AuthorizationResult.ACCESS_DENIED);
+    }
+
+    @Test
+    public void testMergeLargeCollections() {
+        PermissionCollection pc1 = new DefaultPermissionCollection();
+        PermissionCollection pc2 = new DefaultPermissionCollection();
+        for (int i = 0; i < 20000; i++) {
+            pc1.add(new DotNamedPermission("resource.read.id" + i, i % 2 == 0));
+            pc2.add(new DotNamedPermission("resource.read.id" + i, true));
+            pc2.add(new DotNamedPermission("resource.edit.id" + i, false));
+        }
+        PermissionCollection result = pc1.merge(pc2, 0);
+        assertEquals(result.collection().size(), 40000);
+        assertTrue(result.implies(new DotNamedPermission("resource.read.id1", true)));
+        assertTrue(result.implies(new DotNamedPermission("resource.edit.id1", false)));
+        assertFalse(result.implies(new DotNamedPermission("resource.edit.id20000", false)));
+    }
+
+    @Test
+    public void testCustomPermission() {
+        PermissionCollection pc = new DefaultPermissionCollection();
+        pc.add(new DotNamedPermission("resource", true) {
+            @Override
+            public boolean impliesName(Permission other) {
+                return other.getName() != null && other.getName().startsWith("resource.");
+            }
+        });
+        assertTrue(pc.implies(p2));
+        assertTrue(pc.implies(p4));
+        assertFalse(pc.implies(p8));
+    }
 }
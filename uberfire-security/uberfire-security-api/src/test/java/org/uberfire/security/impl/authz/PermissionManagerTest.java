@@ -15,8 +15,14 @@
  */
 package org.uberfire.security.impl.authz;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -235,6 +241,131 @@ public class PermissionManagerTest {
         assertEquals(authzResultCache.size(createUserMock()), 0);
     }
 
+    @Test
+    public void testCacheRoleChange() {
+        User user = createUserMock("viewAll");
+        assertEquals(permissionManager.checkPermission(viewAll, user), ACCESS_GRANTED);
+
+        Set<Role> roles = Stream.of("noViewAll").map(RoleImpl::new).collect(Collectors.toSet());
+        when(user.getRoles()).thenReturn(roles);
+        assertEquals(permissionManager.checkPermission(viewAll, user), ACCESS_DENIED);
+        assertEquals(authzResultCache.size(user), 1);
+    }
+
+    @Test
+    public void testCachePolicyChange() {
+        User viewer = createUserMock("viewAll");
+        User onlyView1 = createUserMock("onlyView1");
+        permissionManager.checkPermission(viewAll, viewer);
+        permissionManager.checkPermission(view1, onlyView1);
+
+        permissionManager.setAuthorizationPolicy(permissionManager.newAuthorizationPolicy()
+                .role("viewAll").permission("resource.read", false)
+                .role("noViewAll").permission("resource.read", false)
+                .role("onlyView1", 5).permission("resource.read", false).permission("resource.read.1", true)
+                .role("noView1").permission("resource.read.1", false)
+                .role("onlyView12").permission("resource.read.1.2", true)
+                .build());
+
+        assertEquals(authzResultCache.size(viewer), 0);
+        assertEquals(authzResultCache.size(onlyView1), 1);
+        assertEquals(permissionManager.checkPermission(viewAll, viewer), ACCESS_DENIED);
+    }
+
+    @Test
+    public void testCacheBounds() {
+        authzResultCache = new DefaultAuthzResultCache(2, 2, 0);
+        permissionManager = new DefaultPermissionManager(new DefaultPermissionTypeRegistry(), authzResultCache);
+        permissionManager.setAuthorizationPolicy(authorizationPolicy);
+
+        User user1 = createUserMock("viewAll");
+        permissionManager.checkPermission(viewAll, user1);
+        permissionManager.checkPermission(view1, user1);
+        permissionManager.checkPermission(view2, user1);
+        assertEquals(authzResultCache.size(user1), 2);
+        assertEquals(authzResultCache.getEvictions(), 1);
+
+        permissionManager.checkPermission(viewAll, createUserMock("viewAll"));
+        permissionManager.checkPermission(viewAll, createUserMock("viewAll"));
+        assertEquals(authzResultCache.getUserCount(), 2);
+        assertEquals(authzResultCache.size(user1), 0);
+        assertEquals(authzResultCache.getEvictions(), 3);
+
+        permissionManager.checkPermission(new DotNamedPermission("resource.read", true), user1);
+        permissionManager.checkPermission(viewAll, user1);
+        assertEquals(authzResultCache.getHits(), 1);
+        assertEquals(authzResultCache.getMisses(), 6);
+    }
+
+    @Test
+    public void testCacheExpiration() throws Exception {
+        authzResultCache = new DefaultAuthzResultCache(10, 10, 1);
+        User user = createUserMock("viewAll");
+        authzResultCache.put(user, viewAll, ACCESS_GRANTED);
+        Thread.sleep(10);
+        assertNull(authzResultCache.get(user, viewAll));
+        assertEquals(authzResultCache.size(user), 0);
+    }
+
+    @Test
+    public void testConcurrentChecks() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            users.add(createUserMock(i % 2 == 0 ? "viewAll" : "noViewAll"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        int idx = i % users.size();
+                        AuthorizationResult expected = idx % 2 == 0 ? ACCESS_GRANTED : ACCESS_DENIED;
+                        if (!expected.equals(permissionManager.checkPermission(viewAll, users.get(idx)))) {
+                            return false;
+                        }
+                        if (i % 100 == 0) {
+                            authzResultCache.invalidate(users.get(idx));
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(authzResultCache.getHits() > 0);
+    }
+
+    @Test
+    public void testPrioritySnapshots() {
+        User user1 = createUserMock("viewAll", "onlyView1");
+        User user2 = createUserMock("viewAll", "onlyView1");
+        PermissionCollection pc1 = permissionManager.resolvePermissions(user1, VotingStrategy.PRIORITY);
+        PermissionCollection pc2 = permissionManager.resolvePermissions(user2, VotingStrategy.PRIORITY);
+        assertSame(pc1, pc2);
+        assertNotSame(pc1, permissionManager.resolvePermissions(createUserMock("viewAll"), VotingStrategy.PRIORITY));
+        assertNull(permissionManager.resolvePermissions(createUserMock(), VotingStrategy.PRIORITY));
+
+        try {
+            pc1.add(view2);
+            fail("Snapshots can't be modified");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        permissionManager.setAuthorizationPolicy(permissionManager.newAuthorizationPolicy()
+                .role("viewAll").permission("resource.read", true)
+                .build());
+        PermissionCollection pc3 = permissionManager.resolvePermissions(user1, VotingStrategy.PRIORITY);
+        assertNotSame(pc1, pc3);
+        assertEquals(pc3.collection().size(), 1);
+        assertSame(pc3, permissionManager.resolvePermissions(user2, VotingStrategy.PRIORITY));
+    }
+
     @Test
     public void testDefaultVotingStrategy() {
         User user = createUserMock("role1");
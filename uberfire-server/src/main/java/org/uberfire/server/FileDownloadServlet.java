@@ -29,6 +29,7 @@ import org.slf4j.LoggerFactory;
 import org.uberfire.io.IOService;
 import org.uberfire.java.nio.file.Path;
 import org.uberfire.server.util.FileServletUtil;
+import org.uberfire.server.util.FileStreamUtil;
 
 import static java.lang.String.*;
 
@@ -58,17 +59,12 @@ public class FileDownloadServlet
 
             final Path path = ioService.get( uri );
 
-            byte[] bytes = ioService.readAllBytes( path );
-
             response.setHeader( "Content-Disposition",
                                 format( "attachment; filename=\"%s\";", path.getFileName().toString() ) );
 
             response.setContentType( "application/octet-stream" );
 
-            response.getOutputStream().write(
-                    bytes,
-                    0,
-                    bytes.length );
+            FileStreamUtil.stream( ioService, path, request, response );
 
         } catch ( final Exception e ) {
             logger.error( "Failed to download a file.", e );
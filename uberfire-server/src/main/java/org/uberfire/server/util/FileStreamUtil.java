@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.uberfire.server.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.uberfire.io.IOService;
+import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.BasicFileAttributeView;
+import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Writes files from an {@link IOService} to servlet responses without buffering them in memory.
+ * <p>
+ * Responses carry an ETag and honour <code>If-None-Match</code>, so unchanged files are answered with a 304. The
+ * ETag is the file key when it identifies the content (the blob id on git based filesystems), and is otherwise
+ * built from the size and modification time. Single byte ranges are supported, with <code>If-Range</code>, so
+ * interrupted downloads can be resumed. When no ETag can be built, <code>Last-Modified</code> and
+ * <code>If-Modified-Since</code> are used instead.
+ */
+public class FileStreamUtil {
+
+    public static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final String BYTES_UNIT = "bytes";
+
+    // marks a well formed range that falls outside of the file
+    private static final long[] UNSATISFIABLE = new long[ 0 ];
+
+    // git object ids, other file keys (such as paths) don't change along with the content
+    private static final Pattern CONTENT_KEY = Pattern.compile( "[0-9a-f]{40}" );
+
+    /**
+     * Streams the given file into the response, answering conditional and range requests. Content type and
+     * disposition headers should be set by the caller.
+     */
+    public static void stream( final IOService ioService,
+                               final Path path,
+                               final HttpServletRequest request,
+                               final HttpServletResponse response ) throws IOException {
+        final BasicFileAttributes attrs = readAttributes( ioService, path );
+        final long size = attrs != null ? attrs.size() : ioService.size( path );
+        final String etag = attrs != null ? buildETag( attrs ) : null;
+        final long lastModified = etag == null && attrs != null && attrs.lastModifiedTime() != null ? attrs.lastModifiedTime().toMillis() : -1;
+
+        if ( etag != null ) {
+            response.setHeader( "ETag", etag );
+        } else if ( lastModified >= 0 ) {
+            response.setDateHeader( "Last-Modified", lastModified );
+        }
+
+        if ( isNotModified( request, etag, lastModified ) ) {
+            response.setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+            return;
+        }
+
+        response.setHeader( "Accept-Ranges", BYTES_UNIT );
+
+        long start = 0;
+        long length = size;
+        final long[] range = isRangeValid( request, etag ) ? parseRange( request.getHeader( "Range" ), size ) : null;
+        if ( range == UNSATISFIABLE ) {
+            response.setHeader( "Content-Range", BYTES_UNIT + " */" + size );
+            response.sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+            return;
+        } else if ( range != null ) {
+            start = range[ 0 ];
+            length = range[ 1 ] - range[ 0 ] + 1;
+            response.setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+            response.setHeader( "Content-Range", BYTES_UNIT + " " + range[ 0 ] + "-" + range[ 1 ] + "/" + size );
+        }
+
+        response.setContentLengthLong( length );
+
+        final InputStream in = ioService.newInputStream( path );
+        try {
+            skipFully( in, start );
+            copy( in, response.getOutputStream(), length );
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies at most <code>length</code> bytes, or the whole stream if negative, using a fixed size buffer.
+     */
+    public static long copy( final InputStream in,
+                             final OutputStream out,
+                             final long length ) throws IOException {
+        final byte[] buffer = new byte[ BUFFER_SIZE ];
+        long remaining = length < 0 ? Long.MAX_VALUE : length;
+        long total = 0;
+        while ( remaining > 0 ) {
+            final int count = in.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+            if ( count < 0 ) {
+                break;
+            }
+            out.write( buffer, 0, count );
+            remaining -= count;
+            total += count;
+        }
+        return total;
+    }
+
+    public static String buildETag( final BasicFileAttributes attrs ) {
+        final Object fileKey = attrs.fileKey();
+        if ( fileKey != null && CONTENT_KEY.matcher( fileKey.toString() ).matches() ) {
+            return "\"" + fileKey.toString() + "\"";
+        }
+        if ( attrs.lastModifiedTime() == null ) {
+            return null;
+        }
+        return "\"" + Long.toHexString( attrs.size() ) + "-" + Long.toHexString( attrs.lastModifiedTime().toMillis() ) + "\"";
+    }
+
+    /**
+     * Parses a single byte range against the given size, returning the first and last positions, both
+     * inclusive. Returns null if the header is missing, malformed or asks for several ranges, in which case
+     * the whole file should be sent.
+     */
+    static long[] parseRange( final String header,
+                              final long size ) {
+        if ( header == null || !header.startsWith( BYTES_UNIT + "=" ) ) {
+            return null;
+        }
+        final String spec = header.substring( BYTES_UNIT.length() + 1 ).trim();
+        final int dash = spec.indexOf( '-' );
+        if ( dash < 0 || spec.indexOf( ',' ) >= 0 ) {
+            return null;
+        }
+
+        final long first;
+        final long last;
+        try {
+            if ( dash == 0 ) {
+                final long suffix = Long.parseLong( spec.substring( 1 ) );
+                if ( suffix <= 0 || size == 0 ) {
+                    return UNSATISFIABLE;
+                }
+                first = Math.max( 0, size - suffix );
+                last = size - 1;
+            } else {
+                first = Long.parseLong( spec.substring( 0, dash ) );
+                final String end = spec.substring( dash + 1 );
+                final long requestedLast = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong( end );
+                if ( requestedLast < first ) {
+                    return null;
+                }
+                last = Math.min( requestedLast, size - 1 );
+            }
+        } catch ( final NumberFormatException e ) {
+            return null;
+        }
+
+        if ( first < 0 ) {
+            return null;
+        }
+        if ( first >= size ) {
+            return UNSATISFIABLE;
+        }
+        return new long[]{ first, last };
+    }
+
+    private static BasicFileAttributes readAttributes( final IOService ioService,
+                                                       final Path path ) {
+        final BasicFileAttributeView view = ioService.getFileAttributeView( path, BasicFileAttributeView.class );
+        return view == null ? null : view.<BasicFileAttributes>readAttributes();
+    }
+
+    private static boolean isNotModified( final HttpServletRequest request,
+                                          final String etag,
+                                          final long lastModified ) {
+        final String ifNoneMatch = request.getHeader( "If-None-Match" );
+        if ( ifNoneMatch != null ) {
+            return etag != null && matches( ifNoneMatch, etag );
+        }
+        if ( lastModified >= 0 ) {
+            try {
+                final long ifModifiedSince = request.getDateHeader( "If-Modified-Since" );
+                // http dates have no millis
+                return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+            } catch ( final IllegalArgumentException e ) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isRangeValid( final HttpServletRequest request,
+                                         final String etag ) {
+        final String ifRange = request.getHeader( "If-Range" );
+        // dates are too weak to validate a range, so only a matching etag keeps it
+        return ifRange == null || ( etag != null && etag.equals( ifRange.trim() ) );
+    }
+
+    private static boolean matches( final String header,
+                                    final String etag ) {
+        for ( final String candidate : header.split( "," ) ) {
+            final String value = candidate.trim();
+            if ( value.equals( "*" ) || value.equals( etag ) || value.equals( "W/" + etag ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void skipFully( final InputStream in,
+                                   final long count ) throws IOException {
+        long remaining = count;
+        while ( remaining > 0 ) {
+            final long skipped = in.skip( remaining );
+            if ( skipped > 0 ) {
+                remaining -= skipped;
+            } else if ( in.read() < 0 ) {
+                break;
+            } else {
+                remaining--;
+            }
+        }
+    }
+}
@@ -16,25 +16,38 @@
 
 package org.uberfire.server;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URI;
+import java.util.HashMap;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectInserter;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.uberfire.io.IOService;
+import org.uberfire.io.impl.IOServiceDotFileImpl;
 import org.uberfire.java.nio.file.Path;
+import org.uberfire.java.nio.file.attribute.BasicFileAttributeView;
+import org.uberfire.java.nio.file.attribute.BasicFileAttributes;
+import org.uberfire.java.nio.file.attribute.FileTime;
 import org.uberfire.server.util.FileServletUtil;
+import org.uberfire.server.util.FileStreamUtil;
 
 import static java.lang.String.format;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -45,11 +58,12 @@ public class FileDownloadServletTest {
 
     private static final String TEST_ROOT_PATH = "default://master@test-repository/test-project/src/main/resources/test";
 
-    @Mock
-    private IOService ioService;
+    private static final String BLOB_ID = "3b18e512dba79e4c8300dd08aeb37f8e728b8dad";
+
+    private static final String NEW_BLOB_ID = "5e1c309dae7f45e0f39b1bf3ac3cd9db12e7d689";
 
     @Mock
-    private ServletOutputStream servletOutputStream;
+    private IOService ioService;
 
     @InjectMocks
     private FileDownloadServlet downloadServlet;
@@ -86,45 +100,230 @@ public class FileDownloadServletTest {
         doDownloadByPath( TEST_ROOT_PATH, fileName, fileContent );
     }
 
-    private void doDownloadByPath( String sourceFolder, String sourceFileName, String fileContent ) throws Exception {
+    @Test
+    public void unchangedFileIsNotSentAgain() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", BLOB_ID );
 
-        HttpServletRequest request = mock( HttpServletRequest.class );
-        HttpServletResponse response = mock( HttpServletResponse.class );
+        when( request.getHeader( "If-None-Match" ) ).thenReturn( "\"" + BLOB_ID + "\"" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response ).setHeader( "ETag", "\"" + BLOB_ID + "\"" );
+        verify( response ).setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+        verify( ioService, never() ).newInputStream( any( Path.class ) );
+        assertEquals( 0, content.size() );
+    }
+
+    @Test
+    public void changedFileIsSent() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", NEW_BLOB_ID );
+
+        when( request.getHeader( "If-None-Match" ) ).thenReturn( "\"" + BLOB_ID + "\"" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response, never() ).setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+        assertEquals( "the local file content", content.toString() );
+    }
+
+    @Test
+    public void changedFileWithoutContentKeyIsSent() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        // plain filesystems use the path as file key
+        final Path path = mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", "/test/file.txt" );
+        final BasicFileAttributes attrs = ioService.getFileAttributeView( path, BasicFileAttributeView.class ).readAttributes();
+        final FileTime lastModified = mock( FileTime.class );
+        when( lastModified.toMillis() ).thenReturn( 2000L );
+        when( attrs.lastModifiedTime() ).thenReturn( lastModified );
+
+        when( request.getHeader( "If-None-Match" ) ).thenReturn( "\"16-3e8\"" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response ).setHeader( "ETag", "\"16-7d0\"" );
+        verify( response, never() ).setStatus( HttpServletResponse.SC_NOT_MODIFIED );
+        assertEquals( "the local file content", content.toString() );
+    }
+
+    @Test
+    public void downloadRange() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", BLOB_ID );
+
+        when( request.getHeader( "Range" ) ).thenReturn( "bytes=4-8" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response ).setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+        verify( response ).setHeader( "Content-Range", "bytes 4-8/22" );
+        verify( response ).setContentLengthLong( 5 );
+        assertEquals( "local", content.toString() );
+    }
+
+    @Test
+    public void downloadSuffixRange() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", BLOB_ID );
+
+        when( request.getHeader( "Range" ) ).thenReturn( "bytes=-7" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response ).setHeader( "Content-Range", "bytes 15-21/22" );
+        assertEquals( "content", content.toString() );
+    }
+
+    @Test
+    public void rangeIsIgnoredIfFileChanged() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", NEW_BLOB_ID );
+
+        when( request.getHeader( "Range" ) ).thenReturn( "bytes=4-8" );
+        when( request.getHeader( "If-Range" ) ).thenReturn( "\"" + BLOB_ID + "\"" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response, never() ).setStatus( HttpServletResponse.SC_PARTIAL_CONTENT );
+        assertEquals( "the local file content", content.toString() );
+    }
+
+    @Test
+    public void unsatisfiableRange() throws Exception {
+        final HttpServletRequest request = mockRequest( TEST_ROOT_PATH + "/file.txt" );
+        final HttpServletResponse response = mock( HttpServletResponse.class );
+        final ByteArrayOutputStream content = mockOutput( response );
+        mockFile( TEST_ROOT_PATH + "/file.txt", "file.txt", "the local file content", BLOB_ID );
+
+        when( request.getHeader( "Range" ) ).thenReturn( "bytes=100-" );
+
+        downloadServlet.doGet( request, response );
+
+        verify( response ).setHeader( "Content-Range", "bytes */22" );
+        verify( response ).sendError( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+        assertEquals( 0, content.size() );
+    }
+
+    private void doDownloadByPath( String sourceFolder, String sourceFileName, String fileContent ) throws Exception {
 
         String sourcePath = sourceFolder + "/" + sourceFileName;
 
-        //mock the servlet parameters
-        when( request.getParameter( PARAM_PATH ) ).thenReturn( sourcePath );
+        HttpServletRequest request = mockRequest( sourcePath );
+        HttpServletResponse response = mock( HttpServletResponse.class );
 
         //mock the servlet output stream
-        when ( response.getOutputStream() ).thenReturn( servletOutputStream );
+        ByteArrayOutputStream content = mockOutput( response );
 
-        //mock the path to be generated by the ioService
-        Path path = mock( Path.class );
-        Path pathFileName = mock( Path.class );
-        when( path.getFileName() ).thenReturn( pathFileName );
-        when( pathFileName.toString() ).thenReturn( sourceFileName );
+        //mock the path to be generated by the ioService and its content
+        Path path = mockFile( sourcePath, sourceFileName, fileContent, BLOB_ID );
 
         //Expected URI
         URI expectedURI = new URI( FileServletUtil.encodeFileNamePart( sourcePath ) );
 
-        //mock the path generation
-        when( ioService.get(expectedURI) ).thenReturn( path );
-
-        //mock the returned content
-        when( ioService.readAllBytes( path ) ).thenReturn(fileContent.getBytes());
-
         downloadServlet.doGet(request, response);
 
         verify(response, times(1)).setHeader("Content-Disposition",
                 format("attachment; filename=\"%s\";", sourceFileName));
         verify( response, times( 1 ) ).setContentType(eq("application/octet-stream"));
+        verify( response, times( 1 ) ).setContentLengthLong( fileContent.getBytes().length );
         verify( response, times( 1 ) ).getOutputStream();
 
-        verify( servletOutputStream, times( 1 )).write(fileContent.getBytes(), 0, fileContent.getBytes().length);
+        assertEquals( fileContent, content.toString() );
 
         verify(ioService, times(1)).get(eq(expectedURI));
-        verify( ioService, times( 1 ) ).readAllBytes( eq( path ) );
+        verify( ioService, times( 1 ) ).newInputStream( eq( path ) );
+        verify( ioService, never() ).readAllBytes( any( Path.class ) );
+    }
+
+    private HttpServletRequest mockRequest( String sourcePath ) {
+        HttpServletRequest request = mock( HttpServletRequest.class );
+        when( request.getParameter( PARAM_PATH ) ).thenReturn( sourcePath );
+        when( request.getDateHeader( anyString() ) ).thenReturn( -1L );
+        return request;
+    }
+
+    private ByteArrayOutputStream mockOutput( HttpServletResponse response ) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        when( response.getOutputStream() ).thenReturn( new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener( WriteListener writeListener ) {
+            }
+
+            @Override
+            public void write( int b ) throws IOException {
+                content.write( b );
+            }
+        } );
+        return content;
+    }
+
+    @Test
+    public void gitFileUsesBlobIdAsETag() throws Exception {
+        final File gitDir = File.createTempFile( "etag", "git" );
+        gitDir.delete();
+        gitDir.mkdirs();
+        System.setProperty( "org.uberfire.nio.git.dir", gitDir.getAbsolutePath() );
+        final IOService gitIOService = new IOServiceDotFileImpl();
+        try {
+            final URI repo = URI.create( "git://etag-test-repo-" + System.nanoTime() );
+            gitIOService.newFileSystem( repo, new HashMap<String, Object>() );
+            final Path file = gitIOService.get( repo ).resolve( "file.txt" );
+
+            // same size, written within the same second: only the blob id tells them apart
+            gitIOService.write( file, "content 1" );
+            final String etag = FileStreamUtil.buildETag( gitIOService.getFileAttributeView( file, BasicFileAttributeView.class ).readAttributes() );
+            gitIOService.write( file, "content 2" );
+            final String newETag = FileStreamUtil.buildETag( gitIOService.getFileAttributeView( file, BasicFileAttributeView.class ).readAttributes() );
+
+            assertEquals( "\"" + blobId( "content 1" ) + "\"", etag );
+            assertEquals( "\"" + blobId( "content 2" ) + "\"", newETag );
+        } finally {
+            gitIOService.dispose();
+            FileUtils.deleteQuietly( gitDir );
+        }
+    }
+
+    private static String blobId( final String content ) {
+        return new ObjectInserter.Formatter().idFor( Constants.OBJ_BLOB, content.getBytes() ).name();
+    }
+
+    private Path mockFile( String sourcePath, String sourceFileName, String fileContent, String blobId ) throws Exception {
+        Path path = mock( Path.class );
+        Path pathFileName = mock( Path.class );
+        when( path.getFileName() ).thenReturn( pathFileName );
+        when( pathFileName.toString() ).thenReturn( sourceFileName );
+
+        //mock the path generation
+        when( ioService.get( new URI( FileServletUtil.encodeFileNamePart( sourcePath ) ) ) ).thenReturn( path );
+
+        //mock the attributes and the returned content
+        BasicFileAttributeView view = mock( BasicFileAttributeView.class );
+        BasicFileAttributes attrs = mock( BasicFileAttributes.class );
+        when( ioService.getFileAttributeView( path, BasicFileAttributeView.class ) ).thenReturn( view );
+        when( view.<BasicFileAttributes>readAttributes() ).thenReturn( attrs );
+        when( attrs.size() ).thenReturn( (long) fileContent.getBytes().length );
+        when( attrs.fileKey() ).thenReturn( blobId );
+        when( ioService.newInputStream( path ) ).thenReturn( new ByteArrayInputStream( fileContent.getBytes() ) );
+
+        return path;
     }
 
 }